@@ -0,0 +1,142 @@
+package com.example.mediagenerator.benchmark;
+
+import com.example.mediagenerator.MediaGeneratorApplication;
+import com.example.mediagenerator.config.MediaImportProperties;
+import com.example.mediagenerator.dto.MediaRequestDto;
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.dto.RequestImportResultDto;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.MediaRequestImportService;
+import com.example.mediagenerator.service.MediaRequestService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit d'insertion, en demandes par seconde : soumission une par une ({@link MediaRequestService#submitNewRequest},
+ * une transaction par demande) contre import en masse d'un fichier JSON Lines ({@link MediaRequestImportService},
+ * une transaction par paquet de chunkSize demandes). jdbcBatchSize = 0 désactive les lots JDBC de Hibernate.
+ * <p>
+ * Les tables sont vidées après chaque itération pour que toutes les mesures partent d'une base de même taille.
+ * <p>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args="BulkImportBenchmark -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkImportBenchmark {
+
+    private static final int ROWS = 1_000; // Demandes insérées par appel : le score est exprimé en demandes par seconde
+
+    @Param({"0", "50"})
+    public int jdbcBatchSize;
+
+    @Param({"100", "1000"})
+    public int chunkSize;
+
+    private ConfigurableApplicationContext context;
+    private MediaRequestService mediaRequestService;
+    private MediaRequestImportService mediaRequestImportService;
+    private JdbcTemplate jdbcTemplate;
+    private MediaRequestDto dto;
+    private byte[] jsonLines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(MediaGeneratorApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:import-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.h2.console.enabled=false",
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize,
+                        "--media.import.chunk-size=" + chunkSize,
+                        "--media.queue.dispatcher-enabled=false",
+                        "--media.dedup.enabled=false", // Le même scénario est soumis à chaque opération
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework=WARN",
+                        "--logging.level.com.example.mediagenerator=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN");
+        mediaRequestService = context.getBean(MediaRequestService.class);
+        mediaRequestImportService = context.getBean(MediaRequestImportService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        if (context.getBean(MediaImportProperties.class).getChunkSize() != chunkSize) {
+            throw new IllegalStateException("media.import.chunk-size not applied");
+        }
+
+        dto = new MediaRequestDto();
+        dto.setScenario("Un chat explore une station spatiale abandonnée. ".repeat(10));
+        dto.setSelectedIAs("Gemini");
+        dto.setMediaType(MediaType.VIDEO);
+        dto.setTargetPlatform(TargetPlatform.TIKTOK);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            file.append(objectMapper.writeValueAsString(Map.of(
+                    "scenario", dto.getScenario() + i,
+                    "selectedIAs", dto.getSelectedIAs(),
+                    "mediaType", dto.getMediaType().name(),
+                    "targetPlatform", dto.getTargetPlatform().name()))).append('\n');
+        }
+        jsonLines = file.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearTables() {
+        jdbcTemplate.execute("DELETE FROM media_request");
+        jdbcTemplate.execute("DELETE FROM media_request_content");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void perRowSubmit(Blackhole blackhole) {
+        for (int i = 0; i < ROWS; i++) {
+            blackhole.consume(mediaRequestService.submitNewRequest(dto));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public RequestImportResultDto bulkImportJsonLines() {
+        RequestImportResultDto result = mediaRequestImportService.importRequests(
+                new ByteArrayInputStream(jsonLines), RequestFileFormat.JSONL);
+        if (result.getImported() != ROWS) {
+            throw new IllegalStateException("Expected " + ROWS + " imported requests, got " + result.getImported());
+        }
+        return result;
+    }
+}
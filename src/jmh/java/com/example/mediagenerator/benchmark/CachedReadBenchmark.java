@@ -0,0 +1,146 @@
+package com.example.mediagenerator.benchmark;
+
+import com.example.mediagenerator.MediaGeneratorApplication;
+import com.example.mediagenerator.dto.MediaRequestPageDto;
+import com.example.mediagenerator.model.CompressedTextConverter;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.example.mediagenerator.service.MediaRequestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit des lectures chaudes (demande par id, première page du tableau de bord) avec et sans le cache de second
+ * niveau Hibernate (media.cache.enabled), à travers {@link MediaRequestService} et le contexte Spring complet sur une
+ * base H2 en mémoire. Les demandes lues sont terminées (SUCCESS). Le groupe readsDuringTransitions mesure les mêmes
+ * lectures par id pendant qu'un thread fait passer d'autres demandes de NOT_YET à GO et inversement : chaque
+ * transition n'invalide que la demande qu'elle modifie.
+ * <p>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args="CachedReadBenchmark -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachedReadBenchmark {
+
+    private static final int TABLE_SIZE = 10_000;
+    private static final int HOT_REQUESTS = 1_000; // Demandes consultées pendant la mesure, toutes en cache
+    private static final int PAGE_SIZE = 50;
+    private static final int ACTIVE_REQUESTS = 1_000; // Demandes NOT_YET/GO modifiées par readsDuringTransitions
+
+    @Param({"true", "false"})
+    public String cacheEnabled;
+
+    private ConfigurableApplicationContext context;
+    private MediaRequestService mediaRequestService;
+    private MediaRequestRepository mediaRequestRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // spring-boot-devtools est sur le classpath de test : pas de redémarrage à chaud dans un classloader dédié
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        context = new SpringApplicationBuilder(MediaGeneratorApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:cached-read-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.h2.console.enabled=false",
+                        "--media.queue.dispatcher-enabled=false",
+                        "--media.cache.enabled=" + cacheEnabled,
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework=WARN",
+                        "--logging.level.com.example.mediagenerator=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN");
+        mediaRequestService = context.getBean(MediaRequestService.class);
+        mediaRequestRepository = context.getBean(MediaRequestRepository.class);
+        populate(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // Identifiants explicites 1..TABLE_SIZE (SUCCESS) puis ACTIVE_REQUESTS demandes NOT_YET, insérés hors Hibernate :
+    // le cache se remplit à la première lecture
+    private void populate(JdbcTemplate jdbcTemplate) {
+        CompressedTextConverter converter = new CompressedTextConverter();
+        String scenario = "Un chat explore une station spatiale abandonnée. ".repeat(10);
+        List<Object[]> contents = new ArrayList<>(TABLE_SIZE);
+        List<Object[]> requests = new ArrayList<>(TABLE_SIZE);
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        for (int i = 1; i <= TABLE_SIZE + ACTIVE_REQUESTS; i++) {
+            Timestamp created = Timestamp.valueOf(start.plusSeconds(i));
+            boolean active = i > TABLE_SIZE;
+            contents.add(new Object[]{i, converter.convertToDatabaseColumn(scenario + i)});
+            requests.add(new Object[]{i, created, created, i, (scenario + i).substring(0, MediaRequest.SCENARIO_EXCERPT_LENGTH),
+                    "Gemini", MediaType.values()[i % MediaType.values().length].name(),
+                    TargetPlatform.values()[i % TargetPlatform.values().length].name(),
+                    (active ? RequestStatus.NOT_YET : RequestStatus.SUCCESS).name(), active ? null : "/media/" + i + ".mp4"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO media_request_content (id, scenario) VALUES (?, ?)", contents);
+        jdbcTemplate.batchUpdate("INSERT INTO media_request (id, creation_date, status_update_date, content_id, scenario_excerpt, " +
+                "selectedias, media_type, target_platform, status, generated_media_path) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", requests);
+    }
+
+    @Benchmark
+    public Optional<MediaRequest> getRequestById() {
+        return mediaRequestService.getRequestById(ThreadLocalRandom.current().nextLong(1, HOT_REQUESTS + 1));
+    }
+
+    @Benchmark
+    public MediaRequestPageDto dashboardFirstPage() {
+        return mediaRequestService.getDashboardPage(null, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    @Group("readsDuringTransitions")
+    @GroupThreads(3)
+    public Optional<MediaRequest> readDuringTransitions() {
+        return getRequestById();
+    }
+
+    // Bascule une demande active entre NOT_YET et GO (requête JPQL UPDATE, comme les transitions de la file)
+    @Benchmark
+    @Group("readsDuringTransitions")
+    @GroupThreads(1)
+    public int transition() {
+        long id = TABLE_SIZE + ThreadLocalRandom.current().nextLong(1, ACTIVE_REQUESTS + 1);
+        LocalDateTime now = LocalDateTime.now();
+        int updated = mediaRequestRepository.transitionStatus(id, EnumSet.of(RequestStatus.NOT_YET), RequestStatus.GO, now);
+        return updated > 0 ? updated : mediaRequestRepository.transitionStatus(id, EnumSet.of(RequestStatus.GO), RequestStatus.NOT_YET, now);
+    }
+}
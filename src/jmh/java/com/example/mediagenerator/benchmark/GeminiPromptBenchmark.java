@@ -0,0 +1,104 @@
+package com.example.mediagenerator.benchmark;
+
+import com.example.mediagenerator.config.GeminiResilienceProperties;
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.GeminiCircuitBreaker;
+import com.example.mediagenerator.service.GeminiService;
+import com.example.mediagenerator.service.PromptCache;
+import com.example.mediagenerator.service.PromptTemplates;
+import com.example.mediagenerator.service.TokenBucketRateLimiter;
+import com.example.mediagenerator.service.TokenUsageTracker;
+import com.google.genai.Models;
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.FinishReason;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Coût côté application de {@link GeminiService#generateFormattedPrompt} : construction du message, de la
+ * configuration, clé de cache, passage par le limiteur et par boundedElastic, lecture de la réponse.
+ * Le client {@link Models} est remplacé par un bouchon qui répond immédiatement : aucun appel réseau.
+ * Les logs sont ramenés à WARN, comme dans {@link RequestLifecycleBenchmark}.
+ * <p>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args="GeminiPromptBenchmark -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeminiPromptBenchmark {
+
+    @Param({"200", "5000"})
+    public int scenarioLength;
+
+    private GeminiService geminiService;
+    private String scenario;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Sans contexte Spring, Logback écrirait chaque log DEBUG/INFO du service sur la console
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+
+        Models models = Mockito.mock(Models.class);
+        GenerateContentResponse response = GenerateContentResponse.builder()
+                .candidates(List.of(Candidate.builder()
+                        .content(Content.fromParts(Part.fromText("Prompt détaillé ".repeat(50))))
+                        .finishReason(FinishReason.Known.STOP)
+                        .build()))
+                .build();
+        when(models.generateContent(anyString(), any(Content.class), any(GenerateContentConfig.class))).thenReturn(response);
+
+        geminiService = new GeminiService("benchmark-key", "gemini-benchmark", 700, 0.7f,
+                new PromptCache(1000, Duration.ofHours(1), "", 0), PromptTemplates.defaults(), TokenBucketRateLimiter.unlimited(),
+                GeminiCircuitBreaker.disabled(), new GeminiResilienceProperties(), new SimpleMeterRegistry(),
+                new TokenUsageTracker(new PromptProvidersProperties(), new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(geminiService, "modelsClient", models);
+
+        scenario = "Un chat explore une station spatiale abandonnée. ".repeat(scenarioLength / 40 + 1).substring(0, scenarioLength);
+    }
+
+    // Scénario toujours différent : chemin complet jusqu'au client Gemini
+    @Benchmark
+    public String promptCacheMiss() {
+        return geminiService.generateFormattedPrompt(scenario + sequence.incrementAndGet(), MediaType.VIDEO, TargetPlatform.TIKTOK).block();
+    }
+
+    // Même scénario : réponse servie par le cache, sans passage par le limiteur ni par boundedElastic
+    @Benchmark
+    public String promptCacheHit() {
+        return geminiService.generateFormattedPrompt(scenario, MediaType.VIDEO, TargetPlatform.TIKTOK).block();
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.mediagenerator.benchmark;
+
+import com.example.mediagenerator.model.CompressedTextConverter;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaRequestContent;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temps des requêtes chaudes de la table media_request (réclamation de la file GO, pages du tableau de bord,
+ * recherche des baux expirés, détection des doublons) sur une base H2 en mode fichier, avec et sans les index déclarés
+ * sur {@link MediaRequest}.
+ * <p>
+ * Le schéma est généré par Hibernate à partir des entités, puis les index sont supprimés pour la variante
+ * {@code indexed=false}. La base est remplie une seule fois par taille et réutilisée d'une exécution à l'autre
+ * (répertoire target/benchmark).
+ * <p>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args="IndexedQueryBenchmark -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexedQueryBenchmark {
+
+    private static final String[] INDEX_NAMES = {
+            "idx_media_request_status_creation", "idx_media_request_lane", "idx_media_request_creation_id", "idx_media_request_status_update",
+            "idx_media_request_status_lease", "idx_media_request_scenario_hash"
+    };
+    private static final int DUPLICATE_LOOKUPS = 1_024; // Scénarios existants cherchés par duplicateLookup
+    private static final int REAPER_BATCH_SIZE = 100; // media.queue.reaper-batch-size par défaut
+    private static final int INSERT_BATCH_SIZE = 5_000;
+    // Incrémentée à chaque changement du schéma ou des données générées : une base existante n'est pas réutilisée
+    private static final int DATA_VERSION = 3;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Connection connection;
+    private PreparedStatement queuePoll;
+    private PreparedStatement dashboardFirstPage;
+    private PreparedStatement dashboardSeek;
+    private PreparedStatement expiredLeases;
+    private PreparedStatement duplicateLookup;
+    private LocalDateTime oldest;
+    private Timestamp leaseCutoff;
+    private Object[][] duplicateKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        Path dir = Paths.get("target", "benchmark", "indexed-query-v" + DATA_VERSION + "-" + rows + "-" + indexed).toAbsolutePath();
+        // OPTIMIZE_REUSE_RESULTS=0 : sinon H2 renvoie le résultat précédent d'une requête identique sans l'exécuter
+        String url = "jdbc:h2:file:" + dir.resolve("db") + ";DB_CLOSE_ON_EXIT=FALSE;OPTIMIZE_REUSE_RESULTS=0";
+
+        createSchemaFromEntity(url);
+        connection = DriverManager.getConnection(url, "sa", "");
+        populateIfNeeded();
+        try (Statement statement = connection.createStatement()) {
+            for (String index : INDEX_NAMES) {
+                if (!indexed) {
+                    statement.execute("DROP INDEX IF EXISTS " + index);
+                }
+            }
+            statement.execute("ANALYZE");
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MIN(creation_date) FROM media_request")) {
+            rs.next();
+            oldest = rs.getTimestamp(1).toLocalDateTime();
+        }
+        // Échéance de référence de expiredLeases : une minute après le plus ancien bail, quelques demandes ont expiré
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MIN(lease_expires_at) FROM media_request")) {
+            rs.next();
+            leaseCutoff = Timestamp.valueOf(rs.getTimestamp(1).toLocalDateTime().plusMinutes(1));
+        }
+        duplicateKeys = new Object[DUPLICATE_LOOKUPS][];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < DUPLICATE_LOOKUPS; i++) {
+            int row = random.nextInt(1, rows + 1);
+            duplicateKeys[i] = new Object[]{MediaRequest.scenarioHash(scenario(row)), mediaType(row).name(), targetPlatform(row).name()};
+        }
+
+        // Même forme que MediaRequestRepository.findNextInLane
+        queuePoll = connection.prepareStatement("SELECT id, status FROM media_request WHERE status = ? AND target_platform = ? " +
+                "AND media_type = ? ORDER BY priority DESC, creation_date ASC, id ASC FETCH FIRST 10 ROWS ONLY");
+        // Même forme que findFirstSummaries / findSummariesBefore : colonnes courtes de media_request uniquement
+        String summary = "SELECT id, scenario_excerpt, selectedias, media_type, target_platform, status, creation_date, " +
+                "status_update_date, generated_media_path, error_message, prompt_available FROM media_request ";
+        dashboardFirstPage = connection.prepareStatement(summary + "ORDER BY creation_date DESC, id DESC FETCH FIRST 51 ROWS ONLY");
+        dashboardSeek = connection.prepareStatement(summary +
+                "WHERE creation_date <= ? AND (creation_date < ? OR id < ?) ORDER BY creation_date DESC, id DESC FETCH FIRST 51 ROWS ONLY");
+        // Même forme que findExpiredLeases (MediaRequestReaper), sans la jointure du contenu
+        expiredLeases = connection.prepareStatement("SELECT id, status, lease_owner FROM media_request " +
+                "WHERE status IN ('RUNNING', 'FORMATTING_PROMPT') AND lease_expires_at < ? " +
+                "ORDER BY lease_expires_at ASC FETCH FIRST " + REAPER_BATCH_SIZE + " ROWS ONLY");
+        // Même forme que findDuplicates (dédoublonnage à la soumission)
+        duplicateLookup = connection.prepareStatement("SELECT id, status FROM media_request WHERE scenario_hash = ? " +
+                "AND media_type = ? AND target_platform = ? AND (selectedias = ? OR (selectedias IS NULL AND ? IS NULL)) " +
+                "AND (status IN ('NOT_YET', 'GO', 'FORMATTING_PROMPT', 'PROMPT_GENERATED', 'RUNNING') " +
+                "OR (status = 'SUCCESS' AND status_update_date >= ?)) ORDER BY creation_date DESC, id DESC FETCH FIRST 1 ROWS ONLY");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    private static void createSchemaFromEntity(String url) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL, url)
+                .applySetting(AvailableSettings.JAKARTA_JDBC_USER, "sa")
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "update")
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, false) // Schéma seulement, sans les régions de HibernateCacheConfig
+                .build();
+        try (SessionFactory ignored = new MetadataSources(registry)
+                .addAnnotatedClass(MediaRequest.class).addAnnotatedClass(MediaRequestContent.class).buildMetadata().buildSessionFactory()) {
+            // La création de la SessionFactory suffit à créer (ou compléter) le schéma
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    // 1 % de demandes GO, 1 % en cours sous un bail d'échéance répartie sur l'heure qui suit, le reste réparti entre les
+    // autres statuts, sur un an d'historique. Une base incomplète est
+    // vidée puis remplie à nouveau, avec les identifiants 1..rows dans les deux tables ; les séquences reprennent après.
+    private void populateIfNeeded() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM media_request")) {
+            rs.next();
+            if (rs.getLong(1) >= rows) {
+                return;
+            }
+        }
+        connection.setAutoCommit(false);
+        RequestStatus[] others = {RequestStatus.SUCCESS, RequestStatus.FAIL, RequestStatus.NOT_YET, RequestStatus.PROMPT_GENERATED};
+        RequestStatus[] leased = {RequestStatus.RUNNING, RequestStatus.FORMATTING_PROMPT};
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime start = now.minusYears(1);
+        long stepMillis = Math.max(1, 365L * 24 * 3600 * 1000 / rows);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompressedTextConverter converter = new CompressedTextConverter();
+        try (Statement statement = connection.createStatement();
+             PreparedStatement insertContent = connection.prepareStatement(
+                     "INSERT INTO media_request_content (id, scenario, formatted_prompt) VALUES (?, ?, ?)");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO media_request (id, content_id, scenario_excerpt, scenario_hash, prompt_available, creation_date, " +
+                     "status_update_date, selectedias, media_type, target_platform, status, lease_owner, lease_expires_at) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            statement.execute("DELETE FROM media_request");
+            statement.execute("DELETE FROM media_request_content");
+            for (int i = 1; i <= rows; i++) {
+                LocalDateTime created = start.plusNanos(i * stepMillis * 1_000_000);
+                int draw = random.nextInt(100);
+                RequestStatus status = draw == 0 ? RequestStatus.GO
+                        : draw == 1 ? leased[random.nextInt(leased.length)] : others[random.nextInt(others.length)];
+                String scenario = scenario(i);
+                boolean promptAvailable = status == RequestStatus.PROMPT_GENERATED;
+                insertContent.setLong(1, i);
+                insertContent.setBytes(2, converter.convertToDatabaseColumn(scenario));
+                insertContent.setBytes(3, promptAvailable ? converter.convertToDatabaseColumn("Prompt détaillé ".repeat(100)) : null);
+                insertContent.addBatch();
+                insert.setLong(1, i);
+                insert.setLong(2, i);
+                insert.setString(3, scenario.substring(0, MediaRequest.SCENARIO_EXCERPT_LENGTH));
+                insert.setString(4, MediaRequest.scenarioHash(scenario));
+                insert.setBoolean(5, promptAvailable);
+                insert.setTimestamp(6, Timestamp.valueOf(created));
+                insert.setTimestamp(7, Timestamp.valueOf(created.plusMinutes(random.nextInt(60))));
+                insert.setString(8, "Gemini");
+                insert.setString(9, mediaType(i).name());
+                insert.setString(10, targetPlatform(i).name());
+                insert.setString(11, status.name());
+                insert.setString(12, draw == 1 ? "node-1" : null);
+                insert.setTimestamp(13, draw == 1 ? Timestamp.valueOf(now.plusSeconds(random.nextInt(3600))) : null);
+                insert.addBatch();
+                if (i % INSERT_BATCH_SIZE == 0) {
+                    insertContent.executeBatch(); // Les contenus d'abord : content_id les référence
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insertContent.executeBatch();
+            insert.executeBatch();
+            statement.execute("ALTER SEQUENCE media_request_content_seq RESTART WITH " + (rows + 1));
+            statement.execute("ALTER SEQUENCE media_request_seq RESTART WITH " + (rows + 1));
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static String scenario(int row) {
+        return "Scénario " + row + " : un chat explore une station spatiale abandonnée. ".repeat(10);
+    }
+
+    private static MediaType mediaType(int row) {
+        return MediaType.values()[row % MediaType.values().length];
+    }
+
+    private static TargetPlatform targetPlatform(int row) {
+        return TargetPlatform.values()[row % TargetPlatform.values().length];
+    }
+
+    @Benchmark
+    public void queuePoll(Blackhole blackhole) throws SQLException {
+        queuePoll.setString(1, RequestStatus.GO.name());
+        queuePoll.setString(2, TargetPlatform.TIKTOK.name());
+        queuePoll.setString(3, MediaType.VIDEO.name());
+        consume(queuePoll, blackhole);
+    }
+
+    @Benchmark
+    public void dashboardFirstPage(Blackhole blackhole) throws SQLException {
+        consume(dashboardFirstPage, blackhole);
+    }
+
+    // Page au milieu de l'historique : le curseur est tiré au hasard sur l'année de données
+    @Benchmark
+    public void dashboardSeek(Blackhole blackhole) throws SQLException {
+        Timestamp cursor = Timestamp.valueOf(oldest.plusMinutes(ThreadLocalRandom.current().nextLong(365L * 24 * 60)));
+        dashboardSeek.setTimestamp(1, cursor);
+        dashboardSeek.setTimestamp(2, cursor);
+        dashboardSeek.setLong(3, Long.MAX_VALUE);
+        consume(dashboardSeek, blackhole);
+    }
+
+    @Benchmark
+    public void expiredLeases(Blackhole blackhole) throws SQLException {
+        expiredLeases.setTimestamp(1, leaseCutoff);
+        consume(expiredLeases, blackhole);
+    }
+
+    // Soumission d'un scénario déjà présent, tiré parmi DUPLICATE_LOOKUPS
+    @Benchmark
+    public void duplicateLookup(Blackhole blackhole) throws SQLException {
+        Object[] key = duplicateKeys[ThreadLocalRandom.current().nextInt(DUPLICATE_LOOKUPS)];
+        duplicateLookup.setString(1, (String) key[0]);
+        duplicateLookup.setString(2, (String) key[1]);
+        duplicateLookup.setString(3, (String) key[2]);
+        duplicateLookup.setString(4, "Gemini");
+        duplicateLookup.setString(5, "Gemini");
+        duplicateLookup.setTimestamp(6, Timestamp.valueOf(LocalDateTime.now().minusHours(24)));
+        consume(duplicateLookup, blackhole);
+    }
+
+    private static void consume(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(rs.getLong(1));
+            }
+        }
+    }
+}
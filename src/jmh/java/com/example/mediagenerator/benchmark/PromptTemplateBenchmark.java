@@ -0,0 +1,91 @@
+package com.example.mediagenerator.benchmark;
+
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.PromptTemplate;
+import com.example.mediagenerator.service.PromptTemplates;
+import com.google.genai.types.GenerateContentConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Préparation d'un appel de formatage : message utilisateur construit par String.format (ancienne version de
+ * PromptProvider.userMessage) contre rendu d'un {@link PromptTemplate} analysé au démarrage, et
+ * GenerateContentConfig reconstruite à chaque appel contre configuration partagée.
+ * <p>
+ * Le profileur gc donne les octets alloués par opération (gc.alloc.rate.norm) :
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args="PromptTemplateBenchmark -f 1 -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptTemplateBenchmark {
+
+    private static final String LEGACY_FORMAT =
+            "Crée un prompt détaillé et optimisé pour une IA générative (images/vidéo) basé sur le scénario suivant. " +
+            "Le média à produire est de type '%s'. " +
+            "Le scénario est :\n\"%s\"\n\n" +
+            "Le prompt doit inclure des suggestions claires et exploitables pour les éléments suivants :\n" +
+            "- Personnages (apparence, expressions, actions clés).\n" +
+            "- Composition visuelle et cadrage (ex: gros plan, plan d'ensemble, angle de vue).\n" +
+            "- Ambiance et éclairage (ex: sombre et mystérieux, lumineux et joyeux, couleurs dominantes).\n" +
+            "- Style artistique (ex: photoréaliste, dessin animé, peinture à l'huile, cyberpunk, fantasy épique).\n" +
+            "- Éléments clés du décor et objets importants.\n" +
+            "Assure-toi que le prompt soit structuré de manière à être facilement interprétable par une IA, en utilisant des mots-clés pertinents et en évitant les ambiguïtés.";
+
+    @Param({"200", "5000"})
+    public int scenarioLength;
+
+    private PromptTemplate template;
+    private GenerateContentConfig sharedConfig;
+    private String scenario;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        template = PromptTemplates.defaults().get(MediaType.VIDEO, TargetPlatform.TIKTOK);
+        sharedConfig = buildConfig();
+        scenario = "Un chat explore une station spatiale abandonnée. ".repeat(scenarioLength / 40 + 1).substring(0, scenarioLength);
+        if (!legacyStringFormat().equals(templateRender())) {
+            throw new IllegalStateException("Template and String.format messages differ");
+        }
+    }
+
+    @Benchmark
+    public String legacyStringFormat() {
+        return String.format(LEGACY_FORMAT, MediaType.VIDEO.toString().toLowerCase(), scenario);
+    }
+
+    @Benchmark
+    public String templateRender() {
+        return template.render(scenario, MediaType.VIDEO, TargetPlatform.TIKTOK);
+    }
+
+    @Benchmark
+    public GenerateContentConfig configPerCall() {
+        return buildConfig();
+    }
+
+    @Benchmark
+    public GenerateContentConfig configShared() {
+        return sharedConfig;
+    }
+
+    private static GenerateContentConfig buildConfig() {
+        return GenerateContentConfig.builder().maxOutputTokens(700).temperature(0.7f).build();
+    }
+}
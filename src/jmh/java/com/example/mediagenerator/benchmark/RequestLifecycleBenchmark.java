@@ -0,0 +1,165 @@
+package com.example.mediagenerator.benchmark;
+
+import com.example.mediagenerator.MediaGeneratorApplication;
+import com.example.mediagenerator.dto.MediaRequestDto;
+import com.example.mediagenerator.dto.MediaRequestPageDto;
+import com.example.mediagenerator.model.CompressedTextConverter;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.MediaRequestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit des chemins chauds du cycle de vie d'une demande, à travers {@link MediaRequestService} et le contexte
+ * Spring complet (transactions, Hibernate, pool de connexions) sur une base H2 en mémoire :
+ * soumission, transitions de statut, pages du tableau de bord, pour plusieurs tailles de table.
+ * <p>
+ * Les logs applicatifs sont ramenés à WARN pour mesurer le service et la base, pas l'écriture des logs.
+ * <p>
+ * ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.args="RequestLifecycleBenchmark -f 1"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestLifecycleBenchmark {
+
+    private static final int INSERT_BATCH_SIZE = 5_000;
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    private ConfigurableApplicationContext context;
+    private MediaRequestService mediaRequestService;
+    private MediaRequestDto dto;
+    private long minId;
+    private long maxId;
+    private LocalDateTime middleCreationDate;
+    private long middleId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // spring-boot-devtools est sur le classpath de test : pas de redémarrage à chaud dans un classloader dédié
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // Arguments de ligne de commande : ils priment sur application.properties (show-sql, logs DEBUG)
+        context = new SpringApplicationBuilder(MediaGeneratorApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:lifecycle-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.h2.console.enabled=false",
+                        // Les demandes passées à GO doivent le rester : pas de répartition vers le pool pendant la mesure
+                        "--media.queue.dispatcher-enabled=false",
+                        "--media.dedup.enabled=false", // Le même scénario est soumis à chaque opération
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.springframework=WARN",
+                        "--logging.level.com.example.mediagenerator=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN");
+        mediaRequestService = context.getBean(MediaRequestService.class);
+
+        dto = new MediaRequestDto();
+        dto.setScenario("Un chat explore une station spatiale abandonnée. ".repeat(10));
+        dto.setSelectedIAs("Gemini");
+        dto.setMediaType(MediaType.VIDEO);
+        dto.setTargetPlatform(TargetPlatform.TIKTOK);
+
+        populate(context.getBean(JdbcTemplate.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // Toutes les lignes sont NOT_YET pour que les transitions s'appliquent quelle que soit la demande tirée.
+    // Identifiants explicites 1..tableSize (contenu i pour la demande i), puis les séquences sont repositionnées
+    // au-delà : avec l'optimiseur pooled, la valeur lue est la borne haute du bloc que Hibernate s'attribue.
+    private void populate(JdbcTemplate jdbcTemplate) {
+        CompressedTextConverter converter = new CompressedTextConverter();
+        List<Object[]> contents = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 1; i <= tableSize; i++) {
+            contents.add(new Object[]{i, converter.convertToDatabaseColumn(dto.getScenario() + i)});
+            if (contents.size() == INSERT_BATCH_SIZE || i == tableSize) {
+                jdbcTemplate.batchUpdate("INSERT INTO media_request_content (id, scenario) VALUES (?, ?)", contents);
+                contents.clear();
+            }
+        }
+
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 1; i <= tableSize; i++) {
+            Timestamp created = Timestamp.valueOf(start.plusSeconds(i));
+            String scenario = dto.getScenario() + i;
+            batch.add(new Object[]{i, created, created, i, scenario.substring(0, MediaRequest.SCENARIO_EXCERPT_LENGTH), "Gemini",
+                    MediaType.values()[i % MediaType.values().length].name(),
+                    TargetPlatform.values()[i % TargetPlatform.values().length].name(),
+                    RequestStatus.NOT_YET.name()});
+            if (batch.size() == INSERT_BATCH_SIZE || i == tableSize) {
+                jdbcTemplate.batchUpdate("INSERT INTO media_request (id, creation_date, status_update_date, content_id, scenario_excerpt, " +
+                        "selectedias, media_type, target_platform, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        long nextBlock = tableSize + MediaRequest.ID_ALLOCATION_SIZE;
+        jdbcTemplate.execute("ALTER SEQUENCE media_request_content_seq RESTART WITH " + nextBlock);
+        jdbcTemplate.execute("ALTER SEQUENCE media_request_seq RESTART WITH " + nextBlock);
+
+        minId = 1;
+        maxId = tableSize;
+        middleId = minId + tableSize / 2;
+        middleCreationDate = jdbcTemplate.queryForObject("SELECT creation_date FROM media_request WHERE id = ?",
+                Timestamp.class, middleId).toLocalDateTime();
+    }
+
+    @Benchmark
+    public MediaRequest submitNewRequest() {
+        return mediaRequestService.submitNewRequest(dto).request();
+    }
+
+    // Aller-retour NOT_YET -> GO -> NOT_YET : deux mises à jour conditionnelles sur une demande tirée au hasard
+    @Benchmark
+    public boolean statusTransitionRoundTrip() {
+        long id = ThreadLocalRandom.current().nextLong(minId, maxId + 1);
+        return mediaRequestService.setRequestStatusToGo(id)
+                && mediaRequestService.updateRequestStatus(id, RequestStatus.GO, RequestStatus.NOT_YET, null, null);
+    }
+
+    @Benchmark
+    public MediaRequestPageDto dashboardFirstPage() {
+        return mediaRequestService.getDashboardPage(null, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public MediaRequestPageDto dashboardMiddlePage() {
+        return mediaRequestService.getDashboardPage(middleCreationDate, middleId, PAGE_SIZE);
+    }
+}
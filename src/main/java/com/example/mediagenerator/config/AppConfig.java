@@ -1,15 +1,73 @@
 package com.example.mediagenerator.config;
 
+import com.example.mediagenerator.service.GeminiCircuitBreaker;
+import com.example.mediagenerator.service.TokenBucketRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
+@EnableScheduling // Battements de cœur et reprise des baux expirés (MediaRequestLeases, MediaRequestReaper)
+@EnableConfigurationProperties({MediaProcessingProperties.class, MediaQueueProperties.class, GeminiResilienceProperties.class,
+        PromptProvidersProperties.class, MediaImportProperties.class, MediaGenerationProperties.class, MediaDedupProperties.class,
+        MediaCacheProperties.class})
 public class AppConfig {
 
-    // The WebClient for OpenAI is no longer needed as Gemini uses its own SDK client.
-    // If other WebClient instances are needed in the future, they can be defined here.
+    private static final Logger log = LoggerFactory.getLogger(AppConfig.class);
+
+    // Gemini utilise son propre client (SDK). Les fournisseurs compatibles OpenAI sont créés par PromptProviderRouter
+    // à partir du WebClient.Builder configuré par Spring Boot et des propriétés prompt.openai-compatible[*].
+
+    /**
+     * Pool borné dédié à la génération des médias. La file bornée évite d'accumuler
+     * en mémoire plus de demandes réclamées que le pool ne peut en absorber.
+     */
+    @Bean(name = "mediaProcessingExecutor")
+    public ThreadPoolTaskExecutor mediaProcessingExecutor(MediaProcessingProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getPoolSize());
+        executor.setMaxPoolSize(properties.getPoolSize());
+        executor.setQueueCapacity(properties.getQueueCapacity());
+        executor.setThreadNamePrefix("media-worker-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        if (properties.isVirtualThreads() && Runtime.version().feature() >= 21) {
+            executor.setThreadFactory(new VirtualThreadTaskExecutor("media-worker-").getVirtualThreadFactory());
+            log.info("Media processing pool uses virtual threads (size={}, queue={})", properties.getPoolSize(), properties.getQueueCapacity());
+        } else {
+            log.info("Media processing pool uses platform threads (size={}, queue={})", properties.getPoolSize(), properties.getQueueCapacity());
+        }
+        return executor;
+    }
+
+    /**
+     * Limiteur partagé par tous les appels à Gemini (unitaires et par lot), pour rester sous le quota
+     * de l'API plutôt que de recevoir des erreurs 429. Un débit de 0 désactive la limitation.
+     */
+    @Bean
+    public TokenBucketRateLimiter geminiRateLimiter(@Value("${gemini.rate-limit.requests-per-second:0}") double requestsPerSecond,
+                                                    @Value("${gemini.rate-limit.burst:1}") int burst) {
+        log.info("Gemini client-side rate limit: {} request(s)/s, burst {}", requestsPerSecond, burst);
+        return new TokenBucketRateLimiter(requestsPerSecond, burst);
+    }
+
+    /**
+     * Disjoncteur partagé par tous les appels à Gemini : quand le service est dégradé, les appels échouent
+     * immédiatement au lieu d'occuper des threads jusqu'à leur délai maximal.
+     */
+    @Bean
+    public GeminiCircuitBreaker geminiCircuitBreaker(GeminiResilienceProperties properties) {
+        log.info("Gemini circuit breaker: opens after {} consecutive failure(s) for {}",
+                properties.getCircuitFailureThreshold(), properties.getCircuitOpenDuration());
+        return new GeminiCircuitBreaker(properties.getCircuitFailureThreshold(), properties.getCircuitOpenDuration());
+    }
 }
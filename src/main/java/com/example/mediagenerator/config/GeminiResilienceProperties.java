@@ -0,0 +1,36 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Délais, nouvelles tentatives, disjoncteur et cloisonnement (bulkhead) des appels à Gemini.
+ */
+@Data
+@ConfigurationProperties(prefix = "gemini.resilience")
+public class GeminiResilienceProperties {
+
+    // Délai maximal d'un appel (appel unitaire) ou d'attente d'un morceau (streaming), tentative par tentative
+    private Duration callTimeout = Duration.ofSeconds(20);
+
+    // Nombre total de tentatives pour un échec temporaire (1 = pas de nouvelle tentative)
+    private int maxAttempts = 3;
+
+    // Attente avant la première nouvelle tentative, doublée à chaque tentative jusqu'à maxBackoff
+    private Duration initialBackoff = Duration.ofMillis(500);
+    private Duration maxBackoff = Duration.ofSeconds(5);
+
+    // Part aléatoire de l'attente (0 à 1), pour éviter que les appels en échec ne réessaient tous en même temps
+    private double jitter = 0.5;
+
+    // Échecs consécutifs avant ouverture du disjoncteur (0 = disjoncteur désactivé)
+    private int circuitFailureThreshold = 5;
+
+    // Durée pendant laquelle le disjoncteur ouvert refuse les appels
+    private Duration circuitOpenDuration = Duration.ofSeconds(30);
+
+    // Appels à Gemini en cours au plus ; les suivants sont refusés (0 = pas de limite)
+    private int maxConcurrentCalls = 8;
+}
@@ -0,0 +1,125 @@
+package com.example.mediagenerator.config;
+
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.FactoryBuilder;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Cache de second niveau Hibernate, local à l'instance (JCache servi par Caffeine) : entité MediaRequest (lue par
+ * getRequestById) et pages du tableau de bord (cache de requêtes).
+ * <p>
+ * Invalidation : une demande modifiée par l'entité est mise à jour dans le cache ; une requête JPQL UPDATE de
+ * MediaRequestRepository (transitions de statut, baux) n'invalide que les demandes qu'elle vise
+ * ({@link MediaRequestCacheInvalidator}, {@link MediaRequestRegionFactory}) et périme les requêtes en cache sur
+ * media_request, à la fin de sa transaction. Une lecture ne sert donc jamais un statut dépassé, et les demandes
+ * terminées restent en cache pendant les transitions des autres. Les durées de vie (media.cache.*) limitent la
+ * mémoire et l'effet des écritures faites hors de l'application, requêtes SQL natives comprises.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(HibernateCacheConfig.class);
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "media.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public CacheManager hibernateCacheManager(MediaCacheProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+        // Gestionnaire propre à ce contexte Spring : deux contextes (tests) ne partagent pas leurs entrées
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("hibernate-" + UUID.randomUUID()), getClass().getClassLoader());
+
+        CaffeineConfiguration<Object, Object> requests = region(properties.getMaxRequests());
+        requests.setExpiryFactory(Optional.of(FactoryBuilder.factoryOf(
+                new MediaRequestCacheExpiry(properties.getActiveTtl(), properties.getTerminalTtl()))));
+        cacheManager.createCache(MediaRequest.CACHE_REGION, requests);
+        cacheManager.createCache(MediaRequest.SUMMARIES_CACHE_REGION, expiringRegion(properties.getMaxQueries(), properties.getQueryTtl()));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                expiringRegion(properties.getMaxQueries(), properties.getQueryTtl()));
+        // Dernière écriture de chaque table, qui périme les requêtes en cache : une entrée par table, sans expiration
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME, region(-1));
+
+        meterRegistry.ifAvailable(registry -> List.of(MediaRequest.CACHE_REGION, MediaRequest.SUMMARIES_CACHE_REGION)
+                .forEach(region -> JCacheMetrics.monitor(registry, cacheManager.getCache(region))));
+        log.info("Hibernate second-level cache: up to {} requests (TTL {} active, {} terminal), up to {} dashboard pages (TTL {})",
+                properties.getMaxRequests(), properties.getActiveTtl(), properties.getTerminalTtl(),
+                properties.getMaxQueries(), properties.getQueryTtl());
+        return cacheManager;
+    }
+
+    // Méthode statique : un BeanPostProcessor est créé avant les autres beans de la configuration
+    @Bean
+    @ConditionalOnProperty(prefix = "media.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public static BeanPostProcessor mediaRequestCacheInvalidation(ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        MediaRequestCacheInvalidator invalidator = new MediaRequestCacheInvalidator(entityManagerFactory);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                // Conseil ajouté au proxy du dépôt après celui des transactions : il s'exécute dans la transaction
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor((proxy, repository) -> {
+                        if (MediaRequestRepository.class.equals(repository.getRepositoryInterface())) {
+                            proxy.addAdvice(invalidator);
+                        }
+                    }));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(ObjectProvider<CacheManager> hibernateCacheManager) {
+        return hibernateProperties -> {
+            CacheManager cacheManager = hibernateCacheManager.getIfAvailable();
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheManager != null);
+            hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, cacheManager != null);
+            if (cacheManager != null) {
+                hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, new MediaRequestRegionFactory());
+                hibernateProperties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+                // Toutes les régions sont créées ci-dessus : une région inconnue est une erreur de configuration
+                hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            }
+        };
+    }
+
+    // Entrées conservées par référence : Hibernate ne modifie pas ce qu'il met en cache, une copie à chaque lecture
+    // et écriture (comportement JCache par défaut) est inutile. maxEntries < 0 : sans limite.
+    private static CaffeineConfiguration<Object, Object> region(long maxEntries) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        configuration.setMaximumSize(maxEntries >= 0 ? OptionalLong.of(maxEntries) : OptionalLong.empty());
+        return configuration;
+    }
+
+    private static CaffeineConfiguration<Object, Object> expiringRegion(long maxEntries, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = region(maxEntries);
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        return configuration;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Cache de second niveau Hibernate des demandes et des pages du tableau de bord (voir HibernateCacheConfig).
+ */
+@Data
+@ConfigurationProperties(prefix = "media.cache")
+public class MediaCacheProperties {
+
+    // false = toutes les lectures vont à la base
+    private boolean enabled = true;
+
+    // Demandes gardées en cache au plus
+    private long maxRequests = 10_000;
+
+    // Durée de vie d'une demande en cache selon son statut : une demande SUCCESS, FAIL ou DEAD_LETTER ne change plus
+    // en principe, les autres changent bientôt (l'entrée est alors invalidée, quelle que soit sa durée)
+    private Duration activeTtl = Duration.ofMinutes(1);
+    private Duration terminalTtl = Duration.ofHours(24);
+
+    // Pages du tableau de bord gardées en cache au plus, et leur durée de vie
+    private long maxQueries = 1_000;
+    private Duration queryTtl = Duration.ofMinutes(10);
+}
@@ -0,0 +1,25 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Dédoublonnage des demandes au même scénario (normalisé), au même type de média, à la même plateforme et aux
+ * mêmes IA : à la soumission, puis pendant le traitement.
+ */
+@Data
+@ConfigurationProperties(prefix = "media.dedup")
+public class MediaDedupProperties {
+
+    // Une soumission identique à une demande en cours (NOT_YET à RUNNING) ou réussie récemment retourne cette demande
+    private boolean enabled = true;
+
+    // Ancienneté maximale d'une demande SUCCESS pour qu'elle soit retournée à la place d'une nouvelle soumission
+    private Duration successWindow = Duration.ofHours(24);
+
+    // Formatages et générations identiques en cours sur cette instance : un seul appel, dont le résultat est appliqué
+    // à chaque demande en attente
+    private boolean coalesceInFlight = true;
+}
@@ -0,0 +1,30 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Génération des médias (étape RUNNING) : répertoire de stockage, servi sous /media/, et taille des médias produits
+ * par le générateur local (PlaceholderMediaGenerator).
+ */
+@Data
+@ConfigurationProperties(prefix = "media.generation")
+public class MediaGenerationProperties {
+
+    // Répertoire des médias générés, créé au besoin
+    private String storageDir = "generated-media";
+
+    // Dimensions des images produites, en pixels
+    private int frameWidth = 640;
+    private int frameHeight = 360;
+
+    // VIDEO : nombre d'images de l'animation (GIF) et durée d'affichage de chacune
+    private int videoFrames = 24;
+    private int videoFrameDelayMs = 125;
+
+    // IMAGES : nombre d'images de la séquence (archive ZIP de PNG)
+    private int imageCount = 4;
+
+    // COMIC : nombre de cases de la planche (PNG)
+    private int comicPanels = 4;
+}
@@ -0,0 +1,19 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Import en masse de demandes (JSON Lines ou CSV) : le fichier est lu au fil de l'eau et les demandes sont insérées
+ * par paquets, chaque paquet dans sa propre transaction.
+ */
+@Data
+@ConfigurationProperties(prefix = "media.import")
+public class MediaImportProperties {
+
+    // Nombre de demandes insérées par transaction ; de préférence un multiple de hibernate.jdbc.batch_size
+    private int chunkSize = 500;
+
+    // Nombre maximal de lignes rejetées détaillées dans le rapport (les suivantes sont seulement comptées)
+    private int maxReportedErrors = 100;
+}
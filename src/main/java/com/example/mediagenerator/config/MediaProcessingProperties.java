@@ -0,0 +1,21 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Paramètres du pool de workers qui exécute la génération des médias (statut GO -> RUNNING).
+ */
+@Data
+@ConfigurationProperties(prefix = "media.processing")
+public class MediaProcessingProperties {
+
+    // Nombre de workers exécutant des générations en parallèle
+    private int poolSize = 4;
+
+    // Nombre de demandes réclamées pouvant attendre un worker libre
+    private int queueCapacity = 100;
+
+    // Utilise des threads virtuels lorsque la JVM les supporte (JDK 21+)
+    private boolean virtualThreads = true;
+}
@@ -0,0 +1,59 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File des demandes : les demandes GO sont réparties en continu entre les workers, par voies de plateforme et de type.
+ * Les demandes en cours (RUNNING, FORMATTING_PROMPT) sont tenues par un bail, que l'instance prolonge tant qu'elle les
+ * traite ; après son expiration, une autre instance (ou la même au redémarrage) les reprend.
+ */
+@Data
+@ConfigurationProperties(prefix = "media.queue")
+public class MediaQueueProperties {
+
+    // Identifiant de l'instance dans la colonne lease_owner (vide = nom d'hôte suivi d'un suffixe aléatoire)
+    private String nodeId = "";
+
+    // Durée d'un bail ; il doit couvrir plusieurs battements de cœur
+    private Duration leaseDuration = Duration.ofSeconds(60);
+
+    // Intervalle de prolongation des baux détenus par l'instance
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    // Intervalle de recherche des baux expirés
+    private Duration reaperInterval = Duration.ofSeconds(30);
+
+    // Nombre de demandes reprises au plus par passage
+    private int reaperBatchSize = 100;
+
+    // Nombre de traitements interrompus au-delà duquel la demande passe à DEAD_LETTER
+    private int maxAttempts = 3;
+
+    // Répartition continue des demandes GO vers le pool de workers (MediaRequestDispatcher)
+    private boolean dispatcherEnabled = true;
+
+    // Intervalle entre deux passages tant qu'il y a des demandes à répartir
+    private Duration pollMinInterval = Duration.ofMillis(100);
+
+    // Intervalle maximal quand la file est vide, atteint en doublant l'intervalle à chaque passage sans demande
+    private Duration pollMaxInterval = Duration.ofSeconds(30);
+
+    // Voies de la file GO, par clé "<plateforme>-<type de média>" (ex. tiktok-video) ; une voie absente a les
+    // valeurs par défaut de Lane
+    private Map<String, Lane> lanes = new HashMap<>();
+
+    @Data
+    public static class Lane {
+
+        // Part des workers attribuée à la voie, relativement aux autres voies qui ont des demandes GO
+        private int weight = 1;
+
+        // Nombre maximal de demandes de la voie en RUNNING sur l'instance (0 = pas de plafond)
+        private int maxConcurrency = 0;
+    }
+}
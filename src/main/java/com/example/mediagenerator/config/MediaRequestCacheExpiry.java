@@ -0,0 +1,61 @@
+package com.example.mediagenerator.config;
+
+import com.example.mediagenerator.model.RequestStatus;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.hibernate.cache.spi.entry.CacheEntry;
+import org.hibernate.cache.spi.support.AbstractReadWriteAccess;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Durée de vie des entrées de la région media-request selon le statut de la demande : longue pour une demande qui
+ * ne change plus (SUCCESS, FAIL, DEAD_LETTER), courte sinon. La durée est recalculée à chaque remplacement de
+ * l'entrée ; une lecture ne la prolonge pas.
+ */
+final class MediaRequestCacheExpiry implements Expiry<Object, Object>, Serializable {
+
+    private static final Set<RequestStatus> TERMINAL_STATUSES = EnumSet.of(RequestStatus.SUCCESS, RequestStatus.FAIL, RequestStatus.DEAD_LETTER);
+
+    private final long activeTtlNanos;
+    private final long terminalTtlNanos;
+
+    MediaRequestCacheExpiry(Duration activeTtl, Duration terminalTtl) {
+        this.activeTtlNanos = activeTtl.toNanos();
+        this.terminalTtlNanos = terminalTtl.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+        return TERMINAL_STATUSES.contains(status(value)) ? terminalTtlNanos : activeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+        return expireAfterCreate(key, value, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * Statut d'une entrée : état désassemblé de l'entité (CacheEntry), enveloppé par la stratégie READ_WRITE. Le statut
+     * est le seul attribut de type RequestStatus ; une énumération est gardée telle quelle à la désassemblage.
+     * Null pour un verrou posé pendant une mise à jour.
+     */
+    static RequestStatus status(Object value) {
+        Object entry = value instanceof AbstractReadWriteAccess.Item item ? item.getValue() : value;
+        if (entry instanceof CacheEntry cacheEntry) {
+            for (Serializable property : cacheEntry.getDisassembledState()) {
+                if (property instanceof RequestStatus status) {
+                    return status;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.mediagenerator.config;
+
+import com.example.mediagenerator.model.MediaRequest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invalidation ciblée de la région media-request autour des requêtes JPQL UPDATE (@Modifying) de
+ * MediaRequestRepository : les demandes désignées par le paramètre id ou ids sont verrouillées dans le cache avant la
+ * requête et libérées à la fin de la transaction, validée ou annulée, comme Hibernate le fait pour une entité
+ * modifiée. Tant que le verrou est posé, leurs lectures vont en base sans remettre l'ancien état en cache ; les
+ * autres demandes restent en cache. Une méthode @Modifying sans ces paramètres vide toute la région.
+ */
+class MediaRequestCacheInvalidator implements MethodInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestCacheInvalidator.class);
+
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+
+    MediaRequestCacheInvalidator(ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        if (!method.isAnnotationPresent(Modifying.class)) {
+            return invocation.proceed();
+        }
+        EntityManagerFactory factory = entityManagerFactory.getObject();
+        Collection<?> ids = affectedIds(method, invocation.getArguments());
+        EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(factory);
+        if (ids == null || entityManager == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            log.debug("Evicting the whole {} cache region after {}", MediaRequest.CACHE_REGION, method.getName());
+            try {
+                return invocation.proceed();
+            } finally {
+                factory.getCache().evict(MediaRequest.class);
+            }
+        }
+
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(MediaRequest.class);
+        if (!persister.canWriteToCache()) {
+            return invocation.proceed();
+        }
+        EntityDataAccess cacheAccess = persister.getCacheAccessStrategy();
+        Map<Object, SoftLock> locks = new LinkedHashMap<>();
+        for (Object id : ids) {
+            Object key = cacheAccess.generateCacheKey(id, persister, session.getFactory(), session.getTenantIdentifier());
+            locks.put(key, cacheAccess.lockItem(session, key, null));
+        }
+        // Enregistrée avant la requête : un échec annule la transaction et libère tout de même les verrous
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                locks.forEach((key, lock) -> cacheAccess.unlockItem(session, key, lock));
+            }
+        });
+        return invocation.proceed();
+    }
+
+    // Valeur du paramètre @Param("id") ou @Param("ids"), null si la méthode n'en a pas
+    private static Collection<?> affectedIds(Method method, Object[] arguments) {
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            Param param = parameters[i].getAnnotation(Param.class);
+            if (param == null || arguments[i] == null) {
+                continue;
+            }
+            if ("id".equals(param.value())) {
+                return List.of(arguments[i]);
+            }
+            if ("ids".equals(param.value()) && arguments[i] instanceof Collection<?> ids) {
+                return ids;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.mediagenerator.config;
+
+import com.example.mediagenerator.model.MediaRequest;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.cfg.spi.EntityDataCachingConfig;
+import org.hibernate.cache.jcache.internal.JCacheDomainDataRegionImpl;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.DomainDataRegion;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cache.spi.support.EntityReadWriteAccess;
+
+/**
+ * Fabrique de régions JCache dont la région media-request n'est pas vidée à la fin d'une requête JPQL UPDATE :
+ * Hibernate y retire toutes les entités du type modifié, alors que chaque UPDATE de MediaRequestRepository ne vise
+ * que les demandes passées en paramètre, invalidées une à une par {@link MediaRequestCacheInvalidator}.
+ * L'éviction explicite (Cache.evict, evictAll) vide toujours la région.
+ */
+class MediaRequestRegionFactory extends JCacheRegionFactory {
+
+    @Override
+    public DomainDataRegion buildDomainDataRegion(DomainDataRegionConfig regionConfig, DomainDataRegionBuildingContext buildingContext) {
+        if (!MediaRequest.CACHE_REGION.equals(regionConfig.getRegionName())) {
+            return super.buildDomainDataRegion(regionConfig, buildingContext);
+        }
+        return new MediaRequestRegion(regionConfig, this, buildingContext);
+    }
+
+    private static class MediaRequestRegion extends JCacheDomainDataRegionImpl {
+
+        MediaRequestRegion(DomainDataRegionConfig regionConfig, MediaRequestRegionFactory regionFactory,
+                           DomainDataRegionBuildingContext buildingContext) {
+            super(regionConfig, regionFactory, regionFactory.createDomainDataStorageAccess(regionConfig, buildingContext),
+                    regionFactory.getImplicitCacheKeysFactory(), buildingContext);
+        }
+
+        @Override
+        protected EntityDataAccess generateReadWriteEntityAccess(EntityDataCachingConfig entityAccessConfig) {
+            return new EntityReadWriteAccess(this, getEffectiveKeysFactory(), getCacheStorageAccess(), entityAccessConfig) {
+                // Appelé uniquement à la fin d'une modification en masse (BulkOperationCleanupAction)
+                @Override
+                public void unlockRegion(SoftLock lock) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.mediagenerator.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.nio.file.Paths;
+
+/**
+ * Médias générés servis sous /media/ depuis media.generation.storage-dir (lien "Voir Média" du tableau de bord).
+ * Les requêtes partielles (Range) sont prises en charge, ce qui permet la lecture progressive des fichiers volumineux.
+ */
+@Configuration
+public class MediaStorageConfig implements WebMvcConfigurer {
+
+    private final MediaGenerationProperties properties;
+
+    public MediaStorageConfig(MediaGenerationProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        String location = Paths.get(properties.getStorageDir()).toAbsolutePath().normalize().toUri().toString();
+        registry.addResourceHandler("/media/**")
+                .addResourceLocations(location.endsWith("/") ? location : location + "/");
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.mediagenerator.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fournisseurs de prompts et choix du fournisseur d'une demande (champ selectedIAs).
+ */
+@Data
+@ConfigurationProperties(prefix = "prompt")
+public class PromptProvidersProperties {
+
+    // Fournisseur utilisé quand selectedIAs ne désigne aucun fournisseur configuré
+    private String defaultProvider = "Gemini";
+
+    private Hedging hedging = new Hedging();
+
+    private TokenBudget tokenBudget = new TokenBudget();
+
+    // Fournisseurs accessibles par une API compatible OpenAI (/chat/completions) : ChatGPT, Mistral...
+    private List<OpenAiCompatible> openaiCompatible = new ArrayList<>();
+
+    /**
+     * Requêtes doublées : si le premier fournisseur n'a pas répondu après le percentile de sa latence (ou a échoué),
+     * la demande est envoyée au fournisseur suivant ; la première réponse obtenue est retenue, l'autre appel annulé.
+     */
+    @Data
+    public static class Hedging {
+
+        private boolean enabled = false;
+
+        // Percentile de la latence du premier fournisseur après lequel la demande est doublée
+        private double percentile = 0.95;
+
+        // Délai utilisé tant que le premier fournisseur n'a pas assez de mesures de latence (voir LatencyTracker)
+        private Duration initialDelay = Duration.ofSeconds(5);
+
+        // Second fournisseur quand selectedIAs n'en désigne qu'un (vide = pas de requête doublée)
+        private String fallbackProvider = "";
+    }
+
+    /**
+     * Budget de jetons par minute de chaque modèle : les appels de formatage attendent que le budget le permette au
+     * lieu de dépasser le quota du fournisseur. Les jetons sont estimés avant l'appel, puis corrigés par l'usage réel.
+     */
+    @Data
+    public static class TokenBudget {
+
+        // Jetons (prompt + réponse) par minute et par modèle (0 = pas de limite)
+        private long tokensPerMinute = 0;
+
+        // Jetons utilisables d'un coup après une période calme (0 = un dixième du budget par minute) ; le reste du
+        // budget est rendu au fil de la minute, si bien qu'aucune fenêtre de 60 s ne dépasse tokensPerMinute
+        private long burstTokens = 0;
+
+        // Budget propre à certains modèles (nom du modèle -> jetons par minute), prioritaire sur tokensPerMinute
+        private Map<String, Long> models = new HashMap<>();
+
+        // Attente maximale du budget : au-delà, l'appel est refusé sans contacter le fournisseur (la demande passe à
+        // FAIL, ou la requête est doublée vers un autre fournisseur) plutôt que d'atteindre le délai du formatage
+        private Duration maxWait = Duration.ofSeconds(30);
+
+        // Durée de conservation des agrégats horaires d'usage par modèle, en mémoire
+        private Duration hourlyRetention = Duration.ofHours(48);
+    }
+
+    @Data
+    public static class OpenAiCompatible {
+
+        private String name;
+
+        // Autres noms reconnus dans selectedIAs
+        private List<String> aliases = new ArrayList<>();
+
+        private String baseUrl = "https://api.openai.com/v1";
+
+        // Sans clé, le fournisseur n'est pas activé
+        private String apiKey = "";
+
+        private String model;
+        private Integer maxTokens = 700;
+        private Double temperature = 0.7;
+        private Duration timeout = Duration.ofSeconds(20);
+    }
+}
@@ -1,21 +1,38 @@
 package com.example.mediagenerator.controller;
 
 import com.example.mediagenerator.dto.MediaRequestDto;
+import com.example.mediagenerator.dto.MediaRequestPageDto;
+import com.example.mediagenerator.dto.MediaRequestStatusEvent;
 import com.example.mediagenerator.model.MediaRequest;
 import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
+import com.example.mediagenerator.model.RequestStatus;
 import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.MediaRequestEvents;
 import com.example.mediagenerator.service.MediaRequestService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
 @Controller
 @RequiredArgsConstructor
@@ -23,26 +40,61 @@ import java.util.List;
 public class DashboardController {
 
     private final MediaRequestService mediaRequestService;
+    private final MediaRequestEvents mediaRequestEvents;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int STATUS_EVENTS_BUFFER = 256; // Évènements en attente par tableau de bord avant d'abandonner les plus anciens
+    private static final Duration STATUS_EVENTS_HEARTBEAT = Duration.ofSeconds(15);
 
     @GetMapping("/")
-    public String showDashboard(Model model) {
+    public String showDashboard(@RequestParam(name = "before", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime before,
+                                @RequestParam(name = "beforeId", required = false) Long beforeId,
+                                @RequestParam(name = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+                                Model model) {
         log.info("Accessing dashboard");
-        List<MediaRequest> requests = mediaRequestService.getAllRequests();
-        model.addAttribute("requests", requests);
+        MediaRequestPageDto page = mediaRequestService.getDashboardPage(before, beforeId, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        model.addAttribute("requests", page.getItems());
+        model.addAttribute("page", page);
+        model.addAttribute("pageSize", size);
+        model.addAttribute("firstPage", before == null);
         model.addAttribute("newRequestDto", new MediaRequestDto()); // Pour le formulaire
         model.addAttribute("mediaTypes", MediaType.values());
         model.addAttribute("targetPlatforms", TargetPlatform.values());
-        // Ajouter ici d'autres attributs si nécessaire pour le tri, la pagination etc.
+        model.addAttribute("priorities", RequestPriority.values());
         return "dashboard"; // Nom de la vue Thymeleaf
     }
 
+    // Texte complet d'une demande, chargé par le tableau de bord uniquement quand une ligne est dépliée
+    @GetMapping(value = "/request/{id}/content", produces = org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getRequestContent(@PathVariable("id") Long id) {
+        return mediaRequestService.getRequestWithContent(id)
+            .map(request -> {
+                Map<String, Object> content = new HashMap<>();
+                content.put("id", request.getId());
+                content.put("scenario", request.getScenario());
+                content.put("formattedPrompt", request.getFormattedPrompt());
+                content.put("errorMessage", request.getErrorMessage());
+                return ResponseEntity.ok(content);
+            })
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/request/submit")
     public String handleSubmitNewRequest(@ModelAttribute("newRequestDto") MediaRequestDto dto, RedirectAttributes redirectAttributes) {
         log.info("Submitting new request: {}", dto);
         try {
-            MediaRequest savedRequest = mediaRequestService.submitNewRequest(dto);
-            log.info("New request submitted successfully with ID: {}", savedRequest.getId());
-            redirectAttributes.addFlashAttribute("successMessage", "Nouvelle demande soumise avec succès ! ID: " + savedRequest.getId());
+            MediaRequestService.Submission submission = mediaRequestService.submitNewRequest(dto);
+            MediaRequest savedRequest = submission.request();
+            if (submission.duplicate()) {
+                log.info("Identical request already exists with ID: {}", savedRequest.getId());
+                redirectAttributes.addFlashAttribute("successMessage", "Demande identique déjà en cours ou réalisée récemment : ID "
+                        + savedRequest.getId() + " (" + savedRequest.getStatus() + ")");
+            } else {
+                log.info("New request submitted successfully with ID: {}", savedRequest.getId());
+                redirectAttributes.addFlashAttribute("successMessage", "Nouvelle demande soumise avec succès ! ID: " + savedRequest.getId());
+            }
         } catch (Exception e) {
             log.error("Error submitting new request", e);
             redirectAttributes.addFlashAttribute("errorMessage", "Erreur lors de la soumission de la demande : " + e.getMessage());
@@ -53,27 +105,53 @@ public class DashboardController {
     @PostMapping("/request/{id}/go")
     public String setRequestStatusToGo(@PathVariable("id") Long id, RedirectAttributes redirectAttributes) {
         log.info("Attempting to set request status to GO for ID: {}", id);
-        mediaRequestService.setRequestStatusToGo(id)
-            .ifPresentOrElse(
-                request -> {
-                    log.info("Request ID {} status set to GO.", id);
-                    redirectAttributes.addFlashAttribute("successMessage", "Demande ID " + id + " passée à GO !");
-                },
-                () -> {
-                    log.warn("Failed to set request ID {} to GO. It might not exist or not be in NOT_YET state.", id);
-                    redirectAttributes.addFlashAttribute("errorMessage", "Impossible de passer la demande ID " + id + " à GO. Vérifiez son statut ou son existence.");
-                }
-            );
+        if (mediaRequestService.setRequestStatusToGo(id)) {
+            log.info("Request ID {} status set to GO.", id);
+            redirectAttributes.addFlashAttribute("successMessage", "Demande ID " + id + " passée à GO !");
+        } else {
+            log.warn("Failed to set request ID {} to GO. It might not exist or not be in NOT_YET state.", id);
+            redirectAttributes.addFlashAttribute("errorMessage", "Impossible de passer la demande ID " + id + " à GO. Vérifiez son statut ou son existence.");
+        }
         return "redirect:/";
     }
 
+    // Variante JSON du passage à GO : la ligne est mise à jour par l'évènement de changement de statut, sans rechargement
+    @PostMapping(value = "/request/{id}/go", produces = org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> setRequestStatusToGoAsync(@PathVariable("id") Long id) {
+        log.info("Attempting to set request status to GO asynchronously for ID: {}", id);
+        if (mediaRequestService.setRequestStatusToGo(id)) {
+            return ResponseEntity.ok(Map.of("id", id, "status", RequestStatus.GO));
+        }
+        HttpStatus status = mediaRequestService.getRequestById(id).isPresent() ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND;
+        return ResponseEntity.status(status).body(Map.of("id", id, "error", "Demande introuvable ou dans un statut non éligible au passage à GO."));
+    }
+
+    /**
+     * Changements de statut des demandes en Server-Sent Events (évènement "status"), pour mettre à jour les lignes du
+     * tableau de bord sans le recharger. Un commentaire est envoyé régulièrement pour détecter les clients partis.
+     */
+    @GetMapping(value = "/requests/events", produces = org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<MediaRequestStatusEvent>> streamStatusChanges() {
+        log.debug("Opening status change stream");
+        Flux<ServerSentEvent<MediaRequestStatusEvent>> statusChanges = mediaRequestEvents.statusChanges()
+                .onBackpressureBuffer(STATUS_EVENTS_BUFFER, dropped -> log.debug("Status event for request ID {} dropped for a slow client", dropped.getId()),
+                        BufferOverflowStrategy.DROP_OLDEST)
+                .map(event -> ServerSentEvent.builder(event).event("status").build());
+        Flux<ServerSentEvent<MediaRequestStatusEvent>> heartbeats = Flux.interval(STATUS_EVENTS_HEARTBEAT)
+                .map(tick -> ServerSentEvent.<MediaRequestStatusEvent>builder().comment("heartbeat").build());
+        return Flux.merge(statusChanges, heartbeats);
+    }
+
     // Endpoint pour déclencher manuellement le traitement (pour démo/test)
     @PostMapping("/requests/process")
     public String triggerProcessing(RedirectAttributes redirectAttributes) {
         log.info("Manually triggering processing of pending media requests.");
         try {
-            mediaRequestService.processPendingMediaRequests(); // Nom de méthode mis à jour
-            redirectAttributes.addFlashAttribute("successMessage", "Traitement des demandes de média en attente déclenché.");
+            // Les demandes sont confiées au pool de workers : la réponse n'attend pas la fin de la génération
+            int dispatched = mediaRequestService.processPendingMediaRequests();
+            redirectAttributes.addFlashAttribute("successMessage", "Traitement des demandes de média en attente déclenché (" + dispatched + " demande(s) en cours).");
         } catch (Exception e) {
             log.error("Error during manual media processing trigger", e);
             redirectAttributes.addFlashAttribute("errorMessage", "Erreur lors du déclenchement manuel du traitement des médias : " + e.getMessage());
@@ -85,25 +163,16 @@ public class DashboardController {
     public String formatRequestToPrompt(@PathVariable("id") Long id, RedirectAttributes redirectAttributes) {
         log.info("Attempting to format prompt for request ID: {}", id);
         try {
-            mediaRequestService.formatRequestToPrompt(id)
+            // Le formatage s'exécute en arrière-plan : la page affichera PROMPT_GENERATED ou FAIL une fois terminé
+            mediaRequestService.startPromptFormatting(id)
                 .ifPresentOrElse(
                     request -> {
-                        if (request.getStatus() == com.example.mediagenerator.model.RequestStatus.PROMPT_GENERATED) {
-                            log.info("Prompt formatting successful for request ID {}.", id);
-                            redirectAttributes.addFlashAttribute("successMessage", "Prompt formaté avec succès pour la demande ID " + id + ".");
-                        } else if (request.getStatus() == com.example.mediagenerator.model.RequestStatus.FAIL) {
-                             log.warn("Prompt formatting failed for request ID {}. Error: {}", id, request.getErrorMessage());
-                            redirectAttributes.addFlashAttribute("errorMessage", "Échec du formatage du prompt pour la demande ID " + id + ": " + request.getErrorMessage());
-                        } else {
-                            // Cas où le service retourne une entité mais le statut n'est ni PROMPT_GENERATED ni FAIL
-                            // (par exemple, si la demande n'était pas dans un statut éligible au départ)
-                            log.warn("Prompt formatting for request ID {} did not result in PROMPT_GENERATED or FAIL. Current status: {}", id, request.getStatus());
-                            redirectAttributes.addFlashAttribute("infoMessage", "L'action de formatage du prompt pour la demande ID " + id + " n'a pas pu être complétée comme prévu (statut actuel: " + request.getStatus() + ").");
-                        }
+                        log.info("Prompt formatting started for request ID {}.", id);
+                        redirectAttributes.addFlashAttribute("infoMessage", "Formatage du prompt lancé pour la demande ID " + id + ".");
                     },
                     () -> {
                         // Cas où le service retourne Optional.empty()
-                        log.warn("Failed to process prompt formatting for request ID {}. It might not exist or not be in an eligible state.", id);
+                        log.warn("Failed to start prompt formatting for request ID {}. It might not exist or not be in an eligible state.", id);
                         redirectAttributes.addFlashAttribute("errorMessage", "Impossible de formater le prompt pour la demande ID " + id + ". Vérifiez son statut ou son existence.");
                     }
                 );
@@ -113,4 +182,46 @@ public class DashboardController {
         }
         return "redirect:/";
     }
+
+    // Variante JSON : répond 202 Accepted dès que la demande est passée à FORMATTING_PROMPT
+    @PostMapping(value = "/request/{id}/format-prompt", produces = org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> formatRequestToPromptAsync(@PathVariable("id") Long id) {
+        log.info("Attempting to format prompt asynchronously for request ID: {}", id);
+        return mediaRequestService.startPromptFormatting(id)
+            .map(request -> ResponseEntity.accepted().body(Map.<String, Object>of("id", id, "status", RequestStatus.FORMATTING_PROMPT)))
+            .orElseGet(() -> {
+                HttpStatus status = mediaRequestService.getRequestById(id).isPresent() ? HttpStatus.CONFLICT : HttpStatus.NOT_FOUND;
+                return ResponseEntity.status(status).body(Map.of("id", id, "error", "Demande introuvable ou dans un statut non éligible au formatage."));
+            });
+    }
+
+    /**
+     * Prompt en cours de génération, en Server-Sent Events : un évènement "chunk" par morceau reçu de Gemini, puis un
+     * évènement "done" portant le statut final (et le message d'erreur éventuel) de la demande.
+     */
+    @GetMapping(value = "/request/{id}/prompt-stream", produces = org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public Flux<ServerSentEvent<Object>> streamPrompt(@PathVariable("id") Long id) {
+        log.info("Opening prompt stream for request ID: {}", id);
+        MediaRequestService.PromptStream stream = mediaRequestService.getPromptStream(id);
+        return stream.chunks()
+                .map(chunk -> ServerSentEvent.<Object>builder(chunk).event("chunk").build())
+                .onErrorResume(error -> Flux.empty()) // L'erreur est portée par l'évènement "done"
+                .concatWith(stream.result()
+                        .map(request -> {
+                            Map<String, Object> done = new HashMap<>();
+                            done.put("id", id);
+                            done.put("status", request.getStatus());
+                            done.put("errorMessage", request.getErrorMessage());
+                            return ServerSentEvent.<Object>builder(done).event("done").build();
+                        })
+                        .switchIfEmpty(Mono.fromSupplier(() -> ServerSentEvent.<Object>builder(Map.of("id", id, "error", "Demande introuvable."))
+                                .event("done").build()))
+                        .onErrorResume(error -> {
+                            log.error("Prompt stream for request ID {} ended with an error", id, error);
+                            return Mono.just(ServerSentEvent.<Object>builder(Map.of("id", id, "error", "Erreur lors de l'enregistrement du prompt."))
+                                    .event("done").build());
+                        }));
+    }
 }
@@ -0,0 +1,35 @@
+package com.example.mediagenerator.controller;
+
+import com.example.mediagenerator.dto.PromptBatchRequestDto;
+import com.example.mediagenerator.dto.PromptBatchResultDto;
+import com.example.mediagenerator.service.PromptBatchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class PromptBatchController {
+
+    private final PromptBatchService promptBatchService;
+
+    // Le Mono est traité en mode asynchrone par Spring MVC : aucun thread de servlet n'attend la fin du lot
+    @PostMapping("/requests/format-prompts")
+    public Mono<PromptBatchResultDto> formatPrompts(@RequestBody PromptBatchRequestDto dto) {
+        if (dto.isAll()) {
+            log.info("Batch prompt formatting requested for all NOT_YET/GO requests");
+            return promptBatchService.formatAllPending();
+        }
+        if (dto.getIds() == null || dto.getIds().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Indiquer des identifiants ou all=true.");
+        }
+        log.info("Batch prompt formatting requested for {} request(s)", dto.getIds().size());
+        return promptBatchService.formatPrompts(dto.getIds());
+    }
+}
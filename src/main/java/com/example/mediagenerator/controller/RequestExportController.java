@@ -0,0 +1,60 @@
+package com.example.mediagenerator.controller;
+
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.service.MediaRequestExportService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class RequestExportController {
+
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final MediaRequestExportService mediaRequestExportService;
+
+    // Le corps est écrit par un thread du pool asynchrone de Spring MVC, au fil de la lecture en base :
+    // ni la réponse ni la table ne sont chargées en mémoire. gzip=true produit un fichier .gz à télécharger.
+    @GetMapping("/requests/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(value = "format", defaultValue = "jsonl") String format,
+                                                        @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                                                        @RequestParam(value = "status", required = false) List<RequestStatus> statuses) {
+        RequestFileFormat fileFormat = RequestFileFormat.detect(format, null, null);
+        if (fileFormat == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Format non reconnu : indiquer format=jsonl ou format=csv.");
+        }
+        String filename = "media-requests-" + LocalDateTime.now().format(FILE_DATE) + "." + fileFormat.getExtension() + (gzip ? ".gz" : "");
+        log.info("Export requested: {} (statuses: {})", filename, statuses == null || statuses.isEmpty() ? "all" : statuses);
+
+        StreamingResponseBody body = output -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+                mediaRequestExportService.export(compressed, fileFormat, statuses);
+                compressed.finish(); // Le flux de la réponse est fermé par Spring MVC
+            } else {
+                mediaRequestExportService.export(output, fileFormat, statuses);
+            }
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, gzip ? "application/gzip" : fileFormat.getContentType() + ";charset=UTF-8")
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(body);
+    }
+}
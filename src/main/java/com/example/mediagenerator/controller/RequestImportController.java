@@ -0,0 +1,63 @@
+package com.example.mediagenerator.controller;
+
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.dto.RequestImportResultDto;
+import com.example.mediagenerator.service.MediaRequestImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class RequestImportController {
+
+    private static final String UNKNOWN_FORMAT = "Format non reconnu : indiquer format=jsonl ou format=csv.";
+
+    private final MediaRequestImportService mediaRequestImportService;
+
+    // Fichier envoyé depuis un formulaire (champ "file") ; au-delà du seuil de Spring, il est lu depuis le disque
+    @PostMapping(value = "/requests/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public RequestImportResultDto importFile(@RequestPart("file") MultipartFile file,
+                                             @RequestParam(value = "format", required = false) String format) throws IOException {
+        RequestFileFormat detected = RequestFileFormat.detect(format, file.getContentType(), file.getOriginalFilename());
+        if (detected == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, UNKNOWN_FORMAT);
+        }
+        log.info("Bulk import requested from file {} ({} bytes, {})", file.getOriginalFilename(), file.getSize(), detected);
+        try (InputStream input = file.getInputStream()) {
+            return importRequests(input, detected);
+        }
+    }
+
+    // Corps brut (curl --data-binary @demandes.jsonl -H "Content-Type: application/x-ndjson") : lu au fil de la réception
+    @PostMapping(value = "/requests/import", consumes = {"application/x-ndjson", "application/jsonl", "application/json-lines", "text/csv"})
+    public RequestImportResultDto importBody(HttpServletRequest request,
+                                             @RequestParam(value = "format", required = false) String format) throws IOException {
+        RequestFileFormat detected = RequestFileFormat.detect(format, request.getContentType(), null);
+        if (detected == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, UNKNOWN_FORMAT);
+        }
+        log.info("Bulk import requested from request body ({})", detected);
+        return importRequests(request.getInputStream(), detected);
+    }
+
+    private RequestImportResultDto importRequests(InputStream input, RequestFileFormat format) {
+        try {
+            return mediaRequestImportService.importRequests(input, format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
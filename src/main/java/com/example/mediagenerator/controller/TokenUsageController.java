@@ -0,0 +1,22 @@
+package com.example.mediagenerator.controller;
+
+import com.example.mediagenerator.dto.TokenUsageHourDto;
+import com.example.mediagenerator.service.TokenUsageTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class TokenUsageController {
+
+    private final TokenUsageTracker tokenUsageTracker;
+
+    // Jetons consommés par modèle et par heure sur cette instance (agrégats en mémoire, voir prompt.token-budget.*)
+    @GetMapping("/token-usage")
+    public List<TokenUsageHourDto> hourlyUsage() {
+        return tokenUsageTracker.hourlyUsage();
+    }
+}
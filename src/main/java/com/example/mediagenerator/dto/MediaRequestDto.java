@@ -1,6 +1,7 @@
 package com.example.mediagenerator.dto;
 
 import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
 import com.example.mediagenerator.model.TargetPlatform;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,6 +14,7 @@ public class MediaRequestDto {
     private String selectedIAs; // Peut être une chaîne d'IA séparées par des virgules
     private MediaType mediaType;
     private TargetPlatform targetPlatform;
+    private RequestPriority priority = RequestPriority.NORMAL; // Urgence dans la file GO
 
     // Pas besoin d'ID, statut, dates, etc., car c'est pour la création.
     // Des validateurs (par exemple @NotEmpty, @NotNull) pourraient être ajoutés ici.
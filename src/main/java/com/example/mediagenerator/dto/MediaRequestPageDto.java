@@ -0,0 +1,23 @@
+package com.example.mediagenerator.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Page du tableau de bord en pagination par clé (keyset) : la page suivante commence après
+ * le couple (creationDate, id) de la dernière ligne, sans OFFSET.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaRequestPageDto {
+
+    private List<MediaRequestSummary> items;
+    private boolean hasNext;
+    private LocalDateTime nextCreationDate; // Curseur de la page suivante, null s'il n'y en a pas
+    private Long nextId;
+}
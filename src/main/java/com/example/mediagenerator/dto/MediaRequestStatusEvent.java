@@ -0,0 +1,29 @@
+package com.example.mediagenerator.dto;
+
+import com.example.mediagenerator.model.RequestStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Changement de statut d'une demande, poussé aux tableaux de bord ouverts : seule la ligne concernée est mise à jour.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaRequestStatusEvent {
+
+    private Long id;
+    private RequestStatus status;
+    private LocalDateTime statusUpdateDate;
+    private String errorMessage; // Renseigné pour FAIL
+    private String generatedMediaPath; // Renseigné pour SUCCESS
+    private Integer progress; // Avancement de la génération en pourcentage, pendant RUNNING ; null sinon
+
+    public MediaRequestStatusEvent(Long id, RequestStatus status, LocalDateTime statusUpdateDate,
+                                   String errorMessage, String generatedMediaPath) {
+        this(id, status, statusUpdateDate, errorMessage, generatedMediaPath, null);
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.mediagenerator.dto;
+
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection légère d'une demande pour le tableau de bord : seules les colonnes courtes de media_request sont lues,
+ * dont un extrait du scénario. Le texte complet (media_request_content) est chargé à la demande.
+ */
+public interface MediaRequestSummary {
+
+    int SCENARIO_EXCERPT_LENGTH = MediaRequest.SCENARIO_EXCERPT_LENGTH;
+
+    Long getId();
+    String getScenarioExcerpt();
+    String getSelectedIAs();
+    MediaType getMediaType();
+    TargetPlatform getTargetPlatform();
+    RequestStatus getStatus();
+    LocalDateTime getCreationDate();
+    LocalDateTime getStatusUpdateDate();
+    String getGeneratedMediaPath();
+    String getErrorMessage();
+    Boolean getPromptAvailable(); // Vrai si un prompt formaté est enregistré
+}
@@ -0,0 +1,14 @@
+package com.example.mediagenerator.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class PromptBatchRequestDto {
+
+    private List<Long> ids; // Demandes à formater
+    private boolean all;    // Si vrai, formate toutes les demandes NOT_YET et GO (ids est alors ignoré)
+}
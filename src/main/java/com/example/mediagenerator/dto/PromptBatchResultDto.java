@@ -0,0 +1,43 @@
+package com.example.mediagenerator.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PromptBatchResultDto {
+
+    public enum Outcome {
+        PROMPT_GENERATED, // Prompt généré et enregistré
+        FAIL,             // Gemini a échoué, la demande est passée à FAIL
+        SKIPPED           // Demande introuvable ou dans un statut non éligible
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Long id;
+        private Outcome outcome;
+        private String message;
+        private long durationMs;
+    }
+
+    private List<Item> items;
+    private long succeeded;
+    private long failed;
+    private long skipped;
+    private long wallTimeMs; // Durée totale du lot, de la réception à la dernière réponse
+
+    public static PromptBatchResultDto of(List<Item> items, long wallTimeMs) {
+        return new PromptBatchResultDto(items,
+                items.stream().filter(i -> i.getOutcome() == Outcome.PROMPT_GENERATED).count(),
+                items.stream().filter(i -> i.getOutcome() == Outcome.FAIL).count(),
+                items.stream().filter(i -> i.getOutcome() == Outcome.SKIPPED).count(),
+                wallTimeMs);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.mediagenerator.dto;
+
+import java.util.Locale;
+
+/**
+ * Formats de fichier de l'import et de l'export des demandes. Un fichier exporté peut être réimporté tel quel :
+ * les colonnes (ou champs) inconnues de l'import sont ignorées.
+ */
+public enum RequestFileFormat {
+    JSONL("application/x-ndjson", "jsonl"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    RequestFileFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Format indiqué explicitement ({@code format=jsonl|csv}), sinon déduit du type de contenu puis de l'extension
+     * du fichier ; null si aucun ne permet de conclure.
+     */
+    public static RequestFileFormat detect(String format, String contentType, String filename) {
+        if (format != null && !format.isBlank()) {
+            return switch (format.trim().toLowerCase(Locale.ROOT)) {
+                case "jsonl", "ndjson" -> JSONL;
+                case "csv" -> CSV;
+                default -> null;
+            };
+        }
+        String type = contentType != null ? contentType.toLowerCase(Locale.ROOT) : "";
+        if (type.startsWith("text/csv")) {
+            return CSV;
+        }
+        if (type.startsWith("application/x-ndjson") || type.startsWith("application/jsonl")
+                || type.startsWith("application/json-lines")) {
+            return JSONL;
+        }
+        String name = filename != null ? filename.toLowerCase(Locale.ROOT) : "";
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSONL;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.mediagenerator.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class RequestImportResultDto {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Error {
+        private long line; // Ligne du fichier où commence l'enregistrement rejeté
+        private String message;
+    }
+
+    private long imported;
+    private long rejected;
+    private int chunks; // Nombre de transactions validées
+    private List<Error> errors = new ArrayList<>();
+    private boolean errorsTruncated; // Vrai si des lignes rejetées ne figurent pas dans errors
+    private long wallTimeMs;
+}
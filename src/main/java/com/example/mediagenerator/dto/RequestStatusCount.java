@@ -0,0 +1,12 @@
+package com.example.mediagenerator.dto;
+
+import com.example.mediagenerator.model.RequestStatus;
+
+/**
+ * Nombre de demandes dans un statut donné (agrégat pour les métriques).
+ */
+public interface RequestStatusCount {
+
+    RequestStatus getStatus();
+    Long getCount();
+}
@@ -0,0 +1,23 @@
+package com.example.mediagenerator.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Jetons consommés par un modèle pendant une heure, sur cette instance.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenUsageHourDto {
+
+    private String model;
+    private LocalDateTime hour; // Début de l'heure
+    private long calls;         // Appels ayant rapporté leur usage
+    private long promptTokens;
+    private long candidatesTokens;
+    private long totalTokens;
+}
@@ -0,0 +1,118 @@
+package com.example.mediagenerator.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stockage des textes longs (scénario, prompt) : UTF-8, compressé en DEFLATE au-delà d'une longueur minimale
+ * lorsque la compression réduit effectivement la taille. Le premier octet indique le format, la lecture ne dépend
+ * donc pas de la configuration en vigueur lors de l'écriture.
+ * <p>
+ * Instancié par Hibernate à travers le conteneur de beans Spring (paramètres media.content.compression.*),
+ * ou avec les valeurs par défaut hors contexte Spring.
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+    private static final byte PLAIN = 0;
+    private static final byte DEFLATE = 1;
+    private static final int DEFAULT_MIN_LENGTH = 512;
+
+    private final boolean enabled;
+    private final int minLength;
+
+    public CompressedTextConverter() {
+        this(true, DEFAULT_MIN_LENGTH);
+    }
+
+    @Autowired
+    public CompressedTextConverter(@Value("${media.content.compression.enabled:true}") boolean enabled,
+                                   @Value("${media.content.compression.min-length:" + DEFAULT_MIN_LENGTH + "}") int minLength) {
+        this.enabled = enabled;
+        this.minLength = minLength;
+    }
+
+    @Override
+    public byte[] convertToDatabaseColumn(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        if (enabled && utf8.length >= minLength) {
+            byte[] compressed = deflate(utf8);
+            if (compressed.length < utf8.length) {
+                return withHeader(DEFLATE, compressed, compressed.length);
+            }
+        }
+        return withHeader(PLAIN, utf8, utf8.length);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        if (stored.length == 0) {
+            return "";
+        }
+        byte[] payload = Arrays.copyOfRange(stored, 1, stored.length);
+        return switch (stored[0]) {
+            case PLAIN -> new String(payload, StandardCharsets.UTF_8);
+            case DEFLATE -> new String(inflate(payload), StandardCharsets.UTF_8);
+            default -> throw new IllegalStateException("Unknown stored text format: " + stored[0]);
+        };
+    }
+
+    private static byte[] withHeader(byte format, byte[] payload, int length) {
+        byte[] stored = new byte[length + 1];
+        stored[0] = format;
+        System.arraycopy(payload, 0, stored, 1, length);
+        return stored;
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed text");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted compressed text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
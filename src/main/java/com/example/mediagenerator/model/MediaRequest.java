@@ -2,25 +2,88 @@ package com.example.mediagenerator.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
 
 @Entity
+@Table(name = "media_request", indexes = {
+        // Demandes par statut, des plus anciennes aux plus récentes (demandes à formater, export)
+        @Index(name = "idx_media_request_status_creation", columnList = "status, creation_date, id"),
+        // Réclamation des GO voie par voie : WHERE status = ? AND target_platform = ? AND media_type = ?
+        // ORDER BY priority DESC, creation_date, id (voir MediaRequestRepository.findNextInLane)
+        @Index(name = "idx_media_request_lane", columnList = "status, target_platform, media_type, priority DESC, creation_date, id"),
+        // Tableau de bord : pagination par clé ORDER BY creation_date DESC, id DESC
+        @Index(name = "idx_media_request_creation_id", columnList = "creation_date DESC, id DESC"),
+        // Tri par date de dernière mise à jour du statut
+        @Index(name = "idx_media_request_status_update", columnList = "status_update_date DESC"),
+        // Récupération des baux expirés : WHERE status IN (RUNNING, FORMATTING_PROMPT) AND lease_expires_at < ?
+        @Index(name = "idx_media_request_status_lease", columnList = "status, lease_expires_at"),
+        // Détection des doublons : WHERE scenario_hash = ? AND status ... (voir MediaRequestRepository.findDuplicates)
+        @Index(name = "idx_media_request_scenario_hash", columnList = "scenario_hash, status")
+})
+// Cache de second niveau (voir HibernateCacheConfig) : une transition de statut par requête JPQL n'invalide que les
+// demandes qu'elle modifie
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = MediaRequest.CACHE_REGION)
 @Data
 @NoArgsConstructor
 public class MediaRequest {
 
+    public static final int ERROR_MESSAGE_MAX_LENGTH = 255; // Taille de la colonne error_message
+    public static final int LEASE_OWNER_MAX_LENGTH = 100; // Taille de la colonne lease_owner
+    public static final int SCENARIO_EXCERPT_LENGTH = 80; // Taille de la colonne scenario_excerpt
+    public static final int SCENARIO_HASH_LENGTH = 64; // SHA-256 en hexadécimal
+    // Identifiants réservés par appel à la séquence (optimiseur pooled) ; valeur alignée sur hibernate.jdbc.batch_size
+    public static final int ID_ALLOCATION_SIZE = 50;
+    // Régions du cache de second niveau : demandes, et pages du tableau de bord (cache de requêtes)
+    public static final String CACHE_REGION = "media-request";
+    public static final String SUMMARIES_CACHE_REGION = "media-request-summaries";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Séquence plutôt qu'IDENTITY : l'identifiant est connu avant l'INSERT, ce qui permet à Hibernate de regrouper
+    // les insertions en lots JDBC (import en masse). Les identifiants restent croissants sur une même instance.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "media_request_seq")
+    @SequenceGenerator(name = "media_request_seq", sequenceName = "media_request_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
-    @Lob // Large Object, pour les textes longs comme un scénario
-    @Column(nullable = false, columnDefinition = "TEXT") // Assurer la compatibilité avec différentes BD
-    private String scenario;
+    // Scénario complet et prompt formaté : table media_request_content, chargée seulement à l'accès (voir getScenario).
+    // La ligne media_request ne contient que des colonnes courtes.
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true, optional = false)
+    @JoinColumn(name = "content_id", nullable = false, unique = true)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private MediaRequestContent content;
+
+    // Début du scénario affiché par le tableau de bord
+    @Column(nullable = false, length = SCENARIO_EXCERPT_LENGTH)
+    private String scenarioExcerpt;
+
+    // Empreinte du scénario normalisé (voir scenarioHash) : deux demandes au même scénario, à la casse et aux espaces
+    // près, ont la même. Nulle pour les demandes créées avant son introduction, qui ne sont jamais dédoublonnées.
+    @Column(length = SCENARIO_HASH_LENGTH)
+    private String scenarioHash;
+
+    // Vrai une fois un prompt formaté enregistré dans le contenu
+    @Column(nullable = false)
+    @ColumnDefault("false")
+    private boolean promptAvailable;
 
     // Pour stocker une liste d'IA, on peut utiliser une chaîne concaténée
     // ou une table de jointure si la relation devient plus complexe.
@@ -39,6 +102,12 @@ public class MediaRequest {
     @Column(nullable = false)
     private RequestStatus status;
 
+    // Urgence dans la file GO ; stockée par rang (voir RequestPriority), NORMAL pour les demandes existantes
+    @Enumerated(EnumType.ORDINAL)
+    @Column(nullable = false)
+    @ColumnDefault("1")
+    private RequestPriority priority = RequestPriority.NORMAL;
+
     @Column(nullable = false, updatable = false)
     @CreationTimestamp // Géré automatiquement par Hibernate/JPA
     private LocalDateTime creationDate;
@@ -48,18 +117,86 @@ public class MediaRequest {
 
     private String generatedMediaPath; // Chemin vers le média généré, nullable
 
+    @Column(length = ERROR_MESSAGE_MAX_LENGTH)
     private String errorMessage; // Pour stocker un message d'erreur en cas de statut FAIL
 
-    @Lob
-    @Column(columnDefinition = "TEXT")
-    private String formattedPrompt; // Pour stocker le prompt formaté généré pour l'IA
+    // Bail des statuts RUNNING et FORMATTING_PROMPT : instance qui traite la demande et échéance prolongée par ses
+    // battements de cœur. Un bail expiré signale une instance arrêtée en cours de traitement (voir MediaRequestReaper).
+    @Column(length = LEASE_OWNER_MAX_LENGTH)
+    private String leaseOwner;
+
+    private LocalDateTime leaseExpiresAt;
+
+    // Nombre de traitements interrompus (bail expiré) ; au-delà du maximum configuré, la demande passe à DEAD_LETTER
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private int attempts;
+
+    // Jetons consommés par le formatage du prompt, cumulés sur tous les appels au fournisseur (nouvelles tentatives,
+    // requêtes doublées, reformatages). Un formatage partagé avec une demande identique est compté à celle qui l'a mené.
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long promptTokens;
+
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long candidatesTokens;
+
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long totalTokens;
 
     // Constructeur personnalisé si nécessaire pour initialiser certains champs
     public MediaRequest(String scenario, String selectedIAs, MediaType mediaType, TargetPlatform targetPlatform) {
-        this.scenario = scenario;
+        this.content = new MediaRequestContent(scenario);
+        this.scenarioExcerpt = excerpt(scenario);
+        this.scenarioHash = scenarioHash(scenario);
         this.selectedIAs = selectedIAs;
         this.mediaType = mediaType;
         this.targetPlatform = targetPlatform;
         this.status = RequestStatus.NOT_YET; // Statut initial
     }
+
+    // Début du scénario, sans couper un caractère codé sur deux char (emoji...)
+    static String excerpt(String scenario) {
+        int end = Math.min(scenario.length(), SCENARIO_EXCERPT_LENGTH);
+        if (end < scenario.length() && Character.isHighSurrogate(scenario.charAt(end - 1))) {
+            end--;
+        }
+        return scenario.substring(0, end);
+    }
+
+    /**
+     * Empreinte SHA-256 du scénario normalisé : forme de compatibilité Unicode (NFKC), minuscules, espaces de début et
+     * de fin retirés, suites d'espaces et de retours à la ligne réduites à une espace.
+     */
+    public static String scenarioHash(String scenario) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(scenario, Normalizer.Form.NFKC).strip())
+                .replaceAll(" ")
+                .toLowerCase(Locale.ROOT);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Accès au texte complet : hors transaction, la demande doit avoir été lue avec son contenu
+    // (MediaRequestRepository.findWithContentById), sinon Hibernate ne peut plus le charger.
+    public String getScenario() {
+        return content != null ? content.getScenario() : null;
+    }
+
+    public String getFormattedPrompt() {
+        return content != null ? content.getFormattedPrompt() : null;
+    }
+
+    public void setFormattedPrompt(String formattedPrompt) {
+        if (content == null) {
+            content = new MediaRequestContent();
+        }
+        content.setFormattedPrompt(formattedPrompt);
+        promptAvailable = formattedPrompt != null;
+    }
 }
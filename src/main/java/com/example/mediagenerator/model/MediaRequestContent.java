@@ -0,0 +1,35 @@
+package com.example.mediagenerator.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Textes longs d'une demande, séparés de la ligne media_request que la file et les changements de statut lisent et
+ * modifient en permanence. Ils ne sont chargés que lorsqu'ils sont utilisés (formatage, dépliage d'une ligne).
+ */
+@Entity
+@Table(name = "media_request_content")
+@Data
+@NoArgsConstructor
+public class MediaRequestContent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "media_request_content_seq")
+    @SequenceGenerator(name = "media_request_content_seq", sequenceName = "media_request_content_seq",
+            allocationSize = MediaRequest.ID_ALLOCATION_SIZE)
+    private Long id;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    @Column(nullable = false)
+    private String scenario;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    private String formattedPrompt; // Prompt formaté généré pour l'IA (partiel pendant un formatage en streaming)
+
+    public MediaRequestContent(String scenario) {
+        this.scenario = scenario;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.mediagenerator.model;
+
+// Urgence d'une demande dans la file GO (voir MediaRequestLanes). Stockée par son rang pour que
+// ORDER BY priority DESC serve les plus urgentes d'abord : les constantes sont rangées par urgence croissante.
+public enum RequestPriority {
+    BULK,   // Import en masse : traité quand aucune demande plus urgente n'attend
+    NORMAL,
+    URGENT
+}
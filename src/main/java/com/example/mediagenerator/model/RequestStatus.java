@@ -7,5 +7,6 @@ public enum RequestStatus {
     PROMPT_GENERATED,  // Le prompt a été généré avec succès
     RUNNING,    // La génération du média principal est en cours de traitement
     FAIL,       // Le traitement (génération prompt ou média) de la demande a échoué
-    SUCCESS     // Le traitement de la génération du média a réussi
+    SUCCESS,    // Le traitement de la génération du média a réussi
+    DEAD_LETTER // Le traitement a été interrompu trop de fois (bail expiré) : la demande est mise de côté
 }
@@ -0,0 +1,26 @@
+package com.example.mediagenerator.repository;
+
+import com.example.mediagenerator.model.MediaRequestContent;
+import com.example.mediagenerator.model.RequestStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface MediaRequestContentRepository extends JpaRepository<MediaRequestContent, Long> {
+
+    // Enregistre le prompt (partiel ou complet) d'une demande encore dans le statut attendu et sous le bail de
+    // l'appelant ; le statut lui-même est changé ensuite par MediaRequestRepository.completeWithPrompt.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequestContent c SET c.formattedPrompt = :formattedPrompt WHERE c.id = " +
+           "(SELECT m.content.id FROM MediaRequest m WHERE m.id = :requestId AND m.status = :expectedStatus AND " +
+           MediaRequestRepository.LEASE_HELD + ")")
+    int savePrompt(@Param("requestId") Long requestId,
+                   @Param("expectedStatus") RequestStatus expectedStatus,
+                   @Param("formattedPrompt") String formattedPrompt,
+                   @Param("leaseOwner") String leaseOwner);
+}
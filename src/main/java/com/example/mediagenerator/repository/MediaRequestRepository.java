@@ -1,11 +1,30 @@
 package com.example.mediagenerator.repository;
 
+import com.example.mediagenerator.dto.MediaRequestSummary;
+import com.example.mediagenerator.dto.RequestStatusCount;
 import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
 import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface MediaRequestRepository extends JpaRepository<MediaRequest, Long> {
@@ -18,5 +37,212 @@ public interface MediaRequestRepository extends JpaRepository<MediaRequest, Long
     List<MediaRequest> findAllByOrderByStatusUpdateDateDesc();
     List<MediaRequest> findAllByOrderByCreationDateDesc();
 
+    // Demande avec son contenu (scénario, prompt), pour les traitements qui utilisent le texte complet.
+    // findById ne lit que la ligne media_request.
+    @EntityGraph(attributePaths = "content")
+    Optional<MediaRequest> findWithContentById(Long id);
+
+    // Doublons d'une nouvelle demande, servis par l'index (scenario_hash, status) : même scénario normalisé et mêmes
+    // paramètres, encore en cours de traitement ou réussis depuis successSince ; les plus récents d'abord.
+    @Query("SELECT m FROM MediaRequest m WHERE m.scenarioHash = :scenarioHash AND m.mediaType = :mediaType " +
+           "AND m.targetPlatform = :targetPlatform " +
+           "AND (m.selectedIAs = :selectedIAs OR (m.selectedIAs IS NULL AND :selectedIAs IS NULL)) " +
+           "AND (m.status IN :pendingStatuses OR (m.status = :successStatus AND m.statusUpdateDate >= :successSince)) " +
+           "ORDER BY m.creationDate DESC, m.id DESC")
+    List<MediaRequest> findDuplicates(@Param("scenarioHash") String scenarioHash,
+                                      @Param("mediaType") MediaType mediaType,
+                                      @Param("targetPlatform") TargetPlatform targetPlatform,
+                                      @Param("selectedIAs") String selectedIAs,
+                                      @Param("pendingStatuses") Collection<RequestStatus> pendingStatuses,
+                                      @Param("successStatus") RequestStatus successStatus,
+                                      @Param("successSince") LocalDateTime successSince,
+                                      Limit limit);
+
+    // Export : lignes lues au fil de l'eau par paquets de 500 (fetch size du pilote JDBC), entités en lecture seule.
+    // Le Stream doit être consommé dans une transaction puis fermé ; l'appelant détache chaque demande traitée.
+    // Cache de second niveau ignoré (ici et dans la session de l'export) : un export complet en chasserait les demandes
+    // consultées.
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+            @QueryHint(name = "org.hibernate.readOnly", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheMode", value = "IGNORE")
+    })
+    @Query("SELECT m FROM MediaRequest m JOIN FETCH m.content WHERE m.status IN :statuses ORDER BY m.creationDate ASC, m.id ASC")
+    Stream<MediaRequest> streamForExport(@Param("statuses") Collection<RequestStatus> statuses);
+
+    // Pagination par clé du tableau de bord, sur les seules colonnes courtes de media_request (voir MediaRequestSummary).
+    String SUMMARY_SELECT = "SELECT m.id AS id, m.scenarioExcerpt AS scenarioExcerpt, " +
+            "m.selectedIAs AS selectedIAs, m.mediaType AS mediaType, m.targetPlatform AS targetPlatform, m.status AS status, " +
+            "m.creationDate AS creationDate, m.statusUpdateDate AS statusUpdateDate, m.generatedMediaPath AS generatedMediaPath, " +
+            "m.errorMessage AS errorMessage, m.promptAvailable AS promptAvailable " +
+            "FROM MediaRequest m ";
+
+    // Pages en cache de requêtes : périmées par toute écriture sur media_request (voir HibernateCacheConfig)
+    @Query(SUMMARY_SELECT + "ORDER BY m.creationDate DESC, m.id DESC")
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+                 @QueryHint(name = "org.hibernate.cacheRegion", value = MediaRequest.SUMMARIES_CACHE_REGION)})
+    List<MediaRequestSummary> findFirstSummaries(Limit limit);
+
+    // Le premier terme (creationDate <= :creationDate) permet à la base de se positionner directement dans
+    // l'index (creation_date DESC, id DESC) ; une simple disjonction OR ne le permet pas.
+    @Query(SUMMARY_SELECT + "WHERE m.creationDate <= :creationDate AND (m.creationDate < :creationDate OR m.id < :id) " +
+           "ORDER BY m.creationDate DESC, m.id DESC")
+    @QueryHints({@QueryHint(name = "org.hibernate.cacheable", value = "true"),
+                 @QueryHint(name = "org.hibernate.cacheRegion", value = MediaRequest.SUMMARIES_CACHE_REGION)})
+    List<MediaRequestSummary> findSummariesBefore(@Param("creationDate") LocalDateTime creationDate,
+                                                  @Param("id") Long id,
+                                                  Limit limit);
+
+    @Query("SELECT m.id FROM MediaRequest m WHERE m.status IN :statuses ORDER BY m.creationDate ASC, m.id ASC")
+    List<Long> findIdsByStatusIn(@Param("statuses") Collection<RequestStatus> statuses);
+
+    // Jauges par statut : une seule requête agrégée, servie par l'index (status, creation_date, id).
+    @Query("SELECT m.status AS status, COUNT(m) AS count FROM MediaRequest m GROUP BY m.status")
+    List<RequestStatusCount> countByStatus();
+
+    // Prochaines demandes d'une voie (plateforme cible et type de média) dans le statut donné, sans verrou : les plus
+    // urgentes d'abord, puis les plus anciennes (FIFO), servi par l'index idx_media_request_lane.
+    @Query("SELECT m FROM MediaRequest m WHERE m.status = :status AND m.targetPlatform = :targetPlatform " +
+           "AND m.mediaType = :mediaType ORDER BY m.priority DESC, m.creationDate ASC, m.id ASC")
+    List<MediaRequest> findNextInLane(@Param("status") RequestStatus status,
+                                      @Param("targetPlatform") TargetPlatform targetPlatform,
+                                      @Param("mediaType") MediaType mediaType,
+                                      Pageable pageable);
+
+    // Verrouille celles des demandes données qui sont encore dans le statut attendu. Le timeout -2 correspond à
+    // LockOptions.SKIP_LOCKED : sur les bases qui le supportent (PostgreSQL, MySQL 8, Oracle...), Hibernate génère
+    // FOR UPDATE SKIP LOCKED et les lignes déjà verrouillées par un autre nœud sont ignorées.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM MediaRequest m WHERE m.id IN :ids AND m.status = :status")
+    List<MediaRequest> lockByIdsInStatus(@Param("ids") Collection<Long> ids, @Param("status") RequestStatus status);
+
+    // Les mises à jour ci-dessous ont leur propre transaction lorsqu'elles sont appelées hors d'un service
+    // transactionnel (fin de formatage asynchrone, workers du pool).
+
+    // Réclamation conditionnelle : seules les lignes encore dans le statut attendu passent au nouveau statut,
+    // sous le bail de l'instance qui les réclame.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.leaseOwner = :leaseOwner, m.leaseExpiresAt = :leaseExpiresAt, " +
+           "m.statusUpdateDate = :now WHERE m.id IN :ids AND m.status = :expectedStatus")
+    int leaseForIds(@Param("ids") Collection<Long> ids,
+                    @Param("expectedStatus") RequestStatus expectedStatus,
+                    @Param("newStatus") RequestStatus newStatus,
+                    @Param("leaseOwner") String leaseOwner,
+                    @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt,
+                    @Param("now") LocalDateTime now);
+
+    // Transition conditionnelle d'une demande : retourne 0 si elle n'est plus dans un des statuts attendus.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.statusUpdateDate = :now " +
+           "WHERE m.id = :id AND m.status IN :expectedStatuses")
+    int transitionStatus(@Param("id") Long id,
+                         @Param("expectedStatuses") Collection<RequestStatus> expectedStatuses,
+                         @Param("newStatus") RequestStatus newStatus,
+                         @Param("now") LocalDateTime now);
+
+    // Variante de transitionStatus qui place la demande sous le bail de l'instance appelante (début de formatage).
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.leaseOwner = :leaseOwner, m.leaseExpiresAt = :leaseExpiresAt, " +
+           "m.statusUpdateDate = :now WHERE m.id = :id AND m.status IN :expectedStatuses")
+    int acquireLease(@Param("id") Long id,
+                     @Param("expectedStatuses") Collection<RequestStatus> expectedStatuses,
+                     @Param("newStatus") RequestStatus newStatus,
+                     @Param("leaseOwner") String leaseOwner,
+                     @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt,
+                     @Param("now") LocalDateTime now);
+
+    // Battement de cœur : prolonge les baux encore détenus par l'instance, en une seule requête.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.leaseExpiresAt = :leaseExpiresAt " +
+           "WHERE m.id IN :ids AND m.leaseOwner = :leaseOwner AND m.status IN :leasedStatuses")
+    int renewLeases(@Param("ids") Collection<Long> ids,
+                    @Param("leasedStatuses") Collection<RequestStatus> leasedStatuses,
+                    @Param("leaseOwner") String leaseOwner,
+                    @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    // Baux expirés, les plus anciens d'abord (servi par l'index (status, lease_expires_at)), avec leur contenu :
+    // un formatage repris a besoin du scénario.
+    @Query("SELECT m FROM MediaRequest m JOIN FETCH m.content WHERE m.status IN :leasedStatuses AND m.leaseExpiresAt < :now " +
+           "ORDER BY m.leaseExpiresAt ASC")
+    List<MediaRequest> findExpiredLeases(@Param("leasedStatuses") Collection<RequestStatus> leasedStatuses,
+                                         @Param("now") LocalDateTime now,
+                                         Limit limit);
+
+    // Reprise d'un bail expiré : nouveau statut et nouveau bail (ou aucun), une interruption de plus. La condition sur
+    // l'échéance garantit qu'une seule instance reprend la demande, et jamais si son détenteur a prolongé le bail entre-temps.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.leaseOwner = :leaseOwner, m.leaseExpiresAt = :leaseExpiresAt, " +
+           "m.attempts = m.attempts + 1, m.errorMessage = COALESCE(:errorMessage, m.errorMessage), m.statusUpdateDate = :now " +
+           "WHERE m.id = :id AND m.status = :expectedStatus AND m.leaseExpiresAt < :now")
+    int reclaimExpiredLease(@Param("id") Long id,
+                            @Param("expectedStatus") RequestStatus expectedStatus,
+                            @Param("newStatus") RequestStatus newStatus,
+                            @Param("leaseOwner") String leaseOwner,
+                            @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt,
+                            @Param("errorMessage") String errorMessage,
+                            @Param("now") LocalDateTime now);
+
+    // Les fins de traitement ci-dessous libèrent le bail. Elles ne s'appliquent pas si une autre instance a repris la
+    // demande (bail expiré) : le résultat tardif de l'instance d'origine est alors ignoré.
+    String LEASE_HELD = "(m.leaseOwner IS NULL OR m.leaseOwner = :leaseOwner)";
+    String LEASE_RELEASE = "m.leaseOwner = NULL, m.leaseExpiresAt = NULL";
+
+    // Fin de formatage réussie, une fois le prompt enregistré (MediaRequestContentRepository.savePrompt) :
+    // signale le prompt disponible et efface l'erreur précédente.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.promptAvailable = true, " +
+           "m.errorMessage = NULL, " + LEASE_RELEASE + ", m.statusUpdateDate = :now " +
+           "WHERE m.id = :id AND m.status = :expectedStatus AND " + LEASE_HELD)
+    int completeWithPrompt(@Param("id") Long id,
+                           @Param("expectedStatus") RequestStatus expectedStatus,
+                           @Param("newStatus") RequestStatus newStatus,
+                           @Param("leaseOwner") String leaseOwner,
+                           @Param("now") LocalDateTime now);
+
+    // Jetons consommés par un formatage, ajoutés à ceux de la demande quel que soit son statut : ils sont dus même si
+    // le résultat a été écarté
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.promptTokens = m.promptTokens + :promptTokens, " +
+           "m.candidatesTokens = m.candidatesTokens + :candidatesTokens, m.totalTokens = m.totalTokens + :totalTokens " +
+           "WHERE m.id = :id")
+    int addTokenUsage(@Param("id") Long id,
+                      @Param("promptTokens") long promptTokens,
+                      @Param("candidatesTokens") long candidatesTokens,
+                      @Param("totalTokens") long totalTokens);
+
+    // Fin de traitement en erreur : le prompt éventuellement déjà présent est conservé.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.errorMessage = :errorMessage, " + LEASE_RELEASE +
+           ", m.statusUpdateDate = :now WHERE m.id = :id AND m.status = :expectedStatus AND " + LEASE_HELD)
+    int completeWithError(@Param("id") Long id,
+                          @Param("expectedStatus") RequestStatus expectedStatus,
+                          @Param("newStatus") RequestStatus newStatus,
+                          @Param("errorMessage") String errorMessage,
+                          @Param("leaseOwner") String leaseOwner,
+                          @Param("now") LocalDateTime now);
+
+    // Fin de traitement d'une demande : un message d'erreur ou un chemin null laisse la valeur existante inchangée.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE MediaRequest m SET m.status = :newStatus, m.errorMessage = COALESCE(:errorMessage, m.errorMessage), " +
+           "m.generatedMediaPath = COALESCE(:generatedPath, m.generatedMediaPath), " + LEASE_RELEASE + ", m.statusUpdateDate = :now " +
+           "WHERE m.id = :id AND m.status = :expectedStatus AND " + LEASE_HELD)
+    int completeProcessing(@Param("id") Long id,
+                           @Param("expectedStatus") RequestStatus expectedStatus,
+                           @Param("newStatus") RequestStatus newStatus,
+                           @Param("errorMessage") String errorMessage,
+                           @Param("generatedPath") String generatedPath,
+                           @Param("leaseOwner") String leaseOwner,
+                           @Param("now") LocalDateTime now);
+
     // D'autres méthodes de recherche personnalisées pourront être ajoutées ici si nécessaire.
 }
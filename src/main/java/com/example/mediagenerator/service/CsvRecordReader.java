@@ -0,0 +1,113 @@
+package com.example.mediagenerator.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture d'un CSV (RFC 4180) enregistrement par enregistrement, sans charger le fichier en mémoire :
+ * séparateur virgule, champs entre guillemets pouvant contenir virgules, retours à la ligne et guillemets doublés.
+ * Les lignes vides sont ignorées.
+ */
+class CsvRecordReader {
+
+    private static final int BOM = '\uFEFF';
+
+    private final Reader reader;
+    private final StringBuilder field = new StringBuilder();
+    private int pending = -2; // Caractère lu d'avance (-2 : aucun)
+    private long line = 1;
+    private long recordLine;
+    private boolean started;
+
+    CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /** Enregistrement suivant, ou null en fin de fichier. */
+    List<String> next() throws IOException {
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == BOM) {
+                c = read();
+            }
+        }
+        while (c == '\r' || c == '\n') {
+            c = skipLineBreak(c);
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> record = new ArrayList<>();
+        boolean quoted = false;
+        boolean afterQuote = false; // Guillemet fermant lu : seuls un séparateur ou une fin de ligne sont attendus
+        field.setLength(0);
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Guillemet non fermé dans l'enregistrement commençant ligne " + recordLine + ".");
+                }
+                if (c == '"') {
+                    int following = read();
+                    if (following == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        afterQuote = true;
+                        c = following;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+                afterQuote = false;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                record.add(field.toString());
+                if (c != -1) {
+                    pending = skipLineBreak(c);
+                }
+                return record;
+            } else if (afterQuote) {
+                throw new IOException("Caractère inattendu après un guillemet fermant, ligne " + line + ".");
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /** Ligne du fichier où commence le dernier enregistrement lu. */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    // Consomme une fin de ligne (\n, \r ou \r\n) et retourne le caractère qui la suit
+    private int skipLineBreak(int c) throws IOException {
+        line++;
+        int following = read();
+        if (c == '\r' && following == '\n') {
+            following = read();
+        }
+        return following;
+    }
+
+    private int read() throws IOException {
+        if (pending != -2) {
+            int c = pending;
+            pending = -2;
+            return c;
+        }
+        return reader.read();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.mediagenerator.service;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Disjoncteur des appels à Gemini. Après {@code failureThreshold} échecs consécutifs signalant une dégradation
+ * (délai dépassé, erreur serveur ou réseau, quota), le circuit s'ouvre : les appels sont refusés immédiatement
+ * pendant {@code openDuration}. Un seul appel d'essai est ensuite autorisé (demi-ouvert) ; son succès referme
+ * le circuit, son échec le rouvre. Un seuil de 0 désactive le disjoncteur.
+ */
+public class GeminiCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier nanoTime;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    public GeminiCircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    GeminiCircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /** Disjoncteur qui laisse tout passer. */
+    public static GeminiCircuitBreaker disabled() {
+        return new GeminiCircuitBreaker(0, Duration.ZERO);
+    }
+
+    public boolean isDisabled() {
+        return failureThreshold <= 0;
+    }
+
+    /**
+     * Autorise ou refuse un appel. Chaque appel autorisé doit se terminer par {@link #onSuccess()},
+     * {@link #onFailure()} ou {@link #onIgnored()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (isDisabled()) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (nanoTime.getAsLong() - openedAtNanos < openDurationNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    // Gemini a répondu, y compris par un refus (prompt bloqué, requête invalide) : le service est disponible
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        if (isDisabled()) {
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = nanoTime.getAsLong();
+            trialInFlight = false;
+        }
+    }
+
+    // Appel annulé sans verdict sur la santé du service : libère l'appel d'essai éventuel
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.mediagenerator.service;
+
+/**
+ * Échec typé d'un appel à Gemini. Le message est destiné à l'utilisateur et enregistré tel quel comme message
+ * d'erreur de la demande ; {@link Failure} indique si l'appel peut être retenté et s'il signale une dégradation
+ * du service (comptée par le disjoncteur).
+ */
+public class GeminiException extends PromptProviderException {
+
+    public enum Failure {
+        BLOCKED(false, false),         // Prompt ou réponse bloqués par les filtres de sécurité
+        EMPTY(false, false),           // Réponse sans texte
+        INVALID_REQUEST(false, false), // Requête refusée par l'API (4xx hors 429) : clé, modèle, paramètres
+        RATE_LIMITED(true, true),      // Quota de l'API dépassé (429)
+        UNAVAILABLE(true, true),       // Erreur serveur (5xx) ou réseau
+        TIMEOUT(true, true),           // Pas de réponse dans le délai gemini.resilience.call-timeout
+        CIRCUIT_OPEN(false, false),    // Disjoncteur ouvert : appel refusé sans contacter Gemini
+        BULKHEAD_FULL(true, false),    // Trop d'appels en cours : appel refusé sans contacter Gemini
+        ERROR(false, false);           // Erreur inattendue du client
+
+        private final boolean retryable;
+        private final boolean degradation;
+
+        Failure(boolean retryable, boolean degradation) {
+            this.retryable = retryable;
+            this.degradation = degradation;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+
+        public boolean isDegradation() {
+            return degradation;
+        }
+
+        // Étiquette "outcome" du timer gemini.requests
+        public String outcome() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Failure failure;
+
+    public GeminiException(Failure failure, String message) {
+        super(message);
+        this.failure = failure;
+    }
+
+    public GeminiException(Failure failure, String message, Throwable cause) {
+        super(message, cause);
+        this.failure = failure;
+    }
+
+    public Failure getFailure() {
+        return failure;
+    }
+}
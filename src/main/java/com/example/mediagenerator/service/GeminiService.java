@@ -2,68 +2,344 @@ package com.example.mediagenerator.service;
 
 import com.google.genai.Client; // From com.google.genai:google-genai
 import com.google.genai.Models; // From com.google.genai:google-genai
+import com.google.genai.ResponseStream;
+import com.google.genai.errors.ApiException;
+import com.google.genai.errors.GenAiIOException;
+import com.google.genai.errors.ServerException;
 import com.google.genai.types.Content;
 import com.google.genai.types.GenerateContentResponse;
 import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.HttpOptions;
 import com.google.genai.types.Part;
 import com.google.genai.types.Candidate;
 import com.google.genai.types.FinishReason;
 
+import com.example.mediagenerator.config.GeminiResilienceProperties;
 import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.GeminiException.Failure;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 // import lombok.extern.slf4j.Slf4j; // Removing Lombok
 import org.slf4j.Logger; // Manual SLF4J
 import org.slf4j.LoggerFactory; // Manual SLF4J
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 // import java.util.List; // Not needed if using response.text()
 // import java.util.Optional; // Not needed if using response.text()
 
 @Service
 // @Slf4j // Removing Lombok
-public class GeminiService {
+public class GeminiService implements PromptProvider {
 
     private static final Logger log = LoggerFactory.getLogger(GeminiService.class); // Manual logger
 
     private final Models modelsClient; // Public field in com.google.genai.Client
     private final String modelName;
-
-    @Value("${gemini.max_output_tokens:8192}")
-    private Integer maxOutputTokens;
-
-    @Value("${gemini.temperature:0.7f}")
-    private Float temperature;
+    private final PromptCache promptCache;
+    private final PromptTemplates promptTemplates;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final GeminiCircuitBreaker circuitBreaker;
+    private final GeminiResilienceProperties resilience;
+    private final Semaphore bulkhead; // Appels en cours au plus ; null = pas de limite
+    private final MeterRegistry meterRegistry;
+    private final TokenUsageTracker tokenUsageTracker;
+    private final LatencyTracker latencyTracker = new LatencyTracker(); // Appels réussis à l'API, hors cache
+    private final Integer maxOutputTokens;
+    private final Float temperature;
+    private final GenerateContentConfig generateContentConfig; // Immuable, partagée par tous les appels
 
     public GeminiService(@Value("${gemini.api.key}") String apiKey,
-                         @Value("${gemini.model:gemini-1.5-flash-latest}") String modelName) {
+                         @Value("${gemini.model:gemini-1.5-flash-latest}") String modelName,
+                         @Value("${gemini.max_output_tokens:8192}") Integer maxOutputTokens,
+                         @Value("${gemini.temperature:0.7f}") Float temperature,
+                         PromptCache promptCache,
+                         PromptTemplates promptTemplates,
+                         TokenBucketRateLimiter geminiRateLimiter,
+                         GeminiCircuitBreaker geminiCircuitBreaker,
+                         GeminiResilienceProperties resilienceProperties,
+                         MeterRegistry meterRegistry,
+                         TokenUsageTracker tokenUsageTracker) {
         this.modelName = modelName;
-        Client client = Client.builder().apiKey(apiKey).build();
+        this.maxOutputTokens = maxOutputTokens;
+        this.temperature = temperature;
+        this.generateContentConfig = buildGenerateContentConfig(maxOutputTokens, temperature);
+        this.promptCache = promptCache;
+        this.promptTemplates = promptTemplates;
+        this.rateLimiter = geminiRateLimiter;
+        this.circuitBreaker = geminiCircuitBreaker;
+        this.resilience = resilienceProperties;
+        this.meterRegistry = meterRegistry;
+        this.tokenUsageTracker = tokenUsageTracker;
+        this.bulkhead = resilienceProperties.getMaxConcurrentCalls() > 0 ? new Semaphore(resilienceProperties.getMaxConcurrentCalls()) : null;
+        // Délai côté HTTP : un appel abandonné par le délai Reactor ne continue pas d'occuper un thread boundedElastic
+        Client client = Client.builder()
+                .apiKey(apiKey)
+                .httpOptions(HttpOptions.builder().timeout((int) resilienceProperties.getCallTimeout().toMillis()).build())
+                .build();
         this.modelsClient = client.models; // Accessing as a public field per GitHub README
+
+        Gauge.builder("gemini.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Gemini circuit breaker state (0 closed, 1 open, 2 half-open)")
+                .tag("model", modelName)
+                .register(meterRegistry);
+        if (bulkhead != null) {
+            Gauge.builder("gemini.calls.in.flight", bulkhead, permits -> resilienceProperties.getMaxConcurrentCalls() - permits.availablePermits())
+                    .description("Gemini calls currently in flight")
+                    .tag("model", modelName)
+                    .register(meterRegistry);
+        }
     }
 
-    public Mono<String> generateFormattedPrompt(String scenario, MediaType mediaType) {
-        String userMessageContent = String.format(
-                "Crée un prompt détaillé et optimisé pour une IA générative (images/vidéo) basé sur le scénario suivant. " +
-                "Le média à produire est de type '%s'. " +
-                "Le scénario est :\n\"%s\"\n\n" +
-                "Le prompt doit inclure des suggestions claires et exploitables pour les éléments suivants :\n" +
-                "- Personnages (apparence, expressions, actions clés).\n" +
-                "- Composition visuelle et cadrage (ex: gros plan, plan d'ensemble, angle de vue).\n" +
-                "- Ambiance et éclairage (ex: sombre et mystérieux, lumineux et joyeux, couleurs dominantes).\n" +
-                "- Style artistique (ex: photoréaliste, dessin animé, peinture à l'huile, cyberpunk, fantasy épique).\n" +
-                "- Éléments clés du décor et objets importants.\n" +
-                "Assure-toi que le prompt soit structuré de manière à être facilement interprétable par une IA, en utilisant des mots-clés pertinents et en évitant les ambiguïtés.",
-                mediaType.toString().toLowerCase(), scenario
-        );
-
-        // Using Content.fromParts and Part.fromText as per GitHub README examples
-        Part part = Part.fromText(userMessageContent);
-        Content content = Content.fromParts(part); // This creates Content with role "user" by default for a single part
+    @Override
+    public String getName() {
+        return "Gemini";
+    }
+
+    /**
+     * Prompt formaté pour un scénario. Les échecs sont signalés par une {@link GeminiException} : prompt bloqué,
+     * réponse vide, délai dépassé, service indisponible après les nouvelles tentatives, disjoncteur ouvert...
+     */
+    @Override
+    public Mono<String> generateFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        PromptTemplate template = promptTemplates.get(mediaType, targetPlatform);
+        String cacheKey = PromptCache.key(scenario, mediaType, template.getId(), modelName, temperature, maxOutputTokens);
+        return Mono.defer(() -> promptCache.get(cacheKey)
+                .map(cachedPrompt -> {
+                    log.info("Prompt cache hit for model {} and scenario excerpt: {}", modelName, scenario.substring(0, Math.min(scenario.length(), 50)) + "...");
+                    return Mono.just(cachedPrompt);
+                })
+                .orElseGet(() -> callGemini(scenario, template.render(scenario, mediaType, targetPlatform))
+                        .doOnNext(prompt -> promptCache.put(cacheKey, prompt))));
+    }
+
+    /**
+     * Mode streaming : émet le prompt par morceaux au fil de la génération, via l'appel streaming du SDK.
+     * Un prompt déjà en cache est émis en un seul morceau. Le prompt complet est mis en cache à la fin du flux.
+     * Les échecs sont signalés par une {@link GeminiException} ; un flux n'est retenté que si aucun morceau n'a été émis.
+     */
+    @Override
+    public Flux<String> streamFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        PromptTemplate template = promptTemplates.get(mediaType, targetPlatform);
+        String cacheKey = PromptCache.key(scenario, mediaType, template.getId(), modelName, temperature, maxOutputTokens);
+        return Flux.defer(() -> promptCache.get(cacheKey)
+                .map(cachedPrompt -> {
+                    log.info("Prompt cache hit for model {} and scenario excerpt: {}", modelName, scenario.substring(0, Math.min(scenario.length(), 50)) + "...");
+                    return Flux.just(cachedPrompt);
+                })
+                .orElseGet(() -> streamGemini(scenario, template.render(scenario, mediaType, targetPlatform), cacheKey)));
+    }
+
+    @Override
+    public Optional<Duration> latencyPercentile(double percentile) {
+        return latencyTracker.percentile(percentile);
+    }
+
+    private Flux<String> streamGemini(String scenario, String userMessage, String cacheKey) {
+        Content content = Content.fromParts(Part.fromText(userMessage)); // Rôle "user" par défaut pour une seule partie
+
+        log.info("Streaming request to Gemini API model {} for scenario excerpt: {}", modelName, scenario.substring(0, Math.min(scenario.length(), 50)) + "...");
+
+        AtomicBoolean emitted = new AtomicBoolean(); // Une fois un morceau transmis, une nouvelle tentative le dupliquerait
+        long estimatedTokens = tokenUsageTracker.estimate(modelName, userMessage);
+        return rateLimiter.acquire().then(tokenUsageTracker.reserve(modelName, estimatedTokens)).flatMapMany(reservation -> guarded(Flux.deferContextual(context -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            long startNanos = System.nanoTime();
+            StringBuilder fullText = new StringBuilder();
+            AtomicReference<TokenUsage> usage = new AtomicReference<>(); // Cumulé par Gemini : le dernier morceau porte le total
+            // Le flux de réponse est fermé à la fin, en cas d'erreur ou d'annulation par l'abonné
+            return Flux.using(() -> modelsClient.generateContentStream(modelName, content, generateContentConfig),
+                            Flux::fromIterable,
+                            ResponseStream::close)
+                    .subscribeOn(Schedulers.boundedElastic()) // L'itération du flux de réponse est bloquante
+                    .timeout(resilience.getCallTimeout()) // Délai avant le premier morceau, puis entre deux morceaux
+                    .doOnNext(response -> {
+                        TokenUsage chunkUsage = tokenUsage(response);
+                        if (chunkUsage != null) {
+                            usage.set(chunkUsage);
+                        }
+                    })
+                    .map(this::responseText)
+                    .filter(text -> !text.isEmpty())
+                    .doOnNext(text -> {
+                        if (fullText.isEmpty()) {
+                            Timer.builder("gemini.stream.first.chunk")
+                                    .description("Time to the first streamed Gemini chunk")
+                                    .tag("model", modelName)
+                                    .publishPercentileHistogram()
+                                    .register(meterRegistry)
+                                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                        }
+                        fullText.append(text);
+                        emitted.set(true);
+                    })
+                    .concatWith(Mono.defer(() -> {
+                        reservation.complete(context, getName(), usage.get());
+                        if (fullText.isEmpty()) {
+                            log.warn("Received empty stream (or no text) from Gemini API model {}.", modelName);
+                            return Mono.error(new GeminiException(Failure.EMPTY, "Erreur: Réponse vide ou malformée de Gemini."));
+                        }
+                        log.info("Successfully streamed response from Gemini API model {} ({} chars).", modelName, fullText.length());
+                        recordGeminiCall(sample, "success");
+                        promptCache.put(cacheKey, fullText.toString());
+                        return Mono.empty();
+                    }))
+                    .onErrorMap(this::toGeminiException)
+                    .doOnError(GeminiException.class, e -> recordGeminiCall(sample, e.getFailure().outcome()))
+                    .doFinally(signal -> reservation.complete(context, getName(), usage.get())); // Échec ou annulation
+        }))).retryWhen(retrySpec(() -> !emitted.get()));
+    }
+
+    private Mono<String> callGemini(String scenario, String userMessage) {
+        Content content = Content.fromParts(Part.fromText(userMessage));
+
+        log.info("Sending request to Gemini API model {} for scenario excerpt: {}", modelName, scenario.substring(0, Math.min(scenario.length(), 50)) + "...");
+
+        // Chaque tentative obtient son jeton du limiteur, ses jetons estimés dans le budget du modèle puis sa place dans
+        // le bulkhead ; les réponses servies par le cache n'en consomment pas
+        long estimatedTokens = tokenUsageTracker.estimate(modelName, userMessage);
+        return rateLimiter.acquire().then(tokenUsageTracker.reserve(modelName, estimatedTokens)).flatMap(reservation -> guarded(Mono.deferContextual(context -> {
+            // Chronomètre l'appel à l'API seul : les attentes du limiteur et du budget et les réponses du cache n'en font pas partie
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return Mono.fromCallable(() -> modelsClient.generateContent(modelName, content, generateContentConfig))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .timeout(resilience.getCallTimeout())
+                    .doOnNext(response -> reservation.complete(context, getName(), tokenUsage(response)))
+                    .map(response -> {
+                        String responseText = responseText(response);
+                        if (responseText.isEmpty()) {
+                            log.warn("Received empty or malformed response (or no text) from Gemini API model {}.", modelName);
+                            throw new GeminiException(Failure.EMPTY, "Erreur: Réponse vide ou malformée de Gemini.");
+                        }
+                        log.info("Successfully received response from Gemini API model {}.", modelName);
+                        return responseText;
+                    })
+                    .onErrorMap(this::toGeminiException)
+                    .doOnSuccess(responseText -> recordGeminiCall(sample, "success"))
+                    .doOnError(GeminiException.class, e -> recordGeminiCall(sample, e.getFailure().outcome()))
+                    .doFinally(signal -> reservation.complete(context, getName(), null)); // Sans réponse : estimation rendue
+        }).flux()).singleOrEmpty()).retryWhen(retrySpec(() -> true));
+    }
+
+    // Texte d'une réponse ou d'un morceau de réponse ; un contenu bloqué par les filtres de sécurité est un échec
+    private String responseText(GenerateContentResponse response) {
+        if (response.promptFeedback().isPresent() && response.promptFeedback().get().blockReason().isPresent()) {
+            log.warn("Gemini request blocked due to prompt feedback: {}", response.promptFeedback().get().blockReason().get());
+            throw new GeminiException(Failure.BLOCKED, "Erreur: Prompt bloqué par les filtres de sécurité Gemini.");
+        }
+        if (response.candidates().isPresent() && !response.candidates().get().isEmpty()) {
+            Candidate candidate = response.candidates().get().get(0);
+            if (candidate.finishReason().isPresent() && candidate.finishReason().get().knownEnum() == FinishReason.Known.SAFETY) {
+                log.warn("Gemini response candidate blocked due to safety reasons for model {}.", modelName);
+                throw new GeminiException(Failure.BLOCKED, "Erreur: Contenu du candidat bloqué par les filtres de sécurité Gemini.");
+            }
+        }
+        String text = response.text(); // Helper method to get text from first candidate
+        return text != null ? text : "";
+    }
 
+    // Usage rapporté par Gemini (usageMetadata) ; null s'il est absent
+    private static TokenUsage tokenUsage(GenerateContentResponse response) {
+        return response.usageMetadata()
+                .map(metadata -> new TokenUsage(metadata.promptTokenCount().orElse(0), metadata.candidatesTokenCount().orElse(0),
+                        metadata.totalTokenCount().orElse(0)))
+                .orElse(null);
+    }
+
+    // Erreur du SDK ou de Reactor -> échec typé, qui décide des nouvelles tentatives et du disjoncteur
+    private GeminiException toGeminiException(Throwable error) {
+        if (error instanceof GeminiException geminiException) {
+            return geminiException;
+        }
+        GeminiException failure;
+        if (error instanceof TimeoutException) {
+            failure = new GeminiException(Failure.TIMEOUT, "Erreur: Gemini n'a pas répondu dans le délai de "
+                    + resilience.getCallTimeout().toSeconds() + " s.", error);
+        } else if (error instanceof ApiException apiException && apiException.code() == 429) {
+            failure = new GeminiException(Failure.RATE_LIMITED, "Erreur: Quota de l'API Gemini dépassé.", error);
+        } else if (error instanceof ServerException || error instanceof GenAiIOException || error instanceof IOException) {
+            failure = new GeminiException(Failure.UNAVAILABLE, "Erreur lors de la communication avec Gemini: " + error.getMessage(), error);
+        } else if (error instanceof ApiException apiException) {
+            failure = new GeminiException(Failure.INVALID_REQUEST, "Erreur: Requête refusée par l'API Gemini ("
+                    + apiException.code() + "): " + apiException.message(), error);
+        } else {
+            failure = new GeminiException(Failure.ERROR, "Erreur lors de la communication avec Gemini: " + error.getMessage(), error);
+        }
+        if (failure.getFailure().isRetryable()) {
+            log.warn("Gemini API model {} call failed ({}): {}", modelName, failure.getFailure(), error.toString());
+        } else {
+            log.error("Error calling Gemini API model {}", modelName, error);
+        }
+        return failure;
+    }
+
+    /**
+     * Bulkhead puis disjoncteur : un appel refusé ne contacte pas Gemini. Le résultat de l'appel autorisé est
+     * rapporté au disjoncteur, et sa place dans le bulkhead libérée à la fin (succès, erreur ou annulation).
+     */
+    private <T> Flux<T> guarded(Flux<T> call) {
+        return Flux.defer(() -> {
+            if (bulkhead != null && !bulkhead.tryAcquire()) {
+                return Flux.error(rejected(Failure.BULKHEAD_FULL, "Erreur: Trop d'appels simultanés au service Gemini, réessayez plus tard."));
+            }
+            if (!circuitBreaker.tryAcquirePermission()) {
+                releaseBulkhead();
+                return Flux.error(rejected(Failure.CIRCUIT_OPEN, "Erreur: Service Gemini temporairement indisponible, réessayez dans quelques instants."));
+            }
+            return call
+                    .doOnComplete(circuitBreaker::onSuccess)
+                    .doOnError(error -> {
+                        if (error instanceof GeminiException geminiException && !geminiException.getFailure().isDegradation()) {
+                            circuitBreaker.onSuccess();
+                        } else {
+                            circuitBreaker.onFailure();
+                        }
+                    })
+                    .doOnCancel(circuitBreaker::onIgnored)
+                    .doFinally(signal -> releaseBulkhead());
+        });
+    }
+
+    private void releaseBulkhead() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private GeminiException rejected(Failure failure, String message) {
+        log.warn("Gemini call to model {} rejected: {}", modelName, failure);
+        meterRegistry.counter("gemini.requests.rejected", "model", modelName, "reason", failure.outcome()).increment();
+        return new GeminiException(failure, message);
+    }
+
+    // Nouvelles tentatives espacées exponentiellement, avec une part aléatoire, pour les échecs temporaires seulement
+    private Retry retrySpec(BooleanSupplier retryAllowed) {
+        return Retry.backoff(Math.max(0, resilience.getMaxAttempts() - 1), resilience.getInitialBackoff())
+                .maxBackoff(resilience.getMaxBackoff())
+                .jitter(resilience.getJitter())
+                .filter(error -> error instanceof GeminiException geminiException
+                        && geminiException.getFailure().isRetryable() && retryAllowed.getAsBoolean())
+                .doBeforeRetry(signal -> log.info("Retrying Gemini call to model {} after {} (retry {} of {})", modelName,
+                        ((GeminiException) signal.failure()).getFailure(), signal.totalRetries() + 1, resilience.getMaxAttempts() - 1))
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static GenerateContentConfig buildGenerateContentConfig(Integer maxOutputTokens, Float temperature) {
         GenerateContentConfig.Builder configBuilder = GenerateContentConfig.builder();
         if (maxOutputTokens != null) {
             configBuilder.maxOutputTokens(maxOutputTokens);
@@ -72,54 +348,19 @@ public class GeminiService {
             configBuilder.temperature(temperature);
         }
         // configBuilder.candidateCount(1); // Optional
+        return configBuilder.build();
+    }
 
-        GenerateContentConfig generateContentConfig = configBuilder.build();
-
-        log.info("Sending request to Gemini API model {} for scenario excerpt: {}", modelName, scenario.substring(0, Math.min(scenario.length(), 50)) + "...");
-
-        return Mono.fromCallable(() -> {
-            try {
-                // Models.generateContent takes List<Content> or a single Content object.
-                // The example shows passing a single string for simple text, or a Content object for multimodal.
-                // Let's use the Content object directly (it might also accept List<Content>).
-                // The Javadoc for Models.generateContent shows overloads for String, Content, and List<Content>
-                GenerateContentResponse response = modelsClient.generateContent(
-                    this.modelName,
-                    content, // Passing single Content object
-                    generateContentConfig
-                );
-
-                // Check for safety ratings first, as response.text() might be null if blocked.
-                if (response.promptFeedback() != null && response.promptFeedback().isPresent() &&
-                    response.promptFeedback().get().blockReason().isPresent()) {
-                    log.warn("Gemini request blocked due to prompt feedback: {}", response.promptFeedback().get().blockReason().get());
-                    return "Erreur: Prompt bloqué par les filtres de sécurité Gemini.";
-                }
-
-                if (response.candidates() != null && response.candidates().isPresent() && !response.candidates().get().isEmpty()) {
-                    Candidate firstCandidate = response.candidates().get().get(0);
-                    if (firstCandidate.finishReason().isPresent() && firstCandidate.finishReason().get().equals(FinishReason.Known.SAFETY)) {
-                        log.warn("Gemini response candidate blocked due to safety reasons for model {}.", modelName);
-                        return "Erreur: Contenu du candidat bloqué par les filtres de sécurité Gemini.";
-                    }
-                }
-
-                String responseText = response.text(); // Helper method to get text from first candidate
-
-                if (responseText != null && !responseText.isEmpty()) {
-                    log.info("Successfully received response from Gemini API model {}.", modelName);
-                    return responseText;
-                }
-
-                log.warn("Received empty or malformed response (or no text) from Gemini API model {}.", modelName);
-                return "Erreur: Réponse vide ou malformée de Gemini.";
-            // IOException is a subclass of Exception, so the general catch will handle it.
-            } catch (Exception e) {
-                log.error("Error calling Gemini API model {}", modelName, e);
-                // We can check instanceof IOException if specific logging/handling is needed
-                // For now, general message covers it.
-                return "Erreur lors de la communication avec Gemini: " + e.getMessage();
-            }
-        }).subscribeOn(Schedulers.boundedElastic());
+    // Timer gemini.requests, étiqueté par modèle et par issue (success ou GeminiException.Failure#outcome)
+    private void recordGeminiCall(Timer.Sample sample, String outcome) {
+        long nanos = sample.stop(Timer.builder("gemini.requests")
+                .description("Gemini generateContent calls")
+                .tag("model", modelName)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        if ("success".equals(outcome)) {
+            latencyTracker.record(nanos);
+        }
     }
 }
@@ -0,0 +1,49 @@
+package com.example.mediagenerator.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Latences des derniers appels réussis d'un fournisseur (fenêtre glissante de taille fixe), pour calculer
+ * le délai de relance des requêtes doublées (hedging).
+ */
+public class LatencyTracker {
+
+    private static final int DEFAULT_WINDOW_SIZE = 200;
+    private static final int DEFAULT_MIN_SAMPLES = 20;
+
+    private final long[] samplesNanos;
+    private final int minSamples;
+    private int next;
+    private int count;
+
+    public LatencyTracker() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MIN_SAMPLES);
+    }
+
+    LatencyTracker(int windowSize, int minSamples) {
+        this.samplesNanos = new long[Math.max(1, windowSize)];
+        this.minSamples = Math.max(1, minSamples);
+    }
+
+    public synchronized void record(long nanos) {
+        samplesNanos[next] = nanos;
+        next = (next + 1) % samplesNanos.length;
+        count = Math.min(count + 1, samplesNanos.length);
+    }
+
+    // Percentile (0 à 1) des latences de la fenêtre ; vide tant qu'il y a moins de minSamples mesures
+    public Optional<Duration> percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < minSamples) {
+                return Optional.empty();
+            }
+            sorted = Arrays.copyOf(samplesNanos, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return Optional.of(Duration.ofNanos(sorted[Math.max(0, Math.min(index, sorted.length - 1))]));
+    }
+}
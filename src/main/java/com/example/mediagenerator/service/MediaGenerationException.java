@@ -0,0 +1,16 @@
+package com.example.mediagenerator.service;
+
+/**
+ * Échec de la génération d'un média. Le message est destiné à l'utilisateur et enregistré tel quel comme message
+ * d'erreur de la demande.
+ */
+public class MediaGenerationException extends RuntimeException {
+
+    public MediaGenerationException(String message) {
+        super(message);
+    }
+
+    public MediaGenerationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
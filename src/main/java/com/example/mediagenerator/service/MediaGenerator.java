@@ -0,0 +1,32 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaRequest;
+
+/**
+ * Étape de génération du média d'une demande RUNNING. Elle est appelée par un worker du pool de génération
+ * (media.processing.*), qui borne le nombre de générations simultanées : l'implémentation peut bloquer.
+ * <p>
+ * La demande reçue est détachée et son contenu (scénario, prompt) n'est pas chargé : une implémentation qui en a
+ * besoin le relit avec MediaRequestRepository.findWithContentById. Les échecs sont signalés par une
+ * {@link MediaGenerationException} dont le message est destiné à l'utilisateur.
+ */
+public interface MediaGenerator {
+
+    /**
+     * Produit le média et retourne son emplacement. {@code progress} reçoit l'avancement, entre 0 et 1.
+     *
+     * @throws InterruptedException si le worker est interrompu (arrêt de l'application)
+     */
+    GeneratedMedia generate(MediaRequest request, Progress progress) throws InterruptedException;
+
+    /**
+     * Média produit : chemin enregistré dans generatedMediaPath (lien "Voir Média" du tableau de bord) et taille.
+     */
+    record GeneratedMedia(String path, long sizeBytes) {
+    }
+
+    @FunctionalInterface
+    interface Progress {
+        void update(double fraction);
+    }
+}
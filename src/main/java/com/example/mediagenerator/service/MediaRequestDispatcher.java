@@ -0,0 +1,149 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.dto.MediaRequestStatusEvent;
+import com.example.mediagenerator.model.RequestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Répartiteur permanent des demandes GO vers le pool de workers ({@link MediaRequestService#processPendingMediaRequests}).
+ * <ul>
+ *     <li>Tant qu'un passage confie des demandes au pool, le suivant a lieu après media.queue.poll-min-interval ;</li>
+ *     <li>quand la file est vide, l'intervalle double à chaque passage jusqu'à media.queue.poll-max-interval ;</li>
+ *     <li>un passage a lieu immédiatement quand une demande passe à GO, ou quand un worker se libère
+ *     (SUCCESS, FAIL), d'après les évènements de {@link MediaRequestEvents}.</li>
+ * </ul>
+ * La scrutation à intervalle maximal reste le filet de sécurité pour les demandes passées à GO par une autre instance.
+ */
+@Component
+public class MediaRequestDispatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestDispatcher.class);
+
+    // Statuts publiés qui peuvent rendre un passage utile : nouvelle demande GO ou place libérée dans le pool
+    private static final Set<RequestStatus> WAKE_UP_STATUSES = EnumSet.of(RequestStatus.GO, RequestStatus.SUCCESS, RequestStatus.FAIL);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final MediaRequestService mediaRequestService;
+    private final MediaRequestEvents mediaRequestEvents;
+    private final MediaQueueProperties properties;
+    private final Semaphore wakeUps = new Semaphore(0);
+
+    private volatile boolean running;
+    private volatile Duration currentInterval;
+    private Thread thread;
+    private Disposable subscription;
+
+    @Autowired
+    public MediaRequestDispatcher(MediaRequestService mediaRequestService, MediaRequestEvents mediaRequestEvents,
+                                  MediaQueueProperties properties) {
+        this.mediaRequestService = mediaRequestService;
+        this.mediaRequestEvents = mediaRequestEvents;
+        this.properties = properties;
+        this.currentInterval = properties.getPollMinInterval();
+    }
+
+    // Déclenche un passage sans attendre la fin de l'intervalle en cours
+    public void wakeUp() {
+        if (wakeUps.availablePermits() == 0) {
+            wakeUps.release();
+        }
+    }
+
+    // Intervalle avant le prochain passage, sauf réveil
+    public Duration getCurrentInterval() {
+        return currentInterval;
+    }
+
+    /**
+     * Un passage de répartition, puis l'intervalle avant le suivant : minimal si des demandes ont été confiées au pool,
+     * doublé (dans la limite du maximum) sinon.
+     */
+    Duration dispatchOnce() {
+        int dispatched;
+        try {
+            dispatched = mediaRequestService.processPendingMediaRequests();
+        } catch (Exception e) {
+            // Base indisponible par exemple : on réessaie plus tard, en espaçant les passages
+            log.warn("Media request dispatch failed: {}", e.getMessage());
+            dispatched = 0;
+        }
+        if (dispatched > 0) {
+            currentInterval = properties.getPollMinInterval();
+        } else {
+            Duration doubled = currentInterval.multipliedBy(2);
+            currentInterval = doubled.compareTo(properties.getPollMaxInterval()) > 0 ? properties.getPollMaxInterval() : doubled;
+        }
+        return currentInterval;
+    }
+
+    private void onStatusChange(MediaRequestStatusEvent event) {
+        if (WAKE_UP_STATUSES.contains(event.getStatus())) {
+            wakeUp();
+        }
+    }
+
+    private void loop() {
+        log.info("Media request dispatcher started (poll interval {} to {}).", properties.getPollMinInterval(), properties.getPollMaxInterval());
+        Duration interval = Duration.ZERO; // Premier passage dès le démarrage : demandes GO laissées par l'arrêt précédent
+        while (running) {
+            try {
+                if (wakeUps.tryAcquire(interval.toMillis(), TimeUnit.MILLISECONDS)) {
+                    log.debug("Media request dispatcher woken up.");
+                    currentInterval = properties.getPollMinInterval();
+                }
+                wakeUps.drainPermits(); // Plusieurs réveils rapprochés donnent un seul passage
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (running) {
+                interval = dispatchOnce();
+            }
+        }
+        log.info("Media request dispatcher stopped.");
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running || !properties.isDispatcherEnabled()) {
+            return;
+        }
+        running = true;
+        subscription = mediaRequestEvents.statusChanges().subscribe(this::onStatusChange);
+        thread = new Thread(this::loop, "media-dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        subscription.dispose();
+        wakeUps.release(); // Sort de l'attente en cours ; un passage déjà commencé se termine normalement
+        try {
+            thread.join(STOP_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.MediaRequestStatusEvent;
+import com.example.mediagenerator.model.RequestStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDateTime;
+
+/**
+ * Canal des changements de statut des demandes, diffusé à tous les tableaux de bord abonnés (Server-Sent Events).
+ * Les évènements ne sont pas conservés : un abonné ne reçoit que ceux publiés après son abonnement.
+ */
+@Component
+public class MediaRequestEvents {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestEvents.class);
+
+    // Un abonné trop lent perd des évènements plutôt que de bloquer les threads qui publient
+    private final Sinks.Many<MediaRequestStatusEvent> sink = Sinks.many().multicast().directBestEffort();
+
+    public void publishStatusChange(Long id, RequestStatus status, LocalDateTime statusUpdateDate,
+                                    String errorMessage, String generatedMediaPath) {
+        MediaRequestStatusEvent event = new MediaRequestStatusEvent(id, status, statusUpdateDate, errorMessage, generatedMediaPath);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Publié seulement une fois la transaction validée : un abonné qui relit la demande voit le nouveau statut
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    emit(event);
+                }
+            });
+        } else {
+            emit(event);
+        }
+    }
+
+    // Avancement d'une génération en cours : la demande reste RUNNING, aucune transaction à attendre
+    public void publishProgress(Long id, LocalDateTime statusUpdateDate, int percent) {
+        emit(new MediaRequestStatusEvent(id, RequestStatus.RUNNING, statusUpdateDate, null, null, percent));
+    }
+
+    public Flux<MediaRequestStatusEvent> statusChanges() {
+        return sink.asFlux();
+    }
+
+    // Les workers du pool, le planificateur et les threads Reactor publient en parallèle : l'émission est sérialisée
+    private synchronized void emit(MediaRequestStatusEvent event) {
+        Sinks.EmitResult result = sink.tryEmitNext(event);
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            log.warn("Status event for request ID {} not delivered: {}", event.getId(), result);
+        }
+    }
+}
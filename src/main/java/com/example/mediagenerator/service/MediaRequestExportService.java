@@ -0,0 +1,170 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Export des demandes, scénarios et prompts compris, en JSON Lines ou CSV (ligne d'en-tête), de la plus ancienne à la
+ * plus récente. Les lignes sont lues par un curseur (MediaRequestRepository.streamForExport) et écrites au fur et à
+ * mesure : chaque demande est détachée une fois écrite, la mémoire utilisée ne dépend pas du nombre de demandes.
+ * Les colonnes reprennent les champs de l'import, le fichier peut donc être réimporté.
+ */
+@Service
+public class MediaRequestExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestExportService.class);
+
+    static final List<String> COLUMNS = List.of("id", "status", "creationDate", "statusUpdateDate", "scenario",
+            "selectedIAs", "mediaType", "targetPlatform", "priority", "formattedPrompt", "generatedMediaPath", "errorMessage", "attempts",
+            "promptTokens", "candidatesTokens", "totalTokens");
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final MediaRequestRepository mediaRequestRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public MediaRequestExportService(MediaRequestRepository mediaRequestRepository,
+                                     EntityManager entityManager,
+                                     PlatformTransactionManager transactionManager,
+                                     ObjectMapper objectMapper) {
+        this.mediaRequestRepository = mediaRequestRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Écrit dans {@code output} les demandes dont le statut figure dans {@code statuses} (toutes si vide ou null).
+     * Le flux n'est pas fermé.
+     *
+     * @return le nombre de demandes exportées
+     */
+    public long export(OutputStream output, RequestFileFormat format, Collection<RequestStatus> statuses) throws IOException {
+        Collection<RequestStatus> selected = statuses == null || statuses.isEmpty() ? EnumSet.allOf(RequestStatus.class) : statuses;
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        long rows;
+        try {
+            // Le curseur reste ouvert le temps de la transaction (lecture seule) : les lignes sont écrites à mesure
+            rows = transactionTemplate.execute(status -> {
+                // Les lignes sont chargées au fil de la lecture du Stream, après l'exécution de la requête : le mode de
+                // cache de la session (et non seulement celui de la requête) écarte le cache de second niveau
+                entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+                try (Stream<MediaRequest> requests = mediaRequestRepository.streamForExport(selected)) {
+                    return format == RequestFileFormat.CSV ? writeCsv(requests, writer) : writeJsonLines(requests, writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("Exported {} media request(s) as {} in {} ms", rows, format, (System.nanoTime() - start) / 1_000_000);
+        return rows;
+    }
+
+    private long writeJsonLines(Stream<MediaRequest> requests, Writer writer) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null); // Objets séparés par un retour à la ligne, pas par une espace
+        long rows = 0;
+        for (MediaRequest request : (Iterable<MediaRequest>) requests::iterator) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", request.getId());
+            generator.writeStringField("status", request.getStatus().name());
+            generator.writeStringField("creationDate", format(request.getCreationDate()));
+            generator.writeStringField("statusUpdateDate", format(request.getStatusUpdateDate()));
+            generator.writeStringField("scenario", request.getScenario());
+            generator.writeStringField("selectedIAs", request.getSelectedIAs());
+            generator.writeStringField("mediaType", request.getMediaType().name());
+            generator.writeStringField("targetPlatform", request.getTargetPlatform().name());
+            generator.writeStringField("priority", request.getPriority().name());
+            generator.writeStringField("formattedPrompt", request.getFormattedPrompt());
+            generator.writeStringField("generatedMediaPath", request.getGeneratedMediaPath());
+            generator.writeStringField("errorMessage", request.getErrorMessage());
+            generator.writeNumberField("attempts", request.getAttempts());
+            generator.writeNumberField("promptTokens", request.getPromptTokens());
+            generator.writeNumberField("candidatesTokens", request.getCandidatesTokens());
+            generator.writeNumberField("totalTokens", request.getTotalTokens());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            entityManager.detach(request); // Le contenu est détaché avec la demande (cascade)
+            rows++;
+        }
+        generator.flush();
+        return rows;
+    }
+
+    private long writeCsv(Stream<MediaRequest> requests, Writer writer) throws IOException {
+        writer.write(String.join(",", COLUMNS));
+        writer.write("\r\n");
+        long rows = 0;
+        for (MediaRequest request : (Iterable<MediaRequest>) requests::iterator) {
+            writeCsvRow(writer, String.valueOf(request.getId()), request.getStatus().name(),
+                    format(request.getCreationDate()), format(request.getStatusUpdateDate()), request.getScenario(),
+                    request.getSelectedIAs(), request.getMediaType().name(), request.getTargetPlatform().name(),
+                    request.getPriority().name(), request.getFormattedPrompt(), request.getGeneratedMediaPath(), request.getErrorMessage(),
+                    String.valueOf(request.getAttempts()), String.valueOf(request.getPromptTokens()),
+                    String.valueOf(request.getCandidatesTokens()), String.valueOf(request.getTotalTokens()));
+            entityManager.detach(request);
+            rows++;
+        }
+        return rows;
+    }
+
+    // RFC 4180 : champ entre guillemets s'il contient un séparateur, un guillemet ou un retour à la ligne ; null = vide
+    private static void writeCsvRow(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i];
+            if (field == null) {
+                continue;
+            }
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static String format(LocalDateTime date) {
+        return date != null ? date.toString() : null;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaImportProperties;
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.dto.RequestImportResultDto;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Import en masse de demandes depuis un fichier JSON Lines (un objet par ligne) ou CSV (ligne d'en-tête obligatoire).
+ * Champs : scenario, selectedIAs, mediaType, targetPlatform, comme le formulaire de soumission, et priority
+ * (facultatif, BULK par défaut : les demandes importées passent après celles soumises une à une).
+ * <p>
+ * Le fichier est lu au fil de l'eau : seul le paquet en cours (media.import.chunk-size demandes) est gardé en mémoire.
+ * Chaque paquet est inséré dans sa propre transaction, en lots JDBC (hibernate.jdbc.batch_size) : un paquet en échec
+ * est rejeté en entier sans annuler les paquets déjà validés. Une ligne invalide est rejetée seule.
+ */
+@Service
+public class MediaRequestImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestImportService.class);
+
+    private static final int SELECTED_IAS_MAX_LENGTH = 255; // Taille par défaut de la colonne selectedias
+
+    private final MediaRequestRepository mediaRequestRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MediaRequestEvents mediaRequestEvents;
+    private final MediaImportProperties properties;
+    private final Counter importedCounter;
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public MediaRequestImportService(MediaRequestRepository mediaRequestRepository,
+                                     PlatformTransactionManager transactionManager,
+                                     ObjectMapper objectMapper,
+                                     MediaRequestEvents mediaRequestEvents,
+                                     MediaImportProperties properties,
+                                     MeterRegistry meterRegistry) {
+        this.mediaRequestRepository = mediaRequestRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.mediaRequestEvents = mediaRequestEvents;
+        this.properties = properties;
+        this.importedCounter = Counter.builder("media.requests.imported")
+                .description("Media requests read by the bulk import, per outcome")
+                .tag("outcome", "imported")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("media.requests.imported")
+                .description("Media requests read by the bulk import, per outcome")
+                .tag("outcome", "rejected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Importe les demandes lues dans {@code input} (UTF-8). Une erreur de lecture en cours de fichier (CSV mal formé,
+     * flux interrompu) arrête l'import : les demandes déjà lues sont enregistrées et l'erreur figure dans le rapport.
+     *
+     * @throws IllegalArgumentException si l'en-tête CSV est absent ou incomplet
+     */
+    public RequestImportResultDto importRequests(InputStream input, RequestFileFormat format) {
+        long start = System.nanoTime();
+        ImportRun run = new ImportRun();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        try {
+            if (format == RequestFileFormat.CSV) {
+                readCsv(reader, run);
+            } else {
+                readJsonLines(reader, run);
+            }
+        } catch (IOException e) {
+            log.warn("Bulk import interrupted after line {}: {}", run.lastLine, e.getMessage());
+            run.reject(run.lastLine, "Lecture interrompue : " + e.getMessage());
+        } finally {
+            // Les demandes valides lues avant une erreur sont conservées
+            run.insertChunk();
+        }
+        run.result.setWallTimeMs((System.nanoTime() - start) / 1_000_000);
+        log.info("Bulk import ({}): {} request(s) imported in {} chunk(s), {} rejected, {} ms", format,
+                run.result.getImported(), run.result.getChunks(), run.result.getRejected(), run.result.getWallTimeMs());
+        return run.result;
+    }
+
+    private void readJsonLines(BufferedReader reader, ImportRun run) throws IOException {
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            run.lastLine = lineNumber;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                if (!node.isObject()) {
+                    throw new IllegalArgumentException("Un objet JSON est attendu.");
+                }
+                run.accept(lineNumber, toMediaRequest(text(node, "scenario"), selectedIAs(node.get("selectedIAs")),
+                        text(node, "mediaType"), text(node, "targetPlatform"), text(node, "priority")));
+            } catch (JsonProcessingException e) {
+                run.reject(lineNumber, "JSON invalide : " + e.getOriginalMessage());
+            } catch (IllegalArgumentException e) {
+                run.reject(lineNumber, e.getMessage());
+            }
+        }
+    }
+
+    private void readCsv(BufferedReader reader, ImportRun run) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(columnKey(header.get(i)), i);
+        }
+        for (String required : List.of("scenario", "mediatype", "targetplatform")) {
+            if (!columns.containsKey(required)) {
+                throw new IllegalArgumentException("En-tête CSV incomplet : colonnes attendues scenario, selectedIAs, mediaType, targetPlatform.");
+            }
+        }
+        List<String> record;
+        while ((record = csv.next()) != null) {
+            run.lastLine = csv.getRecordLine();
+            try {
+                run.accept(csv.getRecordLine(), toMediaRequest(field(record, columns, "scenario"),
+                        field(record, columns, "selectedias"), field(record, columns, "mediatype"),
+                        field(record, columns, "targetplatform"), field(record, columns, "priority")));
+            } catch (IllegalArgumentException e) {
+                run.reject(csv.getRecordLine(), e.getMessage());
+            }
+        }
+    }
+
+    // Mêmes règles pour les deux formats ; le message de l'exception est repris tel quel dans le rapport
+    private static MediaRequest toMediaRequest(String scenario, String selectedIAs, String mediaType, String targetPlatform,
+                                               String priority) {
+        if (scenario == null || scenario.isBlank()) {
+            throw new IllegalArgumentException("Scénario manquant.");
+        }
+        String ias = selectedIAs != null && !selectedIAs.isBlank() ? selectedIAs.trim() : null;
+        if (ias != null && ias.length() > SELECTED_IAS_MAX_LENGTH) {
+            throw new IllegalArgumentException("selectedIAs dépasse " + SELECTED_IAS_MAX_LENGTH + " caractères.");
+        }
+        MediaRequest request = new MediaRequest(scenario, ias, parseEnum(MediaType.class, "mediaType", mediaType),
+                parseEnum(TargetPlatform.class, "targetPlatform", targetPlatform));
+        request.setPriority(priority == null || priority.isBlank() ? RequestPriority.BULK
+                : parseEnum(RequestPriority.class, "priority", priority));
+        return request;
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(name + " manquant.");
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(name + " invalide : '" + value + "' (valeurs possibles : "
+                    + Arrays.stream(type.getEnumConstants()).map(Enum::name).collect(Collectors.joining(", ")) + ").");
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && value.isValueNode() && !value.isNull() ? value.asText() : null;
+    }
+
+    // selectedIAs accepte aussi un tableau : ["ChatGPT", "Mistral"] devient "ChatGPT, Mistral"
+    private static String selectedIAs(JsonNode value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (value.isArray()) {
+            List<String> names = new ArrayList<>();
+            value.forEach(item -> names.add(item.asText()));
+            return String.join(", ", names);
+        }
+        return value.asText();
+    }
+
+    // En-têtes comparés sans casse ni séparateurs : selectedIAs, selected_ias et Selected-IAs sont équivalents
+    private static String columnKey(String header) {
+        return header.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("-", "").replace(" ", "");
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+
+    // État d'un import : paquet en cours et rapport
+    private class ImportRun {
+
+        private final RequestImportResultDto result = new RequestImportResultDto();
+        private final List<MediaRequest> chunk = new ArrayList<>();
+        private long chunkFirstLine;
+        private long lastLine;
+
+        void accept(long line, MediaRequest request) {
+            if (chunk.isEmpty()) {
+                chunkFirstLine = line;
+            }
+            chunk.add(request);
+            if (chunk.size() >= Math.max(1, properties.getChunkSize())) {
+                insertChunk();
+            }
+        }
+
+        void reject(long line, String message) {
+            result.setRejected(result.getRejected() + 1);
+            rejectedCounter.increment();
+            addError(line, message);
+        }
+
+        void insertChunk() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            try {
+                // Une transaction par paquet : le contexte de persistance est vidé à chaque validation
+                transactionTemplate.executeWithoutResult(status -> mediaRequestRepository.saveAll(chunk));
+                result.setImported(result.getImported() + chunk.size());
+                result.setChunks(result.getChunks() + 1);
+                importedCounter.increment(chunk.size());
+                // Un seul évènement par paquet : il suffit à signaler de nouvelles demandes aux tableaux de bord ouverts
+                MediaRequest last = chunk.get(chunk.size() - 1);
+                mediaRequestEvents.publishStatusChange(last.getId(), RequestStatus.NOT_YET, last.getStatusUpdateDate(), null, null);
+            } catch (DataAccessException | TransactionException e) {
+                log.error("Bulk import chunk starting at line {} ({} request(s)) failed", chunkFirstLine, chunk.size(), e);
+                result.setRejected(result.getRejected() + chunk.size());
+                rejectedCounter.increment(chunk.size());
+                addError(chunkFirstLine, "Paquet de " + chunk.size() + " demande(s) rejeté par la base : " + e.getMostSpecificCause().getMessage());
+            } finally {
+                chunk.clear();
+            }
+        }
+
+        private void addError(long line, String message) {
+            if (result.getErrors().size() < properties.getMaxReportedErrors()) {
+                result.getErrors().add(new RequestImportResultDto.Error(line, message));
+            } else {
+                result.setErrorsTruncated(true);
+            }
+        }
+    }
+}
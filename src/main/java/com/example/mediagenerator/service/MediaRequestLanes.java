@@ -0,0 +1,162 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Voies de la file GO : une par plateforme cible et type de média. Les demandes réclamées sont réparties entre les
+ * voies par file équitable pondérée (start-time fair queuing) : chaque voie qui a des demandes GO reçoit une part des
+ * workers proportionnelle à son poids, quel que soit le nombre de demandes qui l'attendent. Un import massif sur une
+ * voie ne retarde donc plus les demandes des autres voies. Entre deux voies, la demande la plus urgente
+ * ({@link com.example.mediagenerator.model.RequestPriority}) passe d'abord ; à urgence égale, le partage pondéré décide.
+ * <p>
+ * Chaque voie peut être plafonnée en nombre de demandes RUNNING sur l'instance (media.queue.lanes.*.max-concurrency).
+ * Une demande compte dans sa voie de sa réclamation jusqu'à {@link #release}.
+ */
+@Component
+public class MediaRequestLanes {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestLanes.class);
+
+    /**
+     * Voie d'une demande.
+     */
+    public record Lane(TargetPlatform targetPlatform, MediaType mediaType) {
+
+        public static Lane of(MediaRequest request) {
+            return new Lane(request.getTargetPlatform(), request.getMediaType());
+        }
+
+        // Clé de configuration et de log, ex. tiktok-video
+        public String key() {
+            return targetPlatform.name().toLowerCase(Locale.ROOT) + "-" + mediaType.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Map<Lane, Integer> weights = new HashMap<>();
+    private final Map<Lane, Integer> maxConcurrency = new HashMap<>();
+    private final Map<Lane, AtomicInteger> running = new HashMap<>();
+    private final Map<Long, Lane> runningIds = new ConcurrentHashMap<>();
+
+    // Partage pondéré : étiquette de fin de la dernière demande choisie dans chaque voie et temps virtuel courant
+    // (étiquette de début de la dernière demande choisie). Protégés par le verrou de l'instance.
+    private final Map<Lane, Double> finishTags = new HashMap<>();
+    private double virtualTime;
+
+    @Autowired
+    public MediaRequestLanes(MediaQueueProperties properties) {
+        Map<String, MediaQueueProperties.Lane> configured = new HashMap<>(properties.getLanes());
+        for (TargetPlatform platform : TargetPlatform.values()) {
+            for (MediaType mediaType : MediaType.values()) {
+                Lane lane = new Lane(platform, mediaType);
+                MediaQueueProperties.Lane settings = configured.remove(lane.key());
+                if (settings == null) {
+                    settings = new MediaQueueProperties.Lane();
+                }
+                if (settings.getWeight() < 1 || settings.getMaxConcurrency() < 0) {
+                    throw new IllegalStateException("Invalid settings for queue lane " + lane.key() + ": weight must be >= 1 and max-concurrency >= 0");
+                }
+                lanes.add(lane);
+                weights.put(lane, settings.getWeight());
+                maxConcurrency.put(lane, settings.getMaxConcurrency());
+                running.put(lane, new AtomicInteger());
+                finishTags.put(lane, 0.0);
+            }
+        }
+        if (!configured.isEmpty()) {
+            throw new IllegalStateException("Unknown queue lanes " + configured.keySet() + ", expected <platform>-<media type> such as tiktok-video");
+        }
+        log.info("Queue lanes: weights {}, max concurrency {}", weights, maxConcurrency);
+    }
+
+    public List<Lane> lanes() {
+        return lanes;
+    }
+
+    // Demandes que la voie peut encore réclamer sur l'instance ; Integer.MAX_VALUE sans plafond
+    public int freeSlots(Lane lane) {
+        int cap = maxConcurrency.get(lane);
+        return cap == 0 ? Integer.MAX_VALUE : Math.max(0, cap - running.get(lane).get());
+    }
+
+    /**
+     * Choisit au plus {@code maxRequests} demandes parmi les candidates de chaque voie, prises dans leur ordre de file,
+     * et les compte dans leur voie jusqu'à {@link #release}.
+     */
+    public synchronized List<MediaRequest> select(Map<Lane, List<MediaRequest>> candidates, int maxRequests) {
+        Map<Lane, Deque<MediaRequest>> queues = new LinkedHashMap<>();
+        candidates.forEach((lane, requests) -> {
+            if (!requests.isEmpty()) {
+                queues.put(lane, new ArrayDeque<>(requests));
+            }
+        });
+        List<MediaRequest> selected = new ArrayList<>();
+        while (selected.size() < maxRequests) {
+            Lane next = null;
+            double nextStart = 0;
+            for (Map.Entry<Lane, Deque<MediaRequest>> entry : queues.entrySet()) {
+                Lane lane = entry.getKey();
+                if (entry.getValue().isEmpty() || freeSlots(lane) == 0) {
+                    continue;
+                }
+                // Une voie inactive ne cumule pas de crédit : son étiquette repart du temps virtuel courant
+                double start = Math.max(virtualTime, finishTags.get(lane));
+                int priority = next == null ? 1 : comparePriority(entry.getValue(), queues.get(next));
+                if (priority > 0 || (priority == 0 && start < nextStart)) {
+                    next = lane;
+                    nextStart = start;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            MediaRequest request = queues.get(next).poll();
+            virtualTime = nextStart;
+            finishTags.put(next, nextStart + 1.0 / weights.get(next));
+            running.get(next).incrementAndGet();
+            runningIds.put(request.getId(), next);
+            selected.add(request);
+        }
+        return selected;
+    }
+
+    // Demandes sorties de RUNNING sur l'instance (terminées, ou retournées à GO) : libèrent leur place dans leur voie
+    public void release(Collection<Long> ids) {
+        ids.forEach(this::release);
+    }
+
+    public void release(Long id) {
+        Lane lane = runningIds.remove(id);
+        if (lane != null) {
+            running.get(lane).decrementAndGet();
+        }
+    }
+
+    int runningIn(Lane lane) {
+        return running.get(lane).get();
+    }
+
+    // Urgence de la prochaine demande de chaque voie
+    private static int comparePriority(Deque<MediaRequest> a, Deque<MediaRequest> b) {
+        return a.peek().getPriority().compareTo(b.peek().getPriority());
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Baux détenus par cette instance sur les demandes qu'elle traite (RUNNING, FORMATTING_PROMPT).
+ * Les baux sont pris dans la même requête que la transition de statut ; tant que le traitement dure, ils sont
+ * prolongés par un battement de cœur périodique. Si l'instance s'arrête, ils expirent et {@link MediaRequestReaper}
+ * reprend les demandes.
+ */
+@Component
+public class MediaRequestLeases {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestLeases.class);
+
+    static final Set<RequestStatus> LEASED_STATUSES = EnumSet.of(RequestStatus.RUNNING, RequestStatus.FORMATTING_PROMPT);
+
+    private final MediaRequestRepository mediaRequestRepository;
+    private final MediaQueueProperties properties;
+    private final String owner;
+    private final Set<Long> heldIds = ConcurrentHashMap.newKeySet(); // Demandes en cours de traitement sur cette instance
+
+    @Autowired
+    public MediaRequestLeases(MediaRequestRepository mediaRequestRepository, MediaQueueProperties properties) {
+        this.mediaRequestRepository = mediaRequestRepository;
+        this.properties = properties;
+        this.owner = properties.getNodeId() == null || properties.getNodeId().isBlank() ? defaultNodeId() : properties.getNodeId();
+        log.info("Media request leases held as '{}' for {}, renewed every {}", owner, properties.getLeaseDuration(), properties.getHeartbeatInterval());
+    }
+
+    // Le suffixe aléatoire distingue deux démarrages successifs sur le même hôte (conteneur redémarré)
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        String nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return nodeId.length() <= MediaRequest.LEASE_OWNER_MAX_LENGTH ? nodeId : nodeId.substring(nodeId.length() - MediaRequest.LEASE_OWNER_MAX_LENGTH);
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    // Échéance d'un bail pris ou prolongé à l'instant {@code now}
+    public LocalDateTime expiresAt(LocalDateTime now) {
+        return now.plus(properties.getLeaseDuration());
+    }
+
+    // À appeler une fois le bail pris : la demande est prolongée à chaque battement de cœur jusqu'à release
+    public void track(Long id) {
+        heldIds.add(id);
+    }
+
+    public void release(Long id) {
+        heldIds.remove(id);
+    }
+
+    public Set<Long> heldIds() {
+        return Set.copyOf(heldIds);
+    }
+
+    /**
+     * Prolonge en une requête les baux des demandes en cours sur cette instance.
+     *
+     * @return le nombre de baux prolongés
+     */
+    @Scheduled(fixedDelayString = "${media.queue.heartbeat-interval:15s}", initialDelayString = "${media.queue.heartbeat-interval:15s}")
+    public int heartbeat() {
+        return renew(List.copyOf(heldIds));
+    }
+
+    /**
+     * Prolonge les baux de {@code ids} encore détenus par cette instance.
+     *
+     * @return le nombre de baux prolongés
+     */
+    public int renew(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try {
+            int renewed = mediaRequestRepository.renewLeases(ids, LEASED_STATUSES, owner, expiresAt(LocalDateTime.now()));
+            if (renewed < ids.size()) {
+                // Demande terminée entre-temps ou reprise par une autre instance après expiration du bail
+                log.debug("Renewed {} of {} media request lease(s).", renewed, ids.size());
+            }
+            return renewed;
+        } catch (Exception e) {
+            // Les baux restent valides jusqu'à leur échéance : le prochain battement réessaiera
+            log.warn("Could not renew {} media request lease(s): {}", ids.size(), e.getMessage());
+            return 0;
+        }
+    }
+}
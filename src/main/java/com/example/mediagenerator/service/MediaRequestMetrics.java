@@ -0,0 +1,156 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.RequestStatusCount;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Métriques du cycle de vie des demandes, exportées par Actuator (/actuator/prometheus) :
+ * <ul>
+ *     <li>{@code media.requests} : nombre de demandes par statut (jauge) ;</li>
+ *     <li>{@code media.requests.status.time} : temps passé dans un statut, mesuré à la sortie de ce statut
+ *     à partir de statusUpdateDate (histogramme) ;</li>
+ *     <li>{@code media.requests.completion} : temps entre creationDate et la fin du traitement (histogramme) ;</li>
+ *     <li>{@code media.generation.time} et {@code media.generation.bytes} : durée de l'étape de génération et taille
+ *     des médias produits, par type de média (débit de l'étape RUNNING) ;</li>
+ *     <li>{@code media.queue.wait} : attente dans la file GO avant réclamation, par voie (plateforme cible et type
+ *     de média) et par urgence (histogramme) ;</li>
+ *     <li>{@code media.requests.deduplicated} : demandes servies par le travail d'une demande identique, par étape
+ *     (submit : soumission rattachée à une demande existante, prompt et generation : appel partagé).</li>
+ * </ul>
+ * Les temps ne sont enregistrés que là où le service a déjà la demande en main : les transitions faites par une
+ * seule requête UPDATE sans lecture préalable (NOT_YET -> GO) ne sont pas chronométrées.
+ */
+@Component
+public class MediaRequestMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestMetrics.class);
+
+    // Les jauges sont lues à chaque collecte : les comptages sont recalculés au plus une fois par intervalle
+    private static final Duration STATUS_COUNTS_MAX_AGE = Duration.ofSeconds(10);
+    private static final Duration MAX_EXPECTED_DURATION = Duration.ofDays(7);
+
+    private final MeterRegistry meterRegistry;
+    private final MediaRequestRepository mediaRequestRepository;
+
+    private volatile Map<RequestStatus, Long> statusCounts = new EnumMap<>(RequestStatus.class);
+    private volatile long statusCountsRefreshedAt = Long.MIN_VALUE;
+
+    @Autowired
+    public MediaRequestMetrics(MeterRegistry meterRegistry, MediaRequestRepository mediaRequestRepository) {
+        this.meterRegistry = meterRegistry;
+        this.mediaRequestRepository = mediaRequestRepository;
+        for (RequestStatus status : RequestStatus.values()) {
+            Gauge.builder("media.requests", this, metrics -> metrics.countFor(status))
+                    .description("Number of media requests per status")
+                    .tag("status", status.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    // Temps passé dans {@code status}, depuis {@code enteredAt} jusqu'à maintenant
+    public void recordTimeInStatus(RequestStatus status, LocalDateTime enteredAt) {
+        if (enteredAt == null) {
+            return;
+        }
+        Timer.builder("media.requests.status.time")
+                .description("Time spent by a media request in a status before leaving it")
+                .tag("status", status.name())
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED_DURATION)
+                .register(meterRegistry)
+                .record(Duration.between(enteredAt, LocalDateTime.now()));
+    }
+
+    // Temps total entre la création de la demande et son statut final (SUCCESS ou FAIL)
+    public void recordCompletion(RequestStatus finalStatus, LocalDateTime creationDate) {
+        if (creationDate == null) {
+            return;
+        }
+        Timer.builder("media.requests.completion")
+                .description("Time from creation to the final status of a media request")
+                .tag("status", finalStatus.name())
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED_DURATION)
+                .register(meterRegistry)
+                .record(Duration.between(creationDate, LocalDateTime.now()));
+    }
+
+    // Durée d'une génération de média (réussie ou non) et taille du média produit
+    public void recordGeneration(MediaType mediaType, boolean success, Duration duration, long sizeBytes) {
+        Timer.builder("media.generation.time")
+                .description("Time spent generating a media file")
+                .tag("mediaType", mediaType.name())
+                .tag("outcome", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(duration);
+        if (success) {
+            DistributionSummary.builder("media.generation.bytes")
+                    .description("Size of the generated media files")
+                    .baseUnit("bytes")
+                    .tag("mediaType", mediaType.name())
+                    .register(meterRegistry)
+                    .record(sizeBytes);
+        }
+    }
+
+    // Attente dans la file GO d'une demande réclamée, par voie et par urgence (voir MediaRequestLanes)
+    public void recordQueueWait(MediaRequestLanes.Lane lane, RequestPriority priority, LocalDateTime enteredGoAt) {
+        if (enteredGoAt == null) {
+            return;
+        }
+        Timer.builder("media.queue.wait")
+                .description("Time spent by a media request in the GO queue of its lane before being claimed")
+                .tag("targetPlatform", lane.targetPlatform().name())
+                .tag("mediaType", lane.mediaType().name())
+                .tag("priority", priority.name())
+                .publishPercentileHistogram()
+                .maximumExpectedValue(MAX_EXPECTED_DURATION)
+                .register(meterRegistry)
+                .record(Duration.between(enteredGoAt, LocalDateTime.now()));
+    }
+
+    // Demande identique à une autre, servie par son travail plutôt que par le sien (voir RequestCoalescer)
+    public void recordDeduplicated(String stage) {
+        meterRegistry.counter("media.requests.deduplicated", "stage", stage).increment();
+    }
+
+    double countFor(RequestStatus status) {
+        refreshStatusCountsIfStale();
+        return statusCounts.getOrDefault(status, 0L);
+    }
+
+    private synchronized void refreshStatusCountsIfStale() {
+        long now = System.nanoTime();
+        if (statusCountsRefreshedAt != Long.MIN_VALUE && now - statusCountsRefreshedAt < STATUS_COUNTS_MAX_AGE.toNanos()) {
+            return;
+        }
+        try {
+            Map<RequestStatus, Long> counts = new EnumMap<>(RequestStatus.class);
+            for (RequestStatusCount row : mediaRequestRepository.countByStatus()) {
+                counts.put(row.getStatus(), row.getCount());
+            }
+            statusCounts = counts;
+        } catch (Exception e) {
+            // Les dernières valeurs connues restent exposées
+            log.warn("Could not refresh media request counts per status: {}", e.getMessage());
+        }
+        statusCountsRefreshedAt = now;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * File des demandes GO partagée entre plusieurs instances de l'application.
+ * Une demande réclamée passe à RUNNING, sous le bail de l'instance, dans la même transaction que son verrouillage,
+ * ce qui garantit qu'un seul nœud la traite. Les demandes sont choisies voie par voie et réparties entre les voies par
+ * {@link MediaRequestLanes} ; seules les demandes choisies sont verrouillées.
+ */
+@Service
+public class MediaRequestQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestQueue.class);
+
+    private final MediaRequestRepository mediaRequestRepository;
+    private final MediaRequestMetrics mediaRequestMetrics;
+    private final MediaRequestLeases mediaRequestLeases;
+    private final MediaRequestLanes mediaRequestLanes;
+
+    @Autowired
+    public MediaRequestQueue(MediaRequestRepository mediaRequestRepository, MediaRequestMetrics mediaRequestMetrics,
+                             MediaRequestLeases mediaRequestLeases, MediaRequestLanes mediaRequestLanes) {
+        this.mediaRequestRepository = mediaRequestRepository;
+        this.mediaRequestMetrics = mediaRequestMetrics;
+        this.mediaRequestLeases = mediaRequestLeases;
+        this.mediaRequestLanes = mediaRequestLanes;
+    }
+
+    /**
+     * Réclame au plus {@code maxRequests} demandes GO et les passe à RUNNING : dans chaque voie les plus urgentes puis
+     * les plus anciennes, entre les voies selon leur poids et leur plafond. Les lignes verrouillées par une autre
+     * instance sont ignorées plutôt qu'attendues. Chaque demande retournée occupe une place dans sa voie jusqu'à
+     * {@link #release} ; si la transaction n'est pas validée, les places sont libérées.
+     */
+    @Transactional
+    public List<MediaRequest> claimPending(int maxRequests) {
+        if (maxRequests <= 0) {
+            return Collections.emptyList();
+        }
+        // Tête de chaque voie, sans verrou, limitée à ses places libres : une voie encombrée ne masque pas les autres
+        Map<MediaRequestLanes.Lane, List<MediaRequest>> candidates = new LinkedHashMap<>();
+        for (MediaRequestLanes.Lane lane : mediaRequestLanes.lanes()) {
+            int limit = Math.min(maxRequests, mediaRequestLanes.freeSlots(lane));
+            if (limit > 0) {
+                candidates.put(lane, mediaRequestRepository.findNextInLane(RequestStatus.GO, lane.targetPlatform(),
+                        lane.mediaType(), PageRequest.of(0, limit)));
+            }
+        }
+        List<MediaRequest> selected = mediaRequestLanes.select(candidates, maxRequests);
+        if (selected.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> selectedIds = selected.stream().map(MediaRequest::getId).toList();
+        releaseLanesOnRollback(selectedIds);
+
+        // Seules les demandes retenues sont verrouillées. Celles réclamées ou verrouillées entre-temps par une autre
+        // instance sont écartées et rendent leur place dans leur voie.
+        Set<Long> lockedIds = mediaRequestRepository.lockByIdsInStatus(selectedIds, RequestStatus.GO).stream()
+                .map(MediaRequest::getId)
+                .collect(Collectors.toSet());
+        List<MediaRequest> locked = new ArrayList<>();
+        for (MediaRequest request : selected) {
+            if (lockedIds.contains(request.getId())) {
+                locked.add(request);
+            } else {
+                mediaRequestLanes.release(request.getId());
+            }
+        }
+        if (locked.isEmpty()) {
+            log.debug("GO requests {} were claimed by another instance.", selectedIds);
+            return Collections.emptyList();
+        }
+
+        List<Long> ids = locked.stream().map(MediaRequest::getId).toList();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseExpiresAt = mediaRequestLeases.expiresAt(now);
+        int claimed = mediaRequestRepository.leaseForIds(ids, RequestStatus.GO, RequestStatus.RUNNING,
+                mediaRequestLeases.owner(), leaseExpiresAt, now);
+        if (claimed != ids.size()) {
+            // Les lignes sont verrouillées jusqu'à la fin de la transaction : aucune demande n'est confiée au pool sans
+            // bail, la réclamation est annulée
+            throw new IllegalStateException("Leased " + claimed + " of " + ids.size() + " locked GO requests " + ids);
+        }
+        // Le contexte de persistance a été vidé par la mise à jour en masse : ces entités sont détachées
+        locked.forEach(r -> {
+            mediaRequestMetrics.recordTimeInStatus(RequestStatus.GO, r.getStatusUpdateDate());
+            mediaRequestMetrics.recordQueueWait(MediaRequestLanes.Lane.of(r), r.getPriority(), r.getStatusUpdateDate());
+            r.setStatus(RequestStatus.RUNNING);
+            r.setStatusUpdateDate(now);
+            r.setLeaseOwner(mediaRequestLeases.owner());
+            r.setLeaseExpiresAt(leaseExpiresAt);
+        });
+        log.debug("Claimed {} GO request(s): {}", locked.size(), ids);
+        return locked;
+    }
+
+    // Places prises dans les voies par select : rendues si la transaction est annulée, y compris par un échec à la
+    // validation, après la fin de cette méthode
+    private void releaseLanesOnRollback(List<Long> ids) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        mediaRequestLanes.release(ids);
+                    }
+                }
+            });
+        }
+    }
+
+    // Demande réclamée qui n'est plus RUNNING sur l'instance (terminée, ou retournée à GO) : libère sa place dans sa voie
+    public void release(Long id) {
+        mediaRequestLanes.release(id);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reprise des demandes dont le bail a expiré, c'est-à-dire abandonnées par une instance arrêtée en plein traitement :
+ * <ul>
+ *     <li>RUNNING : la demande retourne dans la file GO et sera réclamée à nouveau ;</li>
+ *     <li>FORMATTING_PROMPT : cette instance prend le bail et relance le formatage ;</li>
+ *     <li>au-delà de media.queue.max-attempts interruptions : la demande passe à DEAD_LETTER.</li>
+ * </ul>
+ * Chaque reprise est une mise à jour conditionnelle sur l'échéance du bail : si plusieurs instances passent en même
+ * temps, une seule reprend la demande.
+ * <p>
+ * Un bail expiré que cette instance détient encore (battement de cœur manqué : erreur passagère de la base, pause du
+ * ramasse-miettes) n'est pas repris mais prolongé : la demande est toujours en cours ici, la reprendre la ferait
+ * traiter deux fois.
+ */
+@Component
+public class MediaRequestReaper {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaRequestReaper.class);
+
+    private final MediaRequestRepository mediaRequestRepository;
+    private final MediaRequestLeases mediaRequestLeases;
+    private final MediaRequestService mediaRequestService;
+    private final MediaRequestEvents mediaRequestEvents;
+    private final MediaQueueProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public MediaRequestReaper(MediaRequestRepository mediaRequestRepository, MediaRequestLeases mediaRequestLeases,
+                              MediaRequestService mediaRequestService, MediaRequestEvents mediaRequestEvents,
+                              MediaQueueProperties properties, MeterRegistry meterRegistry) {
+        this.mediaRequestRepository = mediaRequestRepository;
+        this.mediaRequestLeases = mediaRequestLeases;
+        this.mediaRequestService = mediaRequestService;
+        this.mediaRequestEvents = mediaRequestEvents;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Reprend au plus media.queue.reaper-batch-size demandes dont le bail a expiré.
+     *
+     * @return le nombre de demandes reprises par cette instance
+     */
+    @Scheduled(fixedDelayString = "${media.queue.reaper-interval:30s}", initialDelayString = "${media.queue.reaper-interval:30s}")
+    public int reapExpiredLeases() {
+        LocalDateTime now = LocalDateTime.now();
+        List<MediaRequest> expired;
+        try {
+            expired = mediaRequestRepository.findExpiredLeases(MediaRequestLeases.LEASED_STATUSES, now, Limit.of(properties.getReaperBatchSize()));
+        } catch (Exception e) {
+            log.warn("Could not look for expired media request leases: {}", e.getMessage());
+            return 0;
+        }
+        if (expired.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> held = mediaRequestLeases.heldIds();
+        List<Long> stillHeld = new ArrayList<>();
+        List<MediaRequest> abandoned = new ArrayList<>();
+        for (MediaRequest request : expired) {
+            if (held.contains(request.getId()) && mediaRequestLeases.owner().equals(request.getLeaseOwner())) {
+                stillHeld.add(request.getId());
+            } else {
+                abandoned.add(request);
+            }
+        }
+        if (!stillHeld.isEmpty()) {
+            log.warn("{} expired media request lease(s) still held by this instance, renewed instead of reclaimed: {}", stillHeld.size(), stillHeld);
+            mediaRequestLeases.renew(stillHeld);
+        }
+
+        int reaped = 0;
+        for (MediaRequest request : abandoned) {
+            try {
+                if (reap(request, now)) {
+                    reaped++;
+                }
+            } catch (Exception e) {
+                // La demande sera reprise au prochain passage
+                log.error("Could not reclaim expired lease of request ID: {}", request.getId(), e);
+            }
+        }
+        log.info("Reclaimed {} of {} expired media request lease(s).", reaped, expired.size());
+        return reaped;
+    }
+
+    private boolean reap(MediaRequest request, LocalDateTime now) {
+        Long id = request.getId();
+        RequestStatus status = request.getStatus();
+        int attempts = request.getAttempts() + 1;
+        String outcome;
+
+        if (attempts >= properties.getMaxAttempts()) {
+            String errorMessage = MediaRequestService.truncateErrorMessage("Traitement interrompu " + attempts
+                    + " fois (statut " + status + ", dernière instance : " + request.getLeaseOwner() + "). Demande mise de côté.");
+            if (mediaRequestRepository.reclaimExpiredLease(id, status, RequestStatus.DEAD_LETTER, null, null, errorMessage, now) == 0) {
+                return false;
+            }
+            log.warn("Request ID {} moved to DEAD_LETTER after {} interrupted attempt(s) in {}.", id, attempts, status);
+            mediaRequestEvents.publishStatusChange(id, RequestStatus.DEAD_LETTER, now, errorMessage, null);
+            outcome = "dead_letter";
+        } else if (status == RequestStatus.RUNNING) {
+            if (mediaRequestRepository.reclaimExpiredLease(id, status, RequestStatus.GO, null, null, null, now) == 0) {
+                return false;
+            }
+            log.warn("Request ID {} abandoned by {} while RUNNING, put back to GO (attempt {}).", id, request.getLeaseOwner(), attempts);
+            mediaRequestEvents.publishStatusChange(id, RequestStatus.GO, now, null, null);
+            outcome = "requeued";
+        } else {
+            if (mediaRequestRepository.reclaimExpiredLease(id, status, RequestStatus.FORMATTING_PROMPT,
+                    mediaRequestLeases.owner(), mediaRequestLeases.expiresAt(now), null, now) == 0) {
+                return false;
+            }
+            log.warn("Request ID {} abandoned by {} while FORMATTING_PROMPT, resuming prompt formatting (attempt {}).", id, request.getLeaseOwner(), attempts);
+            request.setLeaseOwner(mediaRequestLeases.owner());
+            request.setAttempts(attempts);
+            request.setStatusUpdateDate(now);
+            mediaRequestEvents.publishStatusChange(id, RequestStatus.FORMATTING_PROMPT, now, null, null);
+            mediaRequestService.resumePromptFormatting(request);
+            outcome = "resumed";
+        }
+        Counter.builder("media.requests.leases.expired")
+                .description("Media requests whose lease expired, by status and outcome")
+                .tag("status", status.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+        return true;
+    }
+}
@@ -1,23 +1,41 @@
 package com.example.mediagenerator.service;
 
+import com.example.mediagenerator.config.MediaDedupProperties;
 import com.example.mediagenerator.dto.MediaRequestDto;
+import com.example.mediagenerator.dto.MediaRequestPageDto;
+import com.example.mediagenerator.dto.MediaRequestSummary;
 import com.example.mediagenerator.model.MediaRequest;
 import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestContentRepository;
 import com.example.mediagenerator.repository.MediaRequestRepository;
 // import lombok.RequiredArgsConstructor; // Remplacé par @Autowired pour le constructeur
 // import lombok.extern.slf4j.Slf4j; // Removing Lombok
 import org.slf4j.Logger; // Manual SLF4J
 import org.slf4j.LoggerFactory; // Manual SLF4J
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random; // Pour la simulation
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 // @Slf4j // Removing Lombok
@@ -25,18 +43,76 @@ public class MediaRequestService {
 
     private static final Logger log = LoggerFactory.getLogger(MediaRequestService.class); // Manual logger
 
+    // Statuts depuis lesquels une demande peut être (re)formatée en prompt
+    private static final Set<RequestStatus> PROMPT_FORMATTABLE_STATUSES =
+            EnumSet.of(RequestStatus.NOT_YET, RequestStatus.GO, RequestStatus.PROMPT_GENERATED);
+    // Filet de sécurité au-delà des délais et nouvelles tentatives de GeminiService (gemini.resilience.*)
+    private static final Duration PROMPT_FORMATTING_TIMEOUT = Duration.ofSeconds(90);
+    // Statuts d'une demande encore en cours de traitement, à laquelle une soumission identique est rattachée
+    private static final Set<RequestStatus> DEDUP_PENDING_STATUSES = EnumSet.of(RequestStatus.NOT_YET, RequestStatus.GO,
+            RequestStatus.FORMATTING_PROMPT, RequestStatus.PROMPT_GENERATED, RequestStatus.RUNNING);
+    // Avancement d'une génération poussé aux tableaux de bord par pas d'au moins ce nombre de points de pourcentage
+    private static final int PROGRESS_STEP_PERCENT = 5;
+
     private final MediaRequestRepository mediaRequestRepository;
-    private final GeminiService geminiService; // Injection du nouveau service
-    private final Random random = new Random(); // Conservé pour la simulation de processPendingMediaRequests
+    private final MediaRequestContentRepository mediaRequestContentRepository; // Scénario et prompt, hors de la ligne media_request
+    private final PromptProviderRouter promptProviderRouter; // Fournisseur de prompts choisi d'après selectedIAs
+    private final MediaRequestQueue mediaRequestQueue; // File partagée des demandes GO
+    private final ThreadPoolTaskExecutor mediaProcessingExecutor; // Pool borné des workers de génération
+    private final MediaRequestMetrics mediaRequestMetrics;
+    private final MediaRequestEvents mediaRequestEvents; // Changements de statut poussés aux tableaux de bord
+    private final MediaRequestLeases mediaRequestLeases; // Baux des demandes RUNNING et FORMATTING_PROMPT traitées ici
+    private final MediaGenerator mediaGenerator; // Étape RUNNING : production du fichier média
+    private final MediaDedupProperties dedupProperties;
+    private final RequestCoalescer requestCoalescer; // Formatages et générations partagés entre demandes identiques
+    private final Map<Long, PromptStream> activePromptStreams = new ConcurrentHashMap<>(); // Formatages en streaming en cours
+
+    @Value("${gemini.streaming.enabled:true}")
+    private boolean promptStreamingEnabled;
+
+    @Value("${gemini.streaming.checkpoint-chunks:10}")
+    private int promptCheckpointChunks; // 0 = pas d'enregistrement intermédiaire
+
+    /**
+     * Morceaux du prompt en cours de génération et demande avec son statut final.
+     */
+    public record PromptStream(Flux<String> chunks, Mono<MediaRequest> result) {
+    }
+
+    /**
+     * Demande retournée par une soumission : la nouvelle demande, ou (duplicate) une demande identique existante.
+     */
+    public record Submission(MediaRequest request, boolean duplicate) {
+    }
 
     @Autowired
-    public MediaRequestService(MediaRequestRepository mediaRequestRepository, GeminiService geminiService) {
+    public MediaRequestService(MediaRequestRepository mediaRequestRepository,
+                               MediaRequestContentRepository mediaRequestContentRepository,
+                               PromptProviderRouter promptProviderRouter,
+                               MediaRequestQueue mediaRequestQueue,
+                               @Qualifier("mediaProcessingExecutor") ThreadPoolTaskExecutor mediaProcessingExecutor,
+                               MediaRequestMetrics mediaRequestMetrics, MediaRequestEvents mediaRequestEvents,
+                               MediaRequestLeases mediaRequestLeases, MediaGenerator mediaGenerator,
+                               MediaDedupProperties dedupProperties, RequestCoalescer requestCoalescer) {
         this.mediaRequestRepository = mediaRequestRepository;
-        this.geminiService = geminiService;
+        this.mediaRequestContentRepository = mediaRequestContentRepository;
+        this.promptProviderRouter = promptProviderRouter;
+        this.mediaRequestQueue = mediaRequestQueue;
+        this.mediaProcessingExecutor = mediaProcessingExecutor;
+        this.mediaRequestMetrics = mediaRequestMetrics;
+        this.mediaRequestEvents = mediaRequestEvents;
+        this.mediaRequestLeases = mediaRequestLeases;
+        this.mediaGenerator = mediaGenerator;
+        this.dedupProperties = dedupProperties;
+        this.requestCoalescer = requestCoalescer;
     }
 
+    /**
+     * Enregistre une nouvelle demande. Si media.dedup.enabled, une demande identique (même scénario normalisé, mêmes
+     * paramètres) encore en cours ou réussie depuis moins de media.dedup.success-window est retournée à sa place.
+     */
     @Transactional
-    public MediaRequest submitNewRequest(MediaRequestDto dto) {
+    public Submission submitNewRequest(MediaRequestDto dto) {
         log.info("Submitting new media request for scenario: {}", dto.getScenario().substring(0, Math.min(dto.getScenario().length(), 50)) + "...");
         MediaRequest mediaRequest = new MediaRequest(
                 dto.getScenario(),
@@ -44,8 +120,25 @@ public class MediaRequestService {
                 dto.getMediaType(),
                 dto.getTargetPlatform()
         );
+        if (dto.getPriority() != null) {
+            mediaRequest.setPriority(dto.getPriority());
+        }
+        if (dedupProperties.isEnabled()) {
+            List<MediaRequest> duplicates = mediaRequestRepository.findDuplicates(mediaRequest.getScenarioHash(),
+                    mediaRequest.getMediaType(), mediaRequest.getTargetPlatform(), mediaRequest.getSelectedIAs(),
+                    DEDUP_PENDING_STATUSES, RequestStatus.SUCCESS, LocalDateTime.now().minus(dedupProperties.getSuccessWindow()),
+                    Limit.of(1));
+            if (!duplicates.isEmpty()) {
+                MediaRequest duplicate = duplicates.get(0);
+                log.info("Identical request ID {} is {}, returning it instead of creating a new one.", duplicate.getId(), duplicate.getStatus());
+                mediaRequestMetrics.recordDeduplicated("submit");
+                return new Submission(duplicate, true);
+            }
+        }
         // status, creationDate et statusUpdateDate sont gérés automatiquement ou dans le constructeur
-        return mediaRequestRepository.save(mediaRequest);
+        MediaRequest saved = mediaRequestRepository.save(mediaRequest);
+        mediaRequestEvents.publishStatusChange(saved.getId(), saved.getStatus(), saved.getStatusUpdateDate(), null, null);
+        return new Submission(saved, false);
     }
 
     @Transactional(readOnly = true)
@@ -54,136 +147,424 @@ public class MediaRequestService {
         return mediaRequestRepository.findAllByOrderByCreationDateDesc(); // Trie par date de création la plus récente
     }
 
+    /**
+     * Page du tableau de bord, de la plus récente à la plus ancienne, en pagination par clé.
+     * Sans curseur, retourne la première page.
+     */
+    @Transactional(readOnly = true)
+    public MediaRequestPageDto getDashboardPage(LocalDateTime beforeCreationDate, Long beforeId, int pageSize) {
+        log.debug("Fetching dashboard page before ({}, {}), size {}", beforeCreationDate, beforeId, pageSize);
+        Limit limit = Limit.of(pageSize + 1); // Une ligne de plus pour savoir s'il existe une page suivante
+        List<MediaRequestSummary> rows = (beforeCreationDate == null || beforeId == null)
+                ? mediaRequestRepository.findFirstSummaries(limit)
+                : mediaRequestRepository.findSummariesBefore(beforeCreationDate, beforeId, limit);
+
+        if (rows.size() <= pageSize) {
+            return new MediaRequestPageDto(rows, false, null, null);
+        }
+        List<MediaRequestSummary> page = rows.subList(0, pageSize);
+        MediaRequestSummary last = page.get(pageSize - 1);
+        return new MediaRequestPageDto(page, true, last.getCreationDate(), last.getId());
+    }
+
+    // Ligne media_request seule : le scénario et le prompt ne sont pas chargés (voir getRequestWithContent)
     @Transactional(readOnly = true)
     public Optional<MediaRequest> getRequestById(Long id) {
         log.debug("Fetching media request with id: {}", id);
         return mediaRequestRepository.findById(id);
     }
 
-    @Transactional
-    public Optional<MediaRequest> setRequestStatusToGo(Long id) {
+    // Demande avec son scénario et son prompt complets
+    @Transactional(readOnly = true)
+    public Optional<MediaRequest> getRequestWithContent(Long id) {
+        log.debug("Fetching media request with content, id: {}", id);
+        return mediaRequestRepository.findWithContentById(id);
+    }
+
+    // Transition NOT_YET -> GO en une seule requête conditionnelle ; false si la demande n'existe pas ou n'est plus NOT_YET
+    public boolean setRequestStatusToGo(Long id) {
         log.info("Setting request status to GO for id: {}", id);
-        Optional<MediaRequest> requestOptional = mediaRequestRepository.findById(id);
-        if (requestOptional.isPresent()) {
-            MediaRequest request = requestOptional.get();
-            if (request.getStatus() == RequestStatus.NOT_YET) {
-                request.setStatus(RequestStatus.GO);
-                // statusUpdateDate sera mis à jour automatiquement par @UpdateTimestamp
-                return Optional.of(mediaRequestRepository.save(request));
-            } else {
-                log.warn("Request {} is not in NOT_YET state, cannot set to GO. Current state: {}", id, request.getStatus());
-                return Optional.empty(); // Ou lever une exception
-            }
+        LocalDateTime now = LocalDateTime.now();
+        if (mediaRequestRepository.transitionStatus(id, EnumSet.of(RequestStatus.NOT_YET), RequestStatus.GO, now) == 0) {
+            log.warn("Request {} not found or not in NOT_YET state, cannot set to GO.", id);
+            return false;
         }
-        log.warn("Request with id {} not found, cannot set to GO.", id);
-        return Optional.empty();
+        mediaRequestEvents.publishStatusChange(id, RequestStatus.GO, now, null, null);
+        return true;
     }
 
-    @Transactional
-    public void updateRequestStatus(Long id, RequestStatus status, String errorMessage, String generatedPath, String formattedPrompt) {
-        log.info("Updating status for request id {}: Status={}, Error='{}', Path='{}', Prompt='{}'", id, status, errorMessage, generatedPath, formattedPrompt != null ? formattedPrompt.substring(0, Math.min(formattedPrompt.length(), 30))+"..." : "null");
-        mediaRequestRepository.findById(id).ifPresent(request -> {
-            request.setStatus(status);
-            if (errorMessage != null) request.setErrorMessage(errorMessage);
-            if (generatedPath != null) request.setGeneratedMediaPath(generatedPath);
-            if (formattedPrompt != null) request.setFormattedPrompt(formattedPrompt);
-            // statusUpdateDate sera mis à jour automatiquement
-            mediaRequestRepository.save(request);
-        });
+    /**
+     * Passe la demande de expectedStatus à status en une seule requête UPDATE, sans relire la ligne.
+     * Un message d'erreur ou un chemin null conserve la valeur déjà enregistrée.
+     *
+     * @return false si la demande n'existe pas ou n'est plus dans le statut attendu
+     */
+    public boolean updateRequestStatus(Long id, RequestStatus expectedStatus, RequestStatus status, String errorMessage, String generatedPath) {
+        log.info("Updating status for request id {}: {} -> {}, Error='{}', Path='{}'", id, expectedStatus, status, errorMessage, generatedPath);
+        String storedErrorMessage = truncateErrorMessage(errorMessage);
+        LocalDateTime now = LocalDateTime.now();
+        if (mediaRequestRepository.completeProcessing(id, expectedStatus, status, storedErrorMessage, generatedPath, mediaRequestLeases.owner(), now) == 0) {
+            log.warn("Request {} not found or no longer in {} state, status {} not applied.", id, expectedStatus, status);
+            return false;
+        }
+        mediaRequestEvents.publishStatusChange(id, status, now, storedErrorMessage, generatedPath);
+        return true;
     }
 
-    @Transactional
+    // Variante synchrone du formatage : mêmes transitions conditionnelles que startPromptFormatting, mais attend le
+    // résultat du fournisseur de prompts. Pas de transaction englobante, aucune connexion n'est retenue pendant l'appel.
     public Optional<MediaRequest> formatRequestToPrompt(Long id) {
         log.info("Attempting to format prompt for request ID: {}", id);
-        Optional<MediaRequest> requestOptional = mediaRequestRepository.findById(id);
+        return markFormattingPrompt(id).map(request -> runPromptFormatting(request).block());
+    }
+
 
+    /**
+     * Mode asynchrone du formatage : la demande passe à FORMATTING_PROMPT dans une transaction courte,
+     * l'appel au fournisseur de prompts s'exécute hors du thread appelant et son résultat est enregistré dans une seconde
+     * transaction courte. Aucune connexion JDBC n'est retenue pendant cet appel.
+     *
+     * @return la demande passée à FORMATTING_PROMPT, ou vide si elle n'existe pas ou n'est pas éligible
+     */
+    public Optional<MediaRequest> startPromptFormatting(Long id) {
+        log.info("Starting asynchronous prompt formatting for request ID: {} (streaming: {})", id, promptStreamingEnabled);
+        Optional<MediaRequest> claimed = markFormattingPrompt(id);
+        claimed.ifPresent(this::launchPromptFormatting);
+        return claimed;
+    }
+
+    /**
+     * Relance le formatage d'une demande reprise par {@link MediaRequestReaper} : elle est déjà FORMATTING_PROMPT,
+     * sous le bail de cette instance.
+     */
+    public void resumePromptFormatting(MediaRequest request) {
+        log.info("Resuming prompt formatting for request ID: {} (streaming: {})", request.getId(), promptStreamingEnabled);
+        mediaRequestLeases.track(request.getId());
+        launchPromptFormatting(request);
+    }
+
+    private void launchPromptFormatting(MediaRequest request) {
+        if (promptStreamingEnabled) {
+            runPromptStreaming(request);
+        } else {
+            runPromptFormatting(request).subscribe();
+        }
+    }
+
+    /**
+     * Flux du prompt en cours de génération pour une demande : les morceaux déjà reçus sont rejoués, puis les suivants
+     * sont émis au fil de l'eau. Sans formatage en cours, le prompt enregistré est émis en un seul morceau.
+     */
+    public PromptStream getPromptStream(Long id) {
+        PromptStream active = activePromptStreams.get(id);
+        if (active != null) {
+            return active;
+        }
+        Mono<MediaRequest> stored = Mono.fromCallable(() -> mediaRequestRepository.findWithContentById(id))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(Mono::justOrEmpty)
+                .cache();
+        return new PromptStream(stored.mapNotNull(MediaRequest::getFormattedPrompt).flux(), stored);
+    }
+
+    // Génération en streaming : le prompt partiel est enregistré tous les promptCheckpointChunks morceaux, le prompt
+    // complet à la fin. Les morceaux sont partagés (et rejoués) avec les abonnés SSE via activePromptStreams.
+    void runPromptStreaming(MediaRequest request) {
+        Long id = request.getId();
+        AtomicReference<TokenUsage> usage = new AtomicReference<>(TokenUsage.NONE);
+        Flux<String> chunks = requestCoalescer.promptStream(request, () -> promptProviderRouter.streamFormattedPrompt(
+                        request.getSelectedIAs(), request.getScenario(), request.getMediaType(), request.getTargetPlatform())
+                        .timeout(PROMPT_FORMATTING_TIMEOUT) // Délai maximal avant le premier morceau, puis entre deux morceaux
+                        .contextWrite(TokenUsageTracker.attributeTo(usage)))
+                .cache();
+        StringBuilder prompt = new StringBuilder();
+        AtomicInteger received = new AtomicInteger();
+        Mono<MediaRequest> result = chunks
+                .publishOn(Schedulers.boundedElastic()) // L'écriture en base est bloquante
+                .doOnNext(chunk -> {
+                    prompt.append(chunk);
+                    if (promptCheckpointChunks > 0 && received.incrementAndGet() % promptCheckpointChunks == 0) {
+                        checkpointPrompt(id, prompt.toString());
+                    }
+                })
+                .then(Mono.fromCallable(() -> completePromptFormatting(request, prompt.isEmpty() ? null : prompt.toString())))
+                .onErrorResume(error -> Mono.fromCallable(() -> failPromptFormatting(request, error))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .doOnNext(formatted -> saveTokenUsage(formatted, usage.get()))
+                .doFinally(signal -> {
+                    activePromptStreams.remove(id);
+                    mediaRequestLeases.release(id);
+                })
+                .cache();
+        activePromptStreams.put(id, new PromptStream(chunks, result));
+        result.subscribe();
+    }
+
+    private void checkpointPrompt(Long id, String partialPrompt) {
+        if (mediaRequestContentRepository.savePrompt(id, RequestStatus.FORMATTING_PROMPT, partialPrompt, mediaRequestLeases.owner()) == 0) {
+            log.debug("Request ID {} left FORMATTING_PROMPT, partial prompt not saved.", id);
+        }
+    }
+
+    // Passe la demande à FORMATTING_PROMPT, sous le bail de cette instance, si son statut le permet ;
+    // vide si elle n'existe pas ou n'est pas éligible. Le bail est libéré par runPromptFormatting ou runPromptStreaming.
+    public Optional<MediaRequest> markFormattingPrompt(Long id) {
+        Optional<MediaRequest> requestOptional = mediaRequestRepository.findWithContentById(id); // Le scénario est envoyé au fournisseur
         if (requestOptional.isEmpty()) {
             log.warn("Request ID {} not found for prompt formatting.", id);
             return Optional.empty();
         }
 
         MediaRequest request = requestOptional.get();
-
-        // Vérifier si le statut permet cette action
-        if (!(request.getStatus() == RequestStatus.NOT_YET || request.getStatus() == RequestStatus.GO || request.getStatus() == RequestStatus.PROMPT_GENERATED)) {
+        LocalDateTime now = LocalDateTime.now();
+        if (mediaRequestRepository.acquireLease(id, PROMPT_FORMATTABLE_STATUSES, RequestStatus.FORMATTING_PROMPT,
+                mediaRequestLeases.owner(), mediaRequestLeases.expiresAt(now), now) == 0) {
             log.warn("Request ID {} is in status {} and cannot be formatted into a prompt at this stage.", id, request.getStatus());
-            return Optional.empty(); // Ou lever une exception
+            return Optional.empty();
         }
-
-        // Mettre à jour le statut à FORMATTING_PROMPT
+        mediaRequestLeases.track(id);
+        mediaRequestMetrics.recordTimeInStatus(request.getStatus(), request.getStatusUpdateDate());
         request.setStatus(RequestStatus.FORMATTING_PROMPT);
-        request.setErrorMessage(null); // Clear previous errors if any
-        // Sauvegarde initiale du statut FORMATTING_PROMPT
-        MediaRequest inProgressRequest = mediaRequestRepository.save(request);
+        request.setStatusUpdateDate(now);
+        mediaRequestEvents.publishStatusChange(id, RequestStatus.FORMATTING_PROMPT, now, null, null);
         log.info("Request ID {} status set to FORMATTING_PROMPT.", id);
+        return Optional.of(request);
+    }
 
+    /**
+     * Appelle le fournisseur de prompts (choisi d'après selectedIAs) pour une demande déjà passée à FORMATTING_PROMPT et enregistre le résultat.
+     * Émet la demande avec son statut final (PROMPT_GENERATED ou FAIL) ; ne se termine jamais en erreur.
+     */
+    public Mono<MediaRequest> runPromptFormatting(MediaRequest request) {
+        Long id = request.getId();
+        // Jetons des appels au fournisseur, enregistrés avec la demande ; une demande qui rejoint un formatage
+        // identique en cours n'en consomme pas
+        AtomicReference<TokenUsage> usage = new AtomicReference<>(TokenUsage.NONE);
+        // Un formatage identique déjà en cours sur cette instance est partagé plutôt que relancé
+        return requestCoalescer.prompt(request, () -> promptProviderRouter.generateFormattedPrompt(request.getSelectedIAs(),
+                        request.getScenario(), request.getMediaType(), request.getTargetPlatform())
+                        .timeout(PROMPT_FORMATTING_TIMEOUT)
+                        .contextWrite(TokenUsageTracker.attributeTo(usage)))
+                .publishOn(Schedulers.boundedElastic()) // L'écriture en base est bloquante
+                .map(result -> completePromptFormatting(request, result))
+                .onErrorResume(error -> Mono.fromCallable(() -> failPromptFormatting(request, error))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .switchIfEmpty(Mono.fromCallable(() -> completePromptFormatting(request, null))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .doOnNext(formatted -> saveTokenUsage(formatted, usage.get()))
+                .doFinally(signal -> mediaRequestLeases.release(id));
+    }
+
+    // Ajoute à la demande les jetons consommés par son formatage ; un échec d'écriture ne change pas son résultat
+    private void saveTokenUsage(MediaRequest request, TokenUsage usage) {
+        if (usage.isEmpty()) {
+            return;
+        }
         try {
-            // Appel au GeminiService
-            String formattedPromptResult = geminiService.generateFormattedPrompt(
-                    inProgressRequest.getScenario(),
-                    inProgressRequest.getMediaType()
-            ).block(java.time.Duration.ofSeconds(60)); // Bloquer pour 60 secondes max, ajuster si nécessaire
-
-            if (formattedPromptResult != null && !formattedPromptResult.startsWith("Erreur")) {
-                log.info("Prompt formatting successful for request ID: {}. Received prompt starting with: {}", id, formattedPromptResult.substring(0, Math.min(formattedPromptResult.length(), 70))+"...");
-                inProgressRequest.setFormattedPrompt(formattedPromptResult);
-                inProgressRequest.setStatus(RequestStatus.PROMPT_GENERATED);
-                inProgressRequest.setErrorMessage(null); // Effacer les erreurs précédentes
-            } else {
-                log.warn("Prompt formatting failed for request ID: {}. Response from GeminiService: {}", id, formattedPromptResult);
-                inProgressRequest.setStatus(RequestStatus.FAIL);
-                inProgressRequest.setErrorMessage(formattedPromptResult != null ? formattedPromptResult : "Échec de la génération du prompt par le service Gemini.");
+            mediaRequestRepository.addTokenUsage(request.getId(), usage.promptTokens(), usage.candidatesTokens(), usage.totalTokens());
+            request.setPromptTokens(request.getPromptTokens() + usage.promptTokens());
+            request.setCandidatesTokens(request.getCandidatesTokens() + usage.candidatesTokens());
+            request.setTotalTokens(request.getTotalTokens() + usage.totalTokens());
+        } catch (RuntimeException e) {
+            log.warn("Could not save token usage {} of request ID {}: {}", usage, request.getId(), e.toString());
+        }
+    }
+
+    // Enregistre le prompt reçu si la demande est toujours en cours de formatage
+    MediaRequest completePromptFormatting(MediaRequest request, String formattedPromptResult) {
+        Long id = request.getId();
+        LocalDateTime now = LocalDateTime.now();
+        int updated;
+        if (formattedPromptResult != null && !formattedPromptResult.isEmpty()) {
+            log.info("Prompt formatting successful for request ID: {}. Received prompt starting with: {}", id, formattedPromptResult.substring(0, Math.min(formattedPromptResult.length(), 70))+"...");
+            // Le prompt est enregistré avant le changement de statut : si l'instance s'arrête entre les deux, la demande
+            // reste FORMATTING_PROMPT et son formatage est repris après expiration du bail
+            updated = mediaRequestContentRepository.savePrompt(id, RequestStatus.FORMATTING_PROMPT, formattedPromptResult, mediaRequestLeases.owner());
+            if (updated > 0) {
+                updated = mediaRequestRepository.completeWithPrompt(id, RequestStatus.FORMATTING_PROMPT, RequestStatus.PROMPT_GENERATED, mediaRequestLeases.owner(), now);
             }
-            return Optional.of(mediaRequestRepository.save(inProgressRequest));
+            request.setStatus(RequestStatus.PROMPT_GENERATED);
+            request.setFormattedPrompt(formattedPromptResult);
+            request.setErrorMessage(null);
+        } else {
+            log.warn("Prompt formatting failed for request ID: {}. Response from prompt provider: {}", id, formattedPromptResult);
+            String errorMessage = truncateErrorMessage(formattedPromptResult != null ? formattedPromptResult : "Échec de la génération du prompt par le service d'IA.");
+            updated = mediaRequestRepository.completeWithError(id, RequestStatus.FORMATTING_PROMPT, RequestStatus.FAIL, errorMessage, mediaRequestLeases.owner(), now);
+            request.setStatus(RequestStatus.FAIL);
+            request.setErrorMessage(errorMessage);
+        }
+        if (updated == 0) {
+            log.warn("Request ID {} left FORMATTING_PROMPT or was reclaimed by another instance before the prompt provider answered, result discarded.", id);
+        } else {
+            mediaRequestMetrics.recordTimeInStatus(RequestStatus.FORMATTING_PROMPT, request.getStatusUpdateDate());
+            mediaRequestEvents.publishStatusChange(id, request.getStatus(), now, request.getErrorMessage(), null);
+        }
+        return request;
+    }
 
-        } catch (Exception e) { // Cela inclut les exceptions si .block() timeout ou autres erreurs de l'appel réactif
-            log.error("Error during prompt formatting call to Gemini service for request ID: {}", id, e);
-            // Assurer que la requête est rechargée pour éviter des problèmes d'état détaché si l'exception vient de .block()
-            MediaRequest requestToFail = mediaRequestRepository.findById(id).orElse(inProgressRequest);
-            requestToFail.setStatus(RequestStatus.FAIL);
-            requestToFail.setErrorMessage("Erreur lors de la communication avec le service Gemini pour le formatage du prompt: " + e.getMessage());
-            return Optional.of(mediaRequestRepository.save(requestToFail));
+    MediaRequest failPromptFormatting(MediaRequest request, Throwable error) {
+        String errorMessage;
+        if (error instanceof PromptProviderException) {
+            // Échec typé (prompt bloqué, délai dépassé, disjoncteur ouvert...) : le message est déjà destiné à l'utilisateur
+            log.warn("Prompt formatting failed for request ID: {}: {}", request.getId(), error.getMessage());
+            errorMessage = error.getMessage();
+        } else {
+            log.error("Error during prompt formatting call to the prompt provider for request ID: {}", request.getId(), error);
+            errorMessage = "Erreur lors de la communication avec le service d'IA pour le formatage du prompt: " + error.getMessage();
         }
+        errorMessage = truncateErrorMessage(errorMessage);
+        LocalDateTime now = LocalDateTime.now();
+        if (mediaRequestRepository.completeWithError(request.getId(), RequestStatus.FORMATTING_PROMPT, RequestStatus.FAIL, errorMessage, mediaRequestLeases.owner(), now) > 0) {
+            mediaRequestMetrics.recordTimeInStatus(RequestStatus.FORMATTING_PROMPT, request.getStatusUpdateDate());
+            mediaRequestEvents.publishStatusChange(request.getId(), RequestStatus.FAIL, now, errorMessage, null);
+        }
+        request.setStatus(RequestStatus.FAIL);
+        request.setErrorMessage(errorMessage);
+        return request;
     }
 
+    // Réclame les demandes GO et les confie au pool de workers, sans attendre la fin de leur traitement.
+    // Retourne le nombre de demandes effectivement confiées au pool. Appelé en continu par MediaRequestDispatcher.
+    public int processPendingMediaRequests() {
+        log.debug("Checking for pending media generation requests (status GO)...");
+        int freeSlots = availableWorkerSlots();
+        if (freeSlots <= 0) {
+            log.debug("Media processing pool is saturated, no request claimed this round.");
+            return 0;
+        }
 
-    // Méthode pour simuler le traitement des tâches de génération de média.
-    // @Scheduled(fixedDelay = 10000) // Exécute toutes les 10 secondes
-    public void processPendingMediaRequests() {
-        log.info("Checking for pending media generation requests (status GO)...");
-        List<MediaRequest> pendingRequests = mediaRequestRepository.findByStatus(RequestStatus.GO);
+        // 1. Réclamer atomiquement les demandes GO (passage à RUNNING sous bail) : aucune autre instance ne peut les traiter
+        List<MediaRequest> claimedRequests = mediaRequestQueue.claimPending(freeSlots);
 
-        if (pendingRequests.isEmpty()) {
-            log.info("No pending requests with status GO found.");
-            return;
+        if (claimedRequests.isEmpty()) {
+            log.debug("No pending requests with status GO found.");
+            return 0;
         }
 
-        for (MediaRequest request : pendingRequests) {
-            log.info("Processing request ID: {}", request.getId());
-            // 1. Mettre à jour le statut à RUNNING
-            updateRequestStatus(request.getId(), RequestStatus.RUNNING, null, null, request.getFormattedPrompt());
-
-            // 2. Simuler le traitement (appel IA, génération média)
+        int dispatched = 0;
+        for (MediaRequest request : claimedRequests) {
+            mediaRequestEvents.publishStatusChange(request.getId(), RequestStatus.RUNNING, request.getStatusUpdateDate(), null, null);
+            mediaRequestLeases.track(request.getId());
+            RequestCoalescer.SharedGeneration shared = requestCoalescer.joinGeneration(request);
+            if (shared != null && !shared.isLedBy(request)) {
+                // Génération identique en cours : la demande attend son résultat sans occuper de worker, sous son bail
+                shared.result().whenComplete((media, error) -> completeCoalescedGeneration(request, media, error));
+                dispatched++;
+                continue;
+            }
             try {
-                // Simuler une durée de traitement
-                Thread.sleep(5000 + random.nextInt(10000)); // Entre 5 et 15 secondes
-
-                // Simuler succès ou échec
-                if (random.nextBoolean()) {
-                    log.info("Request ID: {} processed successfully.", request.getId());
-                    updateRequestStatus(request.getId(), RequestStatus.SUCCESS, null, "/simulated/output/media_" + request.getId() + ".mp4", request.getFormattedPrompt());
-                } else {
-                    log.warn("Request ID: {} failed to process.", request.getId());
-                    updateRequestStatus(request.getId(), RequestStatus.FAIL, "Simulated IA processing error.", null, request.getFormattedPrompt());
+                mediaProcessingExecutor.execute(() -> runMediaGeneration(request));
+                dispatched++;
+            } catch (TaskRejectedException e) {
+                // Le pool est plein : la demande retourne dans la file GO pour un prochain passage
+                log.warn("Media processing pool rejected request ID: {}, putting it back to GO.", request.getId());
+                if (shared != null) {
+                    requestCoalescer.abandonGeneration(shared);
+                }
+                mediaRequestLeases.release(request.getId());
+                mediaRequestQueue.release(request.getId());
+                updateRequestStatus(request.getId(), RequestStatus.RUNNING, RequestStatus.GO, null, null);
+            }
+        }
+        log.info("Dispatched {} of {} claimed media request(s) to the processing pool.", dispatched, claimedRequests.size());
+        return dispatched;
+    }
+
+    // Places disponibles dans le pool : workers libres + emplacements libres dans la file d'attente
+    private int availableWorkerSlots() {
+        int capacity = mediaProcessingExecutor.getMaxPoolSize() + mediaProcessingExecutor.getQueueCapacity();
+        return capacity - mediaProcessingExecutor.getActiveCount() - mediaProcessingExecutor.getQueueSize();
+    }
+
+    // Génération du média d'une demande réclamée, exécutée par un worker du pool. Son résultat est aussi appliqué aux
+    // demandes identiques qui l'attendent (RequestCoalescer).
+    void runMediaGeneration(MediaRequest request) {
+        log.info("Generating {} media for request ID: {}", request.getMediaType(), request.getId());
+        RequestCoalescer.SharedGeneration shared = requestCoalescer.ledBy(request);
+        MediaGenerator.GeneratedMedia media = null;
+        String errorMessage = null;
+        long start = System.nanoTime();
+        try {
+            media = mediaGenerator.generate(request, progressReporter(request, shared));
+            mediaRequestMetrics.recordGeneration(request.getMediaType(), true, Duration.ofNanos(System.nanoTime() - start), media.sizeBytes());
+            log.info("Request ID: {} processed successfully: {} ({} bytes).", request.getId(), media.path(), media.sizeBytes());
+            finishMediaGeneration(request, RequestStatus.SUCCESS, null, media.path());
+        } catch (MediaGenerationException e) {
+            log.warn("Media generation failed for request ID: {}: {}", request.getId(), e.getMessage(), e);
+            mediaRequestMetrics.recordGeneration(request.getMediaType(), false, Duration.ofNanos(System.nanoTime() - start), 0);
+            errorMessage = e.getMessage();
+            finishMediaGeneration(request, RequestStatus.FAIL, errorMessage, null);
+        } catch (InterruptedException e) {
+            log.error("Processing interrupted for request ID: {}", request.getId(), e);
+            Thread.currentThread().interrupt(); // Rétablir le statut d'interruption
+            errorMessage = "Processing was interrupted.";
+            finishMediaGeneration(request, RequestStatus.FAIL, errorMessage, null);
+        } catch (Exception e) {
+            log.error("Unexpected error during processing for request ID: {}", request.getId(), e);
+            mediaRequestMetrics.recordGeneration(request.getMediaType(), false, Duration.ofNanos(System.nanoTime() - start), 0);
+            errorMessage = "Unexpected error: " + e.getMessage();
+            finishMediaGeneration(request, RequestStatus.FAIL, errorMessage, null);
+        } finally {
+            mediaRequestLeases.release(request.getId());
+            mediaRequestQueue.release(request.getId());
+            if (shared != null) {
+                requestCoalescer.finishGeneration(shared, media, errorMessage);
+            }
+        }
+    }
+
+    // Demande rattachée à la génération d'une demande identique : même statut final et même fichier.
+    // Si cette génération n'a pas pu être lancée, la demande retourne dans la file GO.
+    private void completeCoalescedGeneration(MediaRequest request, MediaGenerator.GeneratedMedia media, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        try {
+            if (cause == null) {
+                log.info("Request ID: {} completed by an identical generation: {}.", request.getId(), media.path());
+                finishMediaGeneration(request, RequestStatus.SUCCESS, null, media.path());
+            } else if (cause instanceof CancellationException) {
+                log.info("Identical generation of request ID: {} was not started, putting it back to GO.", request.getId());
+                updateRequestStatus(request.getId(), RequestStatus.RUNNING, RequestStatus.GO, null, null);
+            } else {
+                finishMediaGeneration(request, RequestStatus.FAIL, cause.getMessage(), null);
+            }
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while completing coalesced request ID: {}", request.getId(), e);
+        } finally {
+            mediaRequestLeases.release(request.getId());
+            mediaRequestQueue.release(request.getId());
+        }
+    }
+
+    // Avancement publié seulement lorsqu'il progresse d'au moins PROGRESS_STEP_PERCENT points (ou atteint 100 %),
+    // pour la demande et pour les demandes identiques qui attendent sa génération
+    private MediaGenerator.Progress progressReporter(MediaRequest request, RequestCoalescer.SharedGeneration shared) {
+        AtomicInteger lastPublished = new AtomicInteger(0);
+        return fraction -> {
+            int percent = (int) Math.round(Math.max(0, Math.min(1, fraction)) * 100);
+            int last = lastPublished.get();
+            if ((percent - last >= PROGRESS_STEP_PERCENT || (percent == 100 && last < 100)) && lastPublished.compareAndSet(last, percent)) {
+                mediaRequestEvents.publishProgress(request.getId(), request.getStatusUpdateDate(), percent);
+                if (shared != null) {
+                    shared.followers().forEach(follower ->
+                            mediaRequestEvents.publishProgress(follower.getId(), follower.getStatusUpdateDate(), percent));
                 }
-            } catch (InterruptedException e) {
-                log.error("Processing interrupted for request ID: {}", request.getId(), e);
-                Thread.currentThread().interrupt(); // Rétablir le statut d'interruption
-                updateRequestStatus(request.getId(), RequestStatus.FAIL, "Processing was interrupted.", null, request.getFormattedPrompt());
-            } catch (Exception e) {
-                log.error("Unexpected error during processing for request ID: {}", request.getId(), e);
-                updateRequestStatus(request.getId(), RequestStatus.FAIL, "Unexpected error: " + e.getMessage(), null, request.getFormattedPrompt());
             }
+        };
+    }
+
+    // Les messages d'erreur (souvent suivis du message d'une exception) sont tronqués à la taille de la colonne
+    static String truncateErrorMessage(String errorMessage) {
+        if (errorMessage == null || errorMessage.length() <= MediaRequest.ERROR_MESSAGE_MAX_LENGTH) {
+            return errorMessage;
+        }
+        return errorMessage.substring(0, MediaRequest.ERROR_MESSAGE_MAX_LENGTH - 3) + "...";
+    }
+
+    // Statut final d'une génération : la demande doit être encore RUNNING
+    private void finishMediaGeneration(MediaRequest request, RequestStatus finalStatus, String errorMessage, String generatedPath) {
+        if (updateRequestStatus(request.getId(), RequestStatus.RUNNING, finalStatus, errorMessage, generatedPath)) {
+            mediaRequestMetrics.recordTimeInStatus(RequestStatus.RUNNING, request.getStatusUpdateDate());
+            mediaRequestMetrics.recordCompletion(finalStatus, request.getCreationDate());
         }
     }
 }
@@ -0,0 +1,128 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.dto.openai.ChatGPTChoice;
+import com.example.mediagenerator.dto.openai.ChatGPTRequest;
+import com.example.mediagenerator.dto.openai.ChatGPTResponse;
+import com.example.mediagenerator.dto.openai.ChatGPTUsage;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fournisseur de prompts pour les API compatibles OpenAI (POST {baseUrl}/chat/completions) : OpenAI, Mistral...
+ * Les appels sont non bloquants (WebClient), limités par un délai maximal et par le budget de jetons du modèle
+ * ({@link TokenUsageTracker}).
+ */
+public class OpenAiCompatiblePromptProvider implements PromptProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiCompatiblePromptProvider.class);
+
+    private static final String SYSTEM_MESSAGE = "Tu es un expert en rédaction de prompts pour les IA génératives d'images et de vidéos.";
+
+    private final PromptProvidersProperties.OpenAiCompatible settings;
+    private final PromptTemplates promptTemplates;
+    private final WebClient webClient;
+    private final TokenUsageTracker tokenUsageTracker;
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+
+    public OpenAiCompatiblePromptProvider(PromptProvidersProperties.OpenAiCompatible settings, PromptTemplates promptTemplates,
+                                          WebClient.Builder webClientBuilder, TokenUsageTracker tokenUsageTracker) {
+        this.settings = settings;
+        this.promptTemplates = promptTemplates;
+        this.tokenUsageTracker = tokenUsageTracker;
+        this.webClient = webClientBuilder
+                .baseUrl(settings.getBaseUrl())
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + settings.getApiKey())
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return settings.getName();
+    }
+
+    @Override
+    public boolean matches(String selectedIA) {
+        String name = selectedIA.trim();
+        return getName().equalsIgnoreCase(name) || settings.getAliases().stream().anyMatch(alias -> alias.equalsIgnoreCase(name));
+    }
+
+    @Override
+    public Mono<String> generateFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        String userMessage = promptTemplates.render(scenario, mediaType, targetPlatform);
+        ChatGPTRequest request = new ChatGPTRequest(settings.getModel(), SYSTEM_MESSAGE, userMessage,
+                settings.getMaxTokens(), settings.getTemperature());
+        log.info("Sending request to {} model {} for scenario excerpt: {}", getName(), settings.getModel(), scenario.substring(0, Math.min(scenario.length(), 50)) + "...");
+        long estimatedTokens = tokenUsageTracker.estimate(settings.getModel(), SYSTEM_MESSAGE + userMessage);
+        return tokenUsageTracker.reserve(settings.getModel(), estimatedTokens).flatMap(reservation -> Mono.deferContextual(context -> {
+            long start = System.nanoTime();
+            return webClient.post()
+                    .uri("/chat/completions")
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToMono(ChatGPTResponse.class)
+                    .timeout(settings.getTimeout())
+                    .doOnNext(response -> reservation.complete(context, getName(), tokenUsage(response.getUsage())))
+                    .doFinally(signal -> reservation.complete(context, getName(), null)) // Sans réponse : estimation rendue
+                    .map(this::responseText)
+                    .doOnNext(text -> {
+                        latencyTracker.record(System.nanoTime() - start);
+                        log.info("Successfully received response from {} model {}.", getName(), settings.getModel());
+                    })
+                    .onErrorMap(error -> !(error instanceof PromptProviderException), this::toProviderException);
+        }));
+    }
+
+    @Override
+    public Optional<Duration> latencyPercentile(double percentile) {
+        return latencyTracker.percentile(percentile);
+    }
+
+    private String responseText(ChatGPTResponse response) {
+        if (response.getChoices() == null || response.getChoices().isEmpty()) {
+            throw emptyResponse();
+        }
+        ChatGPTChoice choice = response.getChoices().get(0);
+        if ("content_filter".equals(choice.getFinishReason())) {
+            log.warn("{} response blocked by the content filter for model {}.", getName(), settings.getModel());
+            throw new PromptProviderException("Erreur: Contenu bloqué par les filtres de " + getName() + ".");
+        }
+        if (choice.getMessage() == null || choice.getMessage().getContent() == null || choice.getMessage().getContent().isBlank()) {
+            throw emptyResponse();
+        }
+        return choice.getMessage().getContent();
+    }
+
+    // Usage rapporté par l'API (champ usage) ; null s'il est absent
+    private static TokenUsage tokenUsage(ChatGPTUsage usage) {
+        return usage != null ? new TokenUsage(usage.getPromptTokens(), usage.getCompletionTokens(), usage.getTotalTokens()) : null;
+    }
+
+    private PromptProviderException emptyResponse() {
+        log.warn("Received empty or malformed response from {} model {}.", getName(), settings.getModel());
+        return new PromptProviderException("Erreur: Réponse vide ou malformée de " + getName() + ".");
+    }
+
+    private PromptProviderException toProviderException(Throwable error) {
+        log.error("Error calling {} model {}", getName(), settings.getModel(), error);
+        if (error instanceof TimeoutException) {
+            return new PromptProviderException("Erreur: " + getName() + " n'a pas répondu dans le délai de "
+                    + settings.getTimeout().toSeconds() + " s.", error);
+        }
+        if (error instanceof WebClientResponseException responseException) {
+            return new PromptProviderException("Erreur: Requête refusée par " + getName() + " ("
+                    + responseException.getStatusCode().value() + ").", error);
+        }
+        return new PromptProviderException("Erreur lors de la communication avec " + getName() + ": " + error.getMessage(), error);
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaGenerationProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Générateur local : produit un média de substitution par type, avec l'identifiant, la plateforme et le début du
+ * scénario de la demande :
+ * <ul>
+ *     <li>VIDEO : animation GIF de media.generation.video-frames images ;</li>
+ *     <li>IMAGES : archive ZIP de media.generation.image-count images PNG ;</li>
+ *     <li>COMIC : planche PNG de media.generation.comic-panels cases.</li>
+ * </ul>
+ * Le fichier est écrit par un FileChannel dans un fichier temporaire (.part), forcé sur disque puis renommé : un média
+ * publié est toujours complet. Une nouvelle génération de la même demande (reprise après interruption) le remplace.
+ */
+@Component
+@ConditionalOnProperty(name = "media.generation.generator", havingValue = "placeholder", matchIfMissing = true)
+public class PlaceholderMediaGenerator implements MediaGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(PlaceholderMediaGenerator.class);
+
+    // Préfixe des chemins publics : les fichiers du répertoire de stockage sont servis sous /media/ (MediaStorageConfig)
+    public static final String PUBLIC_PATH_PREFIX = "/media/";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int PANEL_GUTTER = 8;
+
+    private final MediaGenerationProperties properties;
+    private final Path storageDir;
+
+    @Autowired
+    public PlaceholderMediaGenerator(MediaGenerationProperties properties) {
+        this.properties = properties;
+        this.storageDir = Paths.get(properties.getStorageDir()).toAbsolutePath().normalize();
+        log.info("Placeholder media generator writing to {}", storageDir);
+    }
+
+    @Override
+    public GeneratedMedia generate(MediaRequest request, Progress progress) throws InterruptedException {
+        String fileName = "media_" + request.getId() + "." + extension(request.getMediaType());
+        Path target = storageDir.resolve(fileName);
+        Path partial = storageDir.resolve(fileName + ".part");
+        try {
+            Files.createDirectories(storageDir);
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE)) {
+                switch (request.getMediaType()) {
+                    case VIDEO -> writeAnimation(request, output, progress);
+                    case IMAGES -> writeImageSequence(request, output, progress);
+                    case COMIC -> writeComicPage(request, output, progress);
+                }
+                output.flush();
+                channel.force(false);
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new GeneratedMedia(PUBLIC_PATH_PREFIX + fileName, Files.size(target));
+        } catch (IOException e) {
+            deletePartial(partial);
+            throw new MediaGenerationException("Erreur lors de l'écriture du média : " + e.getMessage(), e);
+        } catch (InterruptedException | RuntimeException e) {
+            deletePartial(partial);
+            throw e;
+        }
+    }
+
+    public Path getStorageDir() {
+        return storageDir;
+    }
+
+    static String extension(MediaType mediaType) {
+        return switch (mediaType) {
+            case VIDEO -> "gif";
+            case IMAGES -> "zip";
+            case COMIC -> "png";
+        };
+    }
+
+    private void writeAnimation(MediaRequest request, OutputStream output, Progress progress) throws IOException, InterruptedException {
+        int frames = Math.max(1, properties.getVideoFrames());
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
+        // Cache en mémoire : ImageIO passerait sinon par un fichier temporaire
+        try (ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            IIOMetadata metadata = animationMetadata(writer);
+            writer.prepareWriteSequence(null);
+            for (int i = 0; i < frames; i++) {
+                checkInterrupted();
+                BufferedImage frame = renderFrame(request, properties.getFrameWidth(), properties.getFrameHeight(),
+                        "Image " + (i + 1) + "/" + frames, i, frames);
+                writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+                progress.update((i + 1) / (double) frames);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // Délai entre deux images et lecture en boucle (extension NETSCAPE 2.0)
+    private IIOMetadata animationMetadata(ImageWriter writer) throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(
+                ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB), writer.getDefaultWriteParam());
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+        IIOMetadataNode control = childNode(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", String.valueOf(Math.max(1, properties.getVideoFrameDelayMs() / 10)));
+        control.setAttribute("transparentColorIndex", "0");
+
+        IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+        loop.setAttribute("applicationID", "NETSCAPE");
+        loop.setAttribute("authenticationCode", "2.0");
+        loop.setUserObject(new byte[]{1, 0, 0}); // 0 : boucle infinie
+        childNode(root, "ApplicationExtensions").appendChild(loop);
+
+        metadata.setFromTree(format, root);
+        return metadata;
+    }
+
+    private void writeImageSequence(MediaRequest request, OutputStream output, Progress progress) throws IOException, InterruptedException {
+        int count = Math.max(1, properties.getImageCount());
+        ZipOutputStream zip = new ZipOutputStream(output);
+        for (int i = 0; i < count; i++) {
+            checkInterrupted();
+            BufferedImage image = renderFrame(request, properties.getFrameWidth(), properties.getFrameHeight(),
+                    "Image " + (i + 1) + "/" + count, i, count);
+            zip.putNextEntry(new ZipEntry(String.format("image_%02d.png", i + 1)));
+            writePng(image, zip);
+            zip.closeEntry();
+            progress.update((i + 1) / (double) count);
+        }
+        zip.finish(); // Le canal est fermé par l'appelant
+    }
+
+    private void writeComicPage(MediaRequest request, OutputStream output, Progress progress) throws IOException, InterruptedException {
+        int panels = Math.max(1, properties.getComicPanels());
+        int columns = (int) Math.ceil(Math.sqrt(panels));
+        int rows = (panels + columns - 1) / columns;
+        int panelWidth = Math.max(1, properties.getFrameWidth() / columns);
+        int panelHeight = Math.max(1, properties.getFrameHeight() / rows);
+        BufferedImage page = new BufferedImage(columns * (panelWidth + PANEL_GUTTER) + PANEL_GUTTER,
+                rows * (panelHeight + PANEL_GUTTER) + PANEL_GUTTER, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = page.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, page.getWidth(), page.getHeight());
+            for (int i = 0; i < panels; i++) {
+                checkInterrupted();
+                BufferedImage panel = renderFrame(request, panelWidth, panelHeight, "Case " + (i + 1), i, panels);
+                graphics.drawImage(panel, PANEL_GUTTER + (i % columns) * (panelWidth + PANEL_GUTTER),
+                        PANEL_GUTTER + (i / columns) * (panelHeight + PANEL_GUTTER), null);
+                // L'encodage de la planche compte pour la dernière part de l'avancement
+                progress.update(0.9 * (i + 1) / panels);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        writePng(page, output);
+        progress.update(1.0);
+    }
+
+    // Image de substitution : dégradé propre à la demande, légendes et barre d'avancement de la séquence
+    private static BufferedImage renderFrame(MediaRequest request, int width, int height, String caption, int index, int count) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            float hue = (request.getId() != null ? request.getId() % 12 : 0) / 12f + 0.25f * index / count;
+            graphics.setPaint(new GradientPaint(0, 0, Color.getHSBColor(hue, 0.45f, 0.95f),
+                    width, height, Color.getHSBColor(hue + 0.1f, 0.6f, 0.55f)));
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(new Color(255, 255, 255, 170));
+            graphics.fillRect(0, height - Math.max(2, height / 40), (int) ((index + 1) / (double) count * width), height);
+
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setColor(Color.WHITE);
+            int titleSize = Math.max(10, height / 10);
+            int textSize = Math.max(8, height / 18);
+            int margin = Math.max(4, width / 30);
+            graphics.setFont(new Font(Font.SANS_SERIF, Font.BOLD, titleSize));
+            graphics.drawString("#" + request.getId() + " " + request.getMediaType() + " " + request.getTargetPlatform(),
+                    margin, margin + titleSize);
+            graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, textSize));
+            if (request.getScenarioExcerpt() != null) {
+                graphics.drawString(request.getScenarioExcerpt(), margin, margin + titleSize + 2 * textSize);
+            }
+            graphics.drawString(caption, margin, height - margin - textSize / 2);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    // Écrit le PNG sans fermer le flux de destination ni passer par un fichier temporaire d'ImageIO
+    private static void writePng(BufferedImage image, OutputStream output) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            writer.write(image);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static IIOMetadataNode childNode(IIOMetadataNode parent, String name) {
+        for (int i = 0; i < parent.getLength(); i++) {
+            if (parent.item(i).getNodeName().equalsIgnoreCase(name)) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        parent.appendChild(node);
+        return node;
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private static void deletePartial(Path partial) {
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException e) {
+            log.warn("Could not delete partial media file {}: {}", partial, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.PromptBatchResultDto;
+import com.example.mediagenerator.dto.PromptBatchResultDto.Item;
+import com.example.mediagenerator.dto.PromptBatchResultDto.Outcome;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Formatage de prompts par lot : les demandes sont envoyées à Gemini en parallèle, dans la limite de
+ * {@code gemini.batch.concurrency} appels simultanés. Le débit est en plus borné par le limiteur
+ * partagé de {@link GeminiService}.
+ */
+@Service
+public class PromptBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptBatchService.class);
+
+    private final MediaRequestService mediaRequestService;
+    private final MediaRequestRepository mediaRequestRepository;
+    private final int concurrency;
+
+    @Autowired
+    public PromptBatchService(MediaRequestService mediaRequestService,
+                              MediaRequestRepository mediaRequestRepository,
+                              @Value("${gemini.batch.concurrency:4}") int concurrency) {
+        this.mediaRequestService = mediaRequestService;
+        this.mediaRequestRepository = mediaRequestRepository;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /** Formate toutes les demandes NOT_YET et GO, les plus anciennes d'abord. */
+    public Mono<PromptBatchResultDto> formatAllPending() {
+        return Mono.fromCallable(() -> mediaRequestRepository.findIdsByStatusIn(EnumSet.of(RequestStatus.NOT_YET, RequestStatus.GO)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(this::formatPrompts);
+    }
+
+    /** Formate les demandes indiquées ; les résultats sont rendus dans l'ordre des identifiants reçus. */
+    public Mono<PromptBatchResultDto> formatPrompts(List<Long> ids) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            log.info("Formatting a batch of {} prompt(s) with concurrency {}", ids.size(), concurrency);
+            return Flux.fromIterable(ids)
+                    .flatMapSequential(this::formatOne, concurrency)
+                    .collectList()
+                    .map(items -> PromptBatchResultDto.of(items, (System.nanoTime() - start) / 1_000_000))
+                    .doOnNext(result -> log.info("Prompt batch done in {} ms: {} generated, {} failed, {} skipped",
+                            result.getWallTimeMs(), result.getSucceeded(), result.getFailed(), result.getSkipped()));
+        });
+    }
+
+    private Mono<Item> formatOne(Long id) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Mono.fromCallable(() -> mediaRequestService.markFormattingPrompt(id))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(claimed -> claimed
+                            .map(request -> mediaRequestService.runPromptFormatting(request)
+                                    .map(done -> done.getStatus() == RequestStatus.PROMPT_GENERATED
+                                            ? new Item(id, Outcome.PROMPT_GENERATED, null, elapsedMs(start))
+                                            : new Item(id, Outcome.FAIL, done.getErrorMessage(), elapsedMs(start))))
+                            .orElseGet(() -> Mono.just(new Item(id, Outcome.SKIPPED,
+                                    "Demande introuvable ou dans un statut non éligible au formatage.", elapsedMs(start)))))
+                    .onErrorResume(e -> {
+                        log.error("Unexpected error while formatting request ID {} in batch", id, e);
+                        return Mono.just(new Item(id, Outcome.FAIL, e.getMessage(), elapsedMs(start)));
+                    });
+        });
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
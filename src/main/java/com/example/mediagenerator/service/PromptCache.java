@@ -0,0 +1,320 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaType;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cache des prompts formatés par Gemini, adressé par le contenu : la clé est un SHA-256 de tout ce qui
+ * influence la réponse (scénario, type de média, modèle de message, modèle, température, nombre max de tokens).
+ * <p>
+ * Le niveau mémoire est un LRU borné en taille avec expiration (TTL). Si un répertoire de persistance est
+ * configuré, chaque entrée est aussi écrite dans un fichier nommé par sa clé, ce qui permet au cache de
+ * survivre à un redémarrage. Le répertoire est borné à max-disk-entries fichiers : les fichiers expirés puis les
+ * plus anciens sont supprimés par un balayage périodique, et dès que la borne est dépassée.
+ * Les messages d'erreur ("Erreur...") ne sont jamais mis en cache.
+ * <p>
+ * Compteurs exposés dans Micrometer : prompt.cache.gets (result=hit|miss), prompt.cache.disk.hits,
+ * prompt.cache.evictions, et les jauges prompt.cache.size et prompt.cache.disk.size.
+ */
+@Component
+public class PromptCache implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptCache.class);
+    private static final String ERROR_PREFIX = "Erreur";
+    private static final String FILE_SUFFIX = ".prompt";
+
+    private final int maxEntries;
+    private final int maxDiskEntries;
+    private final Duration ttl;
+    private final Path persistenceDir; // null : pas de persistance sur disque
+    private final Clock clock;
+
+    private final Map<String, CachedPrompt> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicInteger diskEntries = new AtomicInteger(); // Fichiers du répertoire, recomptés à chaque balayage
+
+    private record CachedPrompt(String prompt, Instant expiresAt) {
+    }
+
+    private record DiskFile(Path path, Instant modified) {
+    }
+
+    /** Compteurs du cache ; {@code diskHits} est inclus dans {@code hits}. */
+    public record Stats(long hits, long diskHits, long misses, long evictions, int size) {
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    @Autowired
+    public PromptCache(@Value("${gemini.cache.max-entries:1000}") int maxEntries,
+                       @Value("${gemini.cache.ttl:24h}") Duration ttl,
+                       @Value("${gemini.cache.persistence-dir:}") String persistenceDir,
+                       @Value("${gemini.cache.max-disk-entries:10000}") int maxDiskEntries) {
+        this(maxEntries, maxDiskEntries, ttl, StringUtils.hasText(persistenceDir) ? Paths.get(persistenceDir) : null, Clock.systemUTC());
+    }
+
+    // Répertoire borné comme la mémoire
+    PromptCache(int maxEntries, Duration ttl, Path persistenceDir, Clock clock) {
+        this(maxEntries, maxEntries, ttl, persistenceDir, clock);
+    }
+
+    PromptCache(int maxEntries, int maxDiskEntries, Duration ttl, Path persistenceDir, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.maxDiskEntries = maxDiskEntries;
+        this.ttl = ttl;
+        this.persistenceDir = persistenceDir;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrompt> eldest) {
+                boolean evict = size() > PromptCache.this.maxEntries;
+                if (evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+        if (persistenceDir != null) {
+            try {
+                Files.createDirectories(persistenceDir);
+                log.info("Prompt cache persisted in {} (up to {} files)", persistenceDir.toAbsolutePath(), maxDiskEntries);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create prompt cache directory " + persistenceDir, e);
+            }
+            sweepDisk();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("prompt.cache.gets", hits, AtomicLong::get)
+                .description("Prompt cache lookups").tag("result", "hit").register(registry);
+        FunctionCounter.builder("prompt.cache.gets", misses, AtomicLong::get)
+                .description("Prompt cache lookups").tag("result", "miss").register(registry);
+        FunctionCounter.builder("prompt.cache.disk.hits", diskHits, AtomicLong::get)
+                .description("Prompt cache hits served from the persistence directory").register(registry);
+        FunctionCounter.builder("prompt.cache.evictions", evictions, AtomicLong::get)
+                .description("Prompt cache entries evicted (size or expiry)").register(registry);
+        Gauge.builder("prompt.cache.size", this, cache -> cache.stats().size())
+                .description("Prompts in the in-memory cache").register(registry);
+        if (persistenceDir != null) {
+            Gauge.builder("prompt.cache.disk.size", diskEntries, AtomicInteger::get)
+                    .description("Prompt files in the persistence directory").register(registry);
+        }
+    }
+
+    /** Calcule la clé de cache d'un appel de formatage. */
+    public static String key(String scenario, MediaType mediaType, String templateId, String modelName, Float temperature,
+                             Integer maxOutputTokens) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // Le séparateur \0 évite que deux combinaisons différentes produisent la même chaîne
+            String material = String.join("\u0000",
+                    String.valueOf(scenario), String.valueOf(mediaType), String.valueOf(templateId), String.valueOf(modelName),
+                    String.valueOf(temperature), String.valueOf(maxOutputTokens));
+            return HexFormat.of().formatHex(digest.digest(material.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public Optional<String> get(String key) {
+        Instant now = clock.instant();
+        synchronized (entries) {
+            CachedPrompt cached = entries.get(key);
+            if (cached != null) {
+                if (cached.expiresAt().isAfter(now)) {
+                    hits.incrementAndGet();
+                    return Optional.of(cached.prompt());
+                }
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+
+        Optional<CachedPrompt> fromDisk = readFromDisk(key, now);
+        if (fromDisk.isPresent()) {
+            synchronized (entries) {
+                entries.put(key, fromDisk.get());
+            }
+            hits.incrementAndGet();
+            diskHits.incrementAndGet();
+            return Optional.of(fromDisk.get().prompt());
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void put(String key, String prompt) {
+        if (prompt == null || prompt.isEmpty() || prompt.startsWith(ERROR_PREFIX)) {
+            return;
+        }
+        CachedPrompt cached = new CachedPrompt(prompt, clock.instant().plus(ttl));
+        synchronized (entries) {
+            entries.put(key, cached);
+        }
+        writeToDisk(key, prompt);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Supprime les fichiers expirés, avec les fichiers temporaires d'une écriture interrompue (arrêt brutal). Au-delà
+     * de max-disk-entries, supprime aussi les plus anciens jusqu'à 90 % de la borne : un répertoire plein n'est pas
+     * rebalayé à chaque nouvelle entrée.
+     */
+    @Scheduled(fixedDelayString = "${gemini.cache.sweep-interval:10m}", initialDelayString = "${gemini.cache.sweep-interval:10m}")
+    public synchronized void sweepDisk() {
+        if (persistenceDir == null) {
+            return;
+        }
+        Instant expired = clock.instant().minus(ttl);
+        List<DiskFile> files = new ArrayList<>();
+        int deleted = 0;
+        try (Stream<Path> listing = Files.list(persistenceDir)) {
+            for (Path path : (Iterable<Path>) listing::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(FILE_SUFFIX) && !name.endsWith(".tmp")) {
+                    continue;
+                }
+                Instant modified = lastModified(path);
+                if (modified == null) {
+                    continue; // Supprimé entre-temps
+                }
+                if (!modified.isAfter(expired)) {
+                    deleted += delete(path) ? 1 : 0;
+                } else if (name.endsWith(FILE_SUFFIX)) {
+                    files.add(new DiskFile(path, modified));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot sweep prompt cache directory {}", persistenceDir, e);
+            return;
+        }
+        if (files.size() > maxDiskEntries) {
+            files.sort(Comparator.comparing(DiskFile::modified));
+            int keep = maxDiskEntries - maxDiskEntries / 10;
+            while (files.size() > keep) {
+                deleted += delete(files.remove(0).path()) ? 1 : 0;
+            }
+        }
+        diskEntries.set(files.size());
+        if (deleted > 0) {
+            log.info("Prompt cache directory swept: {} files deleted, {} kept", deleted, files.size());
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), diskHits.get(), misses.get(), evictions.get(), entries.size());
+        }
+    }
+
+    // L'expiration d'un fichier est déduite de sa date de dernière modification
+    private Optional<CachedPrompt> readFromDisk(String key, Instant now) {
+        if (persistenceDir == null) {
+            return Optional.empty();
+        }
+        Path file = persistenceDir.resolve(key + FILE_SUFFIX);
+        try {
+            if (!Files.exists(file)) {
+                return Optional.empty();
+            }
+            Instant expiresAt = Files.getLastModifiedTime(file).toInstant().plus(ttl);
+            if (!expiresAt.isAfter(now)) {
+                if (Files.deleteIfExists(file)) {
+                    diskEntries.decrementAndGet();
+                    evictions.incrementAndGet();
+                }
+                return Optional.empty();
+            }
+            return Optional.of(new CachedPrompt(Files.readString(file, StandardCharsets.UTF_8), expiresAt));
+        } catch (IOException e) {
+            log.warn("Cannot read cached prompt {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeToDisk(String key, String prompt) {
+        if (persistenceDir == null) {
+            return;
+        }
+        Path file = persistenceDir.resolve(key + FILE_SUFFIX);
+        try {
+            // Écriture dans un fichier temporaire puis renommage, pour ne jamais lire un fichier à moitié écrit
+            boolean added = !Files.exists(file);
+            Path tmp = Files.createTempFile(persistenceDir, key, ".tmp");
+            Files.writeString(tmp, prompt, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (added && diskEntries.incrementAndGet() > maxDiskEntries) {
+                sweepDisk();
+            }
+        } catch (IOException e) {
+            log.warn("Cannot persist cached prompt {}", file, e);
+        }
+    }
+
+    private static Instant lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean delete(Path file) {
+        try {
+            boolean deleted = Files.deleteIfExists(file);
+            if (deleted && file.getFileName().toString().endsWith(FILE_SUFFIX)) {
+                evictions.incrementAndGet();
+            }
+            return deleted;
+        } catch (IOException e) {
+            log.warn("Cannot delete cached prompt {}", file, e);
+            return false;
+        }
+    }
+}
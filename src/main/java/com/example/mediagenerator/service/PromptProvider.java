@@ -0,0 +1,37 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Fournisseur de prompts formatés (Gemini, API compatible OpenAI...). {@link PromptProviderRouter} choisit le
+ * fournisseur d'une demande d'après son champ selectedIAs. Les échecs sont signalés par une
+ * {@link PromptProviderException} dont le message est destiné à l'utilisateur. Le message envoyé au fournisseur est
+ * produit par {@link PromptTemplates} pour le type de média et la plateforme de la demande.
+ */
+public interface PromptProvider {
+
+    // Nom affiché et reconnu dans selectedIAs (sans tenir compte de la casse)
+    String getName();
+
+    default boolean matches(String selectedIA) {
+        return getName().equalsIgnoreCase(selectedIA.trim());
+    }
+
+    Mono<String> generateFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform);
+
+    // Par défaut, le prompt complet est émis en un seul morceau
+    default Flux<String> streamFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        return generateFormattedPrompt(scenario, mediaType, targetPlatform).flux();
+    }
+
+    // Percentile de la latence des derniers appels réussis au service distant (hors cache) ; vide sans assez de mesures
+    default Optional<Duration> latencyPercentile(double percentile) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.mediagenerator.service;
+
+/**
+ * Échec d'un fournisseur de prompts. Le message est destiné à l'utilisateur et enregistré tel quel comme message
+ * d'erreur de la demande.
+ */
+public class PromptProviderException extends RuntimeException {
+
+    public PromptProviderException(String message) {
+        super(message);
+    }
+
+    public PromptProviderException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
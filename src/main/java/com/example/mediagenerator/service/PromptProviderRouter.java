@@ -0,0 +1,219 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Choisit le fournisseur de prompts d'une demande d'après selectedIAs ("ChatGPT,Mistral") : le premier fournisseur
+ * configuré de la liste répond, le suivant sert aux requêtes doublées (hedging). Sans fournisseur reconnu,
+ * le fournisseur par défaut (prompt.default-provider) est utilisé.
+ */
+@Service
+public class PromptProviderRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptProviderRouter.class);
+
+    private final List<PromptProvider> providers = new ArrayList<>();
+    private final PromptProvidersProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public PromptProviderRouter(List<PromptProvider> providerBeans, PromptProvidersProperties properties,
+                                PromptTemplates promptTemplates, WebClient.Builder webClientBuilder,
+                                MeterRegistry meterRegistry, TokenUsageTracker tokenUsageTracker) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.providers.addAll(providerBeans);
+        for (PromptProvidersProperties.OpenAiCompatible settings : properties.getOpenaiCompatible()) {
+            if (settings.getApiKey() == null || settings.getApiKey().isBlank()) {
+                log.info("Prompt provider {} has no API key, not enabled.", settings.getName());
+                continue;
+            }
+            // Un builder par fournisseur : baseUrl et en-têtes ne doivent pas être partagés
+            providers.add(new OpenAiCompatiblePromptProvider(settings, promptTemplates, webClientBuilder.clone(), tokenUsageTracker));
+        }
+        log.info("Prompt providers: {} (default: {}, hedging: {})", providers.stream().map(PromptProvider::getName).toList(),
+                properties.getDefaultProvider(), properties.getHedging().isEnabled());
+    }
+
+    /**
+     * Fournisseurs configurés désignés par selectedIAs, dans leur ordre, sans doublon ; à défaut, le fournisseur par défaut.
+     */
+    public List<PromptProvider> route(String selectedIAs) {
+        List<PromptProvider> routed = new ArrayList<>();
+        if (selectedIAs != null) {
+            for (String selectedIA : selectedIAs.split("[,;]")) {
+                if (selectedIA.isBlank()) {
+                    continue;
+                }
+                providers.stream()
+                        .filter(provider -> provider.matches(selectedIA))
+                        .findFirst()
+                        .filter(provider -> !routed.contains(provider))
+                        .ifPresentOrElse(routed::add, () -> log.debug("No prompt provider configured for '{}'.", selectedIA.trim()));
+            }
+        }
+        if (routed.isEmpty()) {
+            routed.add(findProvider(properties.getDefaultProvider()).orElse(providers.get(0)));
+        }
+        return routed;
+    }
+
+    public Mono<String> generateFormattedPrompt(String selectedIAs, String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        List<PromptProvider> routed = route(selectedIAs);
+        PromptProvider primary = routed.get(0);
+        PromptProvider secondary = hedgingProvider(routed);
+        if (secondary == null) {
+            return primary.generateFormattedPrompt(scenario, mediaType, targetPlatform);
+        }
+        return hedged(primary, secondary, scenario, mediaType, targetPlatform);
+    }
+
+    public Flux<String> streamFormattedPrompt(String selectedIAs, String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        List<PromptProvider> routed = route(selectedIAs);
+        PromptProvider primary = routed.get(0);
+        PromptProvider secondary = hedgingProvider(routed);
+        if (secondary == null) {
+            return primary.streamFormattedPrompt(scenario, mediaType, targetPlatform);
+        }
+        return hedgedStream(primary, secondary, scenario, mediaType, targetPlatform);
+    }
+
+    private PromptProvider hedgingProvider(List<PromptProvider> routed) {
+        if (!properties.getHedging().isEnabled()) {
+            return null;
+        }
+        if (routed.size() > 1) {
+            return routed.get(1);
+        }
+        return findProvider(properties.getHedging().getFallbackProvider())
+                .filter(provider -> provider != routed.get(0))
+                .orElse(null);
+    }
+
+    /**
+     * Requête doublée : le second fournisseur est sollicité quand le premier n'a pas répondu après le percentile de sa
+     * latence, ou dès qu'il échoue. La première réponse obtenue est retenue et l'autre appel annulé ; si les deux
+     * échouent, l'erreur du premier est propagée.
+     */
+    Mono<String> hedged(PromptProvider primary, PromptProvider secondary, String scenario, MediaType mediaType,
+                        TargetPlatform targetPlatform) {
+        Duration delay = hedgeDelay(primary);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        AtomicBoolean hedgeFired = new AtomicBoolean();
+
+        Mono<HedgedAnswer> primaryCall = primary.generateFormattedPrompt(scenario, mediaType, targetPlatform)
+                .map(text -> new HedgedAnswer(text, false))
+                .doOnError(error -> {
+                    primaryError.set(error);
+                    primaryFailed.tryEmitEmpty();
+                });
+        Mono<HedgedAnswer> hedgeCall = Mono.firstWithSignal(Mono.delay(delay).then(), primaryFailed.asMono())
+                .then(Mono.defer(() -> {
+                    hedgeFired.set(true);
+                    log.info("Hedging prompt request to {} after {} ms without answer from {}.", secondary.getName(), delay.toMillis(), primary.getName());
+                    return secondary.generateFormattedPrompt(scenario, mediaType, targetPlatform);
+                }))
+                .map(text -> new HedgedAnswer(text, true));
+
+        return Mono.firstWithValue(primaryCall, hedgeCall)
+                .doOnNext(answer -> {
+                    if (hedgeFired.get()) {
+                        recordHedge(primary, secondary, answer.fromHedge() ? "hedge_won" : "primary_won");
+                    }
+                })
+                .map(HedgedAnswer::text)
+                .onErrorMap(error -> {
+                    if (hedgeFired.get()) {
+                        recordHedge(primary, secondary, "both_failed");
+                    }
+                    return primaryError.get() != null ? primaryError.get() : error;
+                });
+    }
+
+    /**
+     * Flux doublé jusqu'au premier morceau : le second fournisseur est sollicité quand le premier n'a émis aucun
+     * morceau après le percentile de sa latence, ou dès qu'il échoue sans en avoir émis. Le premier flux à émettre un
+     * morceau est retenu jusqu'au bout et l'autre annulé : les morceaux déjà transmis ne sont jamais mélangés. Une
+     * erreur du flux retenu est propagée telle quelle ; si les deux échouent avant tout morceau, l'erreur du premier.
+     * Le percentile est celui de la réponse complète : le second fournisseur n'est pas sollicité plus tôt qu'en mode
+     * non streaming.
+     */
+    Flux<String> hedgedStream(PromptProvider primary, PromptProvider secondary, String scenario, MediaType mediaType,
+                              TargetPlatform targetPlatform) {
+        Duration delay = hedgeDelay(primary);
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        AtomicBoolean hedgeFired = new AtomicBoolean();
+        AtomicBoolean started = new AtomicBoolean();
+
+        Flux<HedgedAnswer> primaryStream = primary.streamFormattedPrompt(scenario, mediaType, targetPlatform)
+                .map(chunk -> new HedgedAnswer(chunk, false))
+                .doOnError(error -> {
+                    primaryError.set(error);
+                    primaryFailed.tryEmitEmpty();
+                });
+        Flux<HedgedAnswer> hedgeStream = Mono.firstWithSignal(Mono.delay(delay).then(), primaryFailed.asMono())
+                .thenMany(Flux.defer(() -> {
+                    hedgeFired.set(true);
+                    log.info("Hedging prompt stream to {} after {} ms without chunk from {}.", secondary.getName(), delay.toMillis(), primary.getName());
+                    return secondary.streamFormattedPrompt(scenario, mediaType, targetPlatform);
+                }))
+                .map(chunk -> new HedgedAnswer(chunk, true));
+
+        return Flux.firstWithValue(primaryStream, hedgeStream)
+                .doOnNext(answer -> {
+                    if (started.compareAndSet(false, true) && hedgeFired.get()) {
+                        recordHedge(primary, secondary, answer.fromHedge() ? "hedge_won" : "primary_won");
+                    }
+                })
+                .map(HedgedAnswer::text)
+                .onErrorMap(error -> {
+                    if (started.get()) {
+                        return error;
+                    }
+                    if (hedgeFired.get()) {
+                        recordHedge(primary, secondary, "both_failed");
+                    }
+                    return primaryError.get() != null ? primaryError.get() : error;
+                });
+    }
+
+    // Percentile de la latence du premier fournisseur, ou délai initial tant qu'il n'a pas assez de mesures
+    Duration hedgeDelay(PromptProvider primary) {
+        return primary.latencyPercentile(properties.getHedging().getPercentile())
+                .orElse(properties.getHedging().getInitialDelay());
+    }
+
+    private Optional<PromptProvider> findProvider(String name) {
+        if (name == null || name.isBlank()) {
+            return Optional.empty();
+        }
+        return providers.stream().filter(provider -> provider.matches(name)).findFirst();
+    }
+
+    private void recordHedge(PromptProvider primary, PromptProvider secondary, String outcome) {
+        meterRegistry.counter("prompt.hedged.requests", "primary", primary.getName(), "secondary", secondary.getName(), "outcome", outcome).increment();
+    }
+
+    private record HedgedAnswer(String text, boolean fromHedge) {
+    }
+}
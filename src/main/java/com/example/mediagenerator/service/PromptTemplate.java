@@ -0,0 +1,144 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Modèle de message utilisateur, analysé une fois en segments fixes et variables : {scenario}, {mediaType} et
+ * {targetPlatform}. Le rendu calcule la longueur exacte du message et le construit dans un seul StringBuilder,
+ * sans String.format ni réallocation. Une accolade qui n'ouvre pas une variable connue est recopiée telle quelle.
+ * <p>
+ * Immuable, partagé entre les threads.
+ */
+public final class PromptTemplate {
+
+    enum Variable {
+        SCENARIO("{scenario}"),
+        MEDIA_TYPE("{mediaType}"),
+        TARGET_PLATFORM("{targetPlatform}");
+
+        private final String placeholder;
+
+        Variable(String placeholder) {
+            this.placeholder = placeholder;
+        }
+    }
+
+    // Libellés en minuscules calculés une fois ; Locale.ROOT : "IMAGES" ne doit pas devenir "ımages" en turc
+    private static final String[] MEDIA_TYPE_LABELS = labels(MediaType.values());
+    private static final String[] TARGET_PLATFORM_LABELS = labels(TargetPlatform.values());
+
+    private final String name;
+    private final String id;
+    private final String[] literals; // Un segment fixe de plus que de variables : fixe, variable, fixe...
+    private final Variable[] variables;
+    private final int literalsLength;
+
+    private PromptTemplate(String name, String id, String[] literals, Variable[] variables) {
+        this.name = name;
+        this.id = id;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    public static PromptTemplate parse(String name, String text) {
+        List<String> literals = new ArrayList<>();
+        List<Variable> variables = new ArrayList<>();
+        int segmentStart = 0;
+        int brace = text.indexOf('{');
+        while (brace >= 0) {
+            Variable variable = variableAt(text, brace);
+            if (variable != null) {
+                literals.add(text.substring(segmentStart, brace));
+                variables.add(variable);
+                segmentStart = brace + variable.placeholder.length();
+            }
+            brace = text.indexOf('{', variable != null ? segmentStart : brace + 1);
+        }
+        literals.add(text.substring(segmentStart));
+        return new PromptTemplate(name, name + "@" + fingerprint(text), literals.toArray(String[]::new), variables.toArray(Variable[]::new));
+    }
+
+    // Nom de la ressource d'origine, pour les logs
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Identifiant du modèle et de son contenu (nom@empreinte) : entre dans la clé du cache de prompts, un modèle
+     * modifié ne sert donc pas les prompts produits avec l'ancien texte.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String render(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        String mediaTypeLabel = mediaType != null ? MEDIA_TYPE_LABELS[mediaType.ordinal()] : "";
+        String targetPlatformLabel = targetPlatform != null ? TARGET_PLATFORM_LABELS[targetPlatform.ordinal()] : "";
+        String scenarioText = String.valueOf(scenario);
+
+        int length = literalsLength;
+        for (Variable variable : variables) {
+            length += value(variable, scenarioText, mediaTypeLabel, targetPlatformLabel).length();
+        }
+        StringBuilder message = new StringBuilder(length);
+        message.append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            message.append(value(variables[i], scenarioText, mediaTypeLabel, targetPlatformLabel));
+            message.append(literals[i + 1]);
+        }
+        return message.toString();
+    }
+
+    private static String value(Variable variable, String scenario, String mediaType, String targetPlatform) {
+        return switch (variable) {
+            case SCENARIO -> scenario;
+            case MEDIA_TYPE -> mediaType;
+            case TARGET_PLATFORM -> targetPlatform;
+        };
+    }
+
+    private static Variable variableAt(String text, int index) {
+        for (Variable variable : Variable.values()) {
+            if (text.startsWith(variable.placeholder, index)) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    private static String[] labels(Enum<?>[] values) {
+        String[] labels = new String[values.length];
+        for (Enum<?> value : values) {
+            labels[value.ordinal()] = value.name().toLowerCase(Locale.ROOT);
+        }
+        return labels;
+    }
+
+    private static String fingerprint(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Modèles du message envoyé aux fournisseurs de prompts, chargés au démarrage depuis prompt.templates.location
+ * pour chaque type de média et chaque plateforme. Le modèle le plus précis disponible est retenu :
+ * user-message-video-tiktok.txt, puis user-message-video.txt, puis user-message.txt (obligatoire).
+ */
+@Component
+public class PromptTemplates {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptTemplates.class);
+
+    static final String DEFAULT_LOCATION = "classpath:prompts/";
+    private static final String BASE_NAME = "user-message";
+    private static final String EXTENSION = ".txt";
+
+    private final Map<MediaType, PromptTemplate> byMediaType = new EnumMap<>(MediaType.class);
+    private final Map<MediaType, Map<TargetPlatform, PromptTemplate>> byMediaTypeAndPlatform = new EnumMap<>(MediaType.class);
+
+    @Autowired
+    public PromptTemplates(ResourceLoader resourceLoader,
+                           @Value("${prompt.templates.location:" + DEFAULT_LOCATION + "}") String location) {
+        String base = location.endsWith("/") ? location : location + "/";
+        PromptTemplate fallback = load(resourceLoader, base, BASE_NAME);
+        if (fallback == null) {
+            throw new IllegalStateException("Prompt template " + base + BASE_NAME + EXTENSION + " not found");
+        }
+        for (MediaType mediaType : MediaType.values()) {
+            String mediaTypeName = BASE_NAME + "-" + mediaType.name().toLowerCase(Locale.ROOT);
+            PromptTemplate mediaTypeTemplate = orElse(load(resourceLoader, base, mediaTypeName), fallback);
+            byMediaType.put(mediaType, mediaTypeTemplate);
+            Map<TargetPlatform, PromptTemplate> byPlatform = new EnumMap<>(TargetPlatform.class);
+            for (TargetPlatform platform : TargetPlatform.values()) {
+                String platformName = mediaTypeName + "-" + platform.name().toLowerCase(Locale.ROOT);
+                byPlatform.put(platform, orElse(load(resourceLoader, base, platformName), mediaTypeTemplate));
+            }
+            byMediaTypeAndPlatform.put(mediaType, byPlatform);
+        }
+        log.info("Prompt templates loaded from {}: {}", base, byMediaTypeAndPlatform);
+    }
+
+    /** Modèles livrés avec l'application (classpath:prompts/). */
+    public static PromptTemplates defaults() {
+        return new PromptTemplates(new DefaultResourceLoader(), DEFAULT_LOCATION);
+    }
+
+    /** Modèle d'un type de média et d'une plateforme ; sans plateforme (null), celui du type de média. */
+    public PromptTemplate get(MediaType mediaType, TargetPlatform targetPlatform) {
+        return targetPlatform != null ? byMediaTypeAndPlatform.get(mediaType).get(targetPlatform) : byMediaType.get(mediaType);
+    }
+
+    public String render(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+        return get(mediaType, targetPlatform).render(scenario, mediaType, targetPlatform);
+    }
+
+    private static PromptTemplate load(ResourceLoader resourceLoader, String base, String name) {
+        Resource resource = resourceLoader.getResource(base + name + EXTENSION);
+        if (!resource.exists()) {
+            return null;
+        }
+        try {
+            String text = resource.getContentAsString(StandardCharsets.UTF_8);
+            // Le retour à la ligne final ajouté par les éditeurs ne fait pas partie du message
+            if (text.endsWith("\r\n")) {
+                text = text.substring(0, text.length() - 2);
+            } else if (text.endsWith("\n")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            return PromptTemplate.parse(name, text);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read prompt template " + resource.getDescription(), e);
+        }
+    }
+
+    private static PromptTemplate orElse(PromptTemplate template, PromptTemplate fallback) {
+        return template != null ? template : fallback;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaDedupProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Travail partagé entre demandes identiques traitées en même temps sur cette instance : même scénario normalisé
+ * ({@link MediaRequest#scenarioHash}), même type de média, même plateforme et mêmes IA. Le premier formatage ou la
+ * première génération d'une clé s'exécute ; les demandes identiques arrivées pendant ce temps reçoivent son résultat
+ * au lieu d'appeler à nouveau le fournisseur de prompts ou le générateur. Chaque demande garde ses propres transitions
+ * de statut. La clé est libérée à la fin du travail : une demande identique arrivée ensuite relance un appel.
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final boolean enabled;
+    private final MediaRequestMetrics mediaRequestMetrics;
+    private final Map<String, Mono<String>> prompts = new ConcurrentHashMap<>();
+    private final Map<String, Flux<String>> promptStreams = new ConcurrentHashMap<>();
+    private final Map<String, SharedGeneration> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Génération en cours pour une clé : demande qui l'exécute, résultat attendu et demandes identiques qui l'attendent.
+     */
+    public static final class SharedGeneration {
+
+        private final String key;
+        private final Long leaderId;
+        private final CompletableFuture<MediaGenerator.GeneratedMedia> result = new CompletableFuture<>();
+        private final List<MediaRequest> followers = new CopyOnWriteArrayList<>();
+
+        private SharedGeneration(String key, Long leaderId) {
+            this.key = key;
+            this.leaderId = leaderId;
+        }
+
+        public boolean isLedBy(MediaRequest request) {
+            return leaderId.equals(request.getId());
+        }
+
+        // Média produit, ou échec (MediaGenerationException) ; annulé si la génération n'a pas pu être lancée
+        public CompletableFuture<MediaGenerator.GeneratedMedia> result() {
+            return result;
+        }
+
+        public List<MediaRequest> followers() {
+            return followers;
+        }
+    }
+
+    @Autowired
+    public RequestCoalescer(MediaDedupProperties properties, MediaRequestMetrics mediaRequestMetrics) {
+        this.enabled = properties.isCoalesceInFlight();
+        this.mediaRequestMetrics = mediaRequestMetrics;
+    }
+
+    /** Formatage partagé : {@code call} n'est invoqué que si aucun formatage identique n'est en cours. */
+    public Mono<String> prompt(MediaRequest request, Supplier<Mono<String>> call) {
+        String key = key(request);
+        if (key == null) {
+            return call.get();
+        }
+        return share(prompts, key, "prompt", request, release -> call.get().doFinally(signal -> release.run()).cache());
+    }
+
+    /** Formatage en streaming partagé : les morceaux déjà reçus sont rejoués aux demandes qui le rejoignent. */
+    public Flux<String> promptStream(MediaRequest request, Supplier<Flux<String>> call) {
+        String key = key(request);
+        if (key == null) {
+            return call.get();
+        }
+        return share(promptStreams, key, "prompt", request, release -> call.get().doFinally(signal -> release.run()).cache());
+    }
+
+    /**
+     * Rattache la demande à la génération identique en cours, ou l'enregistre comme celle qui l'exécute si aucune ne
+     * l'est ({@link SharedGeneration#isLedBy}) ; cette dernière doit alors appeler finishGeneration ou abandonGeneration.
+     *
+     * @return null si la demande n'est pas partagée (coalescence désactivée ou demande sans empreinte de scénario)
+     */
+    public SharedGeneration joinGeneration(MediaRequest request) {
+        String key = key(request);
+        if (key == null) {
+            return null;
+        }
+        SharedGeneration created = new SharedGeneration(key, request.getId());
+        SharedGeneration current = generations.putIfAbsent(key, created);
+        if (current == null) {
+            return created;
+        }
+        // Rattachée après la fin de la génération, la demande reçoit tout de même son résultat (future terminé)
+        current.followers.add(request);
+        joined("generation", request, current.leaderId);
+        return current;
+    }
+
+    // Génération que mène cette demande ; null si elle n'en mène aucune
+    public SharedGeneration ledBy(MediaRequest request) {
+        String key = key(request);
+        SharedGeneration current = key == null ? null : generations.get(key);
+        return current != null && current.isLedBy(request) ? current : null;
+    }
+
+    // Résultat de la génération transmis aux demandes qui l'attendent ; errorMessage non null en cas d'échec
+    public void finishGeneration(SharedGeneration generation, MediaGenerator.GeneratedMedia media, String errorMessage) {
+        generations.remove(generation.key, generation);
+        if (errorMessage == null) {
+            generation.result.complete(media);
+        } else {
+            generation.result.completeExceptionally(new MediaGenerationException(errorMessage));
+        }
+    }
+
+    // La génération n'a pas été lancée (pool plein) : les demandes qui l'attendent retournent dans la file GO
+    public void abandonGeneration(SharedGeneration generation) {
+        generations.remove(generation.key, generation);
+        generation.result.completeExceptionally(new CancellationException("Generation of request " + generation.leaderId + " not started"));
+    }
+
+    // Clé de coalescence ; null (jamais partagée) sans empreinte de scénario ou si la coalescence est désactivée
+    private String key(MediaRequest request) {
+        if (!enabled || request.getScenarioHash() == null) {
+            return null;
+        }
+        return request.getScenarioHash() + '|' + request.getMediaType() + '|' + request.getTargetPlatform() + '|' + request.getSelectedIAs();
+    }
+
+    // Travail en cours pour la clé, ou celui démarré par start ; release retire ce dernier de inFlight à sa fin
+    private <W> W share(Map<String, W> inFlight, String key, String stage, MediaRequest request, Function<Runnable, W> start) {
+        AtomicReference<W> started = new AtomicReference<>();
+        W work = inFlight.computeIfAbsent(key, k -> {
+            W created = start.apply(() -> inFlight.remove(k, started.get()));
+            started.set(created);
+            return created;
+        });
+        if (work != started.get()) {
+            joined(stage, request, null);
+        }
+        return work;
+    }
+
+    private void joined(String stage, MediaRequest request, Long leaderId) {
+        mediaRequestMetrics.recordDeduplicated(stage);
+        log.info("Request ID {} joins an identical in-flight {} call{}.", request.getId(), stage,
+                leaderId != null ? " led by request ID " + leaderId : "");
+    }
+}
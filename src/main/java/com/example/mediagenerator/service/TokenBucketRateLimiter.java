@@ -0,0 +1,92 @@
+package com.example.mediagenerator.service;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Limiteur de débit côté client à seau de jetons. Le seau contient au plus {@code burst} jetons et se
+ * remplit de {@code permitsPerSecond} jetons par seconde. Un appel sans jeton disponible n'est pas rejeté :
+ * il réserve le prochain jeton et attend (sans bloquer de thread) le moment où il sera disponible.
+ */
+public class TokenBucketRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final LongSupplier nanoTime;
+
+    private double availableTokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(double permitsPerSecond, int burst, LongSupplier nanoTime) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.nanoTime = nanoTime;
+        this.availableTokens = this.burst;
+        this.lastRefillNanos = nanoTime.getAsLong();
+    }
+
+    /** Limiteur qui laisse tout passer, pour désactiver la limitation (débit <= 0). */
+    public static TokenBucketRateLimiter unlimited() {
+        return new TokenBucketRateLimiter(0, 1);
+    }
+
+    public boolean isUnlimited() {
+        return permitsPerSecond <= 0;
+    }
+
+    /**
+     * Réserve un jeton et retourne le temps à attendre avant de pouvoir l'utiliser (zéro s'il est disponible).
+     * Le solde peut devenir négatif : les appels suivants attendent alors d'autant plus longtemps.
+     */
+    public Duration reserve() {
+        return reserve(1);
+    }
+
+    /**
+     * Réserve {@code permits} jetons d'un coup, comme {@link #reserve()} : une réservation plus grande que le seau
+     * est acceptée, l'attente couvre alors le remplissage du solde négatif.
+     */
+    public synchronized Duration reserve(double permits) {
+        if (isUnlimited()) {
+            return Duration.ZERO;
+        }
+        refill();
+        availableTokens -= permits;
+        if (availableTokens >= 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((long) Math.ceil(-availableTokens / permitsPerSecond * 1_000_000_000d));
+    }
+
+    /**
+     * Corrige une réservation faite sur une estimation : {@code permits} jetons de plus sont retirés du solde,
+     * ou rendus s'il est négatif (sans dépasser {@code burst}). Les appels déjà en attente ne sont pas avancés.
+     */
+    public synchronized void adjust(double permits) {
+        if (isUnlimited()) {
+            return;
+        }
+        refill();
+        availableTokens = Math.min(burst, availableTokens - permits);
+    }
+
+    /** Se termine lorsqu'un jeton a été obtenu ; la réservation est faite à la souscription. */
+    public Mono<Void> acquire() {
+        return Mono.defer(() -> {
+            Duration wait = reserve();
+            return wait.isZero() ? Mono.<Void>empty() : Mono.delay(wait).then();
+        });
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        availableTokens = Math.min(burst, availableTokens + (now - lastRefillNanos) * permitsPerSecond / 1_000_000_000d);
+        lastRefillNanos = now;
+    }
+}
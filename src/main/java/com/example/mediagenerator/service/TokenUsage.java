@@ -0,0 +1,19 @@
+package com.example.mediagenerator.service;
+
+/**
+ * Jetons consommés par un appel à un fournisseur de prompts (ou cumulés sur plusieurs appels) : jetons du message
+ * envoyé, de la réponse générée, et total facturé par le fournisseur.
+ */
+public record TokenUsage(long promptTokens, long candidatesTokens, long totalTokens) {
+
+    public static final TokenUsage NONE = new TokenUsage(0, 0, 0);
+
+    public TokenUsage plus(TokenUsage other) {
+        return new TokenUsage(promptTokens + other.promptTokens, candidatesTokens + other.candidatesTokens,
+                totalTokens + other.totalTokens);
+    }
+
+    public boolean isEmpty() {
+        return totalTokens == 0 && promptTokens == 0 && candidatesTokens == 0;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.dto.TokenUsageHourDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Jetons consommés par les fournisseurs de prompts, et budget de jetons par minute de chaque modèle
+ * (prompt.token-budget.*).
+ * <ul>
+ *     <li>Avant un appel, une estimation de ses jetons est réservée dans le budget du modèle : l'appel attend, sans
+ *     bloquer de thread, que le budget le permette. Le débit de formatage ralentit à mesure que le budget s'épuise au
+ *     lieu de dépasser le quota du fournisseur ; au-delà de max-wait, l'appel est refusé.</li>
+ *     <li>À la réponse, l'estimation est remplacée par l'usage rapporté par le fournisseur. L'usage est compté
+ *     (compteur prompt.tokens), cumulé par modèle et par heure en mémoire, et attribué à la demande formatée si
+ *     l'appel s'exécute sous {@link #attributeTo}.</li>
+ * </ul>
+ * Budgets et agrégats sont propres à l'instance.
+ */
+@Component
+public class TokenUsageTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenUsageTracker.class);
+
+    private static final String REQUEST_USAGE_KEY = TokenUsageTracker.class.getName() + ".requestUsage";
+    private static final int CHARS_PER_TOKEN = 4; // Ordre de grandeur usuel pour un texte en langue latine
+    private static final double CANDIDATES_SMOOTHING = 0.2; // Poids de la dernière réponse dans la moyenne glissante
+
+    private final PromptProvidersProperties.TokenBudget properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenBucketRateLimiter> budgets = new ConcurrentHashMap<>();
+    private final Map<String, Double> averageCandidatesTokens = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<LocalDateTime, HourCounters>> hours = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TokenUsageTracker(PromptProvidersProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties.getTokenBudget();
+        this.meterRegistry = meterRegistry;
+        if (this.properties.getTokensPerMinute() > 0 || !this.properties.getModels().isEmpty()) {
+            log.info("Token budget: {} tokens per minute per model (overrides {}), burst {}, max wait {}",
+                    this.properties.getTokensPerMinute(), this.properties.getModels(), this.properties.getBurstTokens(),
+                    this.properties.getMaxWait());
+        }
+    }
+
+    /**
+     * Réservation de jetons dans le budget d'un modèle, à solder par {@link #complete} une fois l'appel terminé.
+     */
+    public final class Reservation {
+
+        private final String model;
+        private final TokenBucketRateLimiter budget;
+        private final long estimatedTokens;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Reservation(String model, TokenBucketRateLimiter budget, long estimatedTokens) {
+            this.model = model;
+            this.budget = budget;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        /**
+         * Remplace l'estimation par l'usage rapporté par le fournisseur et l'enregistre. Sans usage connu (appel en
+         * échec, annulé ou fournisseur muet), l'estimation est rendue au budget. Sans effet après le premier appel.
+         */
+        public void complete(ContextView context, String provider, TokenUsage usage) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            budget.adjust((usage != null ? usage.totalTokens() : 0) - estimatedTokens);
+            if (usage != null && !usage.isEmpty()) {
+                record(context, provider, model, usage);
+            }
+        }
+    }
+
+    /**
+     * Contexte Reactor sous lequel l'usage des appels est cumulé dans {@code requestUsage}, pour l'enregistrer avec
+     * la demande formatée.
+     */
+    public static Context attributeTo(AtomicReference<TokenUsage> requestUsage) {
+        return Context.of(REQUEST_USAGE_KEY, requestUsage);
+    }
+
+    /**
+     * Jetons estimés d'un appel : message envoyé, à raison d'un jeton pour quatre caractères, et moyenne des réponses
+     * récentes du modèle.
+     */
+    public long estimate(String model, String userMessage) {
+        long promptTokens = (userMessage.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+        return promptTokens + Math.round(averageCandidatesTokens.getOrDefault(model, 0.0));
+    }
+
+    /**
+     * Réserve {@code estimatedTokens} dans le budget du modèle ; se termine lorsque le budget le permet. Si l'attente
+     * dépasse prompt.token-budget.max-wait, la réservation est rendue et l'appel refusé par une
+     * {@link PromptProviderException}. Une réservation annulée pendant l'attente est rendue.
+     */
+    public Mono<Reservation> reserve(String model, long estimatedTokens) {
+        return Mono.defer(() -> {
+            TokenBucketRateLimiter budget = budgets.computeIfAbsent(model, this::createBudget);
+            Reservation reservation = new Reservation(model, budget, estimatedTokens);
+            Duration wait = budget.reserve(estimatedTokens);
+            if (wait.isZero()) {
+                return Mono.just(reservation);
+            }
+            if (wait.compareTo(properties.getMaxWait()) > 0) {
+                reservation.complete(Context.empty(), null, null);
+                log.warn("Token budget of model {} exhausted: {} tokens would wait {} ms, call refused.", model, estimatedTokens, wait.toMillis());
+                meterRegistry.counter("prompt.token.budget.rejected", "model", model).increment();
+                return Mono.error(new PromptProviderException("Erreur: Budget de jetons du modèle " + model
+                        + " épuisé pour le moment, réessayez dans quelques minutes."));
+            }
+            log.debug("Token budget of model {}: waiting {} ms for {} tokens.", model, wait.toMillis(), estimatedTokens);
+            Timer.builder("prompt.token.budget.wait")
+                    .description("Time prompt calls waited for the token budget")
+                    .tag("model", model)
+                    .register(meterRegistry)
+                    .record(wait);
+            return Mono.delay(wait)
+                    .thenReturn(reservation)
+                    .doOnCancel(() -> reservation.complete(Context.empty(), null, null));
+        });
+    }
+
+    /**
+     * Usage par modèle et par heure, de l'heure la plus récente à la plus ancienne conservée.
+     */
+    public List<TokenUsageHourDto> hourlyUsage() {
+        List<TokenUsageHourDto> usage = new ArrayList<>();
+        hours.forEach((model, byHour) -> byHour.forEach((hour, counters) -> usage.add(new TokenUsageHourDto(model, hour,
+                counters.calls.sum(), counters.promptTokens.sum(), counters.candidatesTokens.sum(), counters.totalTokens.sum()))));
+        usage.sort(Comparator.comparing(TokenUsageHourDto::getHour).reversed().thenComparing(TokenUsageHourDto::getModel));
+        return usage;
+    }
+
+    private void record(ContextView context, String provider, String model, TokenUsage usage) {
+        meterRegistry.counter("prompt.tokens", "provider", provider, "model", model, "type", "prompt").increment(usage.promptTokens());
+        meterRegistry.counter("prompt.tokens", "provider", provider, "model", model, "type", "candidates").increment(usage.candidatesTokens());
+        averageCandidatesTokens.merge(model, (double) usage.candidatesTokens(),
+                (average, latest) -> average + CANDIDATES_SMOOTHING * (latest - average));
+
+        LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        NavigableMap<LocalDateTime, HourCounters> byHour = hours.computeIfAbsent(model, m -> new ConcurrentSkipListMap<>());
+        HourCounters counters = byHour.get(hour);
+        if (counters == null) {
+            counters = byHour.computeIfAbsent(hour, h -> new HourCounters());
+            // Nouvelle heure : les agrégats au-delà de la durée de conservation sont oubliés
+            byHour.headMap(hour.minus(properties.getHourlyRetention())).clear();
+        }
+        counters.calls.increment();
+        counters.promptTokens.add(usage.promptTokens());
+        counters.candidatesTokens.add(usage.candidatesTokens());
+        counters.totalTokens.add(usage.totalTokens());
+
+        AtomicReference<TokenUsage> requestUsage = context.getOrDefault(REQUEST_USAGE_KEY, null);
+        if (requestUsage != null) {
+            requestUsage.accumulateAndGet(usage, TokenUsage::plus);
+        }
+    }
+
+    /**
+     * Seau de capacité B rempli de (budget - B) jetons par minute : sur toute fenêtre de 60 s, au plus
+     * B + (budget - B) = budget jetons sont réservés.
+     */
+    private TokenBucketRateLimiter createBudget(String model) {
+        long tokensPerMinute = properties.getModels().getOrDefault(model, properties.getTokensPerMinute());
+        if (tokensPerMinute <= 0) {
+            return TokenBucketRateLimiter.unlimited();
+        }
+        long burst = properties.getBurstTokens() > 0 ? properties.getBurstTokens() : tokensPerMinute / 10;
+        burst = Math.max(1, Math.min(burst, tokensPerMinute - 1));
+        log.info("Token budget of model {}: {} tokens per minute, burst {}", model, tokensPerMinute, burst);
+        return new TokenBucketRateLimiter(Math.max(1, tokensPerMinute - burst) / 60d, (int) Math.min(burst, Integer.MAX_VALUE));
+    }
+
+    private static final class HourCounters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder candidatesTokens = new LongAdder();
+        private final LongAdder totalTokens = new LongAdder();
+    }
+}
@@ -5,7 +5,7 @@ document.addEventListener('DOMContentLoaded', function() {
     // Pour l'instant, les tooltips natifs du navigateur via `title` sont utilisés.
 
     // Animation simple pour les messages flash (disparition après quelques secondes)
-    const flashMessages = document.querySelectorAll('.flash-message');
+    const flashMessages = document.querySelectorAll('.flash-message:not(#new-requests-notice)');
     flashMessages.forEach(function(message) {
         setTimeout(function() {
             message.style.opacity = '0';
@@ -42,9 +42,205 @@ document.addEventListener('DOMContentLoaded', function() {
     });
     */
 
+    // Chargement à la demande du texte complet d'une demande (scénario, prompt formaté, erreur)
+    document.querySelectorAll('.button.action-expand').forEach(button => {
+        button.addEventListener('click', function() {
+            const id = button.dataset.requestId;
+            const detailsRow = document.getElementById('details-' + id);
+            if (!detailsRow) {
+                return;
+            }
+            detailsRow.hidden = !detailsRow.hidden;
+            button.querySelector('.material-icons').textContent = detailsRow.hidden ? 'expand_more' : 'expand_less';
+            if (detailsRow.hidden || detailsRow.dataset.loaded === 'true') {
+                return;
+            }
+            const container = detailsRow.querySelector('.request-details-content');
+            fetch('/request/' + id + '/content', { headers: { 'Accept': 'application/json' } })
+                .then(response => {
+                    if (!response.ok) {
+                        throw new Error('HTTP ' + response.status);
+                    }
+                    return response.json();
+                })
+                .then(content => {
+                    container.replaceChildren(
+                        detailsBlock('Scénario', content.scenario),
+                        detailsBlock('Prompt formaté', content.formattedPrompt),
+                        detailsBlock('Erreur', content.errorMessage)
+                    );
+                    detailsRow.dataset.loaded = 'true';
+                })
+                .catch(error => {
+                    container.textContent = 'Impossible de charger le contenu : ' + error.message;
+                });
+        });
+    });
+
+    // Formatage en streaming : le prompt s'affiche au fil de sa génération (Server-Sent Events).
+    // Sans EventSource, ou si le formatage ne peut pas démarrer, le formulaire est soumis normalement.
+    if (window.EventSource) {
+        document.querySelectorAll('form[action$="/format-prompt"]').forEach(form => {
+            form.addEventListener('submit', function(event) {
+                event.preventDefault();
+                const row = form.closest('tr');
+                fetch(form.action, { method: 'POST', headers: { 'Accept': 'application/json' } })
+                    .then(response => {
+                        if (response.status !== 202) {
+                            form.submit();
+                            return;
+                        }
+                        form.querySelector('button').disabled = true;
+                        streamPrompt(row.dataset.requestId, row);
+                    })
+                    .catch(() => form.submit());
+            });
+        });
+    }
+
+    // Mises à jour en direct : chaque changement de statut poussé par le serveur met à jour la ligne concernée,
+    // le passage à GO n'a plus besoin de recharger la page. Sans EventSource, les formulaires sont soumis normalement.
+    if (window.EventSource) {
+        document.querySelectorAll('form[action$="/go"]').forEach(form => {
+            form.addEventListener('submit', function(event) {
+                event.preventDefault();
+                form.querySelector('button').disabled = true;
+                fetch(form.action, { method: 'POST', headers: { 'Accept': 'application/json' } })
+                    .then(response => {
+                        if (!response.ok) {
+                            form.submit(); // Le message d'erreur est affiché par la page rechargée
+                        }
+                    })
+                    .catch(() => form.submit());
+            });
+        });
+        const source = new EventSource('/requests/events');
+        source.addEventListener('status', event => applyStatusChange(JSON.parse(event.data)));
+        // Après une coupure, EventSource se reconnecte seul ; les changements manqués entre-temps n'apparaissent qu'après actualisation
+    }
+
     console.log("Media Generator Dashboard script loaded.");
 });
 
+// Bloc titre + texte pour le détail d'une demande (textContent : le contenu n'est jamais interprété comme du HTML)
+function detailsBlock(title, text) {
+    const block = document.createElement('div');
+    block.className = 'request-details-block';
+    const heading = document.createElement('h4');
+    heading.textContent = title;
+    const body = document.createElement('pre');
+    body.textContent = text || '—';
+    block.append(heading, body);
+    return block;
+}
+
+// Affiche les morceaux du prompt dans la ligne de détail au fur et à mesure, puis le statut final
+function streamPrompt(id, row) {
+    const detailsRow = document.getElementById('details-' + id);
+    const statusText = row.querySelector('.status-badge > span:last-child');
+    statusText.textContent = 'FORMATTING PROMPT';
+
+    const promptBlock = detailsBlock('Prompt formaté (en cours)', '');
+    const promptText = promptBlock.querySelector('pre');
+    promptText.textContent = '';
+    detailsRow.querySelector('.request-details-content').replaceChildren(promptBlock);
+    detailsRow.dataset.loaded = 'false'; // Le contenu complet sera rechargé au prochain dépliage
+    detailsRow.hidden = false;
+    row.querySelector('.action-expand .material-icons').textContent = 'expand_less';
+
+    const source = new EventSource('/request/' + id + '/prompt-stream');
+    source.addEventListener('chunk', event => {
+        promptText.textContent += event.data;
+    });
+    source.addEventListener('done', event => {
+        source.close();
+        const result = JSON.parse(event.data);
+        statusText.textContent = (result.status || 'FAIL').replace('_', ' ');
+        promptBlock.querySelector('h4').textContent = 'Prompt formaté';
+        if (result.errorMessage || result.error) {
+            promptBlock.after(detailsBlock('Erreur', result.errorMessage || result.error));
+        }
+    });
+    source.onerror = () => source.close();
+}
+
+// Icône, classe et titre du badge de statut, comme dans fragments/status-icon.html
+const STATUS_ICONS = {
+    NOT_YET: ['hourglass_empty', 'not-yet', 'Pas encore traité'],
+    GO: ['play_circle_outline', 'go', 'Prêt pour génération média'],
+    FORMATTING_PROMPT: ['edit_note', 'formatting-prompt', 'Formatage du prompt en cours'],
+    PROMPT_GENERATED: ['description', 'prompt-generated', 'Prompt généré'],
+    RUNNING: ['sync', 'running', 'Génération média en cours'],
+    SUCCESS: ['check_circle_outline', 'success', 'Média généré avec succès'],
+    FAIL: ['error_outline', 'fail', 'Échec'],
+    DEAD_LETTER: ['report', 'dead-letter', 'Mise de côté après plusieurs interruptions']
+};
+
+// Statuts pour lesquels les actions Format et Go Média sont proposées
+const ACTIONABLE_STATUSES = ['NOT_YET', 'PROMPT_GENERATED'];
+
+// Met à jour la ligne d'une demande (badge, date, actions) à partir d'un évènement de changement de statut
+function applyStatusChange(change) {
+    const row = document.querySelector('tr[data-request-id="' + change.id + '"]');
+    if (!row) {
+        // Demande soumise ailleurs : elle n'apparaîtrait qu'en tête de la première page
+        if (change.status === 'NOT_YET' && !new URLSearchParams(window.location.search).has('before')) {
+            document.getElementById('new-requests-notice').hidden = false;
+        }
+        return;
+    }
+    const status = change.status;
+    const [iconName, iconClass, iconTitle] = STATUS_ICONS[status] || ['help_outline', 'unknown', 'Statut inconnu'];
+    Object.keys(STATUS_ICONS).forEach(name => row.classList.remove(name.toLowerCase()));
+    row.classList.add(status.toLowerCase());
+
+    const badge = row.querySelector('.status-badge');
+    badge.className = 'status-badge status-' + status.toLowerCase();
+    const icon = badge.querySelector('.status-icon');
+    icon.textContent = iconName;
+    icon.className = 'material-icons status-icon ' + iconClass;
+    icon.title = iconTitle;
+    // Pendant RUNNING, les évènements d'avancement ajoutent le pourcentage de la génération
+    badge.querySelector(':scope > span:last-child').textContent = status.replace('_', ' ')
+        + (change.progress != null ? ' ' + change.progress + ' %' : '');
+    row.querySelector('.status-update-date').textContent = formatDateTime(change.statusUpdateDate);
+
+    const actionable = ACTIONABLE_STATUSES.includes(status);
+    row.querySelectorAll('form[action$="/format-prompt"], form[action$="/go"]').forEach(form => {
+        form.hidden = !actionable;
+        form.querySelector('button').disabled = false;
+    });
+    const viewLink = row.querySelector('.action-view');
+    if (change.generatedMediaPath) {
+        viewLink.href = change.generatedMediaPath;
+    }
+    viewLink.hidden = status !== 'SUCCESS' || viewLink.getAttribute('href') === '#';
+    const failure = row.querySelector('.error-message-inline');
+    if (change.errorMessage) {
+        failure.title = change.errorMessage;
+    }
+    failure.hidden = (status !== 'FAIL' && status !== 'DEAD_LETTER') || !failure.title;
+    if (status === 'PROMPT_GENERATED') {
+        row.querySelector('.prompt-info').hidden = false;
+    }
+
+    // Le détail (prompt, erreur) a pu changer : il sera rechargé au prochain dépliage
+    const detailsRow = document.getElementById('details-' + change.id);
+    if (detailsRow) {
+        detailsRow.dataset.loaded = 'false';
+    }
+}
+
+// "2024-01-01T10:00:00.123" -> "01/01/2024 10:00", comme le rendu Thymeleaf de la colonne
+function formatDateTime(isoDateTime) {
+    if (!isoDateTime) {
+        return '';
+    }
+    const [date, time] = isoDateTime.split('T');
+    const [year, month, day] = date.split('-');
+    return day + '/' + month + '/' + year + ' ' + time.substring(0, 5);
+}
+
 // Fonction utilitaire si on veut des tooltips plus avancés plus tard
 function createCustomTooltip(element, text) {
     // ...
@@ -0,0 +1,177 @@
+package com.example.mediagenerator.config;
+
+import com.example.mediagenerator.dto.MediaRequestSummary;
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.example.mediagenerator.service.MediaRequestExportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(HibernateCacheConfig.class)
+@EnableConfigurationProperties(MediaCacheProperties.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Le cache n'est alimenté et invalidé qu'à la validation
+class HibernateCacheConfigTest {
+
+    @Autowired
+    private MediaRequestRepository mediaRequestRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private CacheManager hibernateCacheManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        mediaRequestRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    private Long saveRequest(RequestStatus status) {
+        MediaRequest request = new MediaRequest("Scenario " + status, "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        request.setStatus(status);
+        return mediaRequestRepository.save(request).getId();
+    }
+
+    @Test
+    void findById_shouldBeServedFromCacheUntilStatusTransition() {
+        Long id = saveRequest(RequestStatus.NOT_YET);
+
+        mediaRequestRepository.findById(id).orElseThrow();
+        mediaRequestRepository.findById(id).orElseThrow();
+        long hits = statistics.getSecondLevelCacheHitCount();
+        assertTrue(hits >= 2, "Lectures servies par le cache : " + hits);
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        assertEquals(1, mediaRequestRepository.transitionStatus(id, EnumSet.of(RequestStatus.NOT_YET), RequestStatus.GO, LocalDateTime.now()));
+
+        assertEquals(RequestStatus.GO, mediaRequestRepository.findById(id).orElseThrow().getStatus());
+        assertEquals(1, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void statusTransition_shouldKeepOtherRequestsCached() {
+        Long transitioned = saveRequest(RequestStatus.NOT_YET);
+        Long other = saveRequest(RequestStatus.SUCCESS);
+        mediaRequestRepository.findById(transitioned).orElseThrow();
+        mediaRequestRepository.findById(other).orElseThrow();
+        statistics.clear();
+
+        assertEquals(1, mediaRequestRepository.transitionStatus(transitioned, EnumSet.of(RequestStatus.NOT_YET), RequestStatus.GO, LocalDateTime.now()));
+        assertEquals(1, mediaRequestRepository.leaseForIds(List.of(transitioned), RequestStatus.GO, RequestStatus.RUNNING,
+                "node-1", LocalDateTime.now().plusMinutes(1), LocalDateTime.now()));
+
+        assertEquals(RequestStatus.SUCCESS, mediaRequestRepository.findById(other).orElseThrow().getStatus());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(RequestStatus.RUNNING, mediaRequestRepository.findById(transitioned).orElseThrow().getStatus());
+        assertEquals(1, statistics.getEntityLoadCount());
+        mediaRequestRepository.findById(transitioned).orElseThrow();
+        assertEquals(1, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void rolledBackTransition_shouldNotCacheTheUncommittedStatus() {
+        Long id = saveRequest(RequestStatus.NOT_YET);
+        mediaRequestRepository.findById(id).orElseThrow();
+        statistics.clear();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(transaction -> {
+            mediaRequestRepository.transitionStatus(id, EnumSet.of(RequestStatus.NOT_YET), RequestStatus.GO, LocalDateTime.now());
+            assertEquals(RequestStatus.GO, mediaRequestRepository.findById(id).orElseThrow().getStatus());
+            transaction.setRollbackOnly();
+        });
+        assertEquals(1, statistics.getEntityLoadCount()); // Lecture en base dans la transaction, demande verrouillée
+
+        assertEquals(RequestStatus.NOT_YET, mediaRequestRepository.findById(id).orElseThrow().getStatus());
+        mediaRequestRepository.findById(id).orElseThrow();
+        assertEquals(2, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void findFirstSummaries_shouldBeServedFromQueryCacheUntilStatusTransition() {
+        Long id = saveRequest(RequestStatus.NOT_YET);
+
+        mediaRequestRepository.findFirstSummaries(Limit.of(10));
+        List<MediaRequestSummary> cached = mediaRequestRepository.findFirstSummaries(Limit.of(10));
+        assertEquals(1, statistics.getQueryCacheHitCount());
+        assertEquals(RequestStatus.NOT_YET, cached.get(0).getStatus());
+
+        mediaRequestRepository.transitionStatus(id, EnumSet.of(RequestStatus.NOT_YET), RequestStatus.GO, LocalDateTime.now());
+
+        List<MediaRequestSummary> page = mediaRequestRepository.findFirstSummaries(Limit.of(10));
+        assertEquals(1, statistics.getQueryCacheHitCount());
+        assertEquals(RequestStatus.GO, page.get(0).getStatus());
+    }
+
+    @Test
+    void export_shouldNotFillTheRequestRegion() throws Exception {
+        saveRequest(RequestStatus.SUCCESS);
+        saveRequest(RequestStatus.FAIL);
+        saveRequest(RequestStatus.NOT_YET);
+        entityManagerFactory.getCache().evict(MediaRequest.class);
+        statistics.clear();
+        MediaRequestExportService exportService =
+                new MediaRequestExportService(mediaRequestRepository, entityManager, transactionManager, new ObjectMapper());
+
+        assertEquals(3, exportService.export(new ByteArrayOutputStream(), RequestFileFormat.JSONL, null));
+
+        assertEquals(0, statistics.getDomainDataRegionStatistics(MediaRequest.CACHE_REGION).getPutCount());
+        assertFalse(hibernateCacheManager.getCache(MediaRequest.CACHE_REGION).iterator().hasNext());
+    }
+
+    @Test
+    void expiry_shouldKeepTerminalRequestsLonger() {
+        saveRequest(RequestStatus.SUCCESS);
+        saveRequest(RequestStatus.RUNNING);
+        MediaRequestCacheExpiry expiry = new MediaRequestCacheExpiry(Duration.ofMinutes(1), Duration.ofHours(24));
+
+        Cache<Object, Object> region = hibernateCacheManager.getCache(MediaRequest.CACHE_REGION);
+        Set<RequestStatus> statuses = EnumSet.noneOf(RequestStatus.class);
+        for (Cache.Entry<Object, Object> entry : region) {
+            RequestStatus status = MediaRequestCacheExpiry.status(entry.getValue());
+            long ttl = expiry.expireAfterCreate(entry.getKey(), entry.getValue(), 0);
+            assertEquals(status == RequestStatus.SUCCESS ? Duration.ofHours(24).toNanos() : Duration.ofMinutes(1).toNanos(), ttl);
+            statuses.add(status);
+        }
+        assertEquals(EnumSet.of(RequestStatus.SUCCESS, RequestStatus.RUNNING), statuses);
+    }
+}
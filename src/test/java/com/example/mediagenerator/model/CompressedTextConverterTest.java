@@ -0,0 +1,51 @@
+package com.example.mediagenerator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedTextConverterTest {
+
+    private final CompressedTextConverter converter = new CompressedTextConverter(true, 64);
+
+    @Test
+    void longRepetitiveText_shouldBeStoredCompressedAndReadBackUnchanged() {
+        String prompt = "Plan large, lumière dorée, caméra lente sur le chat astronaute. ".repeat(100);
+
+        byte[] stored = converter.convertToDatabaseColumn(prompt);
+
+        assertTrue(stored.length < prompt.getBytes(StandardCharsets.UTF_8).length / 5);
+        assertEquals(prompt, converter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    void shortText_shouldBeStoredAsPlainUtf8() {
+        String scenario = "Un chat 🐱";
+
+        byte[] stored = converter.convertToDatabaseColumn(scenario);
+
+        assertEquals(scenario.getBytes(StandardCharsets.UTF_8).length + 1, stored.length);
+        assertEquals(scenario, converter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    void compressedText_shouldStayReadableWhenCompressionIsDisabled() {
+        String prompt = "Prompt ".repeat(200);
+        byte[] stored = converter.convertToDatabaseColumn(prompt);
+
+        CompressedTextConverter disabled = new CompressedTextConverter(false, 64);
+
+        assertEquals(prompt, disabled.convertToEntityAttribute(stored));
+        assertEquals(prompt.length() + 1, disabled.convertToDatabaseColumn(prompt).length);
+        assertNull(disabled.convertToDatabaseColumn(null));
+    }
+
+    @Test
+    void excerpt_shouldNotSplitASurrogatePair() {
+        String scenario = "x".repeat(MediaRequest.SCENARIO_EXCERPT_LENGTH - 1) + "🐱 et la suite";
+
+        assertEquals(MediaRequest.SCENARIO_EXCERPT_LENGTH - 1, MediaRequest.excerpt(scenario).length());
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.mediagenerator.repository;
+
+import com.example.mediagenerator.dto.MediaRequestSummary;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class MediaRequestRepositoryTest {
+
+    @Autowired
+    private MediaRequestRepository mediaRequestRepository;
+
+    @Autowired
+    private MediaRequestContentRepository mediaRequestContentRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private List<Long> saveRequests(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MediaRequest request = new MediaRequest("Scenario " + i + " " + "x".repeat(200), "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+            if (i % 2 == 0) {
+                request.setFormattedPrompt("Prompt " + i);
+            }
+            ids.add(mediaRequestRepository.saveAndFlush(request).getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void findFirstSummaries_shouldReturnNewestFirstWithExcerptOnly() {
+        List<Long> ids = saveRequests(3);
+
+        List<MediaRequestSummary> page = mediaRequestRepository.findFirstSummaries(Limit.of(2));
+
+        assertEquals(2, page.size());
+        assertEquals(ids.get(2), page.get(0).getId());
+        assertEquals(ids.get(1), page.get(1).getId());
+        assertEquals(MediaRequestSummary.SCENARIO_EXCERPT_LENGTH, page.get(0).getScenarioExcerpt().length());
+        assertTrue(page.get(0).getPromptAvailable());
+        assertFalse(page.get(1).getPromptAvailable());
+    }
+
+    @Test
+    void findSummariesBefore_shouldWalkEveryRowExactlyOnce() {
+        List<Long> ids = saveRequests(7);
+
+        List<Long> seen = new ArrayList<>();
+        List<MediaRequestSummary> page = mediaRequestRepository.findFirstSummaries(Limit.of(3));
+        while (!page.isEmpty()) {
+            page.forEach(row -> seen.add(row.getId()));
+            MediaRequestSummary last = page.get(page.size() - 1);
+            page = mediaRequestRepository.findSummariesBefore(last.getCreationDate(), last.getId(), Limit.of(3));
+        }
+
+        Collections.reverse(ids);
+        assertEquals(ids, seen);
+    }
+
+    @Test
+    void completeProcessing_shouldOnlyApplyFromExpectedStatusAndKeepNullFields() {
+        MediaRequest request = new MediaRequest("Scenario", "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        request.setStatus(RequestStatus.RUNNING);
+        request.setErrorMessage("Previous error");
+        Long id = mediaRequestRepository.saveAndFlush(request).getId();
+
+        assertEquals(0, mediaRequestRepository.completeProcessing(id, RequestStatus.GO, RequestStatus.SUCCESS, null, "/out.mp4", null, LocalDateTime.now()));
+        assertEquals(1, mediaRequestRepository.completeProcessing(id, RequestStatus.RUNNING, RequestStatus.SUCCESS, null, "/out.mp4", null, LocalDateTime.now()));
+
+        MediaRequest reloaded = mediaRequestRepository.findById(id).orElseThrow();
+        assertEquals(RequestStatus.SUCCESS, reloaded.getStatus());
+        assertEquals("/out.mp4", reloaded.getGeneratedMediaPath());
+        assertEquals("Previous error", reloaded.getErrorMessage());
+    }
+
+    @Test
+    void findById_shouldLeaveScenarioAndPromptUnloaded() {
+        Long id = saveRequests(1).get(0);
+        entityManager.clear();
+
+        MediaRequest light = mediaRequestRepository.findById(id).orElseThrow();
+        assertFalse(entityManager.getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(light, "content"));
+        entityManager.clear();
+
+        MediaRequest full = mediaRequestRepository.findWithContentById(id).orElseThrow();
+        assertTrue(entityManager.getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(full, "content"));
+        assertTrue(full.getScenario().startsWith("Scenario 0 "));
+        assertEquals("Prompt 0", full.getFormattedPrompt());
+    }
+
+    @Test
+    void savePrompt_shouldOnlyApplyWhileRequestIsInExpectedStatus() {
+        MediaRequest request = new MediaRequest("Scénario " + "très long ".repeat(200), "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        request.setStatus(RequestStatus.FORMATTING_PROMPT);
+        Long id = mediaRequestRepository.saveAndFlush(request).getId();
+        String prompt = "Prompt détaillé ".repeat(500);
+
+        assertEquals(0, mediaRequestContentRepository.savePrompt(id, RequestStatus.RUNNING, prompt, null));
+        assertEquals(1, mediaRequestContentRepository.savePrompt(id, RequestStatus.FORMATTING_PROMPT, prompt, null));
+        assertEquals(1, mediaRequestRepository.completeWithPrompt(id, RequestStatus.FORMATTING_PROMPT, RequestStatus.PROMPT_GENERATED, null, LocalDateTime.now()));
+
+        MediaRequest reloaded = mediaRequestRepository.findWithContentById(id).orElseThrow();
+        assertEquals(prompt, reloaded.getFormattedPrompt());
+        assertTrue(reloaded.isPromptAvailable());
+        assertEquals(RequestStatus.PROMPT_GENERATED, reloaded.getStatus());
+    }
+
+    @Test
+    void addTokenUsage_shouldAccumulateOverFormattings() {
+        Long id = saveRequests(1).get(0);
+
+        assertEquals(1, mediaRequestRepository.addTokenUsage(id, 100, 250, 350));
+        assertEquals(1, mediaRequestRepository.addTokenUsage(id, 100, 150, 250));
+
+        MediaRequest reloaded = mediaRequestRepository.findById(id).orElseThrow();
+        assertEquals(200, reloaded.getPromptTokens());
+        assertEquals(400, reloaded.getCandidatesTokens());
+        assertEquals(600, reloaded.getTotalTokens());
+    }
+
+    @Test
+    void findDuplicates_shouldMatchNormalizedScenarioAndSameParametersOnly() {
+        Set<RequestStatus> pending = EnumSet.of(RequestStatus.NOT_YET, RequestStatus.GO, RequestStatus.RUNNING);
+        Long pendingId = mediaRequestRepository.saveAndFlush(
+                new MediaRequest("Un chat  dans\nl'espace", "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK)).getId();
+        mediaRequestRepository.saveAndFlush(new MediaRequest("Un chat dans l'espace", "Gemini", MediaType.VIDEO, TargetPlatform.INSTAGRAM));
+        mediaRequestRepository.saveAndFlush(new MediaRequest("Un chat dans l'espace", "OpenAI", MediaType.VIDEO, TargetPlatform.TIKTOK));
+        Long noIaId = mediaRequestRepository.saveAndFlush(new MediaRequest("Un chat dans l'espace", null, MediaType.VIDEO, TargetPlatform.TIKTOK)).getId();
+        Long failedId = mediaRequestRepository.saveAndFlush(new MediaRequest("Un chat dans l'espace", "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK)).getId();
+        mediaRequestRepository.completeProcessing(failedId, RequestStatus.NOT_YET, RequestStatus.FAIL, "Erreur", null, null, LocalDateTime.now());
+        Long succeededId = mediaRequestRepository.saveAndFlush(new MediaRequest("Un chat dans l'espace", "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK)).getId();
+        mediaRequestRepository.completeProcessing(succeededId, RequestStatus.NOT_YET, RequestStatus.SUCCESS, null, "/out.gif", null, LocalDateTime.now().minusDays(2));
+        String hash = MediaRequest.scenarioHash(" UN CHAT dans l'espace ");
+
+        List<MediaRequest> recent = mediaRequestRepository.findDuplicates(hash, MediaType.VIDEO, TargetPlatform.TIKTOK, "Gemini",
+                pending, RequestStatus.SUCCESS, LocalDateTime.now().minusDays(1), Limit.of(10));
+        List<MediaRequest> withOlderSuccess = mediaRequestRepository.findDuplicates(hash, MediaType.VIDEO, TargetPlatform.TIKTOK, "Gemini",
+                pending, RequestStatus.SUCCESS, LocalDateTime.now().minusDays(3), Limit.of(10));
+        List<MediaRequest> withoutIa = mediaRequestRepository.findDuplicates(hash, MediaType.VIDEO, TargetPlatform.TIKTOK, null,
+                pending, RequestStatus.SUCCESS, LocalDateTime.now().minusDays(1), Limit.of(10));
+
+        assertEquals(List.of(pendingId), recent.stream().map(MediaRequest::getId).toList());
+        assertEquals(List.of(succeededId, pendingId), withOlderSuccess.stream().map(MediaRequest::getId).toList());
+        assertEquals(List.of(noIaId), withoutIa.stream().map(MediaRequest::getId).toList());
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.mediagenerator.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeminiCircuitBreakerTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void onFailure_belowThreshold_shouldKeepCircuitClosed() {
+        GeminiCircuitBreaker breaker = new GeminiCircuitBreaker(3, Duration.ofSeconds(30), nanos::get);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(); // Un succès remet le compteur d'échecs consécutifs à zéro
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(GeminiCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void onFailure_atThreshold_shouldRejectCallsUntilOpenDurationElapses() {
+        GeminiCircuitBreaker breaker = new GeminiCircuitBreaker(2, Duration.ofSeconds(30), nanos::get);
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(GeminiCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        nanos.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void halfOpen_shouldAllowASingleTrialCall() {
+        GeminiCircuitBreaker breaker = openedBreaker();
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(GeminiCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.onSuccess();
+        assertEquals(GeminiCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void halfOpen_whenTrialFails_shouldReopenForAnotherPeriod() {
+        GeminiCircuitBreaker breaker = openedBreaker();
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertTrue(breaker.tryAcquirePermission());
+
+        breaker.onFailure();
+
+        assertEquals(GeminiCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void halfOpen_whenTrialIsCancelled_shouldAllowAnotherTrial() {
+        GeminiCircuitBreaker breaker = openedBreaker();
+        nanos.addAndGet(Duration.ofSeconds(30).toNanos());
+        assertTrue(breaker.tryAcquirePermission());
+
+        breaker.onIgnored();
+
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void disabled_shouldAlwaysAllowCalls() {
+        GeminiCircuitBreaker breaker = GeminiCircuitBreaker.disabled();
+        for (int i = 0; i < 10; i++) {
+            breaker.onFailure();
+        }
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(GeminiCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private GeminiCircuitBreaker openedBreaker() {
+        GeminiCircuitBreaker breaker = new GeminiCircuitBreaker(1, Duration.ofSeconds(30), nanos::get);
+        breaker.onFailure();
+        return breaker;
+    }
+}
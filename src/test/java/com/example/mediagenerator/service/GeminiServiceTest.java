@@ -1,13 +1,22 @@
 package com.example.mediagenerator.service;
 
+import com.example.mediagenerator.config.GeminiResilienceProperties;
+import com.example.mediagenerator.config.PromptProvidersProperties;
 import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.service.GeminiException.Failure;
 import com.google.genai.Client;
 import com.google.genai.Models;
+import com.google.genai.ResponseStream;
+import com.google.genai.errors.ClientException;
+import com.google.genai.errors.ServerException;
 import com.google.genai.types.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
@@ -17,14 +26,23 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,6 +56,9 @@ public class GeminiServiceTest {
     private Models mockedModels;
 
     private GeminiService geminiService;
+    private GeminiResilienceProperties resilience;
+    private PromptProvidersProperties promptProperties;
+    private SimpleMeterRegistry meterRegistry;
     private MockedStatic<Client> staticClientMock;
 
     private final String testApiKey = "test-gemini-api-key";
@@ -48,6 +69,7 @@ public class GeminiServiceTest {
         staticClientMock = Mockito.mockStatic(Client.class);
         staticClientMock.when(Client::builder).thenReturn(mockedClientBuilder);
         when(mockedClientBuilder.apiKey(anyString())).thenReturn(mockedClientBuilder);
+        when(mockedClientBuilder.httpOptions(any(HttpOptions.class))).thenReturn(mockedClientBuilder);
         when(mockedClientBuilder.build()).thenReturn(mockedGoogleClient);
 
         try {
@@ -58,11 +80,40 @@ public class GeminiServiceTest {
              System.err.println("Warning: Could not reflectively set 'models' field on mocked Client. Using direct injection into GeminiService as fallback.");
         }
 
-        geminiService = new GeminiService(testApiKey, testModelName);
-        ReflectionTestUtils.setField(geminiService, "modelsClient", mockedModels);
+        // Nouvelles tentatives quasi immédiates pour garder les tests rapides
+        resilience = new GeminiResilienceProperties();
+        resilience.setCallTimeout(Duration.ofSeconds(2));
+        resilience.setInitialBackoff(Duration.ofMillis(1));
+        resilience.setMaxBackoff(Duration.ofMillis(5));
+        promptProperties = new PromptProvidersProperties();
+        geminiService = createService(GeminiCircuitBreaker.disabled());
+    }
+
+    private GeminiService createService(GeminiCircuitBreaker circuitBreaker) {
+        meterRegistry = new SimpleMeterRegistry();
+        GeminiService service = new GeminiService(testApiKey, testModelName, 8192, 0.7f, new PromptCache(100, Duration.ofHours(1), null, Clock.systemUTC()),
+                PromptTemplates.defaults(), TokenBucketRateLimiter.unlimited(), circuitBreaker, resilience, meterRegistry,
+                new TokenUsageTracker(promptProperties, meterRegistry));
+        ReflectionTestUtils.setField(service, "modelsClient", mockedModels);
+        return service;
+    }
 
-        ReflectionTestUtils.setField(geminiService, "maxOutputTokens", 8192);
-        ReflectionTestUtils.setField(geminiService, "temperature", 0.7f);
+    private static Consumer<Throwable> geminiFailure(Failure failure, String message) {
+        return error -> {
+            GeminiException geminiException = assertInstanceOf(GeminiException.class, error);
+            assertEquals(failure, geminiException.getFailure());
+            if (message != null) {
+                assertEquals(message, geminiException.getMessage());
+            }
+        };
+    }
+
+    private GenerateContentResponse textResponse(String text) {
+        GenerateContentResponse response = Mockito.mock(GenerateContentResponse.class);
+        when(response.text()).thenReturn(text);
+        when(response.candidates()).thenReturn(Optional.empty());
+        when(response.promptFeedback()).thenReturn(Optional.empty());
+        return response;
     }
 
     @AfterEach
@@ -91,29 +142,86 @@ public class GeminiServiceTest {
         when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
                 .thenReturn(mockApiResponse);
 
-        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType);
+        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType, TargetPlatform.TIKTOK);
 
         StepVerifier.create(result)
                 .expectNext(expectedPrompt)
                 .verifyComplete();
     }
 
+    @Test
+    void generateFormattedPrompt_secondCallWithSameInputs_isServedFromCache() {
+        String scenario = "A cat flying in space";
+        GenerateContentResponse mockApiResponse = Mockito.mock(GenerateContentResponse.class);
+        when(mockApiResponse.text()).thenReturn("Cached prompt");
+        when(mockApiResponse.candidates()).thenReturn(Optional.empty());
+        when(mockApiResponse.promptFeedback()).thenReturn(Optional.empty());
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenReturn(mockApiResponse);
+
+        StepVerifier.create(geminiService.generateFormattedPrompt(scenario, MediaType.VIDEO, TargetPlatform.TIKTOK)).expectNext("Cached prompt").verifyComplete();
+        StepVerifier.create(geminiService.generateFormattedPrompt(scenario, MediaType.VIDEO, TargetPlatform.TIKTOK)).expectNext("Cached prompt").verifyComplete();
+
+        Mockito.verify(mockedModels, Mockito.times(1)).generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+        // Seul l'appel réel à Gemini est chronométré
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("model", testModelName).tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void generateFormattedPrompt_shouldSendTheRenderedTemplateWithOneSharedConfig() {
+        GenerateContentResponse response = textResponse("Prompt");
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class))).thenReturn(response);
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("Un chat", MediaType.COMIC, TargetPlatform.TIKTOK)).expectNext("Prompt").verifyComplete();
+        StepVerifier.create(geminiService.generateFormattedPrompt("Un chien", MediaType.COMIC, TargetPlatform.TIKTOK)).expectNext("Prompt").verifyComplete();
+
+        ArgumentCaptor<Content> contents = ArgumentCaptor.forClass(Content.class);
+        ArgumentCaptor<GenerateContentConfig> configs = ArgumentCaptor.forClass(GenerateContentConfig.class);
+        Mockito.verify(mockedModels, Mockito.times(2)).generateContent(eq(testModelName), contents.capture(), configs.capture());
+        assertEquals(PromptTemplates.defaults().render("Un chien", MediaType.COMIC, TargetPlatform.TIKTOK),
+                contents.getValue().parts().orElseThrow().get(0).text().orElseThrow());
+        assertSame(configs.getAllValues().get(0), configs.getAllValues().get(1));
+        assertEquals(Optional.of(8192), configs.getValue().maxOutputTokens());
+    }
+
+    @Test
+    void generateFormattedPrompt_failuresAreNotCached() {
+        String scenario = "An elephant painting a masterpiece";
+        GenerateContentResponse mockApiResponse = Mockito.mock(GenerateContentResponse.class);
+        when(mockApiResponse.text()).thenReturn("");
+        when(mockApiResponse.candidates()).thenReturn(Optional.empty());
+        when(mockApiResponse.promptFeedback()).thenReturn(Optional.empty());
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenReturn(mockApiResponse);
+
+        StepVerifier.create(geminiService.generateFormattedPrompt(scenario, MediaType.IMAGES, TargetPlatform.TIKTOK)).expectErrorSatisfies(geminiFailure(Failure.EMPTY, null)).verify();
+        StepVerifier.create(geminiService.generateFormattedPrompt(scenario, MediaType.IMAGES, TargetPlatform.TIKTOK)).expectErrorSatisfies(geminiFailure(Failure.EMPTY, null)).verify();
+
+        // Une réponse vide n'est pas retentée : un appel par demande
+        Mockito.verify(mockedModels, Mockito.times(2)).generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+        assertEquals(2, meterRegistry.get("gemini.requests").tag("outcome", "empty").timer().count());
+    }
+
     @Test
     void generateFormattedPrompt_geminiApiError() throws IOException {
         String scenario = "A bird writing a book";
         MediaType mediaType = MediaType.COMIC;
 
         when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
-                .thenThrow(new IOException("Gemini network error"));
+                .thenThrow(new ServerException(503, "UNAVAILABLE", "Gemini overloaded"));
 
-        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType);
+        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType, TargetPlatform.TIKTOK);
 
         StepVerifier.create(result)
-                .assertNext(response -> {
-                    assertTrue(response.startsWith("Erreur lors de la communication avec Gemini:"));
-                    assertTrue(response.contains("Gemini network error"));
+                .expectErrorSatisfies(error -> {
+                    geminiFailure(Failure.UNAVAILABLE, null).accept(error);
+                    assertTrue(error.getMessage().startsWith("Erreur lors de la communication avec Gemini:"));
+                    assertTrue(error.getMessage().contains("Gemini overloaded"));
                 })
-                .verifyComplete();
+                .verify();
+        // Erreur temporaire : retentée jusqu'au nombre maximal de tentatives
+        Mockito.verify(mockedModels, Mockito.times(3)).generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+        assertEquals(3, meterRegistry.get("gemini.requests").tag("outcome", "unavailable").timer().count());
     }
 
     @Test
@@ -136,11 +244,11 @@ public class GeminiServiceTest {
         when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
                 .thenReturn(mockApiResponse);
 
-        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType);
+        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType, TargetPlatform.TIKTOK);
 
         StepVerifier.create(result)
-                .expectNext("Erreur: Réponse vide ou malformée de Gemini.")
-                .verifyComplete();
+                .expectErrorSatisfies(geminiFailure(Failure.EMPTY, "Erreur: Réponse vide ou malformée de Gemini."))
+                .verify();
     }
 
     @Test
@@ -160,10 +268,10 @@ public class GeminiServiceTest {
         when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
             .thenReturn(apiResponse);
 
-        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType);
+        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType, TargetPlatform.TIKTOK);
         StepVerifier.create(result)
-            .expectNext("Erreur: Réponse vide ou malformée de Gemini.")
-            .verifyComplete();
+            .expectErrorSatisfies(geminiFailure(Failure.EMPTY, "Erreur: Réponse vide ou malformée de Gemini."))
+            .verify();
     }
 
     /*
@@ -195,7 +303,7 @@ public class GeminiServiceTest {
         when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
             .thenReturn(mockApiResponse);
 
-        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType);
+        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType, TargetPlatform.TIKTOK);
 
         // This assertion would need to change if the safety blocking path isn't triggered.
         // For now, it would likely get "Erreur: Réponse vide ou malformée de Gemini."
@@ -217,15 +325,235 @@ public class GeminiServiceTest {
 
         when(mockApiResponse.candidates()).thenReturn(Optional.of(Collections.singletonList(safetyBlockedCandidate)));
         when(mockApiResponse.promptFeedback()).thenReturn(Optional.empty());
-        when(mockApiResponse.text()).thenReturn(null); // Important: text() should be null if candidate is blocked and has no content
+        Mockito.lenient().when(mockApiResponse.text()).thenReturn(null); // Important: text() should be null if candidate is blocked and has no content
 
         when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
                 .thenReturn(mockApiResponse);
 
-        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType);
+        Mono<String> result = geminiService.generateFormattedPrompt(scenario, mediaType, TargetPlatform.TIKTOK);
 
         StepVerifier.create(result)
-                .expectNext("Erreur: Contenu du candidat bloqué par les filtres de sécurité Gemini.")
+                .expectErrorSatisfies(geminiFailure(Failure.BLOCKED, "Erreur: Contenu du candidat bloqué par les filtres de sécurité Gemini."))
+                .verify();
+        // Un blocage par les filtres de sécurité n'est jamais retenté
+        Mockito.verify(mockedModels, Mockito.times(1)).generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "blocked").timer().count());
+    }
+
+    private static GenerateContentResponse textChunk(String text) {
+        GenerateContentResponse chunk = Mockito.mock(GenerateContentResponse.class);
+        when(chunk.text()).thenReturn(text);
+        when(chunk.candidates()).thenReturn(Optional.empty());
+        when(chunk.promptFeedback()).thenReturn(Optional.empty());
+        return chunk;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResponseStream<GenerateContentResponse> streamOf(GenerateContentResponse... chunks) {
+        ResponseStream<GenerateContentResponse> stream = Mockito.mock(ResponseStream.class);
+        when(stream.iterator()).thenAnswer(invocation -> List.of(chunks).iterator());
+        when(stream.spliterator()).thenCallRealMethod(); // Méthode par défaut d'Iterable, appelée par Flux.fromIterable
+        return stream;
+    }
+
+    private ResponseStream<GenerateContentResponse> responseStream(GenerateContentResponse... chunks) {
+        ResponseStream<GenerateContentResponse> stream = streamOf(chunks);
+        when(mockedModels.generateContentStream(eq(testModelName), any(Content.class), any(GenerateContentConfig.class))).thenReturn(stream);
+        return stream;
+    }
+
+    @Test
+    void streamFormattedPrompt_shouldEmitChunksThenCacheTheFullPrompt() {
+        ResponseStream<GenerateContentResponse> stream = responseStream(textChunk("Un chat "), textChunk(""), textChunk("dans l'espace"));
+
+        StepVerifier.create(geminiService.streamFormattedPrompt("A cat flying in space", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Un chat ", "dans l'espace")
                 .verifyComplete();
+        // Deuxième appel : le prompt complet vient du cache, en un seul morceau
+        StepVerifier.create(geminiService.streamFormattedPrompt("A cat flying in space", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Un chat dans l'espace")
+                .verifyComplete();
+
+        Mockito.verify(stream).close();
+        Mockito.verify(mockedModels, Mockito.times(1)).generateContentStream(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("gemini.stream.first.chunk").timer().count());
+    }
+
+    @Test
+    void streamFormattedPrompt_whenCandidateIsBlocked_shouldFailWithUserMessage() {
+        GenerateContentResponse blocked = Mockito.mock(GenerateContentResponse.class);
+        when(blocked.promptFeedback()).thenReturn(Optional.empty());
+        when(blocked.candidates()).thenReturn(Optional.of(List.of(Candidate.builder().finishReason(FinishReason.Known.SAFETY).build())));
+        responseStream(textChunk("Début "), blocked);
+
+        StepVerifier.create(geminiService.streamFormattedPrompt("A controversial topic", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Début ")
+                .expectErrorSatisfies(geminiFailure(Failure.BLOCKED, "Erreur: Contenu du candidat bloqué par les filtres de sécurité Gemini."))
+                .verify();
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "blocked").timer().count());
+    }
+
+    @Test
+    void streamFormattedPrompt_whenStreamIsEmpty_shouldFail() {
+        responseStream();
+
+        StepVerifier.create(geminiService.streamFormattedPrompt("An empty answer", MediaType.IMAGES, TargetPlatform.TIKTOK))
+                .expectErrorMessage("Erreur: Réponse vide ou malformée de Gemini.")
+                .verify();
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "empty").timer().count());
+    }
+
+    @Test
+    void generateFormattedPrompt_transientFailureThenSuccess_shouldRetry() {
+        GenerateContentResponse response = textResponse("Prompt après nouvelle tentative");
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenThrow(new ClientException(429, "RESOURCE_EXHAUSTED", "Quota exceeded"))
+                .thenReturn(response);
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("A retried scenario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Prompt après nouvelle tentative")
+                .verifyComplete();
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "rate_limited").timer().count());
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void generateFormattedPrompt_invalidRequest_shouldNotRetry() {
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenThrow(new ClientException(400, "INVALID_ARGUMENT", "API key not valid"));
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("An invalid call", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorSatisfies(geminiFailure(Failure.INVALID_REQUEST, null))
+                .verify();
+        Mockito.verify(mockedModels, Mockito.times(1)).generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+    }
+
+    @Test
+    void generateFormattedPrompt_slowUpstream_shouldTimeOut() {
+        resilience.setCallTimeout(Duration.ofMillis(100));
+        resilience.setMaxAttempts(1);
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(1000);
+                    return null; // Jamais lu : le délai est dépassé avant
+                });
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("A slow scenario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorSatisfies(geminiFailure(Failure.TIMEOUT, null))
+                .verify(Duration.ofSeconds(1));
+        assertEquals(1, meterRegistry.get("gemini.requests").tag("outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void generateFormattedPrompt_whenCircuitIsOpen_shouldFailFastWithoutCallingGemini() {
+        resilience.setMaxAttempts(1);
+        geminiService = createService(new GeminiCircuitBreaker(2, Duration.ofMinutes(1)));
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenThrow(new ServerException(500, "INTERNAL", "Internal error"));
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("Scenario 1", MediaType.VIDEO, TargetPlatform.TIKTOK)).expectErrorSatisfies(geminiFailure(Failure.UNAVAILABLE, null)).verify();
+        StepVerifier.create(geminiService.generateFormattedPrompt("Scenario 2", MediaType.VIDEO, TargetPlatform.TIKTOK)).expectErrorSatisfies(geminiFailure(Failure.UNAVAILABLE, null)).verify();
+        StepVerifier.create(geminiService.generateFormattedPrompt("Scenario 3", MediaType.VIDEO, TargetPlatform.TIKTOK)).expectErrorSatisfies(geminiFailure(Failure.CIRCUIT_OPEN, null)).verify();
+
+        Mockito.verify(mockedModels, Mockito.times(2)).generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+        assertEquals(1, meterRegistry.get("gemini.circuit.state").gauge().value());
+        assertEquals(1, meterRegistry.get("gemini.requests.rejected").tag("reason", "circuit_open").counter().count());
+    }
+
+    @Test
+    void generateFormattedPrompt_whenBulkheadIsFull_shouldRejectExtraCalls() throws InterruptedException {
+        resilience.setMaxConcurrentCalls(1);
+        resilience.setMaxAttempts(1);
+        geminiService = createService(GeminiCircuitBreaker.disabled());
+        CountDownLatch callStarted = new CountDownLatch(1);
+        CountDownLatch releaseCall = new CountDownLatch(1);
+        GenerateContentResponse response = textResponse("Premier prompt");
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenAnswer(invocation -> {
+                    callStarted.countDown();
+                    releaseCall.await(5, TimeUnit.SECONDS);
+                    return response;
+                });
+
+        Mono<String> first = geminiService.generateFormattedPrompt("Scenario 1", MediaType.VIDEO, TargetPlatform.TIKTOK).cache();
+        first.subscribe();
+        assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("Scenario 2", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorSatisfies(geminiFailure(Failure.BULKHEAD_FULL, null))
+                .verify();
+        assertEquals(1, meterRegistry.get("gemini.calls.in.flight").gauge().value());
+
+        releaseCall.countDown();
+        StepVerifier.create(first).expectNext("Premier prompt").verifyComplete();
+        assertEquals(0, meterRegistry.get("gemini.calls.in.flight").gauge().value());
+    }
+
+    @Test
+    void streamFormattedPrompt_whenStreamFailsBeforeFirstChunk_shouldRetry() {
+        ResponseStream<GenerateContentResponse> stream = streamOf(textChunk("Prompt "), textChunk("complet"));
+        when(mockedModels.generateContentStream(eq(testModelName), any(Content.class), any(GenerateContentConfig.class)))
+                .thenThrow(new ServerException(503, "UNAVAILABLE", "Gemini overloaded"))
+                .thenReturn(stream);
+
+        StepVerifier.create(geminiService.streamFormattedPrompt("A retried stream", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Prompt ", "complet")
+                .verifyComplete();
+        Mockito.verify(mockedModels, Mockito.times(2)).generateContentStream(eq(testModelName), any(Content.class), any(GenerateContentConfig.class));
+    }
+
+    private static Optional<GenerateContentResponseUsageMetadata> usage(int promptTokens, int candidatesTokens) {
+        return Optional.of(GenerateContentResponseUsageMetadata.builder()
+                .promptTokenCount(promptTokens)
+                .candidatesTokenCount(candidatesTokens)
+                .totalTokenCount(promptTokens + candidatesTokens)
+                .build());
+    }
+
+    @Test
+    void generateFormattedPrompt_shouldReportTheTokenUsageOfTheResponse() {
+        GenerateContentResponse response = textResponse("Prompt");
+        when(response.usageMetadata()).thenReturn(usage(120, 300));
+        when(mockedModels.generateContent(eq(testModelName), any(Content.class), any(GenerateContentConfig.class))).thenReturn(response);
+        AtomicReference<TokenUsage> requestUsage = new AtomicReference<>(TokenUsage.NONE);
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("Un chat", MediaType.VIDEO, TargetPlatform.TIKTOK)
+                        .contextWrite(TokenUsageTracker.attributeTo(requestUsage)))
+                .expectNext("Prompt")
+                .verifyComplete();
+
+        assertEquals(new TokenUsage(120, 300, 420), requestUsage.get());
+        assertEquals(300, meterRegistry.get("prompt.tokens").tag("model", testModelName).tag("type", "candidates").counter().count());
+    }
+
+    @Test
+    void streamFormattedPrompt_shouldReportTheUsageOfTheLastChunk() {
+        GenerateContentResponse first = textChunk("Un chat ");
+        when(first.usageMetadata()).thenReturn(usage(120, 10));
+        GenerateContentResponse last = textChunk("dans l'espace");
+        when(last.usageMetadata()).thenReturn(usage(120, 40)); // Cumulé : remplace celui du morceau précédent
+        responseStream(first, last);
+        AtomicReference<TokenUsage> requestUsage = new AtomicReference<>(TokenUsage.NONE);
+
+        StepVerifier.create(geminiService.streamFormattedPrompt("A cat flying in space", MediaType.VIDEO, TargetPlatform.TIKTOK)
+                        .contextWrite(TokenUsageTracker.attributeTo(requestUsage)))
+                .expectNext("Un chat ", "dans l'espace")
+                .verifyComplete();
+
+        assertEquals(new TokenUsage(120, 40, 160), requestUsage.get());
+    }
+
+    @Test
+    void generateFormattedPrompt_whenTheTokenBudgetIsExhausted_shouldNotCallGemini() {
+        promptProperties.getTokenBudget().setTokensPerMinute(60);
+        promptProperties.getTokenBudget().setMaxWait(Duration.ofSeconds(1));
+        geminiService = createService(GeminiCircuitBreaker.disabled());
+
+        StepVerifier.create(geminiService.generateFormattedPrompt("Un scénario ".repeat(100), MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorSatisfies(error -> assertTrue(error.getMessage().startsWith("Erreur: Budget de jetons du modèle " + testModelName)))
+                .verify();
+
+        Mockito.verifyNoInteractions(mockedModels);
     }
 }
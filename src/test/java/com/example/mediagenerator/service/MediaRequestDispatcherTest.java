@@ -0,0 +1,91 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.RequestStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaRequestDispatcherTest {
+
+    @Mock
+    private MediaRequestService mediaRequestService;
+
+    private final MediaRequestEvents mediaRequestEvents = new MediaRequestEvents();
+    private MediaQueueProperties properties;
+    private MediaRequestDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MediaQueueProperties();
+        properties.setPollMinInterval(Duration.ofMillis(100));
+        properties.setPollMaxInterval(Duration.ofMillis(500));
+        dispatcher = new MediaRequestDispatcher(mediaRequestService, mediaRequestEvents, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    void dispatchOnce_whenQueueIsEmpty_shouldBackOffExponentiallyUpToTheMaximum() {
+        when(mediaRequestService.processPendingMediaRequests()).thenReturn(0);
+
+        assertEquals(Duration.ofMillis(200), dispatcher.dispatchOnce());
+        assertEquals(Duration.ofMillis(400), dispatcher.dispatchOnce());
+        assertEquals(Duration.ofMillis(500), dispatcher.dispatchOnce());
+        assertEquals(Duration.ofMillis(500), dispatcher.dispatchOnce());
+    }
+
+    @Test
+    void dispatchOnce_whenRequestsWereDispatched_shouldPollAgainAtTheMinimumInterval() {
+        when(mediaRequestService.processPendingMediaRequests()).thenReturn(0, 0, 3);
+
+        dispatcher.dispatchOnce();
+        dispatcher.dispatchOnce();
+
+        assertEquals(Duration.ofMillis(100), dispatcher.dispatchOnce());
+    }
+
+    @Test
+    void dispatchOnce_whenDispatchFails_shouldBackOffInsteadOfPropagating() {
+        when(mediaRequestService.processPendingMediaRequests()).thenThrow(new IllegalStateException("database down"));
+
+        assertEquals(Duration.ofMillis(200), dispatcher.dispatchOnce());
+    }
+
+    @Test
+    void requestSetToGo_shouldWakeUpTheDispatcherBeforeTheIdleIntervalEnds() {
+        properties.setPollMaxInterval(Duration.ofMinutes(10));
+        properties.setPollMinInterval(Duration.ofMinutes(5));
+        dispatcher = new MediaRequestDispatcher(mediaRequestService, mediaRequestEvents, properties);
+        dispatcher.start();
+        verify(mediaRequestService, timeout(1000).times(1)).processPendingMediaRequests(); // Passage au démarrage
+
+        mediaRequestEvents.publishStatusChange(1L, RequestStatus.RUNNING, LocalDateTime.now(), null, null);
+        mediaRequestEvents.publishStatusChange(1L, RequestStatus.GO, LocalDateTime.now(), null, null);
+
+        verify(mediaRequestService, timeout(1000).times(2)).processPendingMediaRequests();
+    }
+
+    @Test
+    void start_whenDisabled_shouldNotDispatchAnything() {
+        properties.setDispatcherEnabled(false);
+
+        dispatcher.start();
+
+        assertFalse(dispatcher.isRunning());
+        verifyNoInteractions(mediaRequestService);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.MediaRequestStatusEvent;
+import com.example.mediagenerator.model.RequestStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import reactor.core.Disposable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaRequestEventsTest {
+
+    private final MediaRequestEvents mediaRequestEvents = new MediaRequestEvents();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void publishStatusChange_shouldReachEverySubscriber() {
+        List<MediaRequestStatusEvent> first = new CopyOnWriteArrayList<>();
+        List<MediaRequestStatusEvent> second = new CopyOnWriteArrayList<>();
+        Disposable firstSubscription = mediaRequestEvents.statusChanges().subscribe(first::add);
+        Disposable secondSubscription = mediaRequestEvents.statusChanges().subscribe(second::add);
+
+        mediaRequestEvents.publishStatusChange(1L, RequestStatus.FAIL, LocalDateTime.now(), "Erreur", null);
+
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+        assertEquals(RequestStatus.FAIL, first.get(0).getStatus());
+        assertEquals("Erreur", first.get(0).getErrorMessage());
+        firstSubscription.dispose();
+        secondSubscription.dispose();
+    }
+
+    @Test
+    void publishStatusChange_withoutSubscriber_shouldNotFail() {
+        assertDoesNotThrow(() -> mediaRequestEvents.publishStatusChange(1L, RequestStatus.GO, LocalDateTime.now(), null, null));
+    }
+
+    @Test
+    void publishStatusChange_insideTransaction_shouldWaitForCommit() {
+        List<MediaRequestStatusEvent> received = new CopyOnWriteArrayList<>();
+        Disposable subscription = mediaRequestEvents.statusChanges().subscribe(received::add);
+        TransactionSynchronizationManager.initSynchronization();
+
+        mediaRequestEvents.publishStatusChange(1L, RequestStatus.NOT_YET, LocalDateTime.now(), null, null);
+        assertTrue(received.isEmpty());
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        assertEquals(1, received.size());
+        assertEquals(1L, received.get(0).getId());
+        subscription.dispose();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaImportProperties;
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.dto.RequestImportResultDto;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // L'export ouvre sa propre transaction en lecture seule
+class MediaRequestExportServiceTest {
+
+    @Autowired
+    private MediaRequestRepository mediaRequestRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private MediaRequestExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        mediaRequestRepository.deleteAll();
+        exportService = new MediaRequestExportService(mediaRequestRepository, entityManager, transactionManager, objectMapper);
+    }
+
+    private MediaRequest save(String scenario, RequestStatus status, String formattedPrompt) {
+        MediaRequest request = new MediaRequest(scenario, "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        request.setStatus(status);
+        request.setFormattedPrompt(formattedPrompt);
+        return mediaRequestRepository.save(request);
+    }
+
+    private String export(RequestFileFormat format, Set<RequestStatus> statuses) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exportService.export(output, format, statuses);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void export_csv_shouldWriteHeaderAndQuoteFieldsThatNeedIt() throws Exception {
+        MediaRequest first = save("Un chat, un \"robot\"\net une station", RequestStatus.PROMPT_GENERATED, "Prompt détaillé");
+        save("Simple", RequestStatus.NOT_YET, null);
+
+        String csv = export(RequestFileFormat.CSV, null);
+
+        String[] lines = csv.split("\r\n");
+        assertEquals(String.join(",", MediaRequestExportService.COLUMNS), lines[0]);
+        assertTrue(lines[1].startsWith(first.getId() + ",PROMPT_GENERATED,"));
+        assertTrue(lines[1].endsWith(",\"Un chat, un \"\"robot\"\"\net une station\",Gemini,VIDEO,TIKTOK,NORMAL,Prompt détaillé,,,0,0,0,0"));
+        assertTrue(lines[2].endsWith(",Simple,Gemini,VIDEO,TIKTOK,NORMAL,,,,0,0,0,0")); // Champs null : vides
+        assertEquals(3, lines.length);
+    }
+
+    @Test
+    void export_jsonLines_shouldWriteOneObjectPerLineForSelectedStatuses() throws Exception {
+        save("Premier", RequestStatus.NOT_YET, null);
+        MediaRequest failed = save("Deuxième", RequestStatus.FAIL, null);
+        save("Troisième", RequestStatus.SUCCESS, "Prompt");
+
+        String jsonl = export(RequestFileFormat.JSONL, Set.of(RequestStatus.FAIL, RequestStatus.SUCCESS));
+
+        List<JsonNode> rows = new ArrayList<>();
+        for (String line : jsonl.split("\n")) {
+            rows.add(objectMapper.readTree(line));
+        }
+        assertEquals(2, rows.size());
+        assertEquals(failed.getId(), rows.get(0).get("id").asLong());
+        assertEquals("Deuxième", rows.get(0).get("scenario").asText());
+        assertTrue(rows.get(0).get("formattedPrompt").isNull());
+        assertEquals("SUCCESS", rows.get(1).get("status").asText());
+        assertEquals("Prompt", rows.get(1).get("formattedPrompt").asText());
+        assertTrue(jsonl.endsWith("}\n"));
+    }
+
+    @Test
+    void export_csv_shouldBeReimportable() throws Exception {
+        save("Un chat, une station\nabandonnée", RequestStatus.SUCCESS, "Prompt");
+        save("Simple", RequestStatus.NOT_YET, null);
+        String csv = export(RequestFileFormat.CSV, null);
+        mediaRequestRepository.deleteAll();
+
+        MediaRequestImportService importService = new MediaRequestImportService(mediaRequestRepository, transactionManager,
+                objectMapper, mock(MediaRequestEvents.class), new MediaImportProperties(), new SimpleMeterRegistry());
+        RequestImportResultDto result = importService.importRequests(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), RequestFileFormat.CSV);
+
+        assertEquals(2, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals(Set.of("Un chat, une station\nabandonnée", "Simple"), Set.copyOf(mediaRequestRepository.findAll().stream()
+                .map(r -> mediaRequestRepository.findWithContentById(r.getId()).orElseThrow().getScenario()).toList()));
+    }
+
+    @Test
+    void export_withoutRequests_shouldWriteOnlyTheCsvHeader() throws Exception {
+        assertEquals(String.join(",", MediaRequestExportService.COLUMNS) + "\r\n", export(RequestFileFormat.CSV, Set.of()));
+        assertEquals("", export(RequestFileFormat.JSONL, null));
+    }
+}
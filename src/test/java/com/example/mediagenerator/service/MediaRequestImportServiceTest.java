@@ -0,0 +1,170 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaImportProperties;
+import com.example.mediagenerator.dto.RequestFileFormat;
+import com.example.mediagenerator.dto.RequestImportResultDto;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Chaque paquet est validé dans sa propre transaction
+class MediaRequestImportServiceTest {
+
+    @Autowired
+    private MediaRequestRepository mediaRequestRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private MediaImportProperties properties;
+    private MediaRequestEvents mediaRequestEvents;
+    private SimpleMeterRegistry meterRegistry;
+    private MediaRequestImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        mediaRequestRepository.deleteAll();
+        properties = new MediaImportProperties();
+        properties.setChunkSize(2);
+        mediaRequestEvents = mock(MediaRequestEvents.class);
+        meterRegistry = new SimpleMeterRegistry();
+        importService = new MediaRequestImportService(mediaRequestRepository, transactionManager, new ObjectMapper(),
+                mediaRequestEvents, properties, meterRegistry);
+    }
+
+    private static InputStream input(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<MediaRequest> savedRequests() {
+        return mediaRequestRepository.findAll().stream()
+                .map(r -> mediaRequestRepository.findWithContentById(r.getId()).orElseThrow())
+                .sorted(Comparator.comparing(MediaRequest::getId))
+                .toList();
+    }
+
+    @Test
+    void importRequests_jsonLines_shouldInsertValidLinesInChunksAndReportInvalidOnes() {
+        String file = """
+                {"scenario": "Premier", "selectedIAs": "Gemini", "mediaType": "VIDEO", "targetPlatform": "TIKTOK"}
+                {"scenario": "Deuxième", "selectedIAs": ["ChatGPT", "Mistral"], "mediaType": "comic", "targetPlatform": "instagram", "priority": "urgent"}
+
+                {"scenario": "", "mediaType": "VIDEO", "targetPlatform": "TIKTOK"}
+                {"scenario": "Type inconnu", "mediaType": "PODCAST", "targetPlatform": "TIKTOK"}
+                pas du json
+                {"scenario": "Troisième", "mediaType": "IMAGES", "targetPlatform": "TIKTOK"}
+                """;
+
+        RequestImportResultDto result = importService.importRequests(input(file), RequestFileFormat.JSONL);
+
+        assertEquals(3, result.getImported());
+        assertEquals(3, result.getRejected());
+        assertEquals(2, result.getChunks()); // Deux demandes, puis la dernière au moment de la fin du fichier
+        assertEquals(List.of(4L, 5L, 6L), result.getErrors().stream().map(RequestImportResultDto.Error::getLine).toList());
+        assertEquals("Scénario manquant.", result.getErrors().get(0).getMessage());
+        assertTrue(result.getErrors().get(1).getMessage().startsWith("mediaType invalide : 'PODCAST'"));
+        assertTrue(result.getErrors().get(2).getMessage().startsWith("JSON invalide"));
+
+        List<MediaRequest> saved = savedRequests();
+        assertEquals(List.of("Premier", "Deuxième", "Troisième"), saved.stream().map(MediaRequest::getScenario).toList());
+        assertEquals("ChatGPT, Mistral", saved.get(1).getSelectedIAs());
+        assertEquals(MediaType.COMIC, saved.get(1).getMediaType());
+        assertEquals(TargetPlatform.INSTAGRAM, saved.get(1).getTargetPlatform());
+        assertEquals(RequestPriority.URGENT, saved.get(1).getPriority());
+        assertEquals(RequestPriority.BULK, saved.get(0).getPriority()); // Priorité par défaut des demandes importées
+        assertTrue(saved.stream().allMatch(r -> r.getStatus() == RequestStatus.NOT_YET));
+        // Un évènement par paquet validé, pour la dernière demande du paquet
+        verify(mediaRequestEvents).publishStatusChange(eq(saved.get(1).getId()), eq(RequestStatus.NOT_YET), any(), eq(null), eq(null));
+        verify(mediaRequestEvents).publishStatusChange(eq(saved.get(2).getId()), eq(RequestStatus.NOT_YET), any(), eq(null), eq(null));
+        assertEquals(3.0, meterRegistry.get("media.requests.imported").tag("outcome", "imported").counter().count());
+        assertEquals(3.0, meterRegistry.get("media.requests.imported").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void importRequests_csv_shouldHandleQuotedFieldsAndHeaderVariants() {
+        String file = "\uFEFFScenario,selected_ias,MEDIA_TYPE,target-platform\r\n"
+                + "\"Un chat, une station\nabandonnée et un \"\"robot\"\"\",Gemini,VIDEO,TIKTOK\r\n"
+                + "Simple,,images,instagram\r\n"
+                + "\r\n"
+                + "Sans plateforme,Gemini,VIDEO,\r\n";
+
+        RequestImportResultDto result = importService.importRequests(input(file), RequestFileFormat.CSV);
+
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(6L, result.getErrors().get(0).getLine()); // Le scénario de la ligne 2 s'étend sur deux lignes
+        assertEquals("targetPlatform manquant.", result.getErrors().get(0).getMessage());
+
+        List<MediaRequest> saved = savedRequests();
+        assertEquals("Un chat, une station\nabandonnée et un \"robot\"", saved.get(0).getScenario());
+        assertEquals("Simple", saved.get(1).getScenario());
+        assertNull(saved.get(1).getSelectedIAs());
+        assertEquals(MediaType.IMAGES, saved.get(1).getMediaType());
+    }
+
+    @Test
+    void importRequests_csvWithoutRequiredColumns_shouldBeRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> importService.importRequests(input("scenario,selectedIAs\nUn chat,Gemini\n"), RequestFileFormat.CSV));
+        assertEquals(0, mediaRequestRepository.count());
+    }
+
+    @Test
+    void importRequests_malformedCsv_shouldKeepRequestsReadBeforeTheError() {
+        String file = "scenario,selectedIAs,mediaType,targetPlatform\n"
+                + "Premier,Gemini,VIDEO,TIKTOK\n"
+                + "\"Guillemet jamais fermé,Gemini,VIDEO,TIKTOK\n";
+
+        RequestImportResultDto result = importService.importRequests(input(file), RequestFileFormat.CSV);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertTrue(result.getErrors().get(0).getMessage().startsWith("Lecture interrompue"));
+        assertEquals(List.of("Premier"), savedRequests().stream().map(MediaRequest::getScenario).toList());
+    }
+
+    @Test
+    void importRequests_shouldLimitReportedErrors() {
+        properties.setMaxReportedErrors(2);
+
+        RequestImportResultDto result = importService.importRequests(input("{}\n{}\n{}\n"), RequestFileFormat.JSONL);
+
+        assertEquals(3, result.getRejected());
+        assertEquals(2, result.getErrors().size());
+        assertTrue(result.isErrorsTruncated());
+    }
+
+    @Test
+    void detect_shouldPreferExplicitFormatThenContentTypeThenExtension() {
+        assertEquals(RequestFileFormat.CSV, RequestFileFormat.detect("csv", "application/x-ndjson", "demandes.jsonl"));
+        assertEquals(RequestFileFormat.JSONL, RequestFileFormat.detect(null, "application/x-ndjson", "demandes.csv"));
+        assertEquals(RequestFileFormat.CSV, RequestFileFormat.detect(null, "application/octet-stream", "Demandes.CSV"));
+        assertEquals(RequestFileFormat.JSONL, RequestFileFormat.detect("", null, "demandes.ndjson"));
+        assertNull(RequestFileFormat.detect(null, "application/octet-stream", "demandes.txt"));
+        assertNull(RequestFileFormat.detect("xml", null, null));
+    }
+}
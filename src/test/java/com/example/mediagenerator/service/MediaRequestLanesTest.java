@@ -0,0 +1,96 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaRequestLanesTest {
+
+    private static final MediaRequestLanes.Lane TIKTOK_VIDEO = new MediaRequestLanes.Lane(TargetPlatform.TIKTOK, MediaType.VIDEO);
+    private static final MediaRequestLanes.Lane INSTAGRAM_IMAGES = new MediaRequestLanes.Lane(TargetPlatform.INSTAGRAM, MediaType.IMAGES);
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private static MediaRequestLanes lanes(String key, int weight, int maxConcurrency) {
+        MediaQueueProperties properties = new MediaQueueProperties();
+        MediaQueueProperties.Lane lane = new MediaQueueProperties.Lane();
+        lane.setWeight(weight);
+        lane.setMaxConcurrency(maxConcurrency);
+        properties.getLanes().put(key, lane);
+        return new MediaRequestLanes(properties);
+    }
+
+    private List<MediaRequest> requests(MediaRequestLanes.Lane lane, RequestPriority priority, int count) {
+        List<MediaRequest> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MediaRequest request = new MediaRequest("Scenario", "Gemini", lane.mediaType(), lane.targetPlatform());
+            request.setId(ids.incrementAndGet());
+            request.setPriority(priority);
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private static long countIn(List<MediaRequest> selected, MediaRequestLanes.Lane lane) {
+        return selected.stream().filter(r -> MediaRequestLanes.Lane.of(r).equals(lane)).count();
+    }
+
+    @Test
+    void select_shouldShareRequestsInProportionToLaneWeights() {
+        MediaRequestLanes lanes = lanes("tiktok-video", 2, 0);
+        Map<MediaRequestLanes.Lane, List<MediaRequest>> candidates = new LinkedHashMap<>();
+        candidates.put(TIKTOK_VIDEO, requests(TIKTOK_VIDEO, RequestPriority.NORMAL, 10));
+        candidates.put(INSTAGRAM_IMAGES, requests(INSTAGRAM_IMAGES, RequestPriority.NORMAL, 10));
+
+        List<MediaRequest> selected = lanes.select(candidates, 6);
+
+        assertEquals(4, countIn(selected, TIKTOK_VIDEO));
+        assertEquals(2, countIn(selected, INSTAGRAM_IMAGES));
+    }
+
+    @Test
+    void select_shouldServeTheMostUrgentLaneHeadFirst() {
+        MediaRequestLanes lanes = lanes("tiktok-video", 10, 0);
+        Map<MediaRequestLanes.Lane, List<MediaRequest>> candidates = new LinkedHashMap<>();
+        candidates.put(TIKTOK_VIDEO, requests(TIKTOK_VIDEO, RequestPriority.BULK, 5));
+        List<MediaRequest> urgent = requests(INSTAGRAM_IMAGES, RequestPriority.URGENT, 2);
+        candidates.put(INSTAGRAM_IMAGES, urgent);
+
+        List<MediaRequest> selected = lanes.select(candidates, 3);
+
+        assertEquals(urgent, selected.subList(0, 2));
+        assertEquals(TIKTOK_VIDEO, MediaRequestLanes.Lane.of(selected.get(2)));
+    }
+
+    @Test
+    void select_shouldStopAtTheLaneCapUntilRequestsAreReleased() {
+        MediaRequestLanes lanes = lanes("tiktok-video", 1, 2);
+        List<MediaRequest> backlog = requests(TIKTOK_VIDEO, RequestPriority.NORMAL, 5);
+
+        List<MediaRequest> first = lanes.select(Map.of(TIKTOK_VIDEO, backlog), 5);
+        assertEquals(backlog.subList(0, 2), first);
+        assertEquals(0, lanes.freeSlots(TIKTOK_VIDEO));
+        assertTrue(lanes.select(Map.of(TIKTOK_VIDEO, backlog.subList(2, 5)), 5).isEmpty());
+
+        lanes.release(first.get(0).getId());
+        assertEquals(1, lanes.freeSlots(TIKTOK_VIDEO));
+        assertEquals(Integer.MAX_VALUE, lanes.freeSlots(INSTAGRAM_IMAGES));
+    }
+
+    @Test
+    void constructor_withUnknownLane_shouldFail() {
+        assertThrows(IllegalStateException.class, () -> lanes("youtube-video", 1, 0));
+        assertThrows(IllegalStateException.class, () -> lanes("tiktok-video", 0, 0));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.RequestStatusCount;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaRequestMetricsTest {
+
+    @Mock
+    private MediaRequestRepository mediaRequestRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MediaRequestMetrics mediaRequestMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        mediaRequestMetrics = new MediaRequestMetrics(meterRegistry, mediaRequestRepository);
+    }
+
+    private static RequestStatusCount count(RequestStatus status, long count) {
+        return new RequestStatusCount() {
+            @Override
+            public RequestStatus getStatus() {
+                return status;
+            }
+
+            @Override
+            public Long getCount() {
+                return count;
+            }
+        };
+    }
+
+    @Test
+    void statusGauges_shouldExposeCountsFromASingleAggregateQuery() {
+        when(mediaRequestRepository.countByStatus()).thenReturn(List.of(count(RequestStatus.GO, 3), count(RequestStatus.SUCCESS, 7)));
+
+        assertEquals(3.0, meterRegistry.get("media.requests").tag("status", "GO").gauge().value());
+        assertEquals(7.0, meterRegistry.get("media.requests").tag("status", "SUCCESS").gauge().value());
+        assertEquals(0.0, meterRegistry.get("media.requests").tag("status", "FAIL").gauge().value());
+
+        // Les lectures suivantes, dans l'intervalle de rafraîchissement, ne relancent pas la requête
+        verify(mediaRequestRepository, times(1)).countByStatus();
+    }
+
+    @Test
+    void statusGauges_whenQueryFails_shouldKeepLastKnownValues() {
+        when(mediaRequestRepository.countByStatus()).thenThrow(new IllegalStateException("database down"));
+
+        assertEquals(0.0, meterRegistry.get("media.requests").tag("status", "GO").gauge().value());
+    }
+
+    @Test
+    void recordTimeInStatus_shouldRecordElapsedTimeSinceStatusChange() {
+        mediaRequestMetrics.recordTimeInStatus(RequestStatus.RUNNING, LocalDateTime.now().minusSeconds(30));
+        mediaRequestMetrics.recordTimeInStatus(RequestStatus.RUNNING, null);
+
+        Timer timer = meterRegistry.get("media.requests.status.time").tag("status", "RUNNING").timer();
+        assertEquals(1, timer.count());
+        assertTrue(timer.totalTime(TimeUnit.SECONDS) >= 30);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestPriority;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Import({MediaRequestQueue.class, MediaRequestLanes.class, MediaRequestMetrics.class, MediaRequestLeases.class, MediaQueueProperties.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Chaque réclamation s'exécute dans sa propre transaction
+class MediaRequestQueueTest {
+
+    @MockitoSpyBean
+    private MediaRequestRepository mediaRequestRepository;
+
+    @Autowired
+    private MediaRequestQueue mediaRequestQueue;
+
+    @Autowired
+    private MediaRequestLeases mediaRequestLeases;
+
+    @BeforeEach
+    void setUp() {
+        mediaRequestRepository.deleteAll();
+    }
+
+    @AfterEach
+    void releaseLanes() {
+        mediaRequestRepository.findAll().forEach(request -> mediaRequestQueue.release(request.getId()));
+    }
+
+    @Autowired
+    private MediaRequestLanes mediaRequestLanes;
+
+    private MediaRequest saveRequest(RequestStatus status) {
+        return saveRequest(status, TargetPlatform.TIKTOK, RequestPriority.NORMAL);
+    }
+
+    private MediaRequest saveRequest(RequestStatus status, TargetPlatform platform, RequestPriority priority) {
+        MediaRequest request = new MediaRequest("Scenario " + status, "Gemini", MediaType.VIDEO, platform);
+        request.setStatus(status);
+        request.setPriority(priority);
+        return mediaRequestRepository.save(request);
+    }
+
+    private List<Long> ids(List<MediaRequest> requests) {
+        return requests.stream().map(MediaRequest::getId).toList();
+    }
+
+    @Test
+    void claimPending_shouldMoveOldestGoRequestsToRunning() {
+        MediaRequest first = saveRequest(RequestStatus.GO);
+        MediaRequest second = saveRequest(RequestStatus.GO);
+        MediaRequest third = saveRequest(RequestStatus.GO);
+        saveRequest(RequestStatus.NOT_YET);
+
+        List<MediaRequest> claimed = mediaRequestQueue.claimPending(2);
+
+        assertEquals(List.of(first.getId(), second.getId()), claimed.stream().map(MediaRequest::getId).toList());
+        assertTrue(claimed.stream().allMatch(r -> r.getStatus() == RequestStatus.RUNNING));
+        assertEquals(RequestStatus.RUNNING, mediaRequestRepository.findById(first.getId()).orElseThrow().getStatus());
+        assertEquals(RequestStatus.RUNNING, mediaRequestRepository.findById(second.getId()).orElseThrow().getStatus());
+        assertEquals(RequestStatus.GO, mediaRequestRepository.findById(third.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void claimPending_shouldLeaseClaimedRequestsToThisInstance() {
+        MediaRequest request = saveRequest(RequestStatus.GO);
+
+        mediaRequestQueue.claimPending(1);
+
+        MediaRequest reloaded = mediaRequestRepository.findById(request.getId()).orElseThrow();
+        assertEquals(mediaRequestLeases.owner(), reloaded.getLeaseOwner());
+        assertTrue(reloaded.getLeaseExpiresAt().isAfter(reloaded.getStatusUpdateDate()));
+    }
+
+    @Test
+    void claimPending_shouldNeverReturnTheSameRequestTwice() {
+        saveRequest(RequestStatus.GO);
+        saveRequest(RequestStatus.GO);
+
+        List<MediaRequest> firstClaim = mediaRequestQueue.claimPending(5);
+        List<MediaRequest> secondClaim = mediaRequestQueue.claimPending(5);
+
+        assertEquals(2, firstClaim.size());
+        assertTrue(secondClaim.isEmpty());
+    }
+
+    @Test
+    void claimPending_withNoCapacity_shouldNotTouchTheQueue() {
+        saveRequest(RequestStatus.GO);
+
+        assertTrue(mediaRequestQueue.claimPending(0).isEmpty());
+        assertEquals(1, mediaRequestRepository.findByStatus(RequestStatus.GO).size());
+    }
+
+    @Test
+    void claimPending_shouldShareWorkersBetweenLanesDespiteABacklog() {
+        List<MediaRequest> bulk = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            bulk.add(saveRequest(RequestStatus.GO, TargetPlatform.TIKTOK, RequestPriority.NORMAL));
+        }
+        MediaRequest instagram = saveRequest(RequestStatus.GO, TargetPlatform.INSTAGRAM, RequestPriority.NORMAL);
+
+        List<MediaRequest> claimed = mediaRequestQueue.claimPending(2);
+
+        // La demande INSTAGRAM, soumise après les cinq TIKTOK, n'attend pas qu'elles soient traitées
+        assertEquals(Set.of(bulk.get(0).getId(), instagram.getId()), Set.copyOf(ids(claimed)));
+    }
+
+    @Test
+    void claimPending_shouldServeUrgentRequestsFirstWithinALane() {
+        MediaRequest older = saveRequest(RequestStatus.GO, TargetPlatform.TIKTOK, RequestPriority.BULK);
+        MediaRequest normal = saveRequest(RequestStatus.GO, TargetPlatform.TIKTOK, RequestPriority.NORMAL);
+        MediaRequest urgent = saveRequest(RequestStatus.GO, TargetPlatform.TIKTOK, RequestPriority.URGENT);
+
+        assertEquals(List.of(urgent.getId(), normal.getId(), older.getId()), ids(mediaRequestQueue.claimPending(3)));
+    }
+
+    @Test
+    void claimPending_shouldCountClaimedRequestsInTheirLaneUntilReleased() {
+        MediaRequestLanes.Lane lane = new MediaRequestLanes.Lane(TargetPlatform.TIKTOK, MediaType.VIDEO);
+        MediaRequest first = saveRequest(RequestStatus.GO);
+        saveRequest(RequestStatus.GO);
+        int running = mediaRequestLanes.runningIn(lane);
+
+        List<MediaRequest> claimed = mediaRequestQueue.claimPending(1);
+        assertEquals(List.of(first.getId()), ids(claimed));
+        assertEquals(running + 1, mediaRequestLanes.runningIn(lane));
+
+        mediaRequestQueue.release(first.getId());
+        assertEquals(running, mediaRequestLanes.runningIn(lane));
+    }
+
+    @Test
+    void claimPending_shouldOnlyLockTheSelectedRequests() {
+        for (int i = 0; i < 3; i++) {
+            saveRequest(RequestStatus.GO, TargetPlatform.TIKTOK, RequestPriority.NORMAL);
+            saveRequest(RequestStatus.GO, TargetPlatform.INSTAGRAM, RequestPriority.NORMAL);
+        }
+
+        List<MediaRequest> claimed = mediaRequestQueue.claimPending(2);
+
+        verify(mediaRequestRepository).lockByIdsInStatus(eq(ids(claimed)), eq(RequestStatus.GO));
+        assertEquals(4, mediaRequestRepository.findByStatus(RequestStatus.GO).size());
+    }
+
+    @Test
+    void claimPending_whenASelectedRequestIsClaimedElsewhere_shouldSkipItAndFreeItsLaneSlot() {
+        MediaRequestLanes.Lane lane = new MediaRequestLanes.Lane(TargetPlatform.TIKTOK, MediaType.VIDEO);
+        MediaRequest taken = saveRequest(RequestStatus.GO);
+        MediaRequest free = saveRequest(RequestStatus.GO);
+        int running = mediaRequestLanes.runningIn(lane);
+        // Une autre instance réclame la première demande entre la lecture de la file et le verrouillage
+        doAnswer(invocation -> {
+            mediaRequestRepository.transitionStatus(taken.getId(), Set.of(RequestStatus.GO), RequestStatus.RUNNING, LocalDateTime.now());
+            Collection<Long> ids = invocation.getArgument(0);
+            return mediaRequestRepository.findByStatus(RequestStatus.GO).stream()
+                    .filter(request -> ids.contains(request.getId()))
+                    .toList();
+        }).when(mediaRequestRepository).lockByIdsInStatus(anyCollection(), eq(RequestStatus.GO));
+
+        List<MediaRequest> claimed = mediaRequestQueue.claimPending(2);
+
+        assertEquals(List.of(free.getId()), ids(claimed));
+        assertEquals(running + 1, mediaRequestLanes.runningIn(lane));
+    }
+
+    @Test
+    void claimPending_whenNotEveryLockedRequestIsLeased_shouldFailAndFreeTheLaneSlots() {
+        MediaRequestLanes.Lane lane = new MediaRequestLanes.Lane(TargetPlatform.TIKTOK, MediaType.VIDEO);
+        MediaRequest request = saveRequest(RequestStatus.GO);
+        int running = mediaRequestLanes.runningIn(lane);
+        doReturn(0).when(mediaRequestRepository).leaseForIds(anyCollection(), any(), any(), anyString(), any(), any());
+
+        assertThrows(IllegalStateException.class, () -> mediaRequestQueue.claimPending(1));
+
+        assertEquals(running, mediaRequestLanes.runningIn(lane));
+        assertEquals(RequestStatus.GO, mediaRequestRepository.findById(request.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void claimPending_whenTheTransactionRollsBack_shouldFreeTheLaneSlots() {
+        MediaRequestLanes.Lane lane = new MediaRequestLanes.Lane(TargetPlatform.TIKTOK, MediaType.VIDEO);
+        saveRequest(RequestStatus.GO);
+        int running = mediaRequestLanes.runningIn(lane);
+        doThrow(new IllegalStateException("Base indisponible")).when(mediaRequestRepository)
+                .leaseForIds(anyCollection(), any(), any(), anyString(), any(), any());
+
+        assertThrows(IllegalStateException.class, () -> mediaRequestQueue.claimPending(1));
+
+        assertEquals(running, mediaRequestLanes.runningIn(lane));
+    }
+}
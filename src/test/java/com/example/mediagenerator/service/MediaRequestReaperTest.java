@@ -0,0 +1,171 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Chaque reprise s'exécute dans sa propre transaction
+class MediaRequestReaperTest {
+
+    private static final String DEAD_NODE = "node-dead";
+
+    @Autowired
+    private MediaRequestRepository mediaRequestRepository;
+
+    private MediaRequestLeases mediaRequestLeases;
+    private MediaRequestService mediaRequestService;
+    private MediaRequestEvents mediaRequestEvents;
+    private SimpleMeterRegistry meterRegistry;
+    private MediaRequestReaper reaper;
+
+    @BeforeEach
+    void setUp() {
+        mediaRequestRepository.deleteAll();
+        MediaQueueProperties properties = new MediaQueueProperties();
+        properties.setNodeId("node-alive");
+        properties.setMaxAttempts(3);
+        mediaRequestLeases = new MediaRequestLeases(mediaRequestRepository, properties);
+        mediaRequestService = mock(MediaRequestService.class);
+        mediaRequestEvents = mock(MediaRequestEvents.class);
+        meterRegistry = new SimpleMeterRegistry();
+        reaper = new MediaRequestReaper(mediaRequestRepository, mediaRequestLeases, mediaRequestService, mediaRequestEvents,
+                properties, meterRegistry);
+    }
+
+    // Demande laissée par une instance arrêtée : le bail a expiré il y a une minute
+    private MediaRequest saveLeased(RequestStatus status, int attempts, LocalDateTime leaseExpiresAt) {
+        MediaRequest request = new MediaRequest("Scenario " + status, "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        request.setStatus(status);
+        request.setLeaseOwner(DEAD_NODE);
+        request.setLeaseExpiresAt(leaseExpiresAt);
+        request.setAttempts(attempts);
+        return mediaRequestRepository.save(request);
+    }
+
+    @Test
+    void reapExpiredLeases_shouldPutAbandonedRunningRequestsBackToGo() {
+        MediaRequest request = saveLeased(RequestStatus.RUNNING, 0, LocalDateTime.now().minusMinutes(1));
+
+        assertEquals(1, reaper.reapExpiredLeases());
+
+        MediaRequest reloaded = mediaRequestRepository.findById(request.getId()).orElseThrow();
+        assertEquals(RequestStatus.GO, reloaded.getStatus());
+        assertEquals(1, reloaded.getAttempts());
+        assertNull(reloaded.getLeaseOwner());
+        assertNull(reloaded.getLeaseExpiresAt());
+        verify(mediaRequestEvents).publishStatusChange(eq(request.getId()), eq(RequestStatus.GO), any(), any(), any());
+        assertEquals(1, meterRegistry.get("media.requests.leases.expired").tag("outcome", "requeued").counter().count());
+    }
+
+    @Test
+    void reapExpiredLeases_shouldTakeOverAndResumeAbandonedPromptFormatting() {
+        MediaRequest request = saveLeased(RequestStatus.FORMATTING_PROMPT, 1, LocalDateTime.now().minusMinutes(1));
+
+        assertEquals(1, reaper.reapExpiredLeases());
+
+        MediaRequest reloaded = mediaRequestRepository.findById(request.getId()).orElseThrow();
+        assertEquals(RequestStatus.FORMATTING_PROMPT, reloaded.getStatus());
+        assertEquals("node-alive", reloaded.getLeaseOwner());
+        assertTrue(reloaded.getLeaseExpiresAt().isAfter(LocalDateTime.now()));
+        assertEquals(2, reloaded.getAttempts());
+        ArgumentCaptor<MediaRequest> resumed = ArgumentCaptor.forClass(MediaRequest.class);
+        verify(mediaRequestService).resumePromptFormatting(resumed.capture());
+        assertEquals(request.getId(), resumed.getValue().getId());
+    }
+
+    @Test
+    void reapExpiredLeases_afterMaxAttempts_shouldMoveRequestToDeadLetter() {
+        MediaRequest request = saveLeased(RequestStatus.RUNNING, 2, LocalDateTime.now().minusMinutes(1));
+
+        reaper.reapExpiredLeases();
+
+        MediaRequest reloaded = mediaRequestRepository.findById(request.getId()).orElseThrow();
+        assertEquals(RequestStatus.DEAD_LETTER, reloaded.getStatus());
+        assertEquals(3, reloaded.getAttempts());
+        assertNull(reloaded.getLeaseOwner());
+        assertTrue(reloaded.getErrorMessage().contains(DEAD_NODE));
+        verify(mediaRequestEvents).publishStatusChange(eq(request.getId()), eq(RequestStatus.DEAD_LETTER), any(), anyString(), any());
+        verify(mediaRequestService, never()).resumePromptFormatting(any());
+    }
+
+    @Test
+    void reapExpiredLeases_shouldIgnoreLeasesThatAreStillValid() {
+        MediaRequest request = saveLeased(RequestStatus.RUNNING, 0, LocalDateTime.now().plusMinutes(1));
+
+        assertEquals(0, reaper.reapExpiredLeases());
+
+        assertEquals(RequestStatus.RUNNING, mediaRequestRepository.findById(request.getId()).orElseThrow().getStatus());
+        verifyNoInteractions(mediaRequestEvents);
+    }
+
+    @Test
+    void reapExpiredLeases_whenThisInstanceStillHoldsTheLease_shouldRenewItInsteadOfReclaiming() {
+        LocalDateTime expired = LocalDateTime.now().minusMinutes(1);
+        MediaRequest running = saveLeased(RequestStatus.RUNNING, 0, expired);
+        MediaRequest formatting = saveLeased(RequestStatus.FORMATTING_PROMPT, 0, expired);
+        // Battements de cœur manqués : les baux de cette instance ont expiré alors que le traitement continue
+        for (MediaRequest request : List.of(running, formatting)) {
+            mediaRequestRepository.leaseForIds(List.of(request.getId()), request.getStatus(), request.getStatus(), "node-alive", expired, expired);
+            mediaRequestLeases.track(request.getId());
+        }
+
+        assertEquals(0, reaper.reapExpiredLeases());
+
+        for (MediaRequest request : List.of(running, formatting)) {
+            MediaRequest reloaded = mediaRequestRepository.findById(request.getId()).orElseThrow();
+            assertEquals(request.getStatus(), reloaded.getStatus());
+            assertEquals("node-alive", reloaded.getLeaseOwner());
+            assertEquals(0, reloaded.getAttempts());
+            assertTrue(reloaded.getLeaseExpiresAt().isAfter(LocalDateTime.now()));
+        }
+        verify(mediaRequestService, never()).resumePromptFormatting(any());
+        verifyNoInteractions(mediaRequestEvents);
+    }
+
+    @Test
+    void heartbeat_shouldOnlyRenewLeasesStillHeldByThisInstance() {
+        LocalDateTime soon = LocalDateTime.now().plusSeconds(5);
+        MediaRequest held = saveLeased(RequestStatus.RUNNING, 0, soon);
+        mediaRequestRepository.leaseForIds(List.of(held.getId()), RequestStatus.RUNNING, RequestStatus.RUNNING, "node-alive", soon, LocalDateTime.now());
+        MediaRequest lost = saveLeased(RequestStatus.RUNNING, 0, soon);
+        mediaRequestLeases.track(held.getId());
+        mediaRequestLeases.track(lost.getId());
+
+        assertEquals(1, mediaRequestLeases.heartbeat());
+
+        assertTrue(mediaRequestRepository.findById(held.getId()).orElseThrow().getLeaseExpiresAt().isAfter(soon));
+        assertEquals(DEAD_NODE, mediaRequestRepository.findById(lost.getId()).orElseThrow().getLeaseOwner());
+    }
+
+    @Test
+    void completion_byAnInstanceThatLostItsLease_shouldBeIgnored() {
+        MediaRequest request = saveLeased(RequestStatus.RUNNING, 0, LocalDateTime.now().plusMinutes(1));
+
+        assertEquals(0, mediaRequestRepository.completeProcessing(request.getId(), RequestStatus.RUNNING, RequestStatus.SUCCESS,
+                null, "/out.mp4", "node-alive", LocalDateTime.now()));
+        assertEquals(1, mediaRequestRepository.completeProcessing(request.getId(), RequestStatus.RUNNING, RequestStatus.SUCCESS,
+                null, "/out.mp4", DEAD_NODE, LocalDateTime.now()));
+        assertNull(mediaRequestRepository.findById(request.getId()).orElseThrow().getLeaseOwner());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Formatage des prompts à travers les proxys Spring (dépôts, transactions) et une vraie base : les mises à jour
+ * conditionnelles sont appelées hors de toute transaction, depuis le thread appelant puis depuis les callbacks Reactor.
+ */
+@SpringBootTest(properties = "media.queue.dispatcher-enabled=false")
+class MediaRequestServiceIntegrationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Autowired
+    private MediaRequestService mediaRequestService;
+
+    @Autowired
+    private MediaRequestRepository mediaRequestRepository;
+
+    @MockitoBean
+    private PromptProviderRouter promptProviderRouter;
+
+    private Long saveRequest() {
+        MediaRequest request = new MediaRequest("Un chat explore une station spatiale", "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        return mediaRequestRepository.save(request).getId();
+    }
+
+    @Test
+    void startPromptFormatting_outsideTransaction_shouldStoreTheStreamedPrompt() {
+        when(promptProviderRouter.streamFormattedPrompt(anyString(), anyString(), any(), any()))
+                .thenReturn(Flux.just("Prompt ", "formaté"));
+        Long id = saveRequest();
+
+        assertEquals(RequestStatus.FORMATTING_PROMPT, mediaRequestService.startPromptFormatting(id).orElseThrow().getStatus());
+        mediaRequestService.getPromptStream(id).result().block(TIMEOUT);
+
+        MediaRequest stored = mediaRequestRepository.findWithContentById(id).orElseThrow();
+        assertEquals(RequestStatus.PROMPT_GENERATED, stored.getStatus());
+        assertEquals("Prompt formaté", stored.getFormattedPrompt());
+        assertNull(stored.getLeaseOwner());
+    }
+
+    @Test
+    void formatRequestToPrompt_outsideTransaction_shouldStoreThePrompt() {
+        when(promptProviderRouter.generateFormattedPrompt(anyString(), anyString(), any(), any()))
+                .thenReturn(Mono.just("Prompt formaté"));
+        Long id = saveRequest();
+
+        MediaRequest formatted = mediaRequestService.formatRequestToPrompt(id).orElseThrow();
+
+        assertEquals(RequestStatus.PROMPT_GENERATED, formatted.getStatus());
+        assertEquals("Prompt formaté", mediaRequestRepository.findWithContentById(id).orElseThrow().getFormattedPrompt());
+    }
+
+    @Test
+    void formatRequestToPrompt_whenProviderFails_shouldStoreTheError() {
+        when(promptProviderRouter.generateFormattedPrompt(anyString(), anyString(), any(), any()))
+                .thenReturn(Mono.error(new PromptProviderException("Service indisponible")));
+        Long id = saveRequest();
+
+        mediaRequestService.formatRequestToPrompt(id);
+
+        MediaRequest stored = mediaRequestRepository.findById(id).orElseThrow();
+        assertEquals(RequestStatus.FAIL, stored.getStatus());
+        assertNotNull(stored.getErrorMessage());
+    }
+}
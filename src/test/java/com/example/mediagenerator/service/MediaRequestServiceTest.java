@@ -1,27 +1,48 @@
 package com.example.mediagenerator.service;
 
+import com.example.mediagenerator.config.MediaDedupProperties;
+import com.example.mediagenerator.config.MediaQueueProperties;
+import com.example.mediagenerator.config.PromptProvidersProperties;
 import com.example.mediagenerator.dto.MediaRequestDto;
 import com.example.mediagenerator.model.MediaRequest;
 import com.example.mediagenerator.model.MediaType;
 import com.example.mediagenerator.model.RequestStatus;
 import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestContentRepository;
 import com.example.mediagenerator.repository.MediaRequestRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,17 +52,49 @@ class MediaRequestServiceTest {
     private MediaRequestRepository mediaRequestRepository;
 
     @Mock
-    private GeminiService geminiService;
+    private MediaRequestContentRepository mediaRequestContentRepository;
+
+    @Mock
+    private PromptProviderRouter promptProviderRouter;
+
+    @Mock
+    private MediaRequestQueue mediaRequestQueue;
+
+    @Mock
+    private ThreadPoolTaskExecutor mediaProcessingExecutor;
+
+    @Mock
+    private MediaRequestMetrics mediaRequestMetrics;
+
+    @Mock
+    private MediaRequestEvents mediaRequestEvents;
+
+    @Mock
+    private MediaGenerator mediaGenerator;
+
+    private static final String NODE_ID = "node-test";
+
+    @Spy
+    private MediaRequestLeases mediaRequestLeases = new MediaRequestLeases(null, leaseProperties());
+
+    @Spy
+    private MediaDedupProperties dedupProperties = new MediaDedupProperties();
+
+    @Spy
+    private RequestCoalescer requestCoalescer = new RequestCoalescer(new MediaDedupProperties(), mock(MediaRequestMetrics.class));
 
     @InjectMocks
     private MediaRequestService mediaRequestService;
 
-    @Captor
-    private ArgumentCaptor<MediaRequest> mediaRequestCaptor;
-
     private MediaRequestDto sampleDto;
     private MediaRequest sampleRequest;
 
+    private static MediaQueueProperties leaseProperties() {
+        MediaQueueProperties properties = new MediaQueueProperties();
+        properties.setNodeId(NODE_ID);
+        return properties;
+    }
+
     @BeforeEach
     void setUp() {
         sampleDto = new MediaRequestDto();
@@ -71,87 +124,93 @@ class MediaRequestServiceTest {
             return reqToSave;
         });
 
-        MediaRequest result = mediaRequestService.submitNewRequest(sampleDto);
+        MediaRequestService.Submission submission = mediaRequestService.submitNewRequest(sampleDto);
+        MediaRequest result = submission.request();
 
         assertNotNull(result);
+        assertFalse(submission.duplicate());
         assertEquals(1L, result.getId());
         assertEquals("Test Scenario", result.getScenario());
+        assertEquals(MediaRequest.scenarioHash("Test Scenario"), result.getScenarioHash());
         assertEquals(RequestStatus.NOT_YET, result.getStatus());
         verify(mediaRequestRepository, times(1)).save(any(MediaRequest.class));
     }
 
     @Test
-    void setRequestStatusToGo_whenRequestExistsAndStatusIsNutYet_shouldUpdateStatus() {
-        sampleRequest.setStatus(RequestStatus.NOT_YET);
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
-        when(mediaRequestRepository.save(any(MediaRequest.class))).thenReturn(sampleRequest);
+    void submitNewRequest_whenIdenticalRequestIsInProgress_shouldReturnItWithoutSaving() {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        sampleDto.setScenario("  test   SCENARIO\n");
+        when(mediaRequestRepository.findDuplicates(eq(sampleRequest.getScenarioHash()), eq(MediaType.VIDEO), eq(TargetPlatform.TIKTOK),
+                eq("TestIA"), anyCollection(), eq(RequestStatus.SUCCESS), any(LocalDateTime.class), eq(Limit.of(1))))
+                .thenReturn(List.of(sampleRequest));
 
-        Optional<MediaRequest> result = mediaRequestService.setRequestStatusToGo(1L);
+        MediaRequestService.Submission submission = mediaRequestService.submitNewRequest(sampleDto);
 
-        assertTrue(result.isPresent());
-        assertEquals(RequestStatus.GO, result.get().getStatus());
-        verify(mediaRequestRepository, times(1)).findById(1L);
-        verify(mediaRequestRepository, times(1)).save(sampleRequest);
+        assertTrue(submission.duplicate());
+        assertSame(sampleRequest, submission.request());
+        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+        verify(mediaRequestMetrics).recordDeduplicated("submit");
     }
 
     @Test
-    void setRequestStatusToGo_whenRequestNotFound_shouldReturnEmpty() {
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.empty());
-        Optional<MediaRequest> result = mediaRequestService.setRequestStatusToGo(1L);
-        assertFalse(result.isPresent());
-        verify(mediaRequestRepository, times(1)).findById(1L);
-        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+    void submitNewRequest_whenDedupDisabled_shouldAlwaysSave() {
+        dedupProperties.setEnabled(false);
+        when(mediaRequestRepository.save(any(MediaRequest.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertFalse(mediaRequestService.submitNewRequest(sampleDto).duplicate());
+
+        verify(mediaRequestRepository, never()).findDuplicates(any(), any(), any(), any(), any(), any(), any(), any());
+        verify(mediaRequestRepository).save(any(MediaRequest.class));
     }
 
     @Test
-    void setRequestStatusToGo_whenRequestNotInNotYetStatus_shouldReturnEmpty() {
-        sampleRequest.setStatus(RequestStatus.RUNNING);
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
-        Optional<MediaRequest> result = mediaRequestService.setRequestStatusToGo(1L);
-        assertFalse(result.isPresent());
-        verify(mediaRequestRepository, times(1)).findById(1L);
+    void setRequestStatusToGo_whenRequestIsNotYet_shouldTransitionInOneUpdate() {
+        when(mediaRequestRepository.transitionStatus(eq(1L), eq(EnumSet.of(RequestStatus.NOT_YET)), eq(RequestStatus.GO), any(LocalDateTime.class))).thenReturn(1);
+
+        assertTrue(mediaRequestService.setRequestStatusToGo(1L));
+
+        verify(mediaRequestRepository, never()).findById(any());
         verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+        verify(mediaRequestEvents).publishStatusChange(eq(1L), eq(RequestStatus.GO), any(LocalDateTime.class), isNull(), isNull());
     }
 
     @Test
-    void updateRequestStatus_shouldUpdateFieldsAndSave() {
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
-        when(mediaRequestRepository.save(any(MediaRequest.class))).thenReturn(sampleRequest);
+    void setRequestStatusToGo_whenRequestMissingOrNotInNotYetStatus_shouldReturnFalse() {
+        when(mediaRequestRepository.transitionStatus(eq(1L), anyCollection(), eq(RequestStatus.GO), any(LocalDateTime.class))).thenReturn(0);
 
-        String errorMessage = "Test Error";
-        String mediaPath = "/path/to/media.mp4";
-        String formattedPrompt = "Test Prompt";
+        assertFalse(mediaRequestService.setRequestStatusToGo(1L));
 
-        mediaRequestService.updateRequestStatus(1L, RequestStatus.FAIL, errorMessage, mediaPath, formattedPrompt);
+        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+        verifyNoInteractions(mediaRequestEvents);
+    }
+
+    @Test
+    void updateRequestStatus_shouldIssueConditionalUpdateWithoutLoadingTheRequest() {
+        when(mediaRequestRepository.completeProcessing(eq(1L), eq(RequestStatus.RUNNING), eq(RequestStatus.FAIL), eq("Test Error"), eq("/path/to/media.mp4"), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
 
-        assertEquals(RequestStatus.FAIL, sampleRequest.getStatus());
-        assertEquals(errorMessage, sampleRequest.getErrorMessage());
-        assertEquals(mediaPath, sampleRequest.getGeneratedMediaPath());
-        assertEquals(formattedPrompt, sampleRequest.getFormattedPrompt());
+        assertTrue(mediaRequestService.updateRequestStatus(1L, RequestStatus.RUNNING, RequestStatus.FAIL, "Test Error", "/path/to/media.mp4"));
 
+        verify(mediaRequestRepository, never()).findById(any());
+        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+    }
+
+    @Test
+    void updateRequestStatus_whenRequestLeftExpectedStatus_shouldReturnFalse() {
+        when(mediaRequestRepository.completeProcessing(eq(1L), eq(RequestStatus.RUNNING), eq(RequestStatus.SUCCESS), isNull(), anyString(), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(0);
 
-        verify(mediaRequestRepository, times(1)).findById(1L);
-        verify(mediaRequestRepository, times(1)).save(sampleRequest);
+        assertFalse(mediaRequestService.updateRequestStatus(1L, RequestStatus.RUNNING, RequestStatus.SUCCESS, null, "/path/to/media.mp4"));
     }
 
     @Test
     void formatRequestToPrompt_whenRequestExistsAndEligible_andGeminiSucceeds_shouldSetPromptGenerated() {
         sampleRequest.setStatus(RequestStatus.NOT_YET);
         String mockPromptContent = "Mocked Gemini prompt content.";
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
-        when(mediaRequestRepository.save(any(MediaRequest.class))).thenAnswer(invocation -> {
-            MediaRequest savedReq = invocation.getArgument(0);
-            // Return a new instance to simulate behavior of a real save returning a new or detached entity
-            MediaRequest returnedReq = new MediaRequest(savedReq.getScenario(), savedReq.getSelectedIAs(), savedReq.getMediaType(), savedReq.getTargetPlatform());
-            returnedReq.setId(savedReq.getId());
-            returnedReq.setStatus(savedReq.getStatus());
-            returnedReq.setFormattedPrompt(savedReq.getFormattedPrompt());
-            returnedReq.setErrorMessage(savedReq.getErrorMessage());
-            returnedReq.setCreationDate(savedReq.getCreationDate());
-            returnedReq.setStatusUpdateDate(LocalDateTime.now());
-            return returnedReq;
-        });
-        when(geminiService.generateFormattedPrompt(sampleRequest.getScenario(), sampleRequest.getMediaType()))
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(mediaRequestContentRepository.savePrompt(1L, RequestStatus.FORMATTING_PROMPT, mockPromptContent, NODE_ID)).thenReturn(1);
+        when(mediaRequestRepository.completeWithPrompt(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.PROMPT_GENERATED), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+        when(promptProviderRouter.generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
                 .thenReturn(Mono.just(mockPromptContent));
 
         Optional<MediaRequest> result = mediaRequestService.formatRequestToPrompt(1L);
@@ -162,33 +221,48 @@ class MediaRequestServiceTest {
         assertEquals(mockPromptContent, updatedRequest.getFormattedPrompt());
         assertNull(updatedRequest.getErrorMessage());
 
-        verify(mediaRequestRepository, times(2)).save(mediaRequestCaptor.capture());
-        List<MediaRequest> savedRequests = mediaRequestCaptor.getAllValues();
-        assertEquals(RequestStatus.FORMATTING_PROMPT, savedRequests.get(0).getStatus());
-        assertEquals(RequestStatus.PROMPT_GENERATED, savedRequests.get(1).getStatus());
+        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+        verify(promptProviderRouter, times(1)).generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform());
+        // Le bail pris au passage à FORMATTING_PROMPT n'est plus prolongé une fois le prompt enregistré
+        verify(mediaRequestLeases).track(1L);
+        verify(mediaRequestLeases, timeout(1000)).release(1L);
+    }
+
+    @Test
+    void formatRequestToPrompt_shouldSaveTheTokensReportedByTheProvider() {
+        sampleRequest.setStatus(RequestStatus.NOT_YET);
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(mediaRequestContentRepository.savePrompt(1L, RequestStatus.FORMATTING_PROMPT, "Prompt", NODE_ID)).thenReturn(1);
+        when(mediaRequestRepository.completeWithPrompt(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.PROMPT_GENERATED), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+        // Le fournisseur rapporte l'usage de ses deux appels (nouvelle tentative) dans le contexte de la demande
+        TokenUsageTracker tracker = new TokenUsageTracker(new PromptProvidersProperties(), new SimpleMeterRegistry());
+        Mono<String> call = tracker.reserve("gemini-test", 100)
+                .flatMap(reservation -> Mono.deferContextual(context -> {
+                    reservation.complete(context, "Gemini", new TokenUsage(120, 300, 420));
+                    return Mono.just("Prompt");
+                }));
+        when(promptProviderRouter.generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
+                .thenReturn(call.then(call));
+
+        MediaRequest updatedRequest = mediaRequestService.formatRequestToPrompt(1L).orElseThrow();
 
-        verify(geminiService, times(1)).generateFormattedPrompt(sampleRequest.getScenario(), sampleRequest.getMediaType());
+        assertEquals(RequestStatus.PROMPT_GENERATED, updatedRequest.getStatus());
+        assertEquals(840, updatedRequest.getTotalTokens());
+        verify(mediaRequestRepository).addTokenUsage(1L, 240, 600, 840);
     }
 
     @Test
     void formatRequestToPrompt_whenRequestExistsAndEligible_andGeminiFails_shouldSetStatusToFail() {
         sampleRequest.setStatus(RequestStatus.NOT_YET);
         String errorMessageFromGemini = "Erreur: Gemini API error.";
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
-        when(mediaRequestRepository.save(any(MediaRequest.class))).thenAnswer(invocation -> {
-            MediaRequest savedReq = invocation.getArgument(0);
-            MediaRequest returnedReq = new MediaRequest(savedReq.getScenario(), savedReq.getSelectedIAs(), savedReq.getMediaType(), savedReq.getTargetPlatform());
-            returnedReq.setId(savedReq.getId());
-            returnedReq.setStatus(savedReq.getStatus());
-            returnedReq.setFormattedPrompt(savedReq.getFormattedPrompt());
-            returnedReq.setErrorMessage(savedReq.getErrorMessage());
-            returnedReq.setCreationDate(savedReq.getCreationDate());
-            returnedReq.setStatusUpdateDate(LocalDateTime.now());
-            return returnedReq;
-        });
-
-        when(geminiService.generateFormattedPrompt(sampleRequest.getScenario(), sampleRequest.getMediaType()))
-                .thenReturn(Mono.just(errorMessageFromGemini));
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(promptProviderRouter.generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
+                .thenReturn(Mono.error(new GeminiException(GeminiException.Failure.UNAVAILABLE, errorMessageFromGemini)));
 
         Optional<MediaRequest> result = mediaRequestService.formatRequestToPrompt(1L);
 
@@ -198,19 +272,17 @@ class MediaRequestServiceTest {
         assertEquals(errorMessageFromGemini, updatedRequest.getErrorMessage());
         assertNull(updatedRequest.getFormattedPrompt());
 
-        verify(mediaRequestRepository, times(2)).save(mediaRequestCaptor.capture());
-        List<MediaRequest> savedRequests = mediaRequestCaptor.getAllValues();
-        assertEquals(RequestStatus.FORMATTING_PROMPT, savedRequests.get(0).getStatus());
-        assertEquals(RequestStatus.FAIL, savedRequests.get(1).getStatus());
-        verify(geminiService, times(1)).generateFormattedPrompt(sampleRequest.getScenario(), sampleRequest.getMediaType());
+        verify(mediaRequestRepository).completeWithError(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.FAIL), eq(errorMessageFromGemini), eq(NODE_ID), any(LocalDateTime.class));
+        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
     }
 
     @Test
-    void formatRequestToPrompt_whenGeminiServiceThrowsException_shouldSetStatusToFail() {
+    void formatRequestToPrompt_whenPromptProviderThrowsException_shouldSetStatusToFail() {
         sampleRequest.setStatus(RequestStatus.NOT_YET);
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
-        when(mediaRequestRepository.save(any(MediaRequest.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(geminiService.generateFormattedPrompt(sampleRequest.getScenario(), sampleRequest.getMediaType()))
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(promptProviderRouter.generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
                 .thenReturn(Mono.error(new RuntimeException("Simulated network error")));
 
         Optional<MediaRequest> result = mediaRequestService.formatRequestToPrompt(1L);
@@ -220,28 +292,302 @@ class MediaRequestServiceTest {
         assertEquals(RequestStatus.FAIL, updatedRequest.getStatus());
         assertTrue(updatedRequest.getErrorMessage().contains("Simulated network error"));
 
-        verify(mediaRequestRepository, times(2)).save(any(MediaRequest.class));
+        verify(mediaRequestRepository).completeWithError(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.FAIL), contains("Simulated network error"), eq(NODE_ID), any(LocalDateTime.class));
     }
 
 
     @Test
     void formatRequestToPrompt_whenRequestNotFound_shouldReturnEmpty() {
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.empty());
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.empty());
         Optional<MediaRequest> result = mediaRequestService.formatRequestToPrompt(1L);
         assertFalse(result.isPresent());
-        verify(mediaRequestRepository, times(1)).findById(1L);
-        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+        verify(mediaRequestRepository, times(1)).findWithContentById(1L);
+        verify(mediaRequestRepository, never()).acquireLease(any(), anyCollection(), any(), any(), any(), any());
     }
 
     @Test
     void formatRequestToPrompt_whenRequestNotEligibleStatus_shouldReturnEmpty() {
         sampleRequest.setStatus(RequestStatus.RUNNING);
-        when(mediaRequestRepository.findById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(0);
         Optional<MediaRequest> result = mediaRequestService.formatRequestToPrompt(1L);
         assertFalse(result.isPresent());
-        verify(mediaRequestRepository, times(1)).findById(1L);
-        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+        verifyNoInteractions(promptProviderRouter);
     }
 
     // Removed formatRequestToPrompt_whenInterruptedExceptionOccurs_shouldSetStatusToFail
+
+    @Test
+    void startPromptFormatting_whenEligible_shouldMarkFormattingAndStoreGeminiResult() {
+        sampleRequest.setStatus(RequestStatus.NOT_YET);
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(promptProviderRouter.generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
+                .thenReturn(Mono.just("Async prompt"));
+        when(mediaRequestContentRepository.savePrompt(1L, RequestStatus.FORMATTING_PROMPT, "Async prompt", NODE_ID)).thenReturn(1);
+
+        Optional<MediaRequest> result = mediaRequestService.startPromptFormatting(1L);
+
+        assertTrue(result.isPresent());
+        verify(mediaRequestRepository).acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class));
+        verify(mediaRequestRepository, timeout(1000)).completeWithPrompt(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.PROMPT_GENERATED), eq(NODE_ID), any(LocalDateTime.class));
+        verify(mediaRequestRepository, never()).save(any(MediaRequest.class));
+    }
+
+    @Test
+    void startPromptFormatting_whenGeminiReturnsError_shouldMarkFail() {
+        sampleRequest.setStatus(RequestStatus.GO);
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(promptProviderRouter.generateFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
+                .thenReturn(Mono.error(new GeminiException(GeminiException.Failure.BLOCKED, "Erreur: Gemini API error.")));
+
+        mediaRequestService.startPromptFormatting(1L);
+
+        verify(mediaRequestRepository, timeout(1000)).completeWithError(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.FAIL), eq("Erreur: Gemini API error."), eq(NODE_ID), any(LocalDateTime.class));
+        verify(mediaRequestRepository, never()).completeWithPrompt(any(), any(), any(), any(), any());
+        verify(mediaRequestContentRepository, never()).savePrompt(any(), any(), any(), any());
+    }
+
+    @Test
+    void startPromptFormatting_whenNotEligible_shouldNotCallGemini() {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(0);
+
+        Optional<MediaRequest> result = mediaRequestService.startPromptFormatting(1L);
+
+        assertFalse(result.isPresent());
+        verifyNoInteractions(promptProviderRouter);
+    }
+
+    @Test
+    void startPromptFormatting_whenStreaming_shouldCheckpointPartialPromptAndStoreFullPrompt() {
+        ReflectionTestUtils.setField(mediaRequestService, "promptStreamingEnabled", true);
+        ReflectionTestUtils.setField(mediaRequestService, "promptCheckpointChunks", 2);
+        sampleRequest.setStatus(RequestStatus.NOT_YET);
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(mediaRequestContentRepository.savePrompt(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), anyString(), eq(NODE_ID))).thenReturn(1);
+        when(mediaRequestRepository.completeWithPrompt(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.PROMPT_GENERATED), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+        when(promptProviderRouter.streamFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform()))
+                .thenReturn(Flux.just("a", "b", "c"));
+
+        mediaRequestService.startPromptFormatting(1L);
+
+        verify(mediaRequestRepository, timeout(1000)).completeWithPrompt(eq(1L), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.PROMPT_GENERATED), eq(NODE_ID), any(LocalDateTime.class));
+        verify(mediaRequestContentRepository).savePrompt(1L, RequestStatus.FORMATTING_PROMPT, "ab", NODE_ID); // Prompt partiel
+        verify(mediaRequestContentRepository).savePrompt(1L, RequestStatus.FORMATTING_PROMPT, "abc", NODE_ID);
+        verify(promptProviderRouter, never()).generateFormattedPrompt(any(), any(), any(), any());
+    }
+
+    @Test
+    void getPromptStream_whileStreaming_shouldReplayReceivedChunksToLateSubscribers() {
+        ReflectionTestUtils.setField(mediaRequestService, "promptStreamingEnabled", true);
+        sampleRequest.setStatus(RequestStatus.NOT_YET);
+        Sinks.Many<String> gemini = Sinks.many().unicast().onBackpressureBuffer();
+        when(mediaRequestRepository.findWithContentById(1L)).thenReturn(Optional.of(sampleRequest));
+        when(mediaRequestRepository.acquireLease(eq(1L), anyCollection(), eq(RequestStatus.FORMATTING_PROMPT), eq(NODE_ID), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(mediaRequestContentRepository.savePrompt(any(), any(), any(), any())).thenReturn(1);
+        when(mediaRequestRepository.completeWithPrompt(any(), any(), any(), any(), any())).thenReturn(1);
+        when(promptProviderRouter.streamFormattedPrompt(sampleRequest.getSelectedIAs(), sampleRequest.getScenario(), sampleRequest.getMediaType(),
+                sampleRequest.getTargetPlatform())).thenReturn(gemini.asFlux());
+
+        mediaRequestService.startPromptFormatting(1L);
+        gemini.tryEmitNext("Premier ");
+
+        MediaRequestService.PromptStream stream = mediaRequestService.getPromptStream(1L);
+        StepVerifier.create(stream.chunks())
+                .expectNext("Premier ")
+                .then(() -> {
+                    gemini.tryEmitNext("morceau");
+                    gemini.tryEmitComplete();
+                })
+                .expectNext("morceau")
+                .verifyComplete();
+        StepVerifier.create(stream.result())
+                .assertNext(request -> assertEquals(RequestStatus.PROMPT_GENERATED, request.getStatus()))
+                .verifyComplete();
+    }
+
+    @Test
+    void processPendingMediaRequests_shouldClaimGoRequestsAndDispatchThemToThePool() {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        when(mediaProcessingExecutor.getMaxPoolSize()).thenReturn(2);
+        when(mediaProcessingExecutor.getQueueCapacity()).thenReturn(10);
+        when(mediaRequestQueue.claimPending(12)).thenReturn(List.of(sampleRequest));
+
+        int dispatched = mediaRequestService.processPendingMediaRequests();
+
+        assertEquals(1, dispatched);
+        verify(mediaRequestQueue, times(1)).claimPending(12);
+        verify(mediaProcessingExecutor, times(1)).execute(any(Runnable.class));
+        // Le bail de la demande est prolongé tant que le worker la traite
+        assertEquals(Set.of(1L), mediaRequestLeases.heldIds());
+    }
+
+    @Test
+    void processPendingMediaRequests_whenPoolIsSaturated_shouldNotClaimAnything() {
+        when(mediaProcessingExecutor.getMaxPoolSize()).thenReturn(2);
+        when(mediaProcessingExecutor.getQueueCapacity()).thenReturn(0);
+        when(mediaProcessingExecutor.getActiveCount()).thenReturn(2);
+
+        int dispatched = mediaRequestService.processPendingMediaRequests();
+
+        assertEquals(0, dispatched);
+        verify(mediaRequestQueue, never()).claimPending(anyInt());
+        verify(mediaProcessingExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    void processPendingMediaRequests_whenPoolRejectsTask_shouldPutRequestBackToGo() {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        when(mediaProcessingExecutor.getMaxPoolSize()).thenReturn(1);
+        when(mediaProcessingExecutor.getQueueCapacity()).thenReturn(1);
+        when(mediaRequestQueue.claimPending(2)).thenReturn(List.of(sampleRequest));
+        doThrow(new TaskRejectedException("full")).when(mediaProcessingExecutor).execute(any(Runnable.class));
+
+        int dispatched = mediaRequestService.processPendingMediaRequests();
+
+        assertEquals(0, dispatched);
+        verify(mediaRequestRepository).completeProcessing(eq(1L), eq(RequestStatus.RUNNING), eq(RequestStatus.GO), isNull(), isNull(), eq(NODE_ID), any(LocalDateTime.class));
+        assertTrue(mediaRequestLeases.heldIds().isEmpty());
+    }
+
+    @Test
+    void runMediaGeneration_shouldCompleteWithGeneratedMediaAndPublishProgressSteps() throws Exception {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        mediaRequestLeases.track(1L);
+        when(mediaGenerator.generate(eq(sampleRequest), any())).thenAnswer(invocation -> {
+            MediaGenerator.Progress progress = invocation.getArgument(1);
+            progress.update(0.02);
+            progress.update(0.5);
+            progress.update(0.52); // Moins de 5 points depuis le dernier avancement publié
+            progress.update(1.0);
+            return new MediaGenerator.GeneratedMedia("/media/media_1.gif", 1234L);
+        });
+        when(mediaRequestRepository.completeProcessing(eq(1L), eq(RequestStatus.RUNNING), eq(RequestStatus.SUCCESS), isNull(),
+                eq("/media/media_1.gif"), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+
+        mediaRequestService.runMediaGeneration(sampleRequest);
+
+        verify(mediaRequestEvents).publishProgress(eq(1L), any(), eq(50));
+        verify(mediaRequestEvents).publishProgress(eq(1L), any(), eq(100));
+        verify(mediaRequestEvents, times(2)).publishProgress(anyLong(), any(), anyInt());
+        verify(mediaRequestEvents).publishStatusChange(eq(1L), eq(RequestStatus.SUCCESS), any(), isNull(), eq("/media/media_1.gif"));
+        verify(mediaRequestMetrics).recordGeneration(eq(MediaType.VIDEO), eq(true), any(), eq(1234L));
+        assertTrue(mediaRequestLeases.heldIds().isEmpty());
+    }
+
+    @Test
+    void runMediaGeneration_whenGeneratorFails_shouldFailWithItsMessage() throws Exception {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        when(mediaGenerator.generate(eq(sampleRequest), any())).thenThrow(new MediaGenerationException("Erreur lors de l'écriture du média : disque plein"));
+        when(mediaRequestRepository.completeProcessing(anyLong(), any(), any(), any(), any(), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+
+        mediaRequestService.runMediaGeneration(sampleRequest);
+
+        verify(mediaRequestRepository).completeProcessing(eq(1L), eq(RequestStatus.RUNNING), eq(RequestStatus.FAIL),
+                eq("Erreur lors de l'écriture du média : disque plein"), isNull(), eq(NODE_ID), any(LocalDateTime.class));
+        verify(mediaRequestMetrics).recordGeneration(eq(MediaType.VIDEO), eq(false), any(), eq(0L));
+    }
+
+    @Test
+    void runPromptFormatting_forIdenticalRequestsInFlight_shouldCallThePromptProviderOnce() {
+        MediaRequest twin = new MediaRequest("Test Scenario", "TestIA", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        twin.setId(2L);
+        Sinks.One<String> providerResult = Sinks.one();
+        when(promptProviderRouter.generateFormattedPrompt("TestIA", "Test Scenario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .thenReturn(providerResult.asMono());
+        when(mediaRequestContentRepository.savePrompt(anyLong(), eq(RequestStatus.FORMATTING_PROMPT), eq("Prompt partagé"), eq(NODE_ID))).thenReturn(1);
+        when(mediaRequestRepository.completeWithPrompt(anyLong(), eq(RequestStatus.FORMATTING_PROMPT), eq(RequestStatus.PROMPT_GENERATED), eq(NODE_ID),
+                any(LocalDateTime.class))).thenReturn(1);
+
+        Mono<MediaRequest> first = mediaRequestService.runPromptFormatting(sampleRequest).cache();
+        Mono<MediaRequest> second = mediaRequestService.runPromptFormatting(twin).cache();
+        first.subscribe();
+        second.subscribe();
+        providerResult.tryEmitValue("Prompt partagé");
+
+        assertEquals(RequestStatus.PROMPT_GENERATED, first.block().getStatus());
+        assertEquals(RequestStatus.PROMPT_GENERATED, second.block().getStatus());
+        verify(promptProviderRouter, times(1)).generateFormattedPrompt(any(), any(), any(), any());
+        verify(mediaRequestContentRepository).savePrompt(1L, RequestStatus.FORMATTING_PROMPT, "Prompt partagé", NODE_ID);
+        verify(mediaRequestContentRepository).savePrompt(2L, RequestStatus.FORMATTING_PROMPT, "Prompt partagé", NODE_ID);
+
+        // Le formatage terminé, une demande identique relance un appel
+        when(promptProviderRouter.generateFormattedPrompt("TestIA", "Test Scenario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .thenReturn(Mono.just("Prompt partagé"));
+        mediaRequestService.runPromptFormatting(twin).block();
+        verify(promptProviderRouter, times(2)).generateFormattedPrompt(any(), any(), any(), any());
+    }
+
+    @Test
+    void processPendingMediaRequests_forIdenticalRequests_shouldGenerateOnceAndCompleteBoth() throws Exception {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        MediaRequest twin = new MediaRequest("Test Scenario", "TestIA", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        twin.setId(2L);
+        twin.setStatus(RequestStatus.RUNNING);
+        when(mediaProcessingExecutor.getMaxPoolSize()).thenReturn(2);
+        when(mediaProcessingExecutor.getQueueCapacity()).thenReturn(0);
+        when(mediaRequestQueue.claimPending(2)).thenReturn(List.of(sampleRequest, twin));
+        when(mediaGenerator.generate(eq(sampleRequest), any())).thenAnswer(invocation -> {
+            invocation.<MediaGenerator.Progress>getArgument(1).update(0.5);
+            return new MediaGenerator.GeneratedMedia("/media/media_1.gif", 1234L);
+        });
+        when(mediaRequestRepository.completeProcessing(anyLong(), eq(RequestStatus.RUNNING), eq(RequestStatus.SUCCESS), isNull(),
+                eq("/media/media_1.gif"), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+
+        assertEquals(2, mediaRequestService.processPendingMediaRequests());
+
+        // Seule la première demande occupe un worker ; la seconde attend son résultat
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(mediaProcessingExecutor, times(1)).execute(task.capture());
+        assertEquals(Set.of(1L, 2L), mediaRequestLeases.heldIds());
+        task.getValue().run();
+
+        verify(mediaGenerator, times(1)).generate(any(), any());
+        verify(mediaRequestEvents).publishProgress(eq(2L), any(), eq(50));
+        verify(mediaRequestEvents).publishStatusChange(eq(1L), eq(RequestStatus.SUCCESS), any(), isNull(), eq("/media/media_1.gif"));
+        verify(mediaRequestEvents).publishStatusChange(eq(2L), eq(RequestStatus.SUCCESS), any(), isNull(), eq("/media/media_1.gif"));
+        assertTrue(mediaRequestLeases.heldIds().isEmpty());
+    }
+
+    @Test
+    void runMediaGeneration_whenSharedGenerationFails_shouldFailWaitingIdenticalRequests() throws Exception {
+        sampleRequest.setStatus(RequestStatus.RUNNING);
+        MediaRequest twin = new MediaRequest("Test Scenario", "TestIA", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        twin.setId(2L);
+        twin.setStatus(RequestStatus.RUNNING);
+        when(mediaProcessingExecutor.getMaxPoolSize()).thenReturn(2);
+        when(mediaProcessingExecutor.getQueueCapacity()).thenReturn(0);
+        when(mediaRequestQueue.claimPending(2)).thenReturn(List.of(sampleRequest, twin));
+        when(mediaGenerator.generate(eq(sampleRequest), any())).thenThrow(new MediaGenerationException("Erreur lors de l'écriture du média : disque plein"));
+        when(mediaRequestRepository.completeProcessing(anyLong(), any(), any(), any(), any(), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+
+        mediaRequestService.processPendingMediaRequests();
+        mediaRequestService.runMediaGeneration(sampleRequest);
+
+        verify(mediaRequestRepository).completeProcessing(eq(2L), eq(RequestStatus.RUNNING), eq(RequestStatus.FAIL),
+                eq("Erreur lors de l'écriture du média : disque plein"), isNull(), eq(NODE_ID), any(LocalDateTime.class));
+        assertTrue(mediaRequestLeases.heldIds().isEmpty());
+        // La génération terminée, une nouvelle demande identique n'attend plus de résultat
+        assertTrue(requestCoalescer.joinGeneration(twin).isLedBy(twin));
+    }
+
+    @Test
+    void updateRequestStatus_shouldTruncateLongErrorMessage() {
+        when(mediaRequestRepository.completeProcessing(anyLong(), any(), any(), any(), any(), eq(NODE_ID), any(LocalDateTime.class))).thenReturn(1);
+        String longError = "x".repeat(MediaRequest.ERROR_MESSAGE_MAX_LENGTH + 100);
+
+        mediaRequestService.updateRequestStatus(1L, RequestStatus.RUNNING, RequestStatus.FAIL, longError, null);
+
+        ArgumentCaptor<String> errorCaptor = ArgumentCaptor.forClass(String.class);
+        verify(mediaRequestRepository).completeProcessing(eq(1L), eq(RequestStatus.RUNNING), eq(RequestStatus.FAIL), errorCaptor.capture(), isNull(), eq(NODE_ID), any(LocalDateTime.class));
+        assertEquals(MediaRequest.ERROR_MESSAGE_MAX_LENGTH, errorCaptor.getValue().length());
+        assertTrue(errorCaptor.getValue().endsWith("..."));
+    }
 }
@@ -0,0 +1,123 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAiCompatiblePromptProviderTest {
+
+    private PromptProvidersProperties.OpenAiCompatible settings;
+    private final AtomicReference<ClientRequest> lastRequest = new AtomicReference<>();
+    private TokenUsageTracker tokenUsageTracker;
+
+    @BeforeEach
+    void setUp() {
+        settings = new PromptProvidersProperties.OpenAiCompatible();
+        settings.setName("Mistral");
+        settings.setAliases(List.of("MistralAI"));
+        settings.setBaseUrl("https://api.mistral.test/v1");
+        settings.setApiKey("test-key");
+        settings.setModel("mistral-small-latest");
+        settings.setTimeout(Duration.ofSeconds(10));
+        tokenUsageTracker = new TokenUsageTracker(new PromptProvidersProperties(), new SimpleMeterRegistry());
+    }
+
+    // Le serveur est remplacé par une réponse fixe : aucun appel réseau
+    private OpenAiCompatiblePromptProvider provider(HttpStatus status, String json) {
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> {
+            lastRequest.set(request);
+            return Mono.just(ClientResponse.create(status)
+                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .body(json)
+                    .build());
+        });
+        return new OpenAiCompatiblePromptProvider(settings, PromptTemplates.defaults(), builder, tokenUsageTracker);
+    }
+
+    @Test
+    void generateFormattedPrompt_shouldReturnTheFirstChoice() {
+        OpenAiCompatiblePromptProvider provider = provider(HttpStatus.OK,
+                "{\"id\":\"1\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"Prompt Mistral\"},\"finish_reason\":\"stop\"}]}");
+
+        StepVerifier.create(provider.generateFormattedPrompt("Un chat dans l'espace", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Prompt Mistral")
+                .verifyComplete();
+        assertEquals("https://api.mistral.test/v1/chat/completions", lastRequest.get().url().toString());
+        assertEquals("Bearer test-key", lastRequest.get().headers().getFirst(HttpHeaders.AUTHORIZATION));
+    }
+
+    @Test
+    void matches_shouldAcceptNameAndAliasesIgnoringCase() {
+        OpenAiCompatiblePromptProvider provider = provider(HttpStatus.OK, "{}");
+
+        assertTrue(provider.matches(" mistral "));
+        assertTrue(provider.matches("mistralai"));
+        assertFalse(provider.matches("ChatGPT"));
+    }
+
+    @Test
+    void generateFormattedPrompt_whenContentIsFiltered_shouldFailWithUserMessage() {
+        OpenAiCompatiblePromptProvider provider = provider(HttpStatus.OK,
+                "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"\"},\"finish_reason\":\"content_filter\"}]}");
+
+        StepVerifier.create(provider.generateFormattedPrompt("Scénario", MediaType.IMAGES, TargetPlatform.TIKTOK))
+                .expectErrorSatisfies(error -> {
+                    assertInstanceOf(PromptProviderException.class, error);
+                    assertEquals("Erreur: Contenu bloqué par les filtres de Mistral.", error.getMessage());
+                })
+                .verify();
+    }
+
+    @Test
+    void generateFormattedPrompt_whenApiRejectsTheRequest_shouldFailWithStatusCode() {
+        OpenAiCompatiblePromptProvider provider = provider(HttpStatus.UNAUTHORIZED, "{\"error\":{\"message\":\"Invalid API key\"}}");
+
+        StepVerifier.create(provider.generateFormattedPrompt("Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorMessage("Erreur: Requête refusée par Mistral (401).")
+                .verify();
+    }
+
+    @Test
+    void generateFormattedPrompt_whenApiIsTooSlow_shouldTimeOut() {
+        settings.setTimeout(Duration.ofSeconds(1));
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> Mono.never());
+        OpenAiCompatiblePromptProvider provider = new OpenAiCompatiblePromptProvider(settings, PromptTemplates.defaults(), builder, tokenUsageTracker);
+
+        StepVerifier.create(provider.generateFormattedPrompt("Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorMessage("Erreur: Mistral n'a pas répondu dans le délai de 1 s.")
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void generateFormattedPrompt_shouldReportTheTokenUsageOfTheResponse() {
+        OpenAiCompatiblePromptProvider provider = provider(HttpStatus.OK,
+                "{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"Prompt Mistral\"},\"finish_reason\":\"stop\"}]," +
+                "\"usage\":{\"prompt_tokens\":150,\"completion_tokens\":250,\"total_tokens\":400}}");
+        AtomicReference<TokenUsage> requestUsage = new AtomicReference<>(TokenUsage.NONE);
+
+        StepVerifier.create(provider.generateFormattedPrompt("Un chat dans l'espace", MediaType.VIDEO, TargetPlatform.TIKTOK)
+                        .contextWrite(TokenUsageTracker.attributeTo(requestUsage)))
+                .expectNext("Prompt Mistral")
+                .verifyComplete();
+
+        assertEquals(new TokenUsage(150, 250, 400), requestUsage.get());
+        assertEquals(1, tokenUsageTracker.hourlyUsage().size());
+        assertEquals("mistral-small-latest", tokenUsageTracker.hourlyUsage().get(0).getModel());
+    }
+}
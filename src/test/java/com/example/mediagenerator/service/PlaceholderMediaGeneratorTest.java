@@ -0,0 +1,141 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.MediaGenerationProperties;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaceholderMediaGeneratorTest {
+
+    @TempDir
+    Path storageDir;
+
+    private PlaceholderMediaGenerator generator;
+    private final List<Double> progress = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MediaGenerationProperties properties = new MediaGenerationProperties();
+        properties.setStorageDir(storageDir.resolve("media").toString()); // Créé à la première génération
+        properties.setFrameWidth(160);
+        properties.setFrameHeight(90);
+        properties.setVideoFrames(6);
+        properties.setImageCount(3);
+        properties.setComicPanels(4);
+        generator = new PlaceholderMediaGenerator(properties);
+    }
+
+    private static MediaRequest request(long id, MediaType mediaType) {
+        MediaRequest request = new MediaRequest("Un chat explore une station spatiale abandonnée", "Gemini", mediaType, TargetPlatform.TIKTOK);
+        request.setId(id);
+        return request;
+    }
+
+    private Path file(MediaGenerator.GeneratedMedia media) {
+        assertTrue(media.path().startsWith(PlaceholderMediaGenerator.PUBLIC_PATH_PREFIX));
+        return generator.getStorageDir().resolve(media.path().substring(PlaceholderMediaGenerator.PUBLIC_PATH_PREFIX.length()));
+    }
+
+    @Test
+    void generate_video_shouldWriteAnAnimatedGifWithOneFramePerStep() throws Exception {
+        MediaGenerator.GeneratedMedia media = generator.generate(request(7L, MediaType.VIDEO), progress::add);
+
+        Path gif = file(media);
+        assertEquals("media_7.gif", gif.getFileName().toString());
+        assertEquals(Files.size(gif), media.sizeBytes());
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(gif.toFile())) {
+            reader.setInput(input);
+            assertEquals(6, reader.getNumImages(true));
+            assertEquals(160, reader.getWidth(0));
+        } finally {
+            reader.dispose();
+        }
+        assertEquals(6, progress.size());
+        assertEquals(1.0, progress.get(progress.size() - 1));
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+    }
+
+    @Test
+    void generate_images_shouldWriteAZipOfPngImages() throws Exception {
+        MediaGenerator.GeneratedMedia media = generator.generate(request(8L, MediaType.IMAGES), progress::add);
+
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(file(media)))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.add(entry.getName());
+                BufferedImage image = ImageIO.read(zip);
+                assertEquals(90, image.getHeight());
+            }
+        }
+        assertEquals(List.of("image_01.png", "image_02.png", "image_03.png"), entries);
+    }
+
+    @Test
+    void generate_comic_shouldWriteOnePageWithAllPanels() throws Exception {
+        MediaGenerator.GeneratedMedia media = generator.generate(request(9L, MediaType.COMIC), progress::add);
+
+        BufferedImage page = ImageIO.read(file(media).toFile());
+        // 4 cases : grille 2 x 2 de cases 80 x 45, séparées par des gouttières de 8 pixels
+        assertEquals(2 * 80 + 3 * 8, page.getWidth());
+        assertEquals(2 * 45 + 3 * 8, page.getHeight());
+        assertEquals(1.0, progress.get(progress.size() - 1));
+    }
+
+    @Test
+    void generate_comic_withMoreColumnsThanRows_shouldKeepThePageHeight() throws Exception {
+        MediaGenerationProperties properties = new MediaGenerationProperties();
+        properties.setStorageDir(storageDir.resolve("media").toString());
+        properties.setFrameWidth(160);
+        properties.setFrameHeight(90);
+        properties.setComicPanels(2);
+        generator = new PlaceholderMediaGenerator(properties);
+
+        BufferedImage page = ImageIO.read(file(generator.generate(request(11L, MediaType.COMIC), progress::add)).toFile());
+        // 2 cases : grille 2 x 1 de cases 80 x 90
+        assertEquals(2 * 80 + 3 * 8, page.getWidth());
+        assertEquals(90 + 2 * 8, page.getHeight());
+    }
+
+    @Test
+    void generate_again_shouldReplaceThePreviousFileWithoutLeavingPartialFiles() throws Exception {
+        generator.generate(request(10L, MediaType.COMIC), progress::add);
+        generator.generate(request(10L, MediaType.COMIC), progress::add);
+
+        try (var files = Files.list(generator.getStorageDir())) {
+            assertEquals(List.of("media_10.png"), files.map(p -> p.getFileName().toString()).toList());
+        }
+    }
+
+    @Test
+    void generate_whenInterrupted_shouldStopAndRemoveThePartialFile() throws Exception {
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedException.class, () -> generator.generate(request(11L, MediaType.VIDEO), progress::add));
+        } finally {
+            Thread.interrupted();
+        }
+        try (var files = Files.list(generator.getStorageDir())) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.dto.PromptBatchResultDto;
+import com.example.mediagenerator.dto.PromptBatchResultDto.Outcome;
+import com.example.mediagenerator.model.MediaRequest;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.RequestStatus;
+import com.example.mediagenerator.model.TargetPlatform;
+import com.example.mediagenerator.repository.MediaRequestRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PromptBatchServiceTest {
+
+    @Mock
+    private MediaRequestService mediaRequestService;
+
+    @Mock
+    private MediaRequestRepository mediaRequestRepository;
+
+    private PromptBatchService promptBatchService;
+
+    @BeforeEach
+    void setUp() {
+        promptBatchService = new PromptBatchService(mediaRequestService, mediaRequestRepository, 2);
+    }
+
+    private static MediaRequest request(Long id) {
+        MediaRequest request = new MediaRequest("Scenario " + id, "Gemini", MediaType.VIDEO, TargetPlatform.TIKTOK);
+        request.setId(id);
+        request.setStatus(RequestStatus.FORMATTING_PROMPT);
+        return request;
+    }
+
+    private static Mono<MediaRequest> finished(MediaRequest request, RequestStatus status, String error) {
+        request.setStatus(status);
+        request.setErrorMessage(error);
+        return Mono.just(request);
+    }
+
+    @Test
+    void formatPrompts_shouldReportOutcomePerItemInInputOrder() {
+        MediaRequest ok = request(1L);
+        MediaRequest ko = request(2L);
+        when(mediaRequestService.markFormattingPrompt(1L)).thenReturn(Optional.of(ok));
+        when(mediaRequestService.markFormattingPrompt(2L)).thenReturn(Optional.of(ko));
+        when(mediaRequestService.markFormattingPrompt(3L)).thenReturn(Optional.empty());
+        when(mediaRequestService.runPromptFormatting(ok)).thenReturn(finished(ok, RequestStatus.PROMPT_GENERATED, null));
+        when(mediaRequestService.runPromptFormatting(ko)).thenReturn(finished(ko, RequestStatus.FAIL, "Erreur: quota"));
+
+        PromptBatchResultDto result = promptBatchService.formatPrompts(List.of(1L, 2L, 3L)).block(Duration.ofSeconds(5));
+
+        assertNotNull(result);
+        assertEquals(List.of(1L, 2L, 3L), result.getItems().stream().map(PromptBatchResultDto.Item::getId).toList());
+        assertEquals(List.of(Outcome.PROMPT_GENERATED, Outcome.FAIL, Outcome.SKIPPED),
+                result.getItems().stream().map(PromptBatchResultDto.Item::getOutcome).toList());
+        assertEquals("Erreur: quota", result.getItems().get(1).getMessage());
+        assertEquals(1, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(1, result.getSkipped());
+        assertTrue(result.getWallTimeMs() >= 0);
+    }
+
+    @Test
+    void formatPrompts_shouldNotExceedTheConcurrencyLimit() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Long> ids = List.of(1L, 2L, 3L, 4L, 5L, 6L);
+        for (Long id : ids) {
+            MediaRequest request = request(id);
+            when(mediaRequestService.markFormattingPrompt(id)).thenReturn(Optional.of(request));
+            when(mediaRequestService.runPromptFormatting(request)).thenReturn(Mono.defer(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return finished(request, RequestStatus.PROMPT_GENERATED, null).delayElement(Duration.ofMillis(50));
+            }).doOnTerminate(inFlight::decrementAndGet));
+        }
+
+        PromptBatchResultDto result = promptBatchService.formatPrompts(ids).block(Duration.ofSeconds(5));
+
+        assertEquals(6, result.getSucceeded());
+        assertTrue(maxInFlight.get() <= 2, "max in flight was " + maxInFlight.get());
+    }
+
+    @Test
+    void formatAllPending_shouldFormatEveryNotYetAndGoRequest() {
+        MediaRequest pending = request(7L);
+        when(mediaRequestRepository.findIdsByStatusIn(anyCollection())).thenReturn(List.of(7L));
+        when(mediaRequestService.markFormattingPrompt(7L)).thenReturn(Optional.of(pending));
+        when(mediaRequestService.runPromptFormatting(any(MediaRequest.class))).thenReturn(finished(pending, RequestStatus.PROMPT_GENERATED, null));
+
+        PromptBatchResultDto result = promptBatchService.formatAllPending().block(Duration.ofSeconds(5));
+
+        assertEquals(1, result.getItems().size());
+        assertEquals(Outcome.PROMPT_GENERATED, result.getItems().get(0).getOutcome());
+    }
+}
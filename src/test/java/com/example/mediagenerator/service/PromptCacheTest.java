@@ -0,0 +1,156 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptCacheTest {
+
+    private static final Instant NOW = Instant.now();
+
+    @TempDir
+    Path tempDir;
+
+    private static String key(String scenario) {
+        return PromptCache.key(scenario, MediaType.VIDEO, "user-message@test", "gemini-test", 0.7f, 700);
+    }
+
+    @Test
+    void key_dependsOnEveryGenerationParameter() {
+        String base = PromptCache.key("scenario", MediaType.VIDEO, "user-message@test", "gemini-test", 0.7f, 700);
+        assertEquals(base, PromptCache.key("scenario", MediaType.VIDEO, "user-message@test", "gemini-test", 0.7f, 700));
+        assertNotEquals(base, PromptCache.key("scenario", MediaType.COMIC, "user-message@test", "gemini-test", 0.7f, 700));
+        assertNotEquals(base, PromptCache.key("scenario", MediaType.VIDEO, "user-message@test", "gemini-other", 0.7f, 700));
+        assertNotEquals(base, PromptCache.key("scenario", MediaType.VIDEO, "user-message-video@test", "gemini-test", 0.7f, 700));
+        assertNotEquals(base, PromptCache.key("scenario", MediaType.VIDEO, "user-message@test", "gemini-test", 0.2f, 700));
+        assertNotEquals(base, PromptCache.key("scenario", MediaType.VIDEO, "user-message@test", "gemini-test", 0.7f, 8192));
+    }
+
+    @Test
+    void getAndPut_shouldCountHitsAndMisses() {
+        PromptCache cache = new PromptCache(10, Duration.ofHours(1), null, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertTrue(cache.get(key("a")).isEmpty());
+        cache.put(key("a"), "prompt A");
+        assertEquals("prompt A", cache.get(key("a")).orElseThrow());
+
+        PromptCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(0.5, stats.hitRatio());
+    }
+
+    @Test
+    void put_shouldNeverCacheErrorMessages() {
+        PromptCache cache = new PromptCache(10, Duration.ofHours(1), tempDir, Clock.systemUTC());
+
+        cache.put(key("a"), "Erreur: Réponse vide ou malformée de Gemini.");
+
+        assertTrue(cache.get(key("a")).isEmpty());
+        assertEquals(0, cache.stats().size());
+        assertEquals(0, tempDir.toFile().list().length);
+    }
+
+    @Test
+    void put_beyondMaxEntries_shouldEvictLeastRecentlyUsed() {
+        PromptCache cache = new PromptCache(2, Duration.ofHours(1), null, Clock.fixed(NOW, ZoneOffset.UTC));
+        cache.put(key("a"), "A");
+        cache.put(key("b"), "B");
+        cache.get(key("a")); // "a" devient la plus récemment utilisée
+        cache.put(key("c"), "C");
+
+        assertTrue(cache.get(key("a")).isPresent());
+        assertTrue(cache.get(key("b")).isEmpty());
+        assertTrue(cache.get(key("c")).isPresent());
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void get_afterTtl_shouldMiss() {
+        Clock[] clock = {Clock.fixed(NOW, ZoneOffset.UTC)};
+        PromptCache cache = new PromptCache(10, Duration.ofMinutes(5), null, new Clock() {
+            @Override public ZoneOffset getZone() { return ZoneOffset.UTC; }
+            @Override public Clock withZone(java.time.ZoneId zone) { return this; }
+            @Override public Instant instant() { return clock[0].instant(); }
+        });
+        cache.put(key("a"), "A");
+
+        clock[0] = Clock.offset(clock[0], Duration.ofMinutes(6));
+
+        assertTrue(cache.get(key("a")).isEmpty());
+    }
+
+    @Test
+    void persistedEntries_shouldSurviveANewCacheInstance() {
+        PromptCache first = new PromptCache(10, Duration.ofHours(1), tempDir, Clock.systemUTC());
+        first.put(key("a"), "Prompt persisté");
+
+        PromptCache restarted = new PromptCache(10, Duration.ofHours(1), tempDir, Clock.systemUTC());
+
+        assertEquals("Prompt persisté", restarted.get(key("a")).orElseThrow());
+        assertEquals(1, restarted.stats().diskHits());
+    }
+
+    @Test
+    void put_beyondMaxDiskEntries_shouldDeleteTheOldestFiles() throws Exception {
+        PromptCache cache = new PromptCache(100, 10, Duration.ofHours(1), tempDir, Clock.systemUTC());
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("s" + i), "Prompt " + i);
+            // Dates de modification distinctes, de la plus ancienne (s0) à la plus récente
+            Files.setLastModifiedTime(tempDir.resolve(key("s" + i) + ".prompt"), FileTime.from(NOW.minusSeconds(60 - i)));
+        }
+
+        cache.put(key("s10"), "Prompt 10"); // 11 fichiers : ramenés à 9, les plus anciens d'abord
+
+        try (var files = Files.list(tempDir)) {
+            assertEquals(9, files.count());
+        }
+        assertFalse(Files.exists(tempDir.resolve(key("s0") + ".prompt")));
+        assertFalse(Files.exists(tempDir.resolve(key("s1") + ".prompt")));
+        assertTrue(Files.exists(tempDir.resolve(key("s10") + ".prompt")));
+    }
+
+    @Test
+    void sweepDisk_shouldDeleteExpiredFiles() throws Exception {
+        PromptCache cache = new PromptCache(10, Duration.ofHours(1), tempDir, Clock.systemUTC());
+        cache.put(key("a"), "A");
+        cache.put(key("b"), "B");
+        Files.setLastModifiedTime(tempDir.resolve(key("a") + ".prompt"), FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        cache.sweepDisk();
+
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        assertTrue(Files.exists(tempDir.resolve(key("b") + ".prompt")));
+        assertEquals(1, cache.stats().evictions());
+    }
+
+    @Test
+    void bindTo_shouldExposeTheCountersInMicrometer() {
+        PromptCache cache = new PromptCache(10, Duration.ofHours(1), tempDir, Clock.systemUTC());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        cache.get(key("a"));
+        cache.put(key("a"), "A");
+        cache.get(key("a"));
+        cache.get(key("a"));
+
+        assertEquals(2, registry.get("prompt.cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1, registry.get("prompt.cache.gets").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("prompt.cache.size").gauge().value());
+        assertEquals(1, registry.get("prompt.cache.disk.size").gauge().value());
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptProviderRouterTest {
+
+    private PromptProvidersProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    // Fournisseur bouchon : répond (ou échoue) après un délai donné et compte ses appels
+    private static class StubProvider implements PromptProvider {
+        private final String name;
+        private final Mono<String> answer;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private Duration p95;
+        private Flux<String> chunks; // Flux du mode streaming ; par défaut, la réponse en un seul morceau
+
+        StubProvider(String name, Mono<String> answer) {
+            this.name = name;
+            this.answer = answer;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Mono<String> generateFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+            return Mono.defer(() -> {
+                calls.incrementAndGet();
+                return answer.doOnCancel(() -> cancelled.set(true));
+            });
+        }
+
+        @Override
+        public Flux<String> streamFormattedPrompt(String scenario, MediaType mediaType, TargetPlatform targetPlatform) {
+            if (chunks == null) {
+                return PromptProvider.super.streamFormattedPrompt(scenario, mediaType, targetPlatform);
+            }
+            return Flux.defer(() -> {
+                calls.incrementAndGet();
+                return chunks.doOnCancel(() -> cancelled.set(true));
+            });
+        }
+
+        @Override
+        public Optional<Duration> latencyPercentile(double percentile) {
+            return Optional.ofNullable(p95);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new PromptProvidersProperties();
+        properties.getHedging().setEnabled(true);
+        properties.getHedging().setInitialDelay(Duration.ofMillis(50));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private PromptProviderRouter router(PromptProvider... providers) {
+        return new PromptProviderRouter(List.of(providers), properties, PromptTemplates.defaults(), WebClient.builder(), meterRegistry,
+                new TokenUsageTracker(properties, meterRegistry));
+    }
+
+    @Test
+    void route_shouldFollowSelectedIAsOrderAndIgnoreUnknownNames() {
+        StubProvider gemini = new StubProvider("Gemini", Mono.just("g"));
+        StubProvider chatGpt = new StubProvider("ChatGPT", Mono.just("c"));
+        PromptProviderRouter router = router(gemini, chatGpt);
+
+        assertEquals(List.of(chatGpt, gemini), router.route(" chatgpt, DeepSeek ,Gemini,ChatGPT"));
+    }
+
+    @Test
+    void route_withoutKnownProvider_shouldUseTheDefaultProvider() {
+        StubProvider gemini = new StubProvider("Gemini", Mono.just("g"));
+        StubProvider chatGpt = new StubProvider("ChatGPT", Mono.just("c"));
+        PromptProviderRouter router = router(chatGpt, gemini);
+
+        assertEquals(List.of(gemini), router.route("Midjourney"));
+        assertEquals(List.of(gemini), router.route(null));
+    }
+
+    @Test
+    void openAiCompatibleProvidersWithoutApiKey_shouldNotBeEnabled() {
+        PromptProvidersProperties.OpenAiCompatible mistral = new PromptProvidersProperties.OpenAiCompatible();
+        mistral.setName("Mistral");
+        mistral.setModel("mistral-small-latest");
+        properties.getOpenaiCompatible().add(mistral);
+        PromptProviderRouter router = router(new StubProvider("Gemini", Mono.just("g")));
+
+        assertEquals("Gemini", router.route("Mistral").get(0).getName());
+
+        mistral.setApiKey("test-key");
+        assertEquals("Mistral", router(new StubProvider("Gemini", Mono.just("g"))).route("Mistral").get(0).getName());
+    }
+
+    @Test
+    void generateFormattedPrompt_whenPrimaryAnswersBeforeHedgeDelay_shouldNotCallSecondProvider() {
+        StubProvider primary = new StubProvider("ChatGPT", Mono.just("primary"));
+        StubProvider secondary = new StubProvider("Mistral", Mono.just("secondary"));
+
+        StepVerifier.create(router(primary, secondary).generateFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("primary")
+                .verifyComplete();
+        assertEquals(0, secondary.calls.get());
+        assertTrue(meterRegistry.find("prompt.hedged.requests").counters().isEmpty());
+    }
+
+    @Test
+    void generateFormattedPrompt_whenPrimaryIsSlow_shouldTakeTheHedgeAnswerAndCancelThePrimary() {
+        StubProvider primary = new StubProvider("ChatGPT", Mono.delay(Duration.ofSeconds(5)).thenReturn("primary"));
+        primary.p95 = Duration.ofMillis(20); // Le délai de relance suit la latence mesurée du premier fournisseur
+        StubProvider secondary = new StubProvider("Mistral", Mono.just("secondary"));
+
+        StepVerifier.create(router(primary, secondary).generateFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("secondary")
+                .verifyComplete();
+        assertTrue(primary.cancelled.get());
+        assertEquals(1, meterRegistry.get("prompt.hedged.requests").tag("outcome", "hedge_won").counter().count());
+    }
+
+    @Test
+    void generateFormattedPrompt_whenPrimaryFails_shouldFailOverWithoutWaitingForTheHedgeDelay() {
+        properties.getHedging().setInitialDelay(Duration.ofMinutes(1));
+        StubProvider primary = new StubProvider("Gemini", Mono.error(new PromptProviderException("Erreur: Gemini indisponible.")));
+        StubProvider secondary = new StubProvider("ChatGPT", Mono.just("secondary"));
+        properties.getHedging().setFallbackProvider("ChatGPT");
+
+        StepVerifier.create(router(primary, secondary).generateFormattedPrompt("Gemini", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("secondary")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void generateFormattedPrompt_whenBothProvidersFail_shouldPropagateThePrimaryError() {
+        StubProvider primary = new StubProvider("ChatGPT", Mono.error(new PromptProviderException("Erreur: ChatGPT indisponible.")));
+        StubProvider secondary = new StubProvider("Mistral", Mono.error(new PromptProviderException("Erreur: Mistral indisponible.")));
+
+        StepVerifier.create(router(primary, secondary).generateFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorMessage("Erreur: ChatGPT indisponible.")
+                .verify();
+        assertEquals(1, meterRegistry.get("prompt.hedged.requests").tag("outcome", "both_failed").counter().count());
+    }
+
+    @Test
+    void streamFormattedPrompt_whenPrimaryEmitsNothingBeforeHedgeDelay_shouldStreamTheHedgeAndCancelThePrimary() {
+        StubProvider primary = new StubProvider("ChatGPT", Mono.never());
+        primary.chunks = Flux.just("primary").delaySubscription(Duration.ofSeconds(5));
+        primary.p95 = Duration.ofMillis(20);
+        StubProvider secondary = new StubProvider("Mistral", Mono.never());
+        secondary.chunks = Flux.just("Un ", "chat");
+
+        StepVerifier.create(router(primary, secondary).streamFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Un ", "chat")
+                .verifyComplete();
+        assertTrue(primary.cancelled.get());
+        assertEquals(1, meterRegistry.get("prompt.hedged.requests").tag("outcome", "hedge_won").counter().count());
+    }
+
+    @Test
+    void streamFormattedPrompt_onceThePrimaryHasStarted_shouldNeverSwitchProvider() {
+        StubProvider primary = new StubProvider("ChatGPT", Mono.never());
+        // Premier morceau immédiat, suite lente puis échec : le flux retenu reste celui du premier fournisseur
+        primary.chunks = Flux.concat(Flux.just("Un "), Mono.delay(Duration.ofMillis(200)).then(Mono.error(new PromptProviderException("Erreur: coupure."))));
+        StubProvider secondary = new StubProvider("Mistral", Mono.never());
+        secondary.chunks = Flux.just("secondary");
+
+        StepVerifier.create(router(primary, secondary).streamFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("Un ")
+                .expectErrorMessage("Erreur: coupure.")
+                .verify(Duration.ofSeconds(5));
+        assertEquals(0, secondary.calls.get());
+    }
+
+    @Test
+    void streamFormattedPrompt_whenPrimaryFailsBeforeAnyChunk_shouldFailOver() {
+        properties.getHedging().setInitialDelay(Duration.ofMinutes(1));
+        StubProvider primary = new StubProvider("ChatGPT", Mono.error(new PromptProviderException("Erreur: ChatGPT indisponible.")));
+        StubProvider secondary = new StubProvider("Mistral", Mono.just("secondary"));
+
+        StepVerifier.create(router(primary, secondary).streamFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectNext("secondary")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void generateFormattedPrompt_withHedgingDisabled_shouldOnlyCallThePrimary() {
+        properties.getHedging().setEnabled(false);
+        StubProvider primary = new StubProvider("ChatGPT", Mono.error(new PromptProviderException("Erreur: ChatGPT indisponible.")));
+        StubProvider secondary = new StubProvider("Mistral", Mono.just("secondary"));
+
+        StepVerifier.create(router(primary, secondary).generateFormattedPrompt("ChatGPT,Mistral", "Scénario", MediaType.VIDEO, TargetPlatform.TIKTOK))
+                .expectErrorMessage("Erreur: ChatGPT indisponible.")
+                .verify();
+        assertEquals(0, secondary.calls.get());
+    }
+
+    @Test
+    void latencyTracker_shouldReportThePercentileOnceEnoughSamplesAreRecorded() {
+        LatencyTracker tracker = new LatencyTracker(100, 10);
+        for (int i = 1; i <= 9; i++) {
+            tracker.record(Duration.ofMillis(i * 10L).toNanos());
+        }
+        assertTrue(tracker.percentile(0.95).isEmpty());
+
+        for (int i = 10; i <= 100; i++) {
+            tracker.record(Duration.ofMillis(i * 10L).toNanos());
+        }
+        assertEquals(Duration.ofMillis(950), tracker.percentile(0.95).orElseThrow());
+    }
+}
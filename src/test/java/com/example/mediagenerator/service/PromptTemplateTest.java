@@ -0,0 +1,74 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.model.MediaType;
+import com.example.mediagenerator.model.TargetPlatform;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptTemplateTest {
+
+    @TempDir
+    Path templatesDir;
+
+    private PromptTemplates load() {
+        return new PromptTemplates(new DefaultResourceLoader(), templatesDir.toUri().toString());
+    }
+
+    @Test
+    void render_defaultTemplate_shouldProduceTheHistoricalMessage() {
+        String scenario = "Un chat explore une station spatiale abandonnée";
+        // Message construit jusqu'ici par String.format dans PromptProvider
+        String expected = String.format(
+                "Crée un prompt détaillé et optimisé pour une IA générative (images/vidéo) basé sur le scénario suivant. " +
+                "Le média à produire est de type '%s'. " +
+                "Le scénario est :\n\"%s\"\n\n" +
+                "Le prompt doit inclure des suggestions claires et exploitables pour les éléments suivants :\n" +
+                "- Personnages (apparence, expressions, actions clés).\n" +
+                "- Composition visuelle et cadrage (ex: gros plan, plan d'ensemble, angle de vue).\n" +
+                "- Ambiance et éclairage (ex: sombre et mystérieux, lumineux et joyeux, couleurs dominantes).\n" +
+                "- Style artistique (ex: photoréaliste, dessin animé, peinture à l'huile, cyberpunk, fantasy épique).\n" +
+                "- Éléments clés du décor et objets importants.\n" +
+                "Assure-toi que le prompt soit structuré de manière à être facilement interprétable par une IA, en utilisant des mots-clés pertinents et en évitant les ambiguïtés.",
+                "comic", scenario);
+
+        assertEquals(expected, PromptTemplates.defaults().render(scenario, MediaType.COMIC, TargetPlatform.INSTAGRAM));
+    }
+
+    @Test
+    void parse_shouldReplaceEveryKnownVariableAndKeepOtherBraces() {
+        PromptTemplate template = PromptTemplate.parse("test", "{scenario} / {mediaType} pour {targetPlatform} {inconnu} {scenario}{");
+
+        assertEquals("Chat / images pour tiktok {inconnu} Chat{", template.render("Chat", MediaType.IMAGES, TargetPlatform.TIKTOK));
+        assertEquals("Chat / images pour  {inconnu} Chat{", template.render("Chat", MediaType.IMAGES, null));
+        assertTrue(template.getId().startsWith("test@"));
+        assertNotEquals(template.getId(), PromptTemplate.parse("test", "{scenario}").getId());
+    }
+
+    @Test
+    void get_shouldPickTheMostSpecificTemplate() throws Exception {
+        Files.writeString(templatesDir.resolve("user-message.txt"), "Défaut {mediaType}\n");
+        Files.writeString(templatesDir.resolve("user-message-video.txt"), "Vidéo {scenario}");
+        Files.writeString(templatesDir.resolve("user-message-video-tiktok.txt"), "TikTok {scenario}\r\n");
+
+        PromptTemplates templates = load();
+
+        assertEquals("TikTok Chat", templates.render("Chat", MediaType.VIDEO, TargetPlatform.TIKTOK));
+        assertEquals("Vidéo Chat", templates.render("Chat", MediaType.VIDEO, TargetPlatform.INSTAGRAM));
+        assertEquals("Vidéo Chat", templates.render("Chat", MediaType.VIDEO, null));
+        assertEquals("Défaut comic", templates.render("Chat", MediaType.COMIC, TargetPlatform.TIKTOK));
+        assertSame(templates.get(MediaType.IMAGES, TargetPlatform.TIKTOK), templates.get(MediaType.COMIC, null));
+    }
+
+    @Test
+    void load_withoutDefaultTemplate_shouldFail() throws Exception {
+        Files.writeString(templatesDir.resolve("user-message-video.txt"), "Vidéo {scenario}");
+
+        assertThrows(IllegalStateException.class, this::load);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.mediagenerator.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void reserve_withinBurst_shouldNotWait() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 3, nanos::get);
+
+        assertEquals(Duration.ZERO, limiter.reserve());
+        assertEquals(Duration.ZERO, limiter.reserve());
+        assertEquals(Duration.ZERO, limiter.reserve());
+    }
+
+    @Test
+    void reserve_beyondBurst_shouldQueueCallersAtTheConfiguredRate() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 1, nanos::get);
+
+        assertEquals(Duration.ZERO, limiter.reserve());
+        assertEquals(Duration.ofMillis(500), limiter.reserve());
+        assertEquals(Duration.ofMillis(1000), limiter.reserve());
+    }
+
+    @Test
+    void reserve_shouldRefillOverTimeUpToTheBurst() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 2, nanos::get);
+        limiter.reserve();
+        limiter.reserve();
+
+        nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertEquals(Duration.ZERO, limiter.reserve());
+        assertEquals(Duration.ZERO, limiter.reserve());
+        assertEquals(Duration.ofSeconds(1), limiter.reserve());
+    }
+
+    @Test
+    void reserve_manyPermits_shouldWaitForTheWholeReservation() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 20, nanos::get);
+
+        assertEquals(Duration.ZERO, limiter.reserve(15));
+        assertEquals(Duration.ofSeconds(1), limiter.reserve(15));
+    }
+
+    @Test
+    void adjust_shouldDebitOrRefundAReservationUpToTheBurst() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 20, nanos::get);
+        limiter.reserve(20);
+
+        limiter.adjust(10); // Usage réel supérieur à l'estimation
+        assertEquals(Duration.ofSeconds(2), limiter.reserve(10));
+
+        limiter.adjust(-100); // Réservation rendue : le solde ne dépasse pas le seau
+        assertEquals(Duration.ZERO, limiter.reserve(20));
+        assertEquals(Duration.ofMillis(100), limiter.reserve(1));
+    }
+
+    @Test
+    void unlimited_shouldNeverWait() {
+        TokenBucketRateLimiter limiter = TokenBucketRateLimiter.unlimited();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Duration.ZERO, limiter.reserve());
+        }
+    }
+
+    @Test
+    void acquire_shouldCompleteOnceTheTokenIsAvailable() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1, nanos::get);
+        limiter.reserve();
+
+        StepVerifier.withVirtualTime(limiter::acquire)
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(900))
+                .thenAwait(Duration.ofMillis(100))
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.mediagenerator.service;
+
+import com.example.mediagenerator.config.PromptProvidersProperties;
+import com.example.mediagenerator.dto.TokenUsageHourDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenUsageTrackerTest {
+
+    private static final String MODEL = "gemini-test";
+
+    private PromptProvidersProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private TokenUsageTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        // 600 jetons par minute dont 60 d'un coup : le reste revient à 9 jetons par seconde
+        properties = new PromptProvidersProperties();
+        properties.getTokenBudget().setTokensPerMinute(600);
+        properties.getTokenBudget().setBurstTokens(60);
+        properties.getTokenBudget().setMaxWait(Duration.ofSeconds(30));
+        meterRegistry = new SimpleMeterRegistry();
+        tracker = new TokenUsageTracker(properties, meterRegistry);
+    }
+
+    @Test
+    void reserve_beyondTheBurst_shouldWaitForTheBudgetToRefill() {
+        StepVerifier.create(tracker.reserve(MODEL, 60)).expectNextCount(1).verifyComplete();
+
+        StepVerifier.withVirtualTime(() -> tracker.reserve(MODEL, 90))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofSeconds(9))
+                .thenAwait(Duration.ofSeconds(2))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void reserve_beyondMaxWait_shouldRefuseTheCallAndGiveTheTokensBack() {
+        StepVerifier.create(tracker.reserve(MODEL, 1000))
+                .expectErrorSatisfies(error -> {
+                    assertInstanceOf(PromptProviderException.class, error);
+                    assertTrue(error.getMessage().contains("Budget de jetons du modèle " + MODEL + " épuisé"));
+                })
+                .verify();
+
+        StepVerifier.create(tracker.reserve(MODEL, 60)).expectNextCount(1).verifyComplete();
+        assertEquals(1, meterRegistry.counter("prompt.token.budget.rejected", "model", MODEL).count());
+    }
+
+    @Test
+    void complete_withoutUsage_shouldGiveTheEstimateBack() {
+        TokenUsageTracker.Reservation reservation = tracker.reserve(MODEL, 60).block();
+
+        reservation.complete(Context.empty(), "Gemini", null);
+        reservation.complete(Context.empty(), "Gemini", new TokenUsage(10, 10, 20)); // Sans effet : déjà soldée
+
+        StepVerifier.create(tracker.reserve(MODEL, 60)).expectNextCount(1).verifyComplete();
+        assertTrue(tracker.hourlyUsage().isEmpty());
+    }
+
+    @Test
+    void complete_shouldRecordTheUsagePerModelPerHourAndForTheRequest() {
+        tracker = new TokenUsageTracker(new PromptProvidersProperties(), meterRegistry); // Sans budget : pas d'attente
+        AtomicReference<TokenUsage> requestUsage = new AtomicReference<>(TokenUsage.NONE);
+        Mono<String> call = tracker.reserve(MODEL, 50)
+                .flatMap(reservation -> Mono.deferContextual(context -> {
+                    reservation.complete(context, "Gemini", new TokenUsage(30, 70, 100));
+                    return Mono.just("Prompt");
+                }));
+
+        StepVerifier.create(call.then(call).contextWrite(TokenUsageTracker.attributeTo(requestUsage)))
+                .expectNext("Prompt")
+                .verifyComplete();
+
+        assertEquals(new TokenUsage(60, 140, 200), requestUsage.get());
+        List<TokenUsageHourDto> hourly = tracker.hourlyUsage();
+        assertEquals(1, hourly.size());
+        assertEquals(new TokenUsageHourDto(MODEL, hourly.get(0).getHour(), 2, 60, 140, 200), hourly.get(0));
+        assertEquals(0, hourly.get(0).getHour().getMinute());
+        assertEquals(140, meterRegistry.counter("prompt.tokens", "provider", "Gemini", "model", MODEL, "type", "candidates").count());
+    }
+
+    @Test
+    void estimate_shouldAddTheRecentAnswersOfTheModelToTheMessage() {
+        String message = "x".repeat(400);
+        assertEquals(100, tracker.estimate(MODEL, message));
+
+        tracker.reserve(MODEL, 0).block().complete(Context.empty(), "Gemini", new TokenUsage(100, 200, 300));
+
+        assertEquals(300, tracker.estimate(MODEL, message));
+        assertEquals(100, tracker.estimate("other-model", message));
+    }
+
+    @Test
+    void reserve_withoutBudget_shouldNeverWait() {
+        tracker = new TokenUsageTracker(new PromptProvidersProperties(), meterRegistry);
+
+        StepVerifier.create(tracker.reserve(MODEL, 1_000_000).then(tracker.reserve(MODEL, 1_000_000)))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+}